@@ -56,97 +56,13 @@ public abstract class EquationInCartesianCoordinate extends GeoFluidApplication{
 		
 		switch(dim){
 		case X:{
-			if(var.isTFirst()){
-				for(int l=0;l<t;l++)
-				for(int k=0;k<z;k++)
-				for(int j=0;j<y;j++){
-					if(BCx==BoundaryCondition.Periodic){
-						if(vdata[l][k][j][1]!=undef&&vdata[l][k][j][x-1]!=undef)
-						ddata[l][k][j][0  ]=(vdata[l][k][j][1]-vdata[l][k][j][x-1])/(dx*2f);
-						if(vdata[l][k][j][0]!=undef&&vdata[l][k][j][x-2]!=undef)
-						ddata[l][k][j][x-1]=(vdata[l][k][j][0]-vdata[l][k][j][x-2])/(dx*2f);
-						
-					}else if(BCx==BoundaryCondition.Fixed){
-						if(vdata[l][k][j][1  ]!=undef&&vdata[l][k][j][0  ]!=undef)
-						ddata[l][k][j][0  ]=(vdata[l][k][j][1  ]-vdata[l][k][j][0  ])/dx;
-						if(vdata[l][k][j][x-1]!=undef&&vdata[l][k][j][x-2]!=undef)
-						ddata[l][k][j][x-1]=(vdata[l][k][j][x-1]-vdata[l][k][j][x-2])/dx;
-					}
-					
-					for(int i=1;i<x-1;i++)
-					if(vdata[l][k][j][i+1]!=undef&&vdata[l][k][j][i-1]!=undef)
-					ddata[l][k][j][i]=(vdata[l][k][j][i+1]-vdata[l][k][j][i-1])/(dx*2);
-				}
-				
-			}else{
-				for(int l=0;l<t;l++)
-				for(int k=0;k<z;k++)
-				for(int j=0;j<y;j++){
-					if(BCx==BoundaryCondition.Periodic){
-						if(vdata[k][j][1][l]!=undef&&vdata[k][j][x-1][l]!=undef)
-						ddata[k][j][0  ][l]=(vdata[k][j][1][l]-vdata[k][j][x-1][l])/(dx*2f);
-						if(vdata[k][j][0][l]!=undef&&vdata[k][j][x-2][l]!=undef)
-						ddata[k][j][x-1][l]=(vdata[k][j][0][l]-vdata[k][j][x-2][l])/(dx*2f);
-						
-					}else if(BCx==BoundaryCondition.Fixed){
-						if(vdata[k][j][1  ][l]!=undef&&vdata[k][j][0  ][l]!=undef)
-						ddata[k][j][0  ][l]=(vdata[k][j][1  ][l]-vdata[k][j][0  ][l])/dx;
-						if(vdata[k][j][x-1][l]!=undef&&vdata[k][j][x-2][l]!=undef)
-						ddata[k][j][x-1][l]=(vdata[k][j][x-1][l]-vdata[k][j][x-2][l])/dx;
-					}
-					
-					for(int i=1;i<x-1;i++)
-					if(vdata[k][j][i+1][l]!=undef&&vdata[k][j][i-1][l]!=undef)
-					ddata[k][j][i][l]=(vdata[k][j][i+1][l]-vdata[k][j][i-1][l])/(dx*2f);
-				}
-			}
+			float[] dxj=rowsOf(dx);
+			
+			StencilKernel.forEachSlab((in,r)->StencilKernel.ddx(in[0],r,dxj,BCx,undef),der,var);
 			break;
 		}
 		case Y:{
-			if(var.isTFirst()){
-				for(int l=0;l<t;l++)
-				for(int k=0;k<z;k++)
-				for(int i=0;i<x;i++){
-					if(BCy==BoundaryCondition.Periodic){
-						if(vdata[l][k][1][i]!=undef&&vdata[l][k][y-1][i]!=undef)
-						ddata[l][k][0  ][i]=(vdata[l][k][1][i]-vdata[l][k][y-1][i])/(dy*2);
-						if(vdata[l][k][0][i]!=undef&&vdata[l][k][y-2][i]!=undef)
-						ddata[l][k][y-1][i]=(vdata[l][k][0][i]-vdata[l][k][y-2][i])/(dy*2);
-						
-					}else if(BCy==BoundaryCondition.Fixed){
-						if(vdata[l][k][1][i  ]!=undef&&vdata[l][k][0  ][i]!=undef)
-						ddata[l][k][0  ][i]=(vdata[l][k][1  ][i]-vdata[l][k][0  ][i])/dy;
-						if(vdata[l][k][y-1][i]!=undef&&vdata[l][k][y-2][i]!=undef)
-						ddata[l][k][y-1][i]=(vdata[l][k][y-1][i]-vdata[l][k][y-2][i])/dy;
-					}
-					
-					for(int j=1;j<y-1;j++)
-					if(vdata[l][k][j+1][i]!=undef&&vdata[l][k][j-1][i]!=undef)
-					ddata[l][k][j][i]=(vdata[l][k][j+1][i]-vdata[l][k][j-1][i])/(dy*2);
-				}
-				
-			}else{
-				for(int l=0;l<t;l++)
-				for(int k=0;k<z;k++)
-				for(int i=0;i<x;i++){
-					if(BCy==BoundaryCondition.Periodic){
-						if(vdata[k][1][i][l]!=undef&&vdata[k][y-1][i][l]!=undef)
-						ddata[k][0  ][i][l]=(vdata[k][1][i][l]-vdata[k][y-1][i][l])/(dy*2);
-						if(vdata[k][0][i][l]!=undef&&vdata[k][y-2][i][l]!=undef)
-						ddata[k][y-1][i][l]=(vdata[k][0][i][l]-vdata[k][y-2][i][l])/(dy*2);
-						
-					}else if(BCy==BoundaryCondition.Fixed){
-						if(vdata[k][1  ][i][l]!=undef&&vdata[k][0  ][i][l]!=undef)
-						ddata[k][0  ][i][l]=(vdata[k][1  ][i][l]-vdata[k][0  ][i][l])/dy;
-						if(vdata[k][y-1][i][l]!=undef&&vdata[k][y-2][i][l]!=undef)
-						ddata[k][y-1][i][l]=(vdata[k][y-1][i][l]-vdata[k][y-2][i][l])/dy;
-					}
-					
-					for(int j=1;j<y-1;j++)
-					if(vdata[k][j+1][i][l]!=undef&&vdata[k][j-1][i][l]!=undef)
-					ddata[k][j][i][l]=(vdata[k][j+1][i][l]-vdata[k][j-1][i][l])/(dy*2);
-				}
-			}
+			StencilKernel.forEachSlab((in,r)->StencilKernel.ddy(in[0],r,dy,BCy,undef),der,var);
 			break;
 		}
 		case Z:{
@@ -6,6 +6,7 @@
  */
 package miniufo.application;
 
+import java.util.Arrays;
 import miniufo.diagnosis.MDate;
 import miniufo.diagnosis.SpatialModel;
 import miniufo.diagnosis.Variable;
@@ -113,6 +114,13 @@ public abstract class GeoFluidApplication{
 		throw new IllegalArgumentException("dimensions not same for:\n"+v1+"\n"+v);
 	}
 	
+	/**
+     * per-row values in y of the sub-domain, used by the StencilKernel
+     */
+	protected float[] rowsOf(float[] a){ return Arrays.copyOfRange(a,ystart-1,ystart-1+y);}
+	
+	protected float[] rowsOf(float c){ float[] r=new float[y]; Arrays.fill(r,c); return r;}
+	
 	
 	/**
      * Standard 2nd-order RK integrator for solving dData/dh = deriv,
@@ -0,0 +1,279 @@
+/**
+ * @(#)StencilKernel.java	1.0 07/02/01
+ *
+ * Copyright 2007 MiniUFO, All rights reserved.
+ * MiniUFO Studio. Use is subject to license terms.
+ */
+package miniufo.application;
+
+import miniufo.application.GeoFluidApplication.BoundaryCondition;
+import miniufo.concurrent.ConcurrentUtil;
+import miniufo.diagnosis.Variable;
+
+
+/**
+ * Finite-difference kernels on horizontal (y-x) slabs shared by the equation
+ * applications in different coordinates.  A variable is processed slab by slab
+ * with the (t,z) slabs run in parallel by ConcurrentUtil.  Metric terms of
+ * the coordinates are given as per-row arrays (indexed by the j of the slab),
+ * so the inner loops along x do nothing but the stencil itself.  Periodic
+ * boundaries in x are handled outside the inner loops.
+ *
+ * @version 1.0, 02/01/2007
+ * @author  MiniUFO
+ * @since   MDK1.0
+ */
+public final class StencilKernel{
+	
+	/**
+	 * kernel computing one slab out[y][x] from the slabs in[m][y][x] of the inputs
+	 */
+	public static interface SlabKernel{ void compute(float[][][] in,float[][] out);}
+	
+	
+	/*** prevent from initialization ***/
+	private StencilKernel(){}
+	
+	
+	/**
+	 * Apply the kernel to all the (t,z) slabs.  For t-last variables, the slabs
+	 * are gathered into buffers and the results are scattered back, so the
+	 * kernel always sees [y][x] slabs.  Points not written by the kernel keep
+	 * their values in out.
+	 *
+	 * @param	kernel	a slab kernel
+	 * @param	out		variable of the result
+	 * @param	in		input variables which are alike with out
+	 */
+	public static void forEachSlab(SlabKernel kernel,Variable out,Variable... in){
+		for(Variable v:in) if(!out.isLike(v)) throw new IllegalArgumentException("dimension not same");
+		
+		int t=out.getTCount(),z=out.getZCount();
+		
+		float[][][][] odata=out.getData();
+		float[][][][][] idata=new float[in.length][][][][];
+		
+		for(int m=0;m<in.length;m++) idata[m]=in[m].getData();
+		
+		if(out.isTFirst()) ConcurrentUtil.parallelFor(t*z,1,(s,e)->{
+			float[][][] slabs=new float[in.length][][];
+			
+			for(int n=s;n<e;n++){
+				int l=n/z,k=n%z;
+				
+				for(int m=0;m<in.length;m++) slabs[m]=idata[m][l][k];
+				
+				kernel.compute(slabs,odata[l][k]);
+			}
+		
+		});else{
+			int y=out.getYCount(),x=out.getXCount();
+			
+			ConcurrentUtil.parallelFor(t*z,1,(s,e)->{
+				float[][][] slabs=new float[in.length][y][x];
+				float[][]   oslab=new float[y][x];
+				
+				for(int n=s;n<e;n++){
+					int l=n/z,k=n%z;
+					
+					for(int m=0;m<in.length;m++) gather(idata[m][k],slabs[m],l);
+					
+					gather(odata[k],oslab,l);
+					
+					kernel.compute(slabs,oslab);
+					
+					for(int j=0;j<y;j++)
+					for(int i=0;i<x;i++) odata[k][j][i][l]=oslab[j][i];
+				}
+			});
+		}
+	}
+	
+	
+	/**
+	 * derivative along x, central difference in the interior and at the
+	 * boundaries (periodic) or one-sided difference at the boundaries (fixed)
+	 *
+	 * @param	a		a given slab
+	 * @param	r		slab of result
+	 * @param	dx		grid spacing of each row, rows with dx==0 (e.g., poles) are set to 0
+	 * @param	bc		boundary condition along x, null to leave the boundary points unchanged
+	 * @param	undef	undefined value
+	 */
+	public static void ddx(float[][] a,float[][] r,float[] dx,BoundaryCondition bc,float undef){
+		int x=a[0].length;
+		
+		for(int j=0,J=a.length;j<J;j++){
+			float[] aj=a[j],rj=r[j];
+			
+			if(dx[j]==0){ for(int i=0;i<x;i++) rj[i]=0f; continue;}
+			
+			float dx2=dx[j]*2;
+			
+			if(bc==BoundaryCondition.Periodic){
+				if(aj[1]!=undef&&aj[x-1]!=undef) rj[0  ]=(aj[1]-aj[x-1])/dx2;
+				if(aj[0]!=undef&&aj[x-2]!=undef) rj[x-1]=(aj[0]-aj[x-2])/dx2;
+			
+			}else if(bc==BoundaryCondition.Fixed){
+				if(aj[1  ]!=undef&&aj[0  ]!=undef) rj[0  ]=(aj[1  ]-aj[0  ])/dx[j];
+				if(aj[x-1]!=undef&&aj[x-2]!=undef) rj[x-1]=(aj[x-1]-aj[x-2])/dx[j];
+			}
+			
+			for(int i=1;i<x-1;i++) if(aj[i+1]!=undef&&aj[i-1]!=undef) rj[i]=(aj[i+1]-aj[i-1])/dx2;
+		}
+	}
+	
+	/**
+	 * derivative along y, central difference in the interior and at the
+	 * boundaries (periodic) or one-sided difference at the boundaries (fixed)
+	 *
+	 * @param	a		a given slab
+	 * @param	r		slab of result
+	 * @param	dy		grid spacing
+	 * @param	bc		boundary condition along y, null to leave the boundary points unchanged
+	 * @param	undef	undefined value
+	 */
+	public static void ddy(float[][] a,float[][] r,float dy,BoundaryCondition bc,float undef){
+		int y=a.length;
+		
+		float dy2=dy*2;
+		
+		if(bc==BoundaryCondition.Periodic){
+			diff(a[1],a[y-1],r[0  ],dy2,undef);
+			diff(a[0],a[y-2],r[y-1],dy2,undef);
+		
+		}else if(bc==BoundaryCondition.Fixed){
+			diff(a[1  ],a[0  ],r[0  ],dy,undef);
+			diff(a[y-1],a[y-2],r[y-1],dy,undef);
+		}
+		
+		for(int j=1;j<y-1;j++) diff(a[j+1],a[j-1],r[j],dy2,undef);
+	}
+	
+	/**
+	 * horizontal divergence du/dx + dv/dy - v*tan/R in the interior rows,
+	 * points with undefined neighbours are set to undef
+	 *
+	 * @param	u			u-component slab
+	 * @param	v			v-component slab
+	 * @param	r			slab of result
+	 * @param	dx			grid spacing of each row
+	 * @param	dy			grid spacing in y
+	 * @param	tan			tan(lat) of each row for spherical metric term, null for Cartesian
+	 * @param	R			radius of the sphere
+	 * @param	periodic	whether x is periodic
+	 * @param	undef		undefined value
+	 */
+	public static void divergence(float[][] u,float[][] v,float[][] r,float[] dx,float dy,float[] tan,float R,boolean periodic,float undef){
+		int y=u.length,x=u[0].length;
+		
+		float dy2=dy*2;
+		
+		for(int j=1;j<y-1;j++){
+			float[] uj=u[j],vn=v[j+1],vs=v[j-1],vj=v[j],rj=r[j];
+			
+			float dx2=dx[j]*2,tn=tan==null?0:tan[j];
+			
+			if(periodic){
+				rj[0  ]=uj[1]!=undef&&uj[x-1]!=undef&&vn[0  ]!=undef&&vs[0  ]!=undef?
+					(uj[1]-uj[x-1])/dx2+(vn[0  ]-vs[0  ])/dy2-vj[0  ]*tn/R:undef;
+				rj[x-1]=uj[0]!=undef&&uj[x-2]!=undef&&vn[x-1]!=undef&&vs[x-1]!=undef?
+					(uj[0]-uj[x-2])/dx2+(vn[x-1]-vs[x-1])/dy2-vj[x-1]*tn/R:undef;
+			}
+			
+			if(tan==null)
+				for(int i=1;i<x-1;i++) rj[i]=uj[i+1]!=undef&&uj[i-1]!=undef&&vn[i]!=undef&&vs[i]!=undef?
+					(uj[i+1]-uj[i-1])/dx2+(vn[i]-vs[i])/dy2:undef;
+			
+			else
+				for(int i=1;i<x-1;i++) rj[i]=uj[i+1]!=undef&&uj[i-1]!=undef&&vn[i]!=undef&&vs[i]!=undef?
+					(uj[i+1]-uj[i-1])/dx2+(vn[i]-vs[i])/dy2-vj[i]*tn/R:undef;
+		}
+	}
+	
+	/**
+	 * vertical vorticity dv/dx - du/dy + u*tan/R in the interior rows,
+	 * points with undefined neighbours are set to undef
+	 *
+	 * @param	u			u-component slab
+	 * @param	v			v-component slab
+	 * @param	r			slab of result
+	 * @param	dx			grid spacing of each row
+	 * @param	dy			grid spacing in y
+	 * @param	tan			tan(lat) of each row for spherical metric term, null for Cartesian
+	 * @param	R			radius of the sphere
+	 * @param	periodic	whether x is periodic
+	 * @param	undef		undefined value
+	 */
+	public static void vorticity(float[][] u,float[][] v,float[][] r,float[] dx,float dy,float[] tan,float R,boolean periodic,float undef){
+		int y=u.length,x=u[0].length;
+		
+		float dy2=dy*2;
+		
+		for(int j=1;j<y-1;j++){
+			float[] vj=v[j],un=u[j+1],us=u[j-1],uj=u[j],rj=r[j];
+			
+			float dx2=dx[j]*2,tn=tan==null?0:tan[j];
+			
+			if(periodic){
+				rj[0  ]=vj[1]!=undef&&vj[x-1]!=undef&&un[0  ]!=undef&&us[0  ]!=undef?
+					(vj[1]-vj[x-1])/dx2-(un[0  ]-us[0  ])/dy2+uj[0  ]*tn/R:undef;
+				rj[x-1]=vj[0]!=undef&&vj[x-2]!=undef&&un[x-1]!=undef&&us[x-1]!=undef?
+					(vj[0]-vj[x-2])/dx2-(un[x-1]-us[x-1])/dy2+uj[x-1]*tn/R:undef;
+			}
+			
+			if(tan==null)
+				for(int i=1;i<x-1;i++) rj[i]=vj[i+1]!=undef&&vj[i-1]!=undef&&un[i]!=undef&&us[i]!=undef?
+					(vj[i+1]-vj[i-1])/dx2-(un[i]-us[i])/dy2:undef;
+			
+			else
+				for(int i=1;i<x-1;i++) rj[i]=vj[i+1]!=undef&&vj[i-1]!=undef&&un[i]!=undef&&us[i]!=undef?
+					(vj[i+1]-vj[i-1])/dx2-(un[i]-us[i])/dy2+uj[i]*tn/R:undef;
+		}
+	}
+	
+	/**
+	 * Laplacian in the interior rows:
+	 * ((g[i+1]-g[i])-(g[i]-g[i-1]))/dx/dxs[j] + ((g[j+1]-g[j])*cn[j]-(g[j]-g[j-1])*cs[j])/dy/dy
+	 *
+	 * @param	g			a given slab
+	 * @param	r			slab of result
+	 * @param	dx			grid spacing in x
+	 * @param	dxs			scaled grid spacing of each row
+	 * @param	dy			grid spacing in y
+	 * @param	cn			metric coefficient at the north face of each row
+	 * @param	cs			metric coefficient at the south face of each row
+	 * @param	periodic	whether x is periodic
+	 */
+	public static void laplacian(float[][] g,float[][] r,float dx,float[] dxs,float dy,float[] cn,float[] cs,boolean periodic){
+		int y=g.length,x=g[0].length;
+		
+		for(int j=1;j<y-1;j++){
+			float[] gj=g[j],gn=g[j+1],gs=g[j-1],rj=r[j];
+			
+			float dxj=dxs[j],cnj=cn[j],csj=cs[j];
+			
+			if(periodic){
+				rj[0  ]=((gj[1]-gj[0  ])-(gj[0  ]-gj[x-1]))/dx/dxj+((gn[0  ]-gj[0  ])*cnj-(gj[0  ]-gs[0  ])*csj)/dy/dy;
+				rj[x-1]=((gj[0]-gj[x-1])-(gj[x-1]-gj[x-2]))/dx/dxj+((gn[x-1]-gj[x-1])*cnj-(gj[x-1]-gs[x-1])*csj)/dy/dy;
+			}
+			
+			for(int i=1;i<x-1;i++)
+			rj[i]=((gj[i+1]-gj[i])-(gj[i]-gj[i-1]))/dx/dxj+((gn[i]-gj[i])*cnj-(gj[i]-gs[i])*csj)/dy/dy;
+		}
+	}
+	
+	
+	/*** helper methods ***/
+	private static void diff(float[] a,float[] b,float[] r,float d,float undef){
+		for(int i=0,I=r.length;i<I;i++) if(a[i]!=undef&&b[i]!=undef) r[i]=(a[i]-b[i])/d;
+	}
+	
+	private static void gather(float[][][] data,float[][] slab,int l){
+		for(int j=0,J=slab.length;j<J;j++){
+			float[][] dj=data[j];	float[] sj=slab[j];
+			
+			for(int i=0,I=sj.length;i<I;i++) sj[i]=dj[i][l];
+		}
+	}
+}
@@ -52,9 +52,12 @@ public final class EllipticEqSORSolver2D extends GeoFluidApplication implements
 	private Variable CPrime=null;	// elliptic coefficient C'
 	
 	private DimCombination dimComb=null;
+	private SolverMethod   method =SolverMethod.SOR;
 	
 	public enum DimCombination{XY,YZ}	// horizontal or meridional planes
 	
+	public enum SolverMethod{SOR,RedBlackSOR,Multigrid}	// lexicographic SOR, parallel multi-colour SOR, or multigrid V-cycles
+	
 	
 	/**
 	 * constructor
@@ -71,6 +74,8 @@ public final class EllipticEqSORSolver2D extends GeoFluidApplication implements
 		this.CPrime=CPrime; setABC=true;
 	}
 	
+	public void setSolverMethod(SolverMethod method){ this.method=method;}
+	
 	public void setPrinting(boolean print){ this.print=print;}
 	
 	public void setMaxLoopCount(int count){
@@ -107,7 +112,7 @@ public final class EllipticEqSORSolver2D extends GeoFluidApplication implements
 		if(F!=null) checkDimensions(S,F);
 		assignSubDomainParams(S);
 		
-		if(print) System.out.println("Start solving elliptic equation using SOR with BCs ("+BCx+" "+BCy+")...");
+		if(print) System.out.println("Start solving elliptic equation using "+method+" with BCs ("+BCx+" "+BCy+")...");
 		
 		if(!setComb) throw new IllegalArgumentException("dimension combination not set");
 		if(!setABC ) throw new IllegalArgumentException("elliptic coefficients not set");
@@ -132,13 +137,13 @@ public final class EllipticEqSORSolver2D extends GeoFluidApplication implements
 					final int ll=l;
 					results.add(cs.submit(()->{
 						boolean[] overflow=new boolean[]{false};
-						float[][] re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
+						float[][] re=invertingOneSlice(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
 						if(modify&&overflow[0]){
 							modifyCoeffAC(Abuf,Cbuf,ll); overflow[0]=false; resetInner(Sbuf);
-							re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
+							re=invertingOneSlice(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
 							if(modify&&overflow[0]){
 								modifyCoeffD(Abuf,Bbuf,Cbuf,ll); overflow[0]=false; resetInner(Sbuf);
-								re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
+								re=invertingOneSlice(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
 							}
 						}
 						return re;
@@ -169,13 +174,13 @@ public final class EllipticEqSORSolver2D extends GeoFluidApplication implements
 					final int ll=l;
 					results.add(cs.submit(()->{
 						boolean[] overflow=new boolean[]{false};
-						float[][] re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
+						float[][] re=invertingOneSlice(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
 						if(modify&&overflow[0]){
 							modifyCoeffAC(Abuf,Cbuf,ll); overflow[0]=false; resetInner(Sbuf);
-							re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
+							re=invertingOneSlice(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
 							if(modify&&overflow[0]){
 								modifyCoeffD(Abuf,Bbuf,Cbuf,ll); overflow[0]=false; resetInner(Sbuf);
-								re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
+								re=invertingOneSlice(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
 							}
 						}
 						return re;
@@ -211,13 +216,13 @@ public final class EllipticEqSORSolver2D extends GeoFluidApplication implements
 					final int ll=l;
 					results.add(cs.submit(()->{
 						boolean[] overflow=new boolean[]{false};
-						float[][] re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
+						float[][] re=invertingOneSlice(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
 						if(modify&&overflow[0]){
 							modifyCoeffAC(Abuf,Cbuf,ll); overflow[0]=false; resetInner(Sbuf);
-							re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
+							re=invertingOneSlice(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
 							if(modify&&overflow[0]){
 								modifyCoeffD(Abuf,Bbuf,Cbuf,ll); overflow[0]=false; resetInner(Sbuf);
-								re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
+								re=invertingOneSlice(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
 							}
 						}
 						return re;
@@ -248,13 +253,13 @@ public final class EllipticEqSORSolver2D extends GeoFluidApplication implements
 					final int ll=l;
 					results.add(cs.submit(()->{
 						boolean[] overflow=new boolean[]{false};
-						float[][] re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
+						float[][] re=invertingOneSlice(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
 						if(modify&&overflow[0]){
 							modifyCoeffAC(Abuf,Cbuf,ll); overflow[0]=false; resetInner(Sbuf);
-							re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
+							re=invertingOneSlice(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
 							if(modify&&overflow[0]){
 								modifyCoeffD(Abuf,Bbuf,Cbuf,ll); overflow[0]=false; resetInner(Sbuf);
-								re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
+								re=invertingOneSlice(info,Abuf,Bbuf,Cbuf,Sbuf,Fbuf,param,overflow);
 								if(overflow[0]) System.out.println(info+" still overflow after modification");
 							}
 						}
@@ -310,6 +315,10 @@ public final class EllipticEqSORSolver2D extends GeoFluidApplication implements
 	
 	
 	/*** helper methods and classes ***/
+	private float[][] invertingOneSlice(String info,float[][] A,float[][] B,float[][] C,float[][] S,float[][] F,Params param,boolean[] overflow){
+		if(method==SolverMethod.SOR) return invertingOneSliceBySOR(info,A,B,C,S,F,param,overflow);
+		else return invertingOneSliceByStencil(info,A,B,C,S,F,param,overflow);
+	}
 	
 	/**
 	 * Inverting one slice (2D that constitute first and second dimensions)
@@ -460,6 +469,80 @@ public final class EllipticEqSORSolver2D extends GeoFluidApplication implements
 		return S;
 	}
 	
+	/**
+	 * Inverting one slice using the nine-point stencil of the same discretization
+	 * as SOR, relaxed by the parallel multi-colour SOR or by multigrid V-cycles.
+	 *
+	 * @param	info	used for printing
+	 * @param	A		coefficient for the first dimension
+	 * @param	B		coefficient for the cross derivatives
+	 * @param	C		coefficient for the second dimension
+	 * @param	S		results of the inversion
+	 * @param	F		forcing function
+	 */
+	private float[][] invertingOneSliceByStencil(String info,float[][] A,float[][] B,float[][] C,float[][] S,float[][] F,Params param,boolean[] overflow){
+		int loop=0;	// current loop
+		int dim1C=param.dim1C;
+		int dim2C=param.dim2C;
+		
+		float ratioQtr=param.ratioQtr;
+		float undef   =param.undef;
+		float delD2Sqr=param.delD2Sqr;
+		float ratioSqr=param.ratioSqr;
+		
+		double convSpd=0;	// convergent speed = delta norm(S) / norm(S)
+		
+		boolean periodic=param.dim1BC==BoundaryCondition.Periodic;
+		
+		double normPrev=Double.MAX_VALUE;
+		
+		float[][] f=new float[dim2C][dim1C];
+		
+		EllipticStencil2D es=new EllipticStencil2D(dim2C,dim1C,periodic,param.dim2BC==BoundaryCondition.Expanded);
+		
+		for(int j=1,J=dim2C-1;j<J;j++)
+		for(int i=periodic?0:1,I=periodic?dim1C:dim1C-1;i<I;i++){
+			int w=i==0?dim1C-1:i-1,e=i==dim1C-1?0:i+1;
+			
+			if(F[j][i]==undef||A[j][e]==undef||A[j][i]==undef||C[j+1][i]==undef||C[j][i]==undef||
+			B[j][e]==undef||B[j][w]==undef||B[j+1][i]==undef||B[j-1][i]==undef) continue;
+			
+			float aw=A[j][i]*ratioSqr,bw=B[j][w]*ratioQtr,bs=B[j-1][i]*ratioQtr,cs=C[j  ][i];
+			float ae=A[j][e]*ratioSqr,be=B[j][e]*ratioQtr,bn=B[j+1][i]*ratioQtr,cn=C[j+1][i];
+			
+			es.setStencil(j,i,-(aw+ae+cs+cn),aw,ae,cs,cn,bw+bs,-be-bs,-bw-bn,be+bn);
+			
+			f[j][i]=F[j][i]*delD2Sqr;
+		}
+		
+		es.expand(S);
+		
+		do{
+			if(method==SolverMethod.Multigrid) es.vcycle(S,f);
+			else es.relax(S,f,param.optArg);
+			
+			double norm=cAbsMean(S);
+			
+			if(Double.isNaN(norm)||norm>1e9){
+				overflow[0]=true;
+				break;
+			}
+			
+			convSpd=Math.abs(norm-normPrev)/normPrev;
+			
+			if(convSpd<tolerance||loop>mxLoopCount) break;
+			
+			normPrev=norm; loop++;
+		
+		}while(true);
+		
+		es.expand(S);
+		
+		if(print) System.out.println(info+String.format("%4d",loop)+" and tolerance is "+convSpd+(overflow[0]?"   overflows!":""));
+		
+		return S;
+	}
+	
 	private double cAbsMean(float[][] data){
 		double sum=0;
 		
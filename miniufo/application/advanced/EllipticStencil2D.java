@@ -0,0 +1,372 @@
+/**
+ * @(#)EllipticStencil2D.java	1.0 07/02/01
+ *
+ * Copyright 2007 MiniUFO, All rights reserved.
+ * MiniUFO Studio. Use is subject to license terms.
+ */
+package miniufo.application.advanced;
+
+import java.util.Arrays;
+import miniufo.concurrent.ConcurrentUtil;
+import static java.lang.Math.PI;
+import static java.lang.Math.pow;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+
+
+/**
+ * Discretized elliptic operator of one slice in the nine-point stencil form:
+ *
+ *   sum(c[k][j][i] * S[j+DJ[k]][i+DI[k]]) = f[j][i]
+ *
+ * Only active grids are unknowns, other grids keep their values as boundaries.
+ * Grids of the same colour (j%2, i%2) do not depend on each other, so that
+ * each colour of a relaxation sweep is processed in parallel.  The coarse
+ * operators of the multigrid V-cycle are built from the fine one by the
+ * Galerkin product (full-weighting restriction and bilinear prolongation).
+ *
+ * @version 1.0, 02/01/2007
+ * @author  MiniUFO
+ * @since   MDK1.0
+ */
+final class EllipticStencil2D{
+	//
+	private int ny=0;	// grids in the second dimension
+	private int nx=0;	// grids in the first  dimension
+	
+	private boolean periodic=false;	// periodic in the first dimension
+	private boolean expanded=false;	// boundaries are expanded from the inner grids
+	private boolean coarsened=false;
+	
+	private boolean[][] active=null;
+	
+	private float[][]   res=null;	// buffer of the residual
+	private float[][][] c  =null;	// stencil coefficients
+	
+	private EllipticStencil2D coarse=null;
+	
+	private static final int PRE =2;	// pre-smoothing sweeps
+	private static final int POST=2;	// post-smoothing sweeps
+	
+	// order of the stencil: centre, west, east, south, north, southwest, southeast, northwest, northeast
+	private static final int[] DJ={0, 0,0,-1,1,-1,-1,1,1};
+	private static final int[] DI={0,-1,1, 0,0,-1, 1,-1,1};
+	private static final int[] ID={5,3,6,1,0,2,7,4,8};	// stencil index of the offset (dj+1)*3+di+1
+	
+	
+	/**
+	 * constructor
+	 *
+	 * @param	ny			grids in the second dimension
+	 * @param	nx			grids in the first  dimension
+	 * @param	periodic	whether the first dimension is periodic
+	 * @param	expanded	whether the boundaries are expanded from the inner grids
+	 */
+	EllipticStencil2D(int ny,int nx,boolean periodic,boolean expanded){
+		this.ny=ny;	this.periodic=periodic;
+		this.nx=nx;	this.expanded=expanded;
+		
+		active=new boolean[ny][nx];
+		c=new float[9][ny][nx];
+	}
+	
+	
+	/**
+	 * set the stencil of an active grid, the coefficients pointing to the
+	 * expanded boundaries are folded into the inner grids they are copied from
+	 */
+	void setStencil(int j,int i,float... a){
+		for(int k=0;k<9;k++){
+			int jj=j+DJ[k],ii=i+DI[k];
+			
+			if(expanded){
+				jj=Math.max(1,Math.min(ny-2,jj));
+				if(!periodic) ii=Math.max(1,Math.min(nx-2,ii));
+			}
+			
+			c[index(jj-j,ii-i)][j][i]+=a[k];
+		}
+		
+		active[j][i]=c[0][j][i]!=0;
+	}
+	
+	
+	/**
+	 * copy the inner grids to the boundaries if expanded
+	 */
+	void expand(float[][] S){
+		if(!expanded) return;
+		
+		for(int j=0;j<ny;j++){
+			int jj=Math.max(1,Math.min(ny-2,j));
+			
+			if(periodic){
+				if(jj!=j) System.arraycopy(S[jj],0,S[j],0,nx);
+			
+			}else for(int i=0;i<nx;i++){
+				int ii=Math.max(1,Math.min(nx-2,i));
+				
+				if(jj!=j||ii!=i) S[j][i]=S[jj][ii];
+			}
+		}
+	}
+	
+	/**
+	 * one relaxation sweep over the four colours
+	 *
+	 * @param	S		solution to be relaxed
+	 * @param	f		right-hand side
+	 * @param	omega	relaxation factor, 1 for Gauss-Seidel
+	 */
+	void relax(float[][] S,float[][] f,float omega){
+		// the last column of an odd periodic row neighbours the first one of the same colour
+		int lim=periodic&&(nx&1)==1?nx-1:nx;
+		int grain=Math.max(1,4096/nx);
+		
+		for(int pj=0;pj<2;pj++){
+			final int j0=pj,cnt=(ny-pj+1)/2;
+			
+			for(int pi=0;pi<2;pi++){
+				final int i0=pi;
+				ConcurrentUtil.parallelFor(cnt,grain,(s,e)->{
+					for(int n=s;n<e;n++) relaxRow(S,f,j0+2*n,i0,lim,2,omega);
+				});
+			}
+		}
+		
+		if(lim<nx) for(int pj=0;pj<2;pj++){
+			final int j0=pj;
+			ConcurrentUtil.parallelFor((ny-pj+1)/2,grain*nx,(s,e)->{
+				for(int n=s;n<e;n++) relaxRow(S,f,j0+2*n,nx-1,nx,1,omega);
+			});
+		}
+	}
+	
+	/**
+	 * compute the residual f - LS over the active grids
+	 */
+	void residual(float[][] S,float[][] f,float[][] r){
+		ConcurrentUtil.parallelFor(ny,Math.max(1,4096/nx),(s,e)->{
+			for(int j=s;j<e;j++){
+				float[] sm=j>0?S[j-1]:S[j],s0=S[j],sp=j<ny-1?S[j+1]:S[j];
+				float[][] cj=row(j);
+				
+				for(int i=0;i<nx;i++) if(active[j][i]){
+					int w=west(i),e1=east(i);
+					
+					r[j][i]=f[j][i]-(float)apply(cj,i,sm,s0,sp,w,e1);
+				
+				}else r[j][i]=0;
+			}
+		});
+	}
+	
+	/**
+	 * mean absolute residual over the active grids
+	 */
+	double residualNorm(float[][] S,float[][] f){
+		if(res==null) res=new float[ny][nx];
+		
+		residual(S,f,res);
+		
+		double sum=0;	int count=0;
+		
+		for(int j=0;j<ny;j++)
+		for(int i=0;i<nx;i++) if(active[j][i]){ sum+=Math.abs(res[j][i]); count++;}
+		
+		return count==0?0:sum/count;
+	}
+	
+	/**
+	 * one multigrid V-cycle
+	 *
+	 * @param	S	solution to be corrected
+	 * @param	f	right-hand side
+	 */
+	void vcycle(float[][] S,float[][] f){
+		EllipticStencil2D cs=coarse();
+		
+		if(cs==null){
+			float opt=optimalArg();
+			
+			for(int n=0,N=2*(nx+ny);n<N;n++) relax(S,f,opt);
+			
+			return;
+		}
+		
+		for(int n=0;n<PRE;n++) relax(S,f,1);
+		
+		if(res==null) res=new float[ny][nx];
+		
+		residual(S,f,res);
+		
+		float[][] rc=new float[cs.ny][cs.nx];
+		float[][] ec=new float[cs.ny][cs.nx];
+		
+		restrict(res,rc,cs);
+		cs.vcycle(ec,rc);
+		prolongate(ec,S,cs);
+		
+		for(int n=0;n<POST;n++) relax(S,f,1);
+	}
+	
+	
+	/*** helper methods ***/
+	private void relaxRow(float[][] S,float[][] f,int j,int istr,int iend,int step,float omega){
+		float[] sm=j>0?S[j-1]:S[j],s0=S[j],sp=j<ny-1?S[j+1]:S[j],fj=f[j];
+		float[] cc=c[0][j];
+		float[][] cj=row(j);
+		
+		boolean[] act=active[j];
+		
+		for(int i=istr;i<iend;i+=step) if(act[i]){
+			int w=west(i),e=east(i);
+			
+			s0[i]+=omega*(fj[i]-apply(cj,i,sm,s0,sp,w,e))/cc[i];
+		}
+	}
+	
+	private double apply(float[][] cj,int i,float[] sm,float[] s0,float[] sp,int w,int e){
+		return cj[0][i]*s0[i]+
+			cj[1][i]*s0[w]+cj[2][i]*s0[e]+cj[3][i]*sm[i]+cj[4][i]*sp[i]+
+			cj[5][i]*sm[w]+cj[6][i]*sm[e]+cj[7][i]*sp[w]+cj[8][i]*sp[e];
+	}
+	
+	private float[][] row(int j){
+		float[][] cj=new float[9][];
+		
+		for(int k=0;k<9;k++) cj[k]=c[k][j];
+		
+		return cj;
+	}
+	
+	private int west(int i){ return i>0?i-1:(periodic?nx-1:0);}
+	
+	private int east(int i){ return i<nx-1?i+1:(periodic?0:nx-1);}
+	
+	private float optimalArg(){
+		float epsilon=(float)(pow(sin(PI/(2*nx+2)),2)+pow(sin(PI/(2*ny+2)),2));
+		
+		return (float)(2/(1+sqrt((2-epsilon)*epsilon)));
+	}
+	
+	private static int index(int dj,int di){ return ID[(dj+1)*3+di+1];}
+	
+	/**
+	 * coarse grid operator, null if the grid cannot be coarsened
+	 */
+	private EllipticStencil2D coarse(){
+		if(coarsened) return coarse;
+		
+		coarsened=true;
+		
+		if(ny<5||nx<5||periodic&&(nx&1)==1) return null;
+		
+		int nyc=(ny+1)/2,nxc=periodic?nx/2:(nx+1)/2;
+		
+		EllipticStencil2D cs=new EllipticStencil2D(nyc,nxc,periodic,false);
+		
+		ConcurrentUtil.parallelFor(nyc,Math.max(1,1024/nxc),(s,e)->{
+			double[] acc=new double[9];
+			
+			for(int J=s;J<e;J++)
+			for(int I=0;I<nxc;I++){
+				Arrays.fill(acc,0);
+				
+				for(int fj=-1;fj<=1;fj++){
+					int fy=2*J+fj;	if(fy<0||fy>=ny) continue;
+					
+					for(int fi=-1;fi<=1;fi++){
+						int fx=2*I+fi;
+						
+						if(periodic) fx=Math.floorMod(fx,nx); else if(fx<0||fx>=nx) continue;
+						
+						if(!active[fy][fx]) continue;
+						
+						double rw=(fj==0?1:0.5)*(fi==0?1:0.5)/4.0;
+						
+						for(int k=0;k<9;k++){
+							float a=c[k][fy][fx];	if(a==0) continue;
+							
+							int gy=fy+DJ[k],gx=2*I+fi+DI[k];	// gx is not wrapped
+							int gxw=periodic?Math.floorMod(gx,nx):gx;
+							
+							if(gy<0||gy>=ny||gxw<0||gxw>=nx||!active[gy][gxw]) continue;
+							
+							for(int py=Math.floorDiv(gy,2),PY=Math.floorDiv(gy+1,2);py<=PY;py++){
+								if(py<0||py>=nyc) continue;
+								
+								double wy=(gy&1)==0?1:0.5;
+								
+								for(int px=Math.floorDiv(gx,2),PX=Math.floorDiv(gx+1,2);px<=PX;px++){
+									if(!periodic&&(px<0||px>=nxc)) continue;
+									
+									double wx=(gx&1)==0?1:0.5;
+									
+									acc[index(py-J,px-I)]+=rw*a*wy*wx;
+								}
+							}
+						}
+					}
+				}
+				
+				for(int k=0;k<9;k++) cs.c[k][J][I]=(float)acc[k];
+				
+				cs.active[J][I]=cs.c[0][J][I]!=0;
+			}
+		});
+		
+		coarse=cs;
+		
+		return coarse;
+	}
+	
+	private void restrict(float[][] r,float[][] rc,EllipticStencil2D cs){
+		ConcurrentUtil.parallelFor(cs.ny,Math.max(1,4096/cs.nx),(s,e)->{
+			for(int J=s;J<e;J++)
+			for(int I=0;I<cs.nx;I++) if(cs.active[J][I]){
+				double sum=0;
+				
+				for(int fj=-1;fj<=1;fj++){
+					int fy=2*J+fj;	if(fy<0||fy>=ny) continue;
+					
+					for(int fi=-1;fi<=1;fi++){
+						int fx=2*I+fi;
+						
+						if(periodic) fx=Math.floorMod(fx,nx); else if(fx<0||fx>=nx) continue;
+						
+						sum+=(fj==0?1:0.5)*(fi==0?1:0.5)*r[fy][fx];
+					}
+				}
+				
+				rc[J][I]=(float)(sum/4.0);
+			}
+		});
+	}
+	
+	private void prolongate(float[][] ec,float[][] S,EllipticStencil2D cs){
+		ConcurrentUtil.parallelFor(ny,Math.max(1,4096/nx),(s,e)->{
+			for(int j=s;j<e;j++)
+			for(int i=0;i<nx;i++) if(active[j][i]){
+				double sum=0;
+				
+				for(int py=j>>1,PY=(j+1)>>1;py<=PY;py++){
+					if(py>=cs.ny) continue;
+					
+					for(int px=i>>1,PX=(i+1)>>1;px<=PX;px++){
+						int pxw=px;
+						
+						if(pxw>=cs.nx){ if(periodic) pxw-=cs.nx; else continue;}
+						
+						sum+=ec[py][pxw];
+					}
+				}
+				
+				// bilinear weights are 1, 1/2 or 1/4 that equal 1/(number of parents)
+				int np=((j&1)+1)*((i&1)+1);
+				
+				S[j][i]+=(float)(sum/np);
+			}
+		});
+	}
+}
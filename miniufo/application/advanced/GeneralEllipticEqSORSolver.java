@@ -7,6 +7,7 @@
 package miniufo.application.advanced;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
@@ -54,9 +55,14 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 	private Variable G=null;	// elliptic coefficient G
 	
 	private DimCombination dimComb=null;
+	private SolverMethod   method =SolverMethod.SOR;
+	
+	private List<Convergence> convergences=null;
 	
 	public enum DimCombination{XY,YZ}	// horizontal or meridional planes
 	
+	public enum SolverMethod{SOR,RedBlackSOR,Multigrid}	// lexicographic SOR, parallel multi-colour SOR, or multigrid V-cycles
+	
 	
 	/**
 	 * constructor
@@ -74,6 +80,8 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 		setCoef=true;
 	}
 	
+	public void setSolverMethod(SolverMethod method){ this.method=method;}
+	
 	public void setPrinting(boolean print){ this.print=print;}
 	
 	public void setMaxLoopCount(int count){
@@ -90,6 +98,12 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 		tolerance=tol;
 	}
 	
+	/**
+	 * convergence of each slice in the last solve, ordered by t and then by
+	 * the dimension not in the slice (z for XY and x for YZ)
+	 */
+	public List<Convergence> getConvergences(){ return convergences;}
+	
 	
 	/**
      * Inverting elliptic equation of the form:
@@ -108,7 +122,7 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 	public void solve(Variable S,boolean modify){
 		assignSubDomainParams(S);
 		
-		if(print) System.out.println("Start solving elliptic equation using SOR with BCs ("+BCx+" "+BCy+")...");
+		if(print) System.out.println("Start solving elliptic equation using "+method+" with BCs ("+BCx+" "+BCy+")...");
 		
 		if(!setComb) throw new IllegalArgumentException("dimension combination not set");
 		if(!setCoef ) throw new IllegalArgumentException("elliptic coefficients not set");
@@ -117,6 +131,8 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 		ExecutorService es=ConcurrentUtil.defaultExecutor();
 		CompletionService<float[][]> cs=new ExecutorCompletionService<>(es);
 		
+		Convergence[] convs=new Convergence[t*(dimComb==DimCombination.XY?z:x)];
+	    
 	    if(S.isTFirst()){
 	    	switch(dimComb){
 			case XY:{
@@ -126,8 +142,6 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 				Params param=new Params(y,z,dy,dz,S.getUndef(),BCy,BCz);
 				for(int l=0;l<t;l++)
 				for(int i=0;i<x;i++){
-					float[][] zero=new float[z][y];
-					
 					float[][] Sbuf=new float[z][y]; float[][][] Sdata=S==null?null:S.getData()[l];
 					float[][] Abuf=new float[z][y]; float[][][] Adata=A==null?null:A.getData()[l];
 					float[][] Bbuf=new float[z][y]; float[][][] Bdata=B==null?null:B.getData()[l];
@@ -143,14 +157,17 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 						Abuf[k][j]=Adata[k][j][i];
 						Bbuf[k][j]=Bdata[k][j][i];
 						Cbuf[k][j]=Cdata[k][j][i];
+						if(D!=null) Dbuf[k][j]=Ddata[k][j][i];
+						if(E!=null) Ebuf[k][j]=Edata[k][j][i];
 						if(F!=null) Fbuf[k][j]=Fdata[k][j][i];
+						if(G!=null) Gbuf[k][j]=Gdata[k][j][i];
 					}
 					
 					String info=tdef[l+tstart-1]+" loops ";
-					final int ll=l;
+					Convergence cv=convs[results.size()]=new Convergence(info);
 					results.add(cs.submit(()->{
 						boolean[] overflow=new boolean[]{false};
-						float[][] re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Dbuf,Ebuf,Fbuf,Gbuf,Sbuf,param,overflow);
+						float[][] re=invertingOneSlice(Abuf,Bbuf,Cbuf,Dbuf,Ebuf,Fbuf,Gbuf,Sbuf,param,overflow,cv);
 						return re;
 					}));
 				}
@@ -183,14 +200,17 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 						Abuf[k][j]=Adata[k][j][i][l];
 						Bbuf[k][j]=Bdata[k][j][i][l];
 						Cbuf[k][j]=Cdata[k][j][i][l];
+						if(D!=null) Dbuf[k][j]=Ddata[k][j][i][l];
+						if(E!=null) Ebuf[k][j]=Edata[k][j][i][l];
 						if(F!=null) Fbuf[k][j]=Fdata[k][j][i][l];
+						if(G!=null) Gbuf[k][j]=Gdata[k][j][i][l];
 					}
 					
 					String info=tdef[l+tstart-1]+" loops ";
-					final int ll=l;
+					Convergence cv=convs[results.size()]=new Convergence(info);
 					results.add(cs.submit(()->{
 						boolean[] overflow=new boolean[]{false};
-						float[][] re=invertingOneSliceBySOR(info,Abuf,Bbuf,Cbuf,Dbuf,Ebuf,Fbuf,Gbuf,Sbuf,param,overflow);
+						float[][] re=invertingOneSlice(Abuf,Bbuf,Cbuf,Dbuf,Ebuf,Fbuf,Gbuf,Sbuf,param,overflow,cv);
 						return re;
 					}));
 				}
@@ -236,6 +256,8 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 		default: throw new IllegalArgumentException("unsupported dimention combinaiton: "+dimComb);
 		}
 	    
+		convergences=Arrays.asList(convs);
+		
 		if(print) System.out.println("Finished.");
 	}
 	
@@ -243,20 +265,30 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 	
 	
 	/*** helper methods and classes ***/
+	private float[][] invertingOneSlice(float[][] A,float[][] B,float[][] C,float[][] D,float[][] E,float[][] F,float[][] G,float[][] S,Params param,boolean[] overflow,Convergence cv){
+		if(method==SolverMethod.SOR) invertingOneSliceBySOR(A,B,C,D,E,F,G,S,param,overflow,cv);
+		else invertingOneSliceByStencil(A,B,C,D,E,F,G,S,param,overflow,cv);
+		
+		if(print) System.out.println(cv.info+String.format("%4d",cv.iterations)+" and tolerance is "+cv.convSpd+(overflow[0]?"   overflows!":""));
+		
+		return S;
+	}
 	
 	/**
 	 * Inverting one slice (2D that constitute first and second dimensions)
 	 * data using SOR iteration.
 	 * 
-	 * @param	info	used for printing
-	 * @param	undef	undefined data value
-	 * @param	A		coefficient for the first dimension
-	 * @param	B		coefficient for the cross derivatives
-	 * @param	C		coefficient for the second dimension
+	 * @param	A		coefficient of Sxx
+	 * @param	B		coefficient of Sxy
+	 * @param	C		coefficient of Syy
+	 * @param	D		coefficient of Sx
+	 * @param	E		coefficient of Sy
+	 * @param	F		coefficient of S
+	 * @param	G		forcing function
 	 * @param	S		results of the SOR inversion
-	 * @param	F		forcing function
+	 * @param	cv		convergence of the iteration
 	 */
-	private float[][] invertingOneSliceBySOR(String info,float[][] A,float[][] B,float[][] C,float[][] D,float[][] E,float[][] F,float[][] G,float[][] S,Params param,boolean[] overflow){
+	private void invertingOneSliceBySOR(float[][] A,float[][] B,float[][] C,float[][] D,float[][] E,float[][] F,float[][] G,float[][] S,Params param,boolean[] overflow,Convergence cv){
 		int loop=0;	// current loop
 		int dim1C=param.dim1C;
 		int dim2C=param.dim2C;
@@ -277,6 +309,8 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 		float[][] R=new float[dim2C][dim1C];
 		
 		do{
+			double rsum=0;	int rcnt=0;	// residual of this sweep
+			
 			// process the expand boundary condition i.e., expanding the inner grid to boundaries
 			if(dim2BC==BoundaryCondition.Expanded){
 				if(dim1BC==BoundaryCondition.Periodic){
@@ -296,19 +330,21 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 			for(int j=1,J=dim2C-1;j<J;j++){
 				if(dim1BC==BoundaryCondition.Periodic){
 					// for the west boundary SOR i.e., i==0
-					if(F[j][0]==undef&&A[j][1]==undef&&A[j][0]==undef&&C[j+1][0]==undef&&C[j][0]==undef&&
-					B[j][1]==undef&&B[j][x-1]==undef&&B[j+1][0]==undef&&B[j-1][0]==undef) continue;
-					
-					R[j][0]=A[j][0]*(S[j][1]+S[j][x-1]-2f*S[j][0])*ratio+
-							B[j][0]*(S[j+1][1]+S[j-1][x-1]-S[j-1][1]-S[j+1][x-1])/4f+
-							C[j][0]*(S[j+1][0]+S[j-1][0]-2f*S[j][0])+
-							D[j][0]*(S[j][1]-S[j][x-1])*delx2/2f+
-							E[j][0]*(S[j][0]-S[j][0])*delx1/2f+
-							(F[j][0]*S[j][0]+G[j][0])*delx1*delx2;
-					
-					R[j][0]*=optArg/(A[j][0]*ratio+C[j][0]/ratio)/2f;
-					
-					S[j][0]+=R[j][0];
+					if(A[j][0]!=undef&&B[j][0]!=undef&&C[j][0]!=undef&&D[j][0]!=undef&&
+					E[j][0]!=undef&&F[j][0]!=undef&&G[j][0]!=undef){
+						R[j][0]=A[j][0]*(S[j][1]+S[j][x-1]-2f*S[j][0])*ratio+
+								B[j][0]*(S[j+1][1]+S[j-1][x-1]-S[j-1][1]-S[j+1][x-1])/4f+
+								C[j][0]*(S[j+1][0]+S[j-1][0]-2f*S[j][0])/ratio+
+								D[j][0]*(S[j][1]-S[j][x-1])*delx2/2f+
+								E[j][0]*(S[j+1][0]-S[j-1][0])*delx1/2f+
+								(F[j][0]*S[j][0]+G[j][0])*delx1*delx2;
+						
+						rsum+=Math.abs(R[j][0]); rcnt++;
+						
+						R[j][0]*=optArg/(A[j][0]*ratio+C[j][0]/ratio)/2f;
+						
+						S[j][0]+=R[j][0];
+					}
 				}
 				
 				// process inner region SOR
@@ -318,11 +354,13 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 					
 					R[j][i]=A[j][i]*(S[j][i+1]+S[j][i-1]-2f*S[j][i])*ratio+
 							B[j][i]*(S[j+1][i+1]+S[j-1][i-1]-S[j-1][i+1]-S[j+1][i-1])/4f+
-							C[j][i]*(S[j+1][i]+S[j-1][i]-2f*S[j][i])+
+							C[j][i]*(S[j+1][i]+S[j-1][i]-2f*S[j][i])/ratio+
 							D[j][i]*(S[j][i+1]-S[j][i-1])*delx2/2f+
-							E[j][i]*(S[j][i]-S[j][i])*delx1/2f+
+							E[j][i]*(S[j+1][i]-S[j-1][i])*delx1/2f+
 							(F[j][i]*S[j][i]+G[j][i])*delx1*delx2;
 					
+					rsum+=Math.abs(R[j][i]); rcnt++;
+					
 					R[j][i]*=optArg/(A[j][i]*ratio+C[j][i]/ratio)/2f;
 					
 					S[j][i]+=R[j][i];
@@ -333,19 +371,23 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 					if(A[j][x-1]==undef||B[j][x-1]==undef||C[j][x-1]==undef||D[j][x-1]==undef||
 					E[j][x-1]==undef||F[j][x-1]==undef||G[j][x-1]==undef) continue;
 					
-					R[j][x-1]=A[j][x-1]*(S[j][x-1+1]+S[j][x-1-1]-2f*S[j][x-1])*ratio+
-							B[j][x-1]*(S[j+1][x-1+1]+S[j-1][x-1-1]-S[j-1][x-1+1]-S[j+1][x-1-1])/4f+
-							C[j][x-1]*(S[j+1][x-1]+S[j-1][x-1]-2f*S[j][x-1])+
-							D[j][x-1]*(S[j][x-1+1]-S[j][x-1-1])*delx2/2f+
-							E[j][x-1]*(S[j][x-1]-S[j][x-1])*delx1/2f+
+					R[j][x-1]=A[j][x-1]*(S[j][0]+S[j][x-2]-2f*S[j][x-1])*ratio+
+							B[j][x-1]*(S[j+1][0]+S[j-1][x-2]-S[j-1][0]-S[j+1][x-2])/4f+
+							C[j][x-1]*(S[j+1][x-1]+S[j-1][x-1]-2f*S[j][x-1])/ratio+
+							D[j][x-1]*(S[j][0]-S[j][x-2])*delx2/2f+
+							E[j][x-1]*(S[j+1][x-1]-S[j-1][x-1])*delx1/2f+
 							(F[j][x-1]*S[j][x-1]+G[j][x-1])*delx1*delx2;
 					
+					rsum+=Math.abs(R[j][x-1]); rcnt++;
+					
 					R[j][x-1]*=optArg/(A[j][x-1]*ratio+C[j][x-1]/ratio)/2f;
 					
 					S[j][x-1]+=R[j][x-1];
 				}
 			}
 			
+			cv.residuals.add(rcnt==0?0:rsum/rcnt);
+			
 			double norm=cAbsMean(S);
 			
 			if(Double.isNaN(norm)||norm>1e9){
@@ -361,9 +403,82 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 			
 		}while(true);
 		
-		if(print) System.out.println(info+String.format("%4d",loop)+" and tolerance is "+convSpd+(overflow[0]?"   overflows!":""));
+		cv.finish(loop,convSpd,convSpd<tolerance,overflow[0]);
+	}
+	
+	/**
+	 * Inverting one slice using the nine-point stencil of the same discretization
+	 * as SOR, relaxed by the parallel multi-colour SOR or by multigrid V-cycles.
+	 *
+	 * @param	A		coefficient of Sxx
+	 * @param	B		coefficient of Sxy
+	 * @param	C		coefficient of Syy
+	 * @param	D		coefficient of Sx
+	 * @param	E		coefficient of Sy
+	 * @param	F		coefficient of S
+	 * @param	G		forcing function
+	 * @param	S		results of the inversion
+	 * @param	cv		convergence of the iteration
+	 */
+	private void invertingOneSliceByStencil(float[][] A,float[][] B,float[][] C,float[][] D,float[][] E,float[][] F,float[][] G,float[][] S,Params param,boolean[] overflow,Convergence cv){
+		int loop=0;	// current loop
+		int dim1C=param.dim1C;
+		int dim2C=param.dim2C;
+		
+		float ratio=param.ratio;
+		float undef=param.undef;
+		float delx1=param.delx1;
+		float delx2=param.delx2;
 		
-		return S;
+		double convSpd=0;	// convergent speed = delta norm(S) / norm(S)
+		
+		boolean periodic=param.dim1BC==BoundaryCondition.Periodic;
+		
+		double normPrev=Double.MAX_VALUE;
+		
+		float[][] f=new float[dim2C][dim1C];
+		
+		EllipticStencil2D es=new EllipticStencil2D(dim2C,dim1C,periodic,param.dim2BC==BoundaryCondition.Expanded);
+		
+		for(int j=1,J=dim2C-1;j<J;j++)
+		for(int i=periodic?0:1,I=periodic?dim1C:dim1C-1;i<I;i++){
+			if(A[j][i]==undef||B[j][i]==undef||C[j][i]==undef||D[j][i]==undef||
+			E[j][i]==undef||F[j][i]==undef||G[j][i]==undef) continue;
+			
+			float axx=A[j][i]*ratio,bxy=B[j][i]/4f,dx=D[j][i]*delx2/2f;
+			float cyy=C[j][i]/ratio,fs =F[j][i]*delx1*delx2,ey=E[j][i]*delx1/2f;
+			
+			es.setStencil(j,i,fs-2f*(axx+cyy),axx-dx,axx+dx,cyy-ey,cyy+ey,bxy,-bxy,-bxy,bxy);
+			
+			f[j][i]=-G[j][i]*delx1*delx2;
+		}
+		
+		es.expand(S);
+		
+		do{
+			if(method==SolverMethod.Multigrid) es.vcycle(S,f);
+			else es.relax(S,f,param.optArg);
+			
+			cv.residuals.add(es.residualNorm(S,f));
+			
+			double norm=cAbsMean(S);
+			
+			if(Double.isNaN(norm)||norm>1e9){
+				overflow[0]=true;
+				break;
+			}
+			
+			convSpd=Math.abs(norm-normPrev)/normPrev;
+			
+			if(convSpd<tolerance||loop>mxLoopCount) break;
+			
+			normPrev=norm; loop++;
+		
+		}while(true);
+		
+		es.expand(S);
+		
+		cv.finish(loop,convSpd,convSpd<tolerance,overflow[0]);
 	}
 	
 	private double cAbsMean(float[][] data){
@@ -383,6 +498,70 @@ public final class GeneralEllipticEqSORSolver extends GeoFluidApplication implem
 	}
 	
 	
+	/**
+	 * Convergence of the iteration of one slice.
+	 */
+	public static final class Convergence{
+		//
+		private int iterations=0;	// iterations to the tolerance
+		
+		private boolean converged=false;
+		private boolean overflow =false;
+		
+		private double convSpd=0;	// final convergent speed = delta norm(S) / norm(S)
+		
+		private String info=null;	// time (and level) of the slice
+		
+		private List<Double> residuals=new ArrayList<>();	// mean absolute residual of each iteration
+		
+		
+		/**
+		 * constructor
+		 *
+		 * @param	info	time (and level) of the slice
+		 */
+		Convergence(String info){ this.info=info;}
+		
+		
+		/*** getor and setor ***/
+		public int getIterations(){ return iterations;}
+		
+		public boolean isConverged(){ return converged;}
+		
+		public boolean isOverflow(){ return overflow;}
+		
+		public double getConvergentSpeed(){ return convSpd;}
+		
+		public String getInfo(){ return info;}
+		
+		public double[] getResiduals(){
+			double[] re=new double[residuals.size()];
+			
+			for(int i=0,I=re.length;i<I;i++) re[i]=residuals.get(i);
+			
+			return re;
+		}
+		
+		
+		/**
+		 * used to print out
+		 */
+		public String toString(){
+			return info+iterations+" iterations, residual "+
+				(residuals.isEmpty()?0:residuals.get(residuals.size()-1))+(overflow?" overflows":converged?"":" not converged");
+		}
+		
+		
+		/*** helper methods ***/
+		void finish(int iterations,double convSpd,boolean converged,boolean overflow){
+			this.iterations=iterations;
+			this.convSpd   =convSpd;
+			this.converged =converged;
+			this.overflow  =overflow;
+		}
+	}
+	
+	
 	/**
 	 * parameters used for SOR iteration
 	 */
@@ -7,6 +7,7 @@
 package miniufo.application.basic;
 
 import miniufo.application.EquationInCartesianCoordinate;
+import miniufo.application.StencilKernel;
 import miniufo.diagnosis.Variable;
 import miniufo.diagnosis.CartesianSpatialModel;
 import miniufo.diagnosis.SphericalSpatialModel;
@@ -53,60 +54,11 @@ public class DynamicMethodsInCTS extends EquationInCartesianCoordinate{
 		div.setValue(undef);
 		div.setCommentAndUnit("divergence (s^-1)");
 		
-		float[][][][]   udata=u.getData();
-		float[][][][]   vdata=v.getData();
-		float[][][][] divdata=div.getData();
+		float[] dxj=rowsOf(dx);
 		
-		if(u.isTFirst()){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=1;j<y-1;j++){
-				if(BCx==BoundaryCondition.Periodic){
-					/*** east boundary ***/
-					if(udata[l][k][j][1]!=undef&&udata[l][k][j][x-1]!=undef&&vdata[l][k][j+1][0]!=undef&&vdata[l][k][j-1][0]!=undef)
-						divdata[l][k][j][0]=
-						(udata[l][k][j  ][1]-udata[l][k][j][x-1])/(dx*2f)+
-						(vdata[l][k][j+1][0]-vdata[l][k][j-1][0])/(dy*2f);
-					
-					/*** west boundary ***/
-					if(udata[l][k][j][0]!=undef&&udata[l][k][j][x-2]!=undef&&vdata[l][k][j+1][x-1]!=undef&&vdata[l][k][j-1][x-1]!=undef)
-						divdata[l][k][j][x-1]=
-						(udata[l][k][j  ][0  ]-udata[l][k][j  ][x-2])/(dx*2f)+
-						(vdata[l][k][j+1][x-1]-vdata[l][k][j-1][x-1])/(dy*2f);
-				}
-				
-				for(int i=1;i<x-1;i++)
-				if(udata[l][k][j][i+1]!=undef&&udata[l][k][j][i-1]!=undef&&vdata[l][k][j+1][i]!=undef&&vdata[l][k][j-1][i]!=undef)
-					divdata[l][k][j][i]=
-					(udata[l][k][j][i+1]-udata[l][k][j][i-1])/(dx*2f)+
-					(vdata[l][k][j+1][i]-vdata[l][k][j-1][i])/(dy*2f);
-			}
-			
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=1;j<y-1;j++){
-				if(BCx==BoundaryCondition.Periodic){
-					/*** east boundary ***/
-					if(udata[k][j][1][l]!=undef&&udata[k][j][x-1][l]!=undef&&vdata[k][j+1][0][l]!=undef&&vdata[k][j-1][0][l]!=undef)
-						divdata[k][j][0][l]=
-						(udata[k][j  ][1][l]-udata[k][j][x-1][l])/(dx*2f)+
-						(vdata[k][j+1][0][l]-vdata[k][j-1][0][l])/(dy*2f);
-					
-					/*** west boundary ***/
-					if(udata[k][j][0][l]!=undef&&udata[k][j][x-2][l]!=undef&&vdata[k][j+1][x-1][l]!=undef&&vdata[k][j-1][x-1][l]!=undef)
-						divdata[k][j][x-1][l]=
-						(udata[k][j  ][0  ][l]-udata[k][j  ][x-2][l])/(dx*2f)+
-						(vdata[k][j+1][x-1][l]-vdata[k][j-1][x-1][l])/(dy*2f);
-				}
-				
-				for(int i=1;i<x-1;i++)
-				if(udata[k][j][i+1][l]!=undef&&udata[k][j][i-1][l]!=undef&&vdata[k][j+1][i][l]!=undef&&vdata[k][j-1][i][l]!=undef)
-					divdata[k][j][i][l]=
-					(udata[k][j][i+1][l]-udata[k][j][i-1][l])/(dx*2f)+
-					(vdata[k][j+1][i][l]-vdata[k][j-1][i][l])/(dy*2f);
-			}
-		}
+		boolean periodic=BCx==BoundaryCondition.Periodic;
+		
+		StencilKernel.forEachSlab((in,r)->StencilKernel.divergence(in[0],in[1],r,dxj,dy,null,1,periodic,undef),div,u,v);
 		
 		return div;
 	}
@@ -162,60 +114,11 @@ public class DynamicMethodsInCTS extends EquationInCartesianCoordinate{
 		vor.setCommentAndUnit("vorticity (s^-1)");
 		vor.setValue(undef);
 		
-		float[][][][]   udata=u.getData();
-		float[][][][]   vdata=v.getData();
-		float[][][][] vordata=vor.getData();
+		float[] dxj=rowsOf(dx);
 		
-		if(u.isTFirst()){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=1;j<y-1;j++){
-				if(BCx==BoundaryCondition.Periodic){
-					/*** east boundary ***/
-					if(vdata[l][k][j][1]!=undef&&vdata[l][k][j][x-1]!=undef&&udata[l][k][j+1][0]!=undef&&udata[l][k][j-1][0]!=undef)
-						vordata[l][k][j][0]=
-						(vdata[l][k][j][1]-vdata[l][k][j][x-1])/(dx*2f)-
-						(udata[l][k][j+1][0]-udata[l][k][j-1][0])/(dy*2f);
-					
-					/*** west boundary ***/
-					if(vdata[l][k][j][0]!=undef&&vdata[l][k][j][x-2]!=undef&&udata[l][k][j+1][x-1]!=undef&&udata[l][k][j-1][x-1]!=undef)
-						vordata[l][k][j][x-1]=
-						(vdata[l][k][j][0]-vdata[l][k][j][x-2])/(dx*2f)-
-						(udata[l][k][j+1][x-1]-udata[l][k][j-1][x-1])/(dy*2f);
-				}
-				
-				for(int i=1;i<x-1;i++)
-				if(vdata[l][k][j][i+1]!=undef&&vdata[l][k][j][i-1]!=undef&&udata[l][k][j+1][i]!=undef&&udata[l][k][j-1][i]!=undef)
-					vordata[l][k][j][i]=
-					(vdata[l][k][j][i+1]-vdata[l][k][j][i-1])/(dx*2f)-
-					(udata[l][k][j+1][i]-udata[l][k][j-1][i])/(dy*2f);
-			}
-			
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=1;j<y-1;j++){
-				if(BCx==BoundaryCondition.Periodic){
-					/*** east boundary ***/
-					if(vdata[k][j][1][l]!=undef&&vdata[k][j][x-1][l]!=undef&&udata[k][j+1][0][l]!=undef&&udata[k][j-1][0][l]!=undef)
-						vordata[k][j][0][l]=
-						(vdata[k][j  ][1][l]-vdata[k][j][x-1][l])/(dx*2f)-
-						(udata[k][j+1][0][l]-udata[k][j-1][0][l])/(dy*2f);
-					
-					/*** west boundary ***/
-					if(vdata[k][j][0][l]!=undef&&vdata[k][j][x-2][l]!=undef&&udata[k][j+1][x-1][l]!=undef&&udata[k][j-1][x-1][l]!=undef)
-						vordata[k][j][x-1][l]=
-						(vdata[k][j][0][l]-vdata[k][j][x-2][l])/(dx*2f)-
-						(udata[k][j+1][x-1][l]-udata[k][j-1][x-1][l])/(dy*2f);
-				}
-				
-				for(int i=1;i<x-1;i++)
-				if(vdata[k][j][i+1][l]!=undef&&vdata[k][j][i-1][l]!=undef&&udata[k][j+1][i][l]!=undef&&udata[k][j-1][i][l]!=undef)
-					vordata[k][j][i][l]=
-					(vdata[k][j][i+1][l]-vdata[k][j][i-1][l])/(dx*2f)-
-					(udata[k][j+1][i][l]-udata[k][j-1][i][l])/(dy*2f);
-			}
-		}
+		boolean periodic=BCx==BoundaryCondition.Periodic;
+		
+		StencilKernel.forEachSlab((in,r)->StencilKernel.vorticity(in[0],in[1],r,dxj,dy,null,1,periodic,undef),vor,u,v);
 		
 		return vor;
 	}
@@ -893,77 +796,11 @@ public class DynamicMethodsInCTS extends EquationInCartesianCoordinate{
 		F.setCommentAndUnit("Laplacian of "+v.getName());
 		F.setValue(undef);
 		
-		float[][][][] Fdata=F.getData();
-		float[][][][] gdata=v.getData();
+		float[] dxj=rowsOf(dx),one=rowsOf(1f);
 		
-		if(F.isTFirst()){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=1;j<y-1;j++){
-				if(BCx==BoundaryCondition.Periodic){
-					/*** east BC with i=0 ***/
-					Fdata[l][k][j][0]=(
-						(gdata[l][k][j][1]-gdata[l][k][j][0  ])-
-						(gdata[l][k][j][0]-gdata[l][k][j][x-1])
-					)/dx/dx+(
-						(gdata[l][k][j+1][0]-gdata[l][k][j][0])-
-						(gdata[l][k][j][0]-gdata[l][k][j-1][0])
-					)/dy/dy;
-					
-					/*** east BC with i=x-1 ***/
-					Fdata[l][k][j][x-1]=(
-						(gdata[l][k][j][0  ]-gdata[l][k][j][x-1])-
-						(gdata[l][k][j][x-1]-gdata[l][k][j][x-2])
-					)/dx/dx+(
-						(gdata[l][k][j+1][x-1]-gdata[l][k][j][x-1])-
-						(gdata[l][k][j][x-1]-gdata[l][k][j-1][x-1])
-					)/dy/dy;
-				}
-				
-				for(int i=1;i<x-1;i++)
-				Fdata[l][k][j][i]=(
-					(gdata[l][k][j][i+1]-gdata[l][k][j][i])-
-					(gdata[l][k][j][i]-gdata[l][k][j][i-1])
-				)/dx/dx+(
-					(gdata[l][k][j+1][i]-gdata[l][k][j][i])-
-					(gdata[l][k][j][i]-gdata[l][k][j-1][i])
-				)/dy/dy;
-			}
-			
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=1;j<y-1;j++){
-				if(BCx==BoundaryCondition.Periodic){
-					/*** east BC with i=0 ***/
-					Fdata[k][j][0][l]=(
-						(gdata[k][j][1][l]-gdata[k][j][0  ][l])-
-						(gdata[k][j][0][l]-gdata[k][j][x-1][l])
-					)/dx/dx+(
-						(gdata[k][j+1][0][l]-gdata[k][j][0][l])-
-						(gdata[k][j][0][l]-gdata[k][j-1][0][l])
-					)/dy/dy;
-					
-					/*** east BC with i=x-1 ***/
-					Fdata[k][j][x-1][l]=(
-						(gdata[k][j][0  ][l]-gdata[k][j][x-1][l])-
-						(gdata[k][j][x-1][l]-gdata[k][j][x-2][l])
-					)/dx/dx+(
-						(gdata[k][j+1][x-1][l]-gdata[k][j][x-1][l])-
-						(gdata[k][j][x-1][l]-gdata[k][j-1][x-1][l])
-					)/dy/dy;
-				}
-				
-				for(int i=1;i<x-1;i++)
-				Fdata[k][j][i][l]=(
-					(gdata[k][j][i+1][l]-gdata[k][j][i][l])-
-					(gdata[k][j][i][l]-gdata[k][j][i-1][l])
-				)/dx/dx+(
-					(gdata[k][j+1][i][l]-gdata[k][j][i][l])-
-					(gdata[k][j][i][l]-gdata[k][j-1][i][l])
-				)/dy/dy;
-			}
-		}
+		boolean periodic=BCx==BoundaryCondition.Periodic;
+		
+		StencilKernel.forEachSlab((in,r)->StencilKernel.laplacian(in[0],r,dx,dxj,dy,one,one,periodic),F,v);
 		
 		return F;
 	}
@@ -7,6 +7,7 @@
 package miniufo.application.basic;
 
 import miniufo.application.EquationInSphericalCoordinate;
+import miniufo.application.StencilKernel;
 import miniufo.diagnosis.Variable;
 import miniufo.diagnosis.SphericalSpatialModel;
 import miniufo.diagnosis.Variable.Dimension;
@@ -52,78 +53,11 @@ public class DynamicMethodsInSC extends EquationInSphericalCoordinate{
 		
 		Variable div=new Variable("div",u);	div.setCommentAndUnit("divergence (s^-1)");
 		
-		float[][][][]   udata=u.getData();
-		float[][][][]   vdata=v.getData();
-		float[][][][] divdata=div.getData();
+		float[] dxj=rowsOf(dxs),tan=rowsOf(ltan);
 		
-		if(u.isTFirst()){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=1;j<y-1;j++){
-				if(BCx==BoundaryCondition.Periodic){
-					/*** east boundary ***/
-					if(udata[l][k][j][1]!=undef&&udata[l][k][j][x-1]!=undef&&vdata[l][k][j+1][0]!=undef&&vdata[l][k][j-1][0]!=undef)
-						divdata[l][k][j][0]=
-							(udata[l][k][j][1]-udata[l][k][j][x-1])/(dxs[ystart-1+j]*2)+
-							(vdata[l][k][j+1][0]-vdata[l][k][j-1][0])/(dy*2)-
-							vdata[l][k][j][0]*ltan[ystart-1+j]/REarth;
-						
-					else divdata[l][k][j][0]=undef;
-					
-					/*** west boundary ***/
-					if(udata[l][k][j][0]!=undef&&udata[l][k][j][x-2]!=undef&&vdata[l][k][j+1][x-1]!=undef&&vdata[l][k][j-1][x-1]!=undef)
-						divdata[l][k][j][x-1]=
-							(udata[l][k][j][0]-udata[l][k][j][x-2])/(dxs[ystart-1+j]*2)+
-							(vdata[l][k][j+1][x-1]-vdata[l][k][j-1][x-1])/(dy*2)-
-							vdata[l][k][j][x-1]*ltan[ystart-1+j]/REarth;
-						
-					else divdata[l][k][j][x-1]=undef;
-				}
-				
-				for(int i=1;i<x-1;i++)
-				if(udata[l][k][j][i+1]!=undef&&udata[l][k][j][i-1]!=undef&&vdata[l][k][j+1][i]!=undef&&vdata[l][k][j-1][i]!=undef)
-					divdata[l][k][j][i]=
-						(udata[l][k][j][i+1]-udata[l][k][j][i-1])/(dxs[ystart-1+j]*2)+
-						(vdata[l][k][j+1][i]-vdata[l][k][j-1][i])/(dy*2)-
-						vdata[l][k][j][i]*ltan[ystart-1+j]/REarth;
-					
-				else divdata[l][k][j][i]=undef;
-			}
-			
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=1;j<y-1;j++){
-				if(BCx==BoundaryCondition.Periodic){
-					/*** east boundary ***/
-					if(udata[k][j][1][l]!=undef&&udata[k][j][x-1][l]!=undef&&vdata[k][j+1][0][l]!=undef&&vdata[k][j-1][0][l]!=undef)
-						divdata[k][j][0][l]=
-							(udata[k][j][1][l]-udata[k][j][x-1][l])/(dxs[ystart-1+j]*2)+
-							(vdata[k][j+1][0][l]-vdata[k][j-1][0][l])/(dy*2)-
-							vdata[k][j][0][l]*ltan[ystart-1+j]/REarth;
-						
-					else divdata[l][k][j][0]=undef;
-					
-					/*** west boundary ***/
-					if(udata[k][j][0][l]!=undef&&udata[k][j][x-2][l]!=undef&&vdata[k][j+1][x-1][l]!=undef&&vdata[k][j-1][x-1][l]!=undef)
-						divdata[k][j][x-1][l]=
-							(udata[k][j][0][l]-udata[k][j][x-2][l])/(dxs[ystart-1+j]*2)+
-							(vdata[k][j+1][x-1][l]-vdata[k][j-1][x-1][l])/(dy*2)-
-							vdata[k][j][x-1][l]*ltan[ystart-1+j]/REarth;
-						
-					else divdata[l][k][j][x-1]=undef;
-				}
-				
-				for(int i=1;i<x-1;i++)
-				if(udata[k][j][i+1][l]!=undef&&udata[k][j][i-1][l]!=undef&&vdata[k][j+1][i][l]!=undef&&vdata[k][j-1][i][l]!=undef)
-					divdata[k][j][i][l]=
-						(udata[k][j][i+1][l]-udata[k][j][i-1][l])/(dxs[ystart-1+j]*2)+
-						(vdata[k][j+1][i][l]-vdata[k][j-1][i][l])/(dy*2)-
-						(vdata[k][j][i][l]/REarth)*ltan[ystart-1+j];
-					
-				else divdata[k][j][i][l]=undef;
-			}
-		}
+		boolean periodic=BCx==BoundaryCondition.Periodic;
+		
+		StencilKernel.forEachSlab((in,r)->StencilKernel.divergence(in[0],in[1],r,dxj,dy,tan,REarth,periodic,undef),div,u,v);
 		
 		return div;
 	}
@@ -181,78 +115,11 @@ public class DynamicMethodsInSC extends EquationInSphericalCoordinate{
 		
 		Variable vor=new Variable("vor",u);	vor.setCommentAndUnit("vorticity (s^-1)");
 		
-		float[][][][]   udata=u.getData();
-		float[][][][]   vdata=v.getData();
-		float[][][][] vordata=vor.getData();
+		float[] dxj=rowsOf(dxs),tan=rowsOf(ltan);
 		
-		if(u.isTFirst()){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=1;j<y-1;j++){
-				if(BCx==BoundaryCondition.Periodic){
-					/*** east boundary ***/
-					if(vdata[l][k][j][1]!=undef&&vdata[l][k][j][x-1]!=undef&&udata[l][k][j+1][0]!=undef&&udata[l][k][j-1][0]!=undef)
-						vordata[l][k][j][0]=
-							(vdata[l][k][j][1]-vdata[l][k][j][x-1])/(dxs[ystart-1+j]*2)-
-							(udata[l][k][j+1][0]-udata[l][k][j-1][0])/(dy*2)+
-							udata[l][k][j][0]*ltan[ystart-1+j]/REarth;
-						
-					else vordata[l][k][j][0]=undef;
-					
-					/*** west boundary ***/
-					if(vdata[l][k][j][0]!=undef&&vdata[l][k][j][x-2]!=undef&&udata[l][k][j+1][x-1]!=undef&&udata[l][k][j-1][x-1]!=undef)
-						vordata[l][k][j][x-1]=
-							(vdata[l][k][j][0]-vdata[l][k][j][x-2])/(dxs[ystart-1+j]*2)-
-							(udata[l][k][j+1][x-1]-udata[l][k][j-1][x-1])/(dy*2)+
-							udata[l][k][j][x-1]*ltan[ystart-1+j]/REarth;
-						
-					else vordata[l][k][j][x-1]=undef;
-				}
-				
-				for(int i=1;i<x-1;i++)
-				if(vdata[l][k][j][i+1]!=undef&&vdata[l][k][j][i-1]!=undef&&udata[l][k][j+1][i]!=undef&&udata[l][k][j-1][i]!=undef)
-					vordata[l][k][j][i]=
-						(vdata[l][k][j][i+1]-vdata[l][k][j][i-1])/(dxs[ystart-1+j]*2)-
-						(udata[l][k][j+1][i]-udata[l][k][j-1][i])/(dy*2)+
-						udata[l][k][j][i]*ltan[ystart-1+j]/REarth;
-					
-				else vordata[l][k][j][i]=undef;
-			}
-			
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=1;j<y-1;j++){
-				if(BCx==BoundaryCondition.Periodic){
-					/*** east boundary ***/
-					if(vdata[k][j][1][l]!=undef&&vdata[k][j][x-1][l]!=undef&&udata[k][j+1][0][l]!=undef&&udata[k][j-1][0][l]!=undef)
-						vordata[k][j][0][l]=
-							(vdata[k][j][1][l]-vdata[k][j][x-1][l])/(dxs[ystart-1+j]*2)-
-							(udata[k][j+1][0][l]-udata[k][j-1][0][l])/(dy*2)+
-							udata[k][j][0][l]*ltan[ystart-1+j]/REarth;
-						
-					else vordata[l][k][j][0]=undef;
-					
-					/*** west boundary ***/
-					if(vdata[k][j][0][l]!=undef&&vdata[k][j][x-2][l]!=undef&&udata[k][j+1][x-1][l]!=undef&&udata[k][j-1][x-1][l]!=undef)
-						vordata[k][j][x-1][l]=
-							(vdata[k][j][0][l]-vdata[k][j][x-2][l])/(dxs[ystart-1+j]*2)-
-							(udata[k][j+1][x-1][l]-udata[k][j-1][x-1][l])/(dy*2)+
-							udata[k][j][x-1][l]*ltan[ystart-1+j]/REarth;
-						
-					else vordata[l][k][j][x-1]=undef;
-				}
-				
-				for(int i=1;i<x-1;i++)
-				if(vdata[k][j][i+1][l]!=undef&&vdata[k][j][i-1][l]!=undef&&udata[k][j+1][i][l]!=undef&&udata[k][j-1][i][l]!=undef)
-					vordata[k][j][i][l]=
-						(vdata[k][j][i+1][l]-vdata[k][j][i-1][l])/(dxs[ystart-1+j]*2)-
-						(udata[k][j+1][i][l]-udata[k][j-1][i][l])/(dy*2)+
-						udata[k][j][i][l]*ltan[ystart-1+j]/REarth;
-					
-				else vordata[k][j][i][l]=undef;
-			}
-		}
+		boolean periodic=BCx==BoundaryCondition.Periodic;
+		
+		StencilKernel.forEachSlab((in,r)->StencilKernel.vorticity(in[0],in[1],r,dxj,dy,tan,REarth,periodic,undef),vor,u,v);
 		
 		return vor;
 	}
@@ -1029,78 +896,18 @@ public class DynamicMethodsInSC extends EquationInSphericalCoordinate{
 		
 		Variable F=new Variable("lp",v);	F.setCommentAndUnit("Laplacian of "+v.getName());
 		
-		float[][][][] Fdata=F.getData();
-		float[][][][] gdata=v.getData();
+		float[] dxj=rowsOf(dxs),cn=new float[y],cs=new float[y];
 		
-		if(F.isTFirst()){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=1;j<y-1;j++){
-				if(BCx==BoundaryCondition.Periodic){
-					/*** east BC with i=0 ***/
-					Fdata[l][k][j][0]=(
-						(gdata[l][k][j][1]-gdata[l][k][j][0  ])-
-						(gdata[l][k][j][0]-gdata[l][k][j][x-1])
-					)/dx/dxs[ystart-1+j]+(
-						(gdata[l][k][j+1][0]-gdata[l][k][j][0])*(float)Math.cos((ydef[ystart  +j]+ydef[ystart-1+j])/2f)-
-						(gdata[l][k][j][0]-gdata[l][k][j-1][0])*(float)Math.cos((ydef[ystart-1+j]+ydef[ystart-2+j])/2f)
-					)/dy/dy;
-					
-					/*** east BC with i=x-1 ***/
-					Fdata[l][k][j][x-1]=(
-						(gdata[l][k][j][0  ]-gdata[l][k][j][x-1])-
-						(gdata[l][k][j][x-1]-gdata[l][k][j][x-2])
-					)/dx/dxs[ystart-1+j]+(
-						(gdata[l][k][j+1][x-1]-gdata[l][k][j][x-1])*(float)Math.cos((ydef[ystart  +j]+ydef[ystart-1+j])/2f)-
-						(gdata[l][k][j][x-1]-gdata[l][k][j-1][x-1])*(float)Math.cos((ydef[ystart-1+j]+ydef[ystart-2+j])/2f)
-					)/dy/dy;
-				}
-				
-				for(int i=1;i<x-1;i++)
-				Fdata[l][k][j][i]=(
-					(gdata[l][k][j][i+1]-gdata[l][k][j][i])-
-					(gdata[l][k][j][i]-gdata[l][k][j][i-1])
-				)/dx/dxs[ystart-1+j]+(
-					(gdata[l][k][j+1][i]-gdata[l][k][j][i])*(float)Math.cos((ydef[ystart  +j]+ydef[ystart-1+j])/2f)-
-					(gdata[l][k][j][i]-gdata[l][k][j-1][i])*(float)Math.cos((ydef[ystart-1+j]+ydef[ystart-2+j])/2f)
-				)/dy/dy;
-			}
-			
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=1;j<y-1;j++){
-				if(BCx==BoundaryCondition.Periodic){
-					/*** east BC with i=0 ***/
-					Fdata[k][j][0][l]=(
-						(gdata[k][j][1][l]-gdata[k][j][0  ][l])-
-						(gdata[k][j][0][l]-gdata[k][j][x-1][l])
-					)/dx/dxs[ystart-1+j]+(
-						(gdata[k][j+1][0][l]-gdata[k][j][0][l])*(float)Math.cos((ydef[ystart  +j]+ydef[ystart-1+j])/2f)-
-						(gdata[k][j][0][l]-gdata[k][j-1][0][l])*(float)Math.cos((ydef[ystart-1+j]+ydef[ystart-2+j])/2f)
-					)/dy/dy;
-					
-					/*** east BC with i=x-1 ***/
-					Fdata[k][j][x-1][l]=(
-						(gdata[k][j][0  ][l]-gdata[k][j][x-1][l])-
-						(gdata[k][j][x-1][l]-gdata[k][j][x-2][l])
-					)/dx/dxs[ystart-1+j]+(
-						(gdata[k][j+1][x-1][l]-gdata[k][j][x-1][l])*(float)Math.cos((ydef[ystart  +j]+ydef[ystart-1+j])/2f)-
-						(gdata[k][j][x-1][l]-gdata[k][j-1][x-1][l])*(float)Math.cos((ydef[ystart-1+j]+ydef[ystart-2+j])/2f)
-					)/dy/dy;
-				}
-				
-				for(int i=1;i<x-1;i++)
-				Fdata[k][j][i][l]=(
-					(gdata[k][j][i+1][l]-gdata[k][j][i][l])-
-					(gdata[k][j][i][l]-gdata[k][j][i-1][l])
-				)/dx/dxs[ystart-1+j]+(
-					(gdata[k][j+1][i][l]-gdata[k][j][i][l])*(float)Math.cos((ydef[ystart  +j]+ydef[ystart-1+j])/2f)-
-					(gdata[k][j][i][l]-gdata[k][j-1][i][l])*(float)Math.cos((ydef[ystart-1+j]+ydef[ystart-2+j])/2f)
-				)/dy/dy;
-			}
+		// cos(lat) at the north and south faces of each row
+		for(int j=1;j<y-1;j++){
+			cn[j]=(float)Math.cos((ydef[ystart  +j]+ydef[ystart-1+j])/2f);
+			cs[j]=(float)Math.cos((ydef[ystart-1+j]+ydef[ystart-2+j])/2f);
 		}
 		
+		boolean periodic=BCx==BoundaryCondition.Periodic;
+		
+		StencilKernel.forEachSlab((in,r)->StencilKernel.laplacian(in[0],r,dx,dxj,dy,cn,cs,periodic),F,v);
+		
 		return F;
 	}
 	
@@ -7,6 +7,7 @@
 package miniufo.application.basic;
 
 import miniufo.application.GeoFluidApplication;
+import miniufo.concurrent.ConcurrentUtil;
 import miniufo.diagnosis.Range;
 import miniufo.diagnosis.Variable;
 import miniufo.diagnosis.SphericalSpatialModel;
@@ -24,18 +25,19 @@ import static miniufo.diagnosis.SpatialModel.REarth;
  */
 public final class SphericalHarmonicExpansion extends GeoFluidApplication{
 	//
-	private boolean setM=false;
+	private boolean setM  =false;
+	private boolean folded=false;	// latitudes are symmetric about the equator
 	
 	private int M=0;
+	private int H=0;	// number of latitudes in the southern hemisphere
 	
 	private float dlat=0;
 	
 	private float[] lcos=null;
 	private float[] lsin=null;
 	
-	private float[][][] plm=null;
-	
-	private FastFourier ff=null;
+	private float[][][] pnm=null;	// Legendre functions, [m][n-m][lat]
+	private float[][][] wnm=null;	// Legendre functions weighted by quadrature, [m][n-m][lat]
 	
 	
 	/**
@@ -51,11 +53,11 @@ public final class SphericalHarmonicExpansion extends GeoFluidApplication{
 		y=ssm.getYCount();	lcos=ssm.getLCos();
 		x=ssm.getXCount();	lsin=ssm.getLSin();	M=x/2;
 		
-		plm=new float[y][][];
-		
 		dlat=ssm.getYDef().getIncrements()[0];
 		
-		ff=new FastFourier(x);
+		folded=true;	H=y/2;
+		
+		for(int j=0;j<H;j++) if(Math.abs(lsin[j]+lsin[y-1-j])>1e-6f||Math.abs(lcos[j]-lcos[y-1-j])>1e-6f) folded=false;
 	}
 	
 	
@@ -71,13 +73,24 @@ public final class SphericalHarmonicExpansion extends GeoFluidApplication{
 		
 		this.M=M;
 		
-		for(int j=0;j<y;j++){
-			plm[j]=AssociatedLegendre.legendreT(M,lsin[j]);
-			
-			for(int m=0;m<plm[j].length;m++)
-			for(int n=0;n<plm[j][m].length;n++)
-			plm[j][m][n]/=(float)Math.sqrt(2);	// normalization
-		}
+		pnm=new float[M+1][][];
+		wnm=new float[M+1][][];
+		
+		for(int m=0;m<=M;m++){ pnm[m]=new float[M+1-m][y]; wnm[m]=new float[M+1-m][y];}
+		
+		ConcurrentUtil.parallelFor(y,1,(s,e)->{
+			for(int j=s;j<e;j++){
+				float[][] plm=AssociatedLegendre.legendreT(M,lsin[j]);
+				
+				for(int n=0;n<=M;n++)
+				for(int m=0;m<=n;m++){
+					float p=plm[n][m]/(float)Math.sqrt(2);	// normalization
+					
+					pnm[m][n-m][j]=p;
+					wnm[m][n-m][j]=p*dlat*lcos[j];
+				}
+			}
+		});
 		
 		setM=true;
 	}
@@ -113,66 +126,35 @@ public final class SphericalHarmonicExpansion extends GeoFluidApplication{
 		float[][][][] vdata=    v.getData();
 		long tt=System.nanoTime();
 		
-		if(v.isTFirst()){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++){
-				float[][] fftRe=new float[y][];
-				float[][] fftIm=new float[y][];
-				
-				// FFT along jth latitude, start from South Pole.
-				// transformation from grid space to spectrum space
-				for(int j=0;j<y;j++){
-					ff.fftMixedRadix(vdata[l][k][j]);
-					fftRe[j]=ff.getResultRealPartCopy();
-					fftIm[j]=ff.getResultImagePartCopy();
-				}
-				
-				for(int m=0;m<=M;m++){
-				for(int n=m;n<=M;n++){
-					float sumRe=0,sumIm=0;
-					
-					for(int j=0;j<y;j++){
-						float tmp=plm[j][n][m]*dlat*lcos[j];
-						sumRe+=tmp*fftRe[j][m];
-						sumIm+=tmp*fftIm[j][m];
-					}
-					
-					rdata[l][k][n][m]=sumRe;
-					idata[l][k][n][m]=sumIm;
-				}}
-			}
+		int T=t,Z=z;	boolean tfirst=v.isTFirst();
+		
+		// levels and time steps are transformed in parallel
+		ConcurrentUtil.parallelFor(T*Z,1,(s,e)->{
+			float[][] grid=tfirst?null:new float[y][x];
+			float[][] cRe =tfirst?null:new float[M+1][M+1];
+			float[][] cIm =tfirst?null:new float[M+1][M+1];
+			float[][] fRe =new float[M+1][y];
+			float[][] fIm =new float[M+1][y];
 			
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++){
-				float[][] fftRe=new float[y][];
-				float[][] fftIm=new float[y][];
-				
-				// FFT along jth latitude, start from South Pole.
-				// transformation from grid space to spectrum space
-				for(int j=0;j<y;j++){
-					float[]  fftBuf=new float[x];
-					for(int i=0;i<x;i++) fftBuf[i]=vdata[k][j][i][l];
-					ff.fftMixedRadix(fftBuf);
-					fftRe[j]=ff.getResultRealPartCopy();
-					fftIm[j]=ff.getResultImagePartCopy();
-				}
+			for(int lk=s;lk<e;lk++){
+				int l=lk/Z,k=lk%Z;
 				
-				for(int m=0;m<=M;m++){
-				for(int n=m;n<=M;n++){
-					float sumRe=0,sumIm=0;
+				if(tfirst) analyse(vdata[l][k],fRe,fIm,rdata[l][k],idata[l][k]);
+				else{
+					for(int j=0;j<y;j++)
+					for(int i=0;i<x;i++) grid[j][i]=vdata[k][j][i][l];
 					
-					for(int j=0;j<y;j++){
-						float tmp=plm[j][n][m]*dlat*lcos[j];
-						sumRe+=tmp*fftRe[j][m];
-						sumIm+=tmp*fftIm[j][m];
-					}
+					analyse(grid,fRe,fIm,cRe,cIm);
 					
-					rdata[k][n][m][l]=sumRe;
-					idata[k][n][m][l]=sumIm;
-				}}
+					for(int n=0;n<=M;n++)
+					for(int m=0;m<=n;m++){
+						rdata[k][n][m][l]=cRe[n][m];
+						idata[k][n][m][l]=cIm[n][m];
+					}
+				}
 			}
-		}
+		});
+		
 		System.out.println("cSpectrumCoefficient: "+(System.nanoTime()-tt)/1000000000.0+" sec");
 		
 		nr.setTRange(r);	nr.setZRange(r);
@@ -191,7 +173,29 @@ public final class SphericalHarmonicExpansion extends GeoFluidApplication{
 	 * 
 	 * @return	the reconstructed variable (triangle truncated by M)
 	 */
-	public Variable reconstruct(Variable re,Variable im){
+	public Variable reconstruct(Variable re,Variable im){ return reconstruct(re,im,false,"reconstruct");}
+	
+	
+	public Variable solvePoissonEquation(Variable v){
+		Variable[] co=cSpectrumCoefficient(v);
+		return reconstructL(co[0],co[1]);
+	}
+	
+	
+	public Variable reconstructL(Variable re,Variable im){ return reconstruct(re,im,true,"reconstructL");}
+	
+	
+	/*** helper methods ***/
+	
+	/**
+	 * reconstruct a variable from its spectral coefficient
+	 * 
+	 * @param re		real part of the coefficient
+	 * @param im		image part of the coefficient
+	 * @param invLap	whether to apply the inverse of Laplacian, skipping n==0
+	 * @param name		name printed with the elapsed time
+	 */
+	private Variable reconstruct(Variable re,Variable im,boolean invLap,String name){
 		if(!re.isLike(im)) throw new IllegalArgumentException("dimensions not same");
 		
 		checkM();
@@ -209,91 +213,36 @@ public final class SphericalHarmonicExpansion extends GeoFluidApplication{
 		float[][][][] cdata=rc.getData();
 		long tt=System.nanoTime();
 		
-		if(re.isTFirst()){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++){
-				float[][] fftRe=new float[y][M+1];
-				float[][] fftIm=new float[y][M+1];
-				
-				for(int m=0;m<=M;m++){
-				for(int n=m;n<=M;n++){
-					float rr=rdata[l][k][n][m];
-					float ii=idata[l][k][n][m];
-					
-					for(int j=0;j<y;j++){
-						float tmp=plm[j][n][m];
-						
-						fftRe[j][m]+=tmp*rr;
-						fftIm[j][m]+=tmp*ii;
-					}
-				}}
-				
-				// inverse FFT along each latitude
-				// transform from spetrum space to grid space
-				// only real part are needed (stored)
-				for(int j=0;j<y;j++){
-					float[] tmpRe=new float[x];
-					float[] tmpIm=new float[x];
-					// padding fftRe (fftIm) to tmpRe (tmpIm)
-					// to match the length of x
-					tmpRe[0]=fftRe[j][0];
-					for(int i=1;i<=M;i++){
-						tmpRe[i]=fftRe[j][i];
-						tmpIm[i]=fftIm[j][i];
-						tmpRe[x-i]= fftRe[j][i];
-						tmpIm[x-i]=-fftIm[j][i];
-					}
-					
-					ff.ifftMixedRadix(tmpRe,tmpIm);
-					
-					System.arraycopy(ff.getResultRealPart(),0,cdata[l][k][j],0,x);
-				}
-			}
+		int T=t,Z=z;	boolean tfirst=re.isTFirst();
+		
+		// levels and time steps are transformed in parallel
+		ConcurrentUtil.parallelFor(T*Z,1,(s,e)->{
+			float[][] grid=tfirst?null:new float[y][x];
+			float[][] cRe =tfirst?null:new float[M+1][M+1];
+			float[][] cIm =tfirst?null:new float[M+1][M+1];
+			float[][] fRe =new float[y][M+1];
+			float[][] fIm =new float[y][M+1];
 			
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++){
-				float[][] fftRe=new float[y][M+1];
-				float[][] fftIm=new float[y][M+1];
-				
-				for(int m=0;m<=M;m++){
-				for(int n=m;n<=M;n++){
-					float rr=rdata[k][n][m][l];
-					float ii=idata[k][n][m][l];
-					
-					for(int j=0;j<y;j++){
-						float tmp=plm[j][n][m];
-						
-						fftRe[j][m]+=tmp*rr;
-						fftIm[j][m]+=tmp*ii;
-					}
-				}}
+			for(int lk=s;lk<e;lk++){
+				int l=lk/Z,k=lk%Z;
 				
-				// inverse FFT along each latitude
-				// transform from spetrum space to grid space
-				// only real part are needed (stored)
-				for(int j=0;j<y;j++){
-					float[] tmpRe=new float[x];
-					float[] tmpIm=new float[x];
-					// padding fftRe (fftIm) to tmpRe (tmpIm)
-					// to match the length of x
-					tmpRe[0]=fftRe[j][0];
-					for(int i=1;i<=M;i++){
-						tmpRe[i]=fftRe[j][i];
-						tmpIm[i]=fftIm[j][i];
-						tmpRe[x-i]= fftRe[j][i];
-						tmpIm[x-i]=-fftIm[j][i];
+				if(tfirst) synthesize(rdata[l][k],idata[l][k],invLap,fRe,fIm,cdata[l][k]);
+				else{
+					for(int n=0;n<=M;n++)
+					for(int m=0;m<=n;m++){
+						cRe[n][m]=rdata[k][n][m][l];
+						cIm[n][m]=idata[k][n][m][l];
 					}
 					
-					ff.ifftMixedRadix(tmpRe,tmpIm);
-					float[] rec=ff.getResultRealPart();
+					synthesize(cRe,cIm,invLap,fRe,fIm,grid);
 					
-					for(int i=0;i<x;i++)
-					cdata[k][j][i][l]=rec[i];
+					for(int j=0;j<y;j++)
+					for(int i=0;i<x;i++) cdata[k][j][i][l]=grid[j][i];
 				}
 			}
-		}
-		System.out.println("reconstruct: "+(System.nanoTime()-tt)/1000000000.0+" sec");
+		});
+		
+		System.out.println(name+": "+(System.nanoTime()-tt)/1000000000.0+" sec");
 		
 		nr.setTRange(r);	nr.setZRange(r);
 		
@@ -303,131 +252,135 @@ public final class SphericalHarmonicExpansion extends GeoFluidApplication{
 		return rc;
 	}
 	
-	
-	public Variable solvePoissonEquation(Variable v){
-		Variable[] co=cSpectrumCoefficient(v);
-		return reconstructL(co[0],co[1]);
-	}
-	
-	
-	public Variable reconstructL(Variable re,Variable im){
-		if(!re.isLike(im))
-		throw new IllegalArgumentException("dimensions not same");
-		
-		checkM();
-		
-		t=re.getTCount();	z=re.getZCount();
-		
-		Range nr=new Range(t,z,y,x);	Range r=re.getRange();
+	/**
+	 * transform a horizontal slice from grid space to spectrum space
+	 * 
+	 * @param grid	data of the slice, [y][x]
+	 * @param fRe	buffer for real  part of Fourier coefficients, [M+1][y]
+	 * @param fIm	buffer for image part of Fourier coefficients, [M+1][y]
+	 * @param cRe	real  part of spectrum coefficients, [n][m]
+	 * @param cIm	image part of spectrum coefficients, [n][m]
+	 */
+	private void analyse(float[][] grid,float[][] fRe,float[][] fIm,float[][] cRe,float[][] cIm){
+		FastFourier ff=FastFourier.getPlan(x);
 		
-		Variable rc=new Variable(re.getName().replace("shre","rec"),re.isTFirst(),nr);
-		rc.setUndef(re.getUndef());
-		rc.setCommentAndUnit("reconstructed "+re.getName().replace("shre",""));
+		// FFT along jth latitude, start from South Pole.
+		for(int j=0;j<y;j++){
+			ff.fftMixedRadix(grid[j]);
+			
+			float[] re=ff.getResultRealPart();
+			float[] im=ff.getResultImagePart();
+			
+			for(int m=0;m<=M;m++){ fRe[m][j]=re[m]; fIm[m][j]=im[m];}
+		}
 		
-		float[][][][] rdata=re.getData();
-		float[][][][] idata=im.getData();
-		float[][][][] cdata=rc.getData();
-		long tt=System.nanoTime();
+		float[] sr=new float[H],si=new float[H],ar=new float[H],ai=new float[H];
 		
-		if(re.isTFirst()){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++){
-				float[][] fftRe=new float[y][M+1];
-				float[][] fftIm=new float[y][M+1];
-				
-				for(int m=0;m<=M;m++)
-				for(int n=m;n<=M;n++)
-				if(n!=0){	// skip n==0
-					float co=-n*(n+1)/REarth/REarth;
-					float rr=rdata[l][k][n][m];
-					float ii=idata[l][k][n][m];
+		for(int m=0;m<=M;m++){
+			float[] fr=fRe[m],fi=fIm[m];
+			
+			if(folded){
+				// fold the two hemispheres into symmetric (s) and antisymmetric (a) parts
+				for(int j=0;j<H;j++){
+					int jj=y-1-j;
 					
-					for(int j=0;j<y;j++){
-						float tmp=plm[j][n][m]/co;
-						
-						fftRe[j][m]+=tmp*rr;
-						fftIm[j][m]+=tmp*ii;
-					}
+					sr[j]=fr[j]+fr[jj];	ar[j]=fr[j]-fr[jj];
+					si[j]=fi[j]+fi[jj];	ai[j]=fi[j]-fi[jj];
 				}
 				
-				// inverse FFT along each latitude
-				// transform from spetrum space to grid space
-				// only real part are needed (stored)
-				for(int j=0;j<y;j++){
-					float[] tmpRe=new float[x];
-					float[] tmpIm=new float[x];
-					// padding fftRe (fftIm) to tmpRe (tmpIm)
-					// with 0 to match the length of x
-					tmpRe[0]=fftRe[j][0];
-					for(int i=1;i<=M;i++){
-						tmpRe[i]=fftRe[j][i];
-						tmpIm[i]=fftIm[j][i];
-						tmpRe[x-i]= fftRe[j][i];
-						tmpIm[x-i]=-fftIm[j][i];
-					}
+				for(int n=m;n<=M;n++){
+					float[] w=wnm[m][n-m];
+					float[] pr=(n+m)%2==0?sr:ar;	// P(-u)=(-1)^(n+m)*P(u)
+					float[] pi=(n+m)%2==0?si:ai;
+					
+					float sumRe=0,sumIm=0;
+					
+					for(int j=0;j<H;j++){ sumRe+=w[j]*pr[j]; sumIm+=w[j]*pi[j];}
 					
-					ff.ifftMixedRadix(tmpRe,tmpIm);
+					if(y%2==1){ sumRe+=w[H]*fr[H]; sumIm+=w[H]*fi[H];}	// equator
 					
-					System.arraycopy(ff.getResultRealPart(),0,cdata[l][k][j],0,x);
+					cRe[n][m]=sumRe;
+					cIm[n][m]=sumIm;
 				}
+				
+			}else for(int n=m;n<=M;n++){
+				float[] w=wnm[m][n-m];
+				
+				float sumRe=0,sumIm=0;
+				
+				for(int j=0;j<y;j++){ sumRe+=w[j]*fr[j]; sumIm+=w[j]*fi[j];}
+				
+				cRe[n][m]=sumRe;
+				cIm[n][m]=sumIm;
+			}
+		}
+	}
+	
+	/**
+	 * transform a horizontal slice from spectrum space to grid space
+	 * 
+	 * @param cRe		real  part of spectrum coefficients, [n][m]
+	 * @param cIm		image part of spectrum coefficients, [n][m]
+	 * @param invLap	whether to apply the inverse of Laplacian, skipping n==0
+	 * @param fRe		buffer for real  part of Fourier coefficients, [y][M+1]
+	 * @param fIm		buffer for image part of Fourier coefficients, [y][M+1]
+	 * @param grid		data of the slice, [y][x]
+	 */
+	private void synthesize(float[][] cRe,float[][] cIm,boolean invLap,float[][] fRe,float[][] fIm,float[][] grid){
+		float[] rr=new float[M+1],ii=new float[M+1];
+		
+		for(int m=0;m<=M;m++){
+			for(int n=m;n<=M;n++){
+				float co=invLap&&n!=0?-n*(n+1)/REarth/REarth:1;
+				
+				rr[n]=invLap&&n==0?0:cRe[n][m]/co;	// skip n==0
+				ii[n]=invLap&&n==0?0:cIm[n][m]/co;
 			}
 			
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++){
-				float[][] fftRe=new float[y][M+1];
-				float[][] fftIm=new float[y][M+1];
+			int J=folded?H+y%2:y;
+			
+			for(int j=0;j<J;j++){
+				float eRe=0,eIm=0,oRe=0,oIm=0;	// even and odd parts of n+m
 				
-				for(int m=0;m<=M;m++)
-				for(int n=m;n<=M;n++)
-				if(n!=0){	// skip n==0
-					float co=-n*(n+1)/REarth/REarth;
-					float rr=rdata[k][n][m][l];
-					float ii=idata[k][n][m][l];
+				for(int n=m;n<=M;n++){
+					float p=pnm[m][n-m][j];
 					
-					for(int j=0;j<y;j++){
-						float tmp=plm[j][n][m]/co;
-						
-						fftRe[j][m]+=tmp*rr;
-						fftIm[j][m]+=tmp*ii;
-					}
+					if((n+m)%2==0){ eRe+=p*rr[n]; eIm+=p*ii[n];}
+					else          { oRe+=p*rr[n]; oIm+=p*ii[n];}
 				}
 				
-				// inverse FFT along each latitude
-				// transform from spetrum space to grid space
-				// only real part are needed (stored)
-				for(int j=0;j<y;j++){
-					float[] tmpRe=new float[x];
-					float[] tmpIm=new float[x];
-					// padding fftRe (fftIm) to tmpRe (tmpIm)
-					// with 0 to match the length of x
-					tmpRe[0]=fftRe[j][0];
-					for(int i=1;i<=M;i++){
-						tmpRe[i]=fftRe[j][i];
-						tmpIm[i]=fftIm[j][i];
-						tmpRe[x-i]= fftRe[j][i];
-						tmpIm[x-i]=-fftIm[j][i];
-					}
-					
-					ff.ifftMixedRadix(tmpRe,tmpIm);
-					float[] rec=ff.getResultRealPart();
-					
-					for(int i=0;i<x;i++)
-					cdata[k][j][i][l]=rec[i];
+				fRe[j][m]=eRe+oRe;
+				fIm[j][m]=eIm+oIm;
+				
+				if(folded&&j<H){
+					fRe[y-1-j][m]=eRe-oRe;
+					fIm[y-1-j][m]=eIm-oIm;
 				}
 			}
 		}
-		System.out.println("reconstructL: "+(System.nanoTime()-tt)/1000000000.0+" sec");
 		
-		nr.setTRange(r);	nr.setZRange(r);
+		FastFourier ff=FastFourier.getPlan(x);
 		
-		nr.getYRange()[0]=r.getYRange()[0];	nr.getYRange()[1]=r.getYRange()[0]+y-1;
-		nr.getXRange()[0]=r.getXRange()[0];	nr.getXRange()[1]=r.getXRange()[0]+x-1;
+		float[] tmpRe=new float[x];
+		float[] tmpIm=new float[x];
 		
-		return rc;
+		// inverse FFT along each latitude, only real part are needed (stored)
+		for(int j=0;j<y;j++){
+			// padding fftRe (fftIm) to tmpRe (tmpIm) to match the length of x
+			tmpRe[0]=fRe[j][0];
+			for(int i=1;i<=M;i++){
+				tmpRe[i]=fRe[j][i];
+				tmpIm[i]=fIm[j][i];
+				tmpRe[x-i]= fRe[j][i];
+				tmpIm[x-i]=-fIm[j][i];
+			}
+			
+			ff.ifftMixedRadix(tmpRe,tmpIm);
+			
+			System.arraycopy(ff.getResultRealPart(),0,grid[j],0,x);
+		}
 	}
 	
-	
 	/**
 	 * check whether the triangle truncation number M has been set
 	 */
@@ -11,6 +11,7 @@ import miniufo.application.GeoFluidApplication.BoundaryCondition;
 import miniufo.basic.ArrayUtil;
 import miniufo.basic.InterpolationModel;
 import miniufo.basic.InterpolationModel.Type;
+import miniufo.concurrent.ConcurrentUtil;
 import miniufo.descriptor.DataDescriptor;
 import miniufo.descriptor.SpatialCoordinate;
 import miniufo.diagnosis.Range;
@@ -43,6 +44,8 @@ public abstract class ContourSpatialModel{
 	protected Variable tr       =null;	// tracer in contour coordinate
 	protected Variable areas    =null;	// areas enclosed by each contour (contour coordinate)
 	
+	protected float[][][][] tracerS=null;	// tracer refined by resRatio, cached per level until a new tracer is set, [z][t][y][x]
+	
 	protected DataDescriptor dd =null;	// describing the grids of the tracer data
 	
 	protected BoundaryCondition BCy=BoundaryCondition.Fixed;	// BCy for y
@@ -75,6 +78,7 @@ public abstract class ContourSpatialModel{
 		setResolutionRatio(resRatio);
 		
 		this.tracer=tracer;
+		this.tracerS=null;
 		this.cntrs =newContours(numOfC,increSToN);
 		this.grdxy2=cSquaredTracerGradient();
 		
@@ -110,6 +114,7 @@ public abstract class ContourSpatialModel{
 		setResolutionRatio(resRatio);
 		
 		this.tracer=tracer;
+		this.tracerS=null;
 		this.cntrs =newContours(csouth,cnorth,inc);
 		this.grdxy2=cSquaredTracerGradient();
 		
@@ -138,6 +143,7 @@ public abstract class ContourSpatialModel{
 		setResolutionRatio(resRatio);
 		
 		this.tracer=tracer;
+		this.tracerS=null;
 		
 		// to compute the area within each contour
 		return cEquivalentYs(integrateWithinContour1(cVals,increSToN,0,0),tracer.getUndef());
@@ -403,6 +409,13 @@ public abstract class ContourSpatialModel{
 	
 	
 	/*** getor and setor ***/
+	
+	/**
+	 * release the cached tracer refined by resRatio, e.g., after the tracer is modified
+	 * in place or when no more integration is needed
+	 */
+	public void clearRefinedTracer(){ tracerS=null;}
+	
 	public double getXRange(){ return rngX;}
 	
 	public double getYRange(){ return rngY;}
@@ -468,6 +481,10 @@ public abstract class ContourSpatialModel{
      *   with  rho as integrand:   mass      = integral(rho)  dS within each contour
      *   with zeta as integrand: circulation = integral(zeta) dS within each contour
      * 
+     * The tracer refined by resRatio is cached per level and reused by the following
+     * area, mass and circulation integrations.  The cache is reset when a new tracer is
+     * set, and should be cleared by clearRefinedTracer() if the tracer is modified in place.
+     *
      * @param	v			integrand variable
      * @param	re			result of integration that could be stored if not null
      * @param	selfAdjust	whether to automatically adjust contour interval each time
@@ -481,159 +498,86 @@ public abstract class ContourSpatialModel{
 		if(tracer.getRange().getYRange()[0]!=1||tracer.getRange().getXRange()[0]!=1)
 		throw new IllegalArgumentException("using tracer over the entire domain");
 		
-		int y=ydefS.length;
-		int x=xdefS.length;
+		int t=tracer.getTCount();
+		int z=tracer.getZCount();
+		
+		if(tracerS==null) tracerS=new float[z][t][][];
 		
+		// levels are independent of each other and are integrated in parallel
+		ConcurrentUtil.parallelFor(t*z,1,(s,e)->{
+			for(int n=s;n<e;n++) integrateLevel(n/z,n%z,v,re,selfAdjust,storeVar);
+		});
+	}
+	
+	/**
+     * Areal-integrator over a single level, see integrateWithinContour1.
+     *
+     * @param	l			t-index
+     * @param	k			z-index
+     */
+	private void integrateLevel(int l,int k,Variable v,Variable re,boolean selfAdjust,String storeVar){
 		float undef=tracer.getUndef();
 		
-		Type xType=Type.LINEAR;
-		Type yType=Type.LINEAR;
+		if(tracerS[k][l]==null) tracerS[k][l]=refine(tracer,l,k);
 		
-		if(BCx==BoundaryCondition.Periodic) xType=Type.PERIODIC_LINEAR;
-		if(BCy==BoundaryCondition.Periodic) yType=Type.PERIODIC_LINEAR;
+		float[][] tdata=tracerS[k][l];
+		float[][] vdata=(v==null?null:refine(v,l,k));
+		float[] extreme=ArrayUtil.getExtrema(tdata,undef);
 		
-		if(tracer.isTFirst()){
-			for(int l=0,L=tracer.getTCount();l<L;l++)
-			for(int k=0,K=tracer.getZCount();k<K;k++){
-				float[][] vbuff=(v==null?null:v.getData()[l][k]);
-				float[][] vdata=(v==null?null:InterpolationModel.interp2D(vbuff,x,y,xType,yType,undef));
-				float[][] tbuff=tracer.getData()[l][k];
-				float[][] tdata=InterpolationModel.interp2D(tbuff,x,y,xType,yType,undef);
-				float[] extreme=ArrayUtil.getExtrema(tdata,undef);
+		double[] integral=contourIntegral(cntrs[k][l],tdata,vdata,storeVar);
+		
+		checkDataAtEnds(integral,cntrs[k][l].getValues(),undef,extreme);
+		
+		if(vdata==null){	// area
+			checkArea(integral,undef);
+			String info=checkMonotonicity(integral,cntrs[k][l].getValues(),undef,extreme,storeVar);
+			
+			cntrs[k][l].setAreas(integral);
+			cntrs[k][l].setYEs(cEquivalentYs(integral,undef));
+			
+			if(info!=null||selfAdjust){
+				if(!selfAdjust) System.out.println("adjusting");
 				
-				double[] integral=contourIntegral(cntrs[k][l],tdata,vdata,storeVar);
+				cntrs[k][l]=adjustContours(cntrs[k][l],undef);
+				integral=contourIntegral(cntrs[k][l],tdata,vdata,storeVar);
 				
 				checkDataAtEnds(integral,cntrs[k][l].getValues(),undef,extreme);
+				checkArea(integral,undef);
+				info=checkMonotonicity(integral,cntrs[k][l].getValues(),undef,extreme,storeVar);
 				
-				if(vdata==null){	// area
-					checkArea(integral,undef);
-					String info=checkMonotonicity(integral,cntrs[k][l].getValues(),undef,extreme,storeVar);
-					
-					cntrs[k][l].setAreas(integral);
-					cntrs[k][l].setYEs(cEquivalentYs(integral,undef));
-					
-					if(info!=null||selfAdjust){
-						if(!selfAdjust) System.out.println("adjusting");
-						
-						cntrs[k][l]=adjustContours(cntrs[k][l],undef);
-						integral=contourIntegral(cntrs[k][l],tdata,vdata,storeVar);
-						
-						checkDataAtEnds(integral,cntrs[k][l].getValues(),undef,extreme);
-						checkArea(integral,undef);
-						info=checkMonotonicity(integral,cntrs[k][l].getValues(),undef,extreme,storeVar);
-						
-						if(info!=null) throw new IllegalArgumentException(
-							"at ttag ("+l+") and ztag ("+k+") "+
-							"still found non-monotonic contour-area relation after adjustment\n"+info
-						);
-						
-						cntrs[k][l].setAreas(integral);
-						cntrs[k][l].setYEs(cEquivalentYs(integral,undef));
-					}
-					
-				}else{
-					switch(storeVar){
-					case "M":{
-						String info=checkMonotonicity(integral,cntrs[k][l].getValues(),undef,extreme,"M");
-						
-						if(info!=null) throw new IllegalArgumentException(
-							"at ttag ("+l+") and ztag ("+k+") found non-monotonic contour-Mass relation\n"+info
-						);
-						
-						cntrs[k][l].setMass(integral); break;
-					}
-					case "C":{
-						String info=checkMonotonicity(integral,cntrs[k][l].getValues(),undef,extreme,"C");
-						
-						if(info!=null) throw new IllegalArgumentException(
-							"at ttag ("+l+") and ztag ("+k+") found non-monotonic contour-circulation relation\n"+info
-						);
-						
-						cntrs[k][l].setCirculation(integral); break;
-					}}
-				}
+				if(info!=null) throw new IllegalArgumentException(
+					"at ttag ("+l+") and ztag ("+k+") "+
+					"still found non-monotonic contour-area relation after adjustment\n"+info
+				);
 				
-				if(re!=null){
-					float[] rdata=re.getData()[l][k][0];
-					for(int c=0,C=cntrs[k][l].getContourNumber();c<C;c++) rdata[c]=(float)(integral[c]);
-				}
+				cntrs[k][l].setAreas(integral);
+				cntrs[k][l].setYEs(cEquivalentYs(integral,undef));
 			}
 			
 		}else{
-			for(int l=0,L=tracer.getTCount();l<L;l++)
-			for(int k=0,K=tracer.getZCount();k<K;k++){
-				float[][] tbuff=new float[tracer.getYCount()][tracer.getXCount()];
-				float[][] vbuff=(v==null?null:new float[tracer.getYCount()][tracer.getXCount()]);
-				
-				for(int j=0,J=tracer.getYCount();j<J;j++)
-				for(int i=0,I=tracer.getXCount();i<I;i++){
-					if(v!=null)
-					vbuff[j][i]=     v.getData()[k][j][i][l];
-					tbuff[j][i]=tracer.getData()[k][j][i][l];
-				}
-				
-				float[][] vdata=(v==null?null:InterpolationModel.interp2D(vbuff,x,x,xType,yType,undef));
-				float[][] tdata=InterpolationModel.interp2D(tbuff,x,y,xType,yType,undef);
-				float[] extreme=ArrayUtil.getExtrema(tdata,undef);
+			switch(storeVar){
+			case "M":{
+				String info=checkMonotonicity(integral,cntrs[k][l].getValues(),undef,extreme,"M");
 				
-				double[] integral=contourIntegral(cntrs[k][l],tdata,vdata,storeVar);
+				if(info!=null) throw new IllegalArgumentException(
+					"at ttag ("+l+") and ztag ("+k+") found non-monotonic contour-Mass relation\n"+info
+				);
 				
-				checkDataAtEnds(integral,cntrs[k][l].getValues(),undef,extreme);
+				cntrs[k][l].setMass(integral); break;
+			}
+			case "C":{
+				String info=checkMonotonicity(integral,cntrs[k][l].getValues(),undef,extreme,"C");
 				
-				if(vdata==null){	// area
-					checkArea(integral,undef);
-					String info=checkMonotonicity(integral,cntrs[k][l].getValues(),undef,extreme,storeVar);
-					
-					cntrs[k][l].setAreas(integral);
-					cntrs[k][l].setYEs(cEquivalentYs(integral,undef));
-					
-					if(info!=null||selfAdjust){
-						if(!selfAdjust) System.out.println("adjusting");
-						
-						cntrs[k][l]=adjustContours(cntrs[k][l],undef);
-						integral=contourIntegral(cntrs[k][l],tdata,vdata,storeVar);
-						
-						checkDataAtEnds(integral,cntrs[k][l].getValues(),undef,extreme);
-						checkArea(integral,undef);
-						info=checkMonotonicity(integral,cntrs[k][l].getValues(),undef,extreme,storeVar);
-						
-						if(info!=null) throw new IllegalArgumentException(
-							"at ttag ("+l+") and ztag ("+k+") "+
-							"still found non-monotonic contour-area relation after adjustment\n"+info
-						);
-						
-						cntrs[k][l].setAreas(integral);
-						cntrs[k][l].setYEs(cEquivalentYs(integral,undef));
-					}
-					
-				}else{
-					switch(storeVar){
-					case "M":{
-						String info=checkMonotonicity(integral,cntrs[k][l].getValues(),undef,extreme,"M");
-						
-						if(info!=null) throw new IllegalArgumentException(
-							"at ttag ("+l+") and ztag ("+k+") found non-monotonic contour-Mass relation\n"+info
-						);
-						
-						cntrs[k][l].setMass(integral); break;
-					}
-					case "C":{
-						String info=checkMonotonicity(integral,cntrs[k][l].getValues(),undef,extreme,"C");
-						
-						if(info!=null) throw new IllegalArgumentException(
-							"at ttag ("+l+") and ztag ("+k+") found non-monotonic contour-circulation relation\n"+info
-						);
-						
-						cntrs[k][l].setCirculation(integral); break;
-					}}
-				}
+				if(info!=null) throw new IllegalArgumentException(
+					"at ttag ("+l+") and ztag ("+k+") found non-monotonic contour-circulation relation\n"+info
+				);
 				
-				if(re!=null){
-					float[][] rdata=re.getData()[k][0];
-					for(int c=0,C=cntrs[k][l].getContourNumber();c<C;c++) rdata[c][l]=(float)(integral[c]);
-				}
-			}
+				cntrs[k][l].setCirculation(integral); break;
+			}}
 		}
+		
+		if(re!=null)
+		for(int c=0,C=cntrs[k][l].getContourNumber();c<C;c++) re.setValue(l,k,0,c,(float)(integral[c]));
 	}
 	
 	/**
@@ -704,9 +648,43 @@ public abstract class ContourSpatialModel{
 		dydefS=yres.getIncrements();
 	}
 	
+	/**
+     * Interpolate a level of a variable to the grids refined by resRatio.
+     *
+     * @param	v	a given variable (X-Y coordinates)
+     * @param	l	t-index
+     * @param	k	z-index
+     */
+	private float[][] refine(Variable v,int l,int k){
+		float[][] buf=null;
+		
+		if(v.isTFirst()&&!v.isFlat()) buf=v.getData()[l][k];
+		else{
+			int y=v.getYCount(),x=v.getXCount();
+			
+			buf=new float[y][x];
+			
+			for(int j=0;j<y;j++)
+			for(int i=0;i<x;i++) buf[j][i]=v.getValue(l,k,j,i);
+		}
+		
+		Type xType=Type.LINEAR;
+		Type yType=Type.LINEAR;
+		
+		if(BCx==BoundaryCondition.Periodic) xType=Type.PERIODIC_LINEAR;
+		if(BCy==BoundaryCondition.Periodic) yType=Type.PERIODIC_LINEAR;
+		
+		return InterpolationModel.interp2D(buf,xdefS.length,ydefS.length,xType,yType,tracer.getUndef());
+	}
+	
 	/**
      * The kernel of integration of a variable over each tracer contour.
      * 
+     * Each grid point is binned once (binary search) into the contour interval it
+     * belongs to, and the integrals are the cumulative sums of the bins, which
+     * costs O(grid x log C) instead of O(grid x C).  Non-monotonic contours are
+     * integrated by checking each contour for each grid point.
+     *
      * @param	ct		contours
      * @param	tdata	2D x-y field tracer   after possible interpolation
      * @param	vdata	2D x-y field variable after possible interpolation
@@ -718,6 +696,51 @@ public abstract class ContourSpatialModel{
 		
 		float undef=tracer.getUndef();
 		
+		boolean incre=ct.increaseSToN();
+		
+		double[] cts =ct.getValues();
+		
+		if(!isMonotonic(cts,incre)) return contourIntegralByCheck(ct,tdata,vdata);
+		
+		double[] rbuf=new double[C];
+		double[] bins=new double[C];	// bins[c] within (cts[c], cts[c+1]] for increasing contours
+		
+		for(int j=0;j<y;j++)
+		for(int i=0;i<x;i++) if(tdata[j][i]!=undef){
+			float tv=tdata[j][i];
+			
+			double dS=computeDS(i,j);
+			
+			if(vdata!=null) dS=vdata[j][i]*dS;
+			
+			if(incre?tv>=cts[0]:tv<=cts[0]) rbuf[0]+=dS;
+			
+			bins[binIndex(cts,tv,incre)]+=dS;
+		}
+		
+		// bins[0] holds the grids that are not beyond cts[1]
+		double sum=0;
+		
+		for(int c=C-1;c>0;c--){ sum+=bins[c]; rbuf[c]=sum;}
+		
+		return rbuf;
+	}
+	
+	/**
+     * The kernel of integration of a variable over each tracer contour,
+     * by checking each contour for each grid point.
+     *
+     * @param	ct		contours
+     * @param	tdata	2D x-y field tracer   after possible interpolation
+     * @param	vdata	2D x-y field variable after possible interpolation
+     */
+	private double[] contourIntegralByCheck(Contours ct,float[][] tdata,float[][] vdata){
+		int C=ct.getContourNumber();
+		int x=xdefS.length;
+		int y=ydefS.length;
+		
+		float undef=tracer.getUndef();
+		
 		double[] cts =ct.getValues();
 		double[] rbuf=new double[C];
 		
@@ -768,6 +791,32 @@ public abstract class ContourSpatialModel{
 		return rbuf;
 	}
 	
+	/**
+     * Whether the contours are monotonic in the given direction.
+     */
+	private static boolean isMonotonic(double[] cts,boolean incre){
+		for(int c=1,C=cts.length;c<C;c++) if(incre?cts[c]<cts[c-1]:cts[c]>cts[c-1]) return false;
+		
+		return true;
+	}
+	
+	/**
+     * Index of the contour interval of a given tracer value, that is, the largest c in [1, C)
+     * with cts[c] < tv (cts[c] > tv for decreasing contours), or 0 if there is no such c.
+     */
+	private static int binIndex(double[] cts,float tv,boolean incre){
+		int lo=0,hi=cts.length-1;
+		
+		while(lo<hi){
+			int mid=(lo+hi+1)>>>1;
+			
+			if(incre?cts[mid]<tv:cts[mid]>tv) lo=mid;
+			else hi=mid-1;
+		}
+		
+		return lo;
+	}
+	
 	/**
      * Mapping a given contour to area.
      * 
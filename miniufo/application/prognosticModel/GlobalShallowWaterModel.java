@@ -171,7 +171,7 @@ public final class GlobalShallowWaterModel{
 	public void integration(int step,int interval,String output){
 		System.out.println("\nstart integration...");
 		
-		CtlDataWriteStream cdws=new CtlDataWriteStream(output);
+		CtlDataWriteStream cdws=new CtlDataWriteStream(output);	cdws.setAsync(6);
 		
 		int tag1=1,tag2=0;
 		
@@ -14,6 +14,7 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.ToDoubleFunction;
 import java.util.stream.Stream;
+import miniufo.concurrent.ConcurrentUtil;
 import miniufo.descriptor.DataDescriptor;
 import miniufo.diagnosis.Range;
 import miniufo.diagnosis.SpatialModel;
@@ -22,6 +23,7 @@ import miniufo.lagrangian.AttachedMeta;
 import miniufo.lagrangian.LagrangianUtil;
 import miniufo.lagrangian.Particle;
 import miniufo.lagrangian.Record;
+import miniufo.lagrangian.RecordIndex;
 import miniufo.lagrangian.Typhoon;
 import miniufo.lagrangian.Typhoon.TYPE;
 import miniufo.statistics.StatisticsUtil;
@@ -454,9 +456,85 @@ public final class BinningStatistics{
 	}
 	
 	
+	/**
+     * Averaging the Record data within a radius of each grid point.
+     * The records are queried from a spatial index so that a record can be
+     * counted by several grids if the radius is larger than half the grid size.
+     *
+     * @param	idx		a spatial index of the Records
+     * @param	radius	radius of the bins (m)
+     * @param	RcToD	a function that maps a Record to a Double as data
+     * @param	cond	a condition that the Record is accepted
+     */
+	public Variable binningDataMeanWithinRadius(RecordIndex idx,float radius,ToDoubleFunction<Record> RcToD,Predicate<Record> cond){
+		Variable var=new Variable("ave",new Range(1,1,dd.getYCount(),dd.getXCount()));
+		var.setUndef(undef);
+		
+		binningWithinRadius(idx,radius,RcToD,cond,var,true);
+		
+		return var;
+	}
+	
+	/**
+     * Counting the Records within a radius of each grid point.
+     *
+     * @param	idx		a spatial index of the Records
+     * @param	radius	radius of the bins (m)
+     * @param	cond	a condition that the Record is accepted
+     */
+	public Variable binningCountWithinRadius(RecordIndex idx,float radius,Predicate<Record> cond){
+		Variable var=new Variable("count",new Range(1,1,dd.getYCount(),dd.getXCount()));
+		var.setCommentAndUnit("binned count within "+radius+" m (1)");
+		var.setUndef(undef);
+		
+		binningWithinRadius(idx,radius,r->1.0,cond,var,false);
+		
+		return var;
+	}
+	
+	
+	
 	
 	/*** helper methods ***/
 	
+	/**
+	 * Binning the Records within a radius of each grid for t-invariant grid template.
+	 *
+     * @param	idx			a spatial index of the Records
+     * @param	radius		radius of the bins (m)
+     * @param	RcToF		a function that maps a Record to a Float as data
+     * @param	cond		a condition that the Record is accepted
+     * @param	var			variable need to store the result
+     * @param	ave			average or accumulate the data
+	 */
+	private void binningWithinRadius(RecordIndex idx,float radius,ToDoubleFunction<Record> RcToD,Predicate<Record> cond,Variable var,boolean ave){
+		if(dd.getTCount()!=1) throw new IllegalArgumentException("T-count should be 1");
+		if(radius<=0) throw new IllegalArgumentException("radius should be positive");
+		
+		float[] xdef=dd.getXDef().getSamples();
+		float[] ydef=dd.getYDef().getSamples();
+		
+		float[][] rdata=var.getData()[0][0];
+		
+		ConcurrentUtil.parallelFor(dd.getYCount(),1,(s,e)->{
+			for(int j=s;j<e;j++)
+			for(int i=0,I=dd.getXCount();i<I;i++){
+				double sum=0;	int count=0;
+				
+				for(int id:idx.queryRadius(xdef[i],ydef[j],radius)){
+					Record r=idx.getRecord(id);
+					
+					double data=RcToD.applyAsDouble(r);
+					
+					if(data!=undef&&cond.test(r)){ sum+=data; count++;}
+				}
+				
+				if(count!=0) rdata[j][i]=(float)(ave?sum/count:sum);
+				else if(maskUndef) rdata[j][i]=undef;
+			}
+		});
+	}
+	
 	/**
 	 * Counting a single Record accumulatively for t-invariant grid template.
 	 * 
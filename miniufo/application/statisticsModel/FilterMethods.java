@@ -6,6 +6,7 @@
  */
 package miniufo.application.statisticsModel;
 
+import miniufo.concurrent.ConcurrentUtil;
 import miniufo.diagnosis.MDate;
 import miniufo.diagnosis.Range;
 import miniufo.diagnosis.Variable;
@@ -430,115 +431,48 @@ public final class FilterMethods extends StatisticsApplication{
 	public static void FFTFilter(Variable v,Dimension D,int... Ks){
 		int t=v.getTCount(),	z=v.getZCount(),	y=v.getYCount(),	x=v.getXCount();
 		
+		boolean tfirst=v.isTFirst();
+		
 		float[][][][] vdata=v.getData();
 		
+		int[] cnts={t,z,y,x};	// counts of [t, z, y, x]
+		int d;					// index of D in [t, z, y, x]
+		
 		switch(D){
-		case T:
-			if(v.isTFirst()){
-				float[] buf=new float[t];
-				float[] res=new float[t];
-				
-				for(int k=0;k<z;k++)
-				for(int j=0;j<y;j++)
-				for(int i=0;i<x;i++){
-					for(int l=0;l<t;l++) buf[l]=vdata[l][k][j][i];
-					FilterModel.FFTFilter(buf,res,Ks);
-					for(int l=0;l<t;l++) vdata[l][k][j][i]=res[l];
-				}
-				
-			}else{
-				float[] res=new float[t];
-				
-				for(int k=0;k<z;k++)
-				for(int j=0;j<y;j++)
-				for(int i=0;i<x;i++){
-					FilterModel.FFTFilter(vdata[k][j][i],res,Ks);
-					System.arraycopy(res,0,vdata[k][j][i],0,t);
-				}
-			}
-			break;
-			
-		case X:
-			if(v.isTFirst()){
-				float[] res=new float[x];
-				
-				for(int l=0;l<t;l++)
-				for(int k=0;k<z;k++)
-				for(int j=0;j<y;j++){
-					FilterModel.FFTFilter(vdata[l][k][j],res,Ks);
-					System.arraycopy(res,0,vdata[l][k][j],0,x);
-				}
-				
-			}else{
-				float[] buf=new float[x];
-				float[] res=new float[x];
-				
-				for(int l=0;l<t;l++)
-				for(int k=0;k<z;k++)
-				for(int j=0;j<y;j++){
-					for(int i=0;i<x;i++) buf[i]=vdata[k][j][i][l];
-					FilterModel.FFTFilter(buf,res,Ks);
-					for(int i=0;i<x;i++) vdata[k][j][i][l]=res[i];
-				}
-			}
-			break;
+		case T: d=0; break;
+		case Z: d=1; break;
+		case Y: d=2; break;
+		case X: d=3; break;
+		default: throw new IllegalArgumentException("not supported dimension: "+D);
+		}
+		
+		int len=cnts[d],series=t*z*y*x/len;
+		
+		// series are filtered in parallel, each thread uses its own FFT plan
+		ConcurrentUtil.parallelFor(series,Math.max(1,4096/len),(s,e)->{
+			float[] buf=new float[len];
+			float[] res=new float[len];
 			
-		case Y:
-			if(v.isTFirst()){
-				float[] buf=new float[y];
-				float[] res=new float[y];
-				
-				for(int l=0;l<t;l++)
-				for(int k=0;k<z;k++)
-				for(int i=0;i<x;i++){
-					for(int j=0;j<y;j++) buf[j]=vdata[l][k][j][i];
-					FilterModel.FFTFilter(buf,res,Ks);
-					for(int j=0;j<y;j++) vdata[l][k][j][i]=res[j];
-				}
-				
-			}else{
-				float[] buf=new float[y];
-				float[] res=new float[y];
-				
-				for(int l=0;l<t;l++)
-				for(int k=0;k<z;k++)
-				for(int i=0;i<x;i++){
-					for(int j=0;j<y;j++) buf[j]=vdata[k][j][i][l];
-					FilterModel.FFTFilter(buf,res,Ks);
-					for(int j=0;j<y;j++) vdata[k][j][i][l]=res[j];
-				}
-			}
-			break;
+			int[] idx=new int[4];
 			
-		case Z:
-			if(v.isTFirst()){
-				float[] buf=new float[z];
-				float[] res=new float[z];
+			for(int n=s;n<e;n++){
+				for(int m=3,r=n;m>=0;m--) if(m!=d){ idx[m]=r%cnts[m]; r/=cnts[m];}
 				
-				for(int l=0;l<t;l++)
-				for(int j=0;j<y;j++)
-				for(int i=0;i<x;i++){
-					for(int k=0;k<z;k++) buf[k]=vdata[l][k][j][i];
-					FilterModel.FFTFilter(buf,res,Ks);
-					for(int k=0;k<z;k++) vdata[l][k][j][i]=res[k];
+				for(int m=0;m<len;m++){
+					idx[d]=m;
+					buf[m]=tfirst?vdata[idx[0]][idx[1]][idx[2]][idx[3]]:vdata[idx[1]][idx[2]][idx[3]][idx[0]];
 				}
 				
-			}else{
-				float[] buf=new float[z];
-				float[] res=new float[z];
+				FilterModel.FFTFilter(buf,res,Ks);
 				
-				for(int l=0;l<t;l++)
-				for(int j=0;j<y;j++)
-				for(int i=0;i<x;i++){
-					for(int k=0;k<z;k++) buf[k]=vdata[k][j][i][l];
-					FilterModel.FFTFilter(buf,res,Ks);
-					for(int k=0;k<z;k++) vdata[k][j][i][l]=res[k];
+				for(int m=0;m<len;m++){
+					idx[d]=m;
+					
+					if(tfirst) vdata[idx[0]][idx[1]][idx[2]][idx[3]]=res[m];
+					else vdata[idx[1]][idx[2]][idx[3]][idx[0]]=res[m];
 				}
 			}
-			break;
-
-		default: throw new IllegalArgumentException("not supported dimension: "+D);
-		}
+		});
 	}
 	
 	/**
@@ -24,6 +24,7 @@ import miniufo.diagnosis.Variable;
 import miniufo.lagrangian.AttachedMeta;
 import miniufo.lagrangian.Particle;
 import miniufo.lagrangian.Record;
+import miniufo.lagrangian.RecordIndex;
 import miniufo.lagrangian.StochasticModel;
 import miniufo.util.Region2D;
 import miniufo.util.TicToc;
@@ -50,13 +51,15 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
      * @param	cond	condition for a record to be the origin of pseudo-track
      * @param	tRad	maximum lead or lag count
      */
-	public SingleParticleStatResult cStatisticsByDavisTheory(Predicate<Record> cond,int tRad){
+	public SingleParticleStatResult cStatisticsByDavisTheory(Predicate<Record> cond,int tRad){ return cStatisticsByDavisTheory(selectOrigins(cond),tRad);}
+	
+	private SingleParticleStatResult cStatisticsByDavisTheory(Origins org,int tRad){
 		BinStatistics bd=new BinStatistics(tRad);
 		
-		bd.computeMean(cond);
-		bd.computeAutoCovariance(cond);
-		bd.computeDispersion(cond);
-		bd.computeDiffByVD(cond);
+		bd.computeMean(org);
+		bd.computeAutoCovariance(org);
+		bd.computeDispersion(org);
+		bd.computeDiffByVD(org);
 		
 		return bd.lsr;
 	}
@@ -67,13 +70,15 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
      * @param	cond	condition for a record to be the origin of pseudo-track
      * @param	tRad	maximum lead or lag count
      */
-	public SingleParticleStatResult cStatisticsByTaylorTheory(Predicate<Record> cond,int tRad){
+	public SingleParticleStatResult cStatisticsByTaylorTheory(Predicate<Record> cond,int tRad){ return cStatisticsByTaylorTheory(selectOrigins(cond),tRad);}
+	
+	private SingleParticleStatResult cStatisticsByTaylorTheory(Origins org,int tRad){
 		BinStatistics bd=new BinStatistics(tRad);
 		
-		bd.computeMean(cond);
-		bd.computeAutoCovariance(cond);
-		bd.computeDispersion(cond);
-		bd.computeDiffByVV(cond);
+		bd.computeMean(org);
+		bd.computeAutoCovariance(org);
+		bd.computeDispersion(org);
+		bd.computeDiffByVV(org);
 		
 		return bd.lsr;
 	}
@@ -84,13 +89,15 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
      * @param	cond	condition for a record to be the origin of pseudo-track
      * @param	tRad	maximum lead or lag count
      */
-	public SingleParticleStatResult cStatisticsByDispersionTheory(Predicate<Record> cond,int tRad){
+	public SingleParticleStatResult cStatisticsByDispersionTheory(Predicate<Record> cond,int tRad){ return cStatisticsByDispersionTheory(selectOrigins(cond),tRad);}
+	
+	private SingleParticleStatResult cStatisticsByDispersionTheory(Origins org,int tRad){
 		BinStatistics bd=new BinStatistics(tRad);
 		
-		bd.computeMean(cond);
-		bd.computeAutoCovariance(cond);
-		bd.computeDispersion(cond);
-		bd.computeDiffByDispDT(cond);
+		bd.computeMean(org);
+		bd.computeAutoCovariance(org);
+		bd.computeDispersion(org);
+		bd.computeDiffByDispDT(org);
 		
 		return bd.lsr;
 	}
@@ -101,19 +108,21 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
      * @param	cond	condition for a record to be the origin of pseudo-track
      * @param	tRad	maximum lead or lag count
      */
-	public SingleParticleStatResult[] cStatistics(Predicate<Record> cond,int tRad){
+	public SingleParticleStatResult[] cStatistics(Predicate<Record> cond,int tRad){ return cStatistics(selectOrigins(cond),tRad);}
+	
+	private SingleParticleStatResult[] cStatistics(Origins org,int tRad){
 		BinStatistics bd1=new BinStatistics(tRad);
 		
-		bd1.computeMean(cond);
-		bd1.computeAutoCovariance(cond);
-		bd1.computeDispersion(cond);
+		bd1.computeMean(org);
+		bd1.computeAutoCovariance(org);
+		bd1.computeDispersion(org);
 		
 		BinStatistics bd2=bd1.copy();
 		BinStatistics bd3=bd1.copy();
 		
-		bd1.computeDiffByVD(cond);
-		bd2.computeDiffByVV(cond);
-		bd3.computeDiffByDispDT(cond);
+		bd1.computeDiffByVD(org);
+		bd2.computeDiffByVV(org);
+		bd3.computeDiffByDispDT(org);
 		
 		return new SingleParticleStatResult[]{bd1.lsr,bd2.lsr,bd3.lsr};
 	}
@@ -229,6 +238,8 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 		float[] lons=dd.getXDef().getSamples();
 		float[] lats=dd.getYDef().getSamples();
 		
+		RecordIndex idx=new RecordIndex(ls,2f*bRad,false);
+		
 		List<Future<float[]>> ls=new ArrayList<>(dd.getXCount()-1);
 		ExecutorService es=ConcurrentUtil.defaultExecutor();
 		CompletionService<float[]> cs=new ExecutorCompletionService<>(es);
@@ -243,13 +254,12 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 				final int itag=i;
 				final int jtag=j;
 				
-				Predicate<Record> cond=rec->
-				new Region2D(lons[itag]-bRad,lats[jtag]-bRad,lons[itag]+bRad,lats[jtag]+bRad).inRange(rec.getXPos(),rec.getYPos());
+				Region2D region=new Region2D(lons[itag]-bRad,lats[jtag]-bRad,lons[itag]+bRad,lats[jtag]+bRad);
 				
 				if(ave)
-					ls.add(cs.submit(()->cStatisticsByDavisTheory(cond,tRad).getMean(str,end,minTracks)));
+					ls.add(cs.submit(()->cStatisticsByDavisTheory(selectOrigins(idx,region),tRad).getMean(str,end,minTracks)));
 				else
-					ls.add(cs.submit(()->cStatisticsByDavisTheory(cond,tRad).getMax(str,end,minTracks)));
+					ls.add(cs.submit(()->cStatisticsByDavisTheory(selectOrigins(idx,region),tRad).getMax(str,end,minTracks)));
 			}
 			
 			try{
@@ -328,6 +338,8 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 		float[] lons=dd.getXDef().getSamples();
 		float[] lats=dd.getYDef().getSamples();
 		
+		RecordIndex idx=new RecordIndex(ls,2f*bRad,false);
+		
 		List<Future<float[]>> ls=new ArrayList<>(dd.getXCount()-1);
 		ExecutorService es=ConcurrentUtil.defaultExecutor();
 		CompletionService<float[]> cs=new ExecutorCompletionService<>(es);
@@ -342,13 +354,12 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 				final int itag=i;
 				final int jtag=j;
 				
-				Predicate<Record> cond=rec->
-				new Region2D(lons[itag]-bRad,lats[jtag]-bRad,lons[itag]+bRad,lats[jtag]+bRad).inRange(rec.getXPos(),rec.getYPos());
+				Region2D region=new Region2D(lons[itag]-bRad,lats[jtag]-bRad,lons[itag]+bRad,lats[jtag]+bRad);
 				
 				if(ave)
-					ls.add(cs.submit(()->cStatisticsByTaylorTheory(cond,tRad).getMean(str,end,minTracks)));
+					ls.add(cs.submit(()->cStatisticsByTaylorTheory(selectOrigins(idx,region),tRad).getMean(str,end,minTracks)));
 				else
-					ls.add(cs.submit(()->cStatisticsByTaylorTheory(cond,tRad).getMax(str,end,minTracks)));
+					ls.add(cs.submit(()->cStatisticsByTaylorTheory(selectOrigins(idx,region),tRad).getMax(str,end,minTracks)));
 			}
 			
 			try{
@@ -427,6 +438,8 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 		float[] xdef=dd.getXDef().getSamples();
 		float[] ydef=dd.getYDef().getSamples();
 		
+		RecordIndex idx=new RecordIndex(ls,2f*bRad,false);
+		
 		List<Future<float[]>> ls=new ArrayList<>(dd.getXCount()-1);
 		ExecutorService es=ConcurrentUtil.defaultExecutor();
 		CompletionService<float[]> cs=new ExecutorCompletionService<>(es);
@@ -441,13 +454,12 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 				final int itag=i;
 				final int jtag=j;
 				
-				Predicate<Record> cond=rec->
-				new Region2D(xdef[itag]-bRad,ydef[jtag]-bRad,xdef[itag]+bRad,ydef[jtag]+bRad).inRange(rec.getXPos(),rec.getYPos());
+				Region2D region=new Region2D(xdef[itag]-bRad,ydef[jtag]-bRad,xdef[itag]+bRad,ydef[jtag]+bRad);
 				
 				if(ave)
-					ls.add(cs.submit(()->cStatisticsByDispersionTheory(cond,tRad).getMean(str,end,minTracks)));
+					ls.add(cs.submit(()->cStatisticsByDispersionTheory(selectOrigins(idx,region),tRad).getMean(str,end,minTracks)));
 				else
-					ls.add(cs.submit(()->cStatisticsByDispersionTheory(cond,tRad).getMax(str,end,minTracks)));
+					ls.add(cs.submit(()->cStatisticsByDispersionTheory(selectOrigins(idx,region),tRad).getMax(str,end,minTracks)));
 			}
 			
 			try{
@@ -538,6 +550,8 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 		float[] xdef=dd.getXDef().getSamples();
 		float[] ydef=dd.getYDef().getSamples();
 		
+		RecordIndex idx=new RecordIndex(ls,2f*bRad,false,ypos);
+		
 		List<Future<float[][]>> ls=new ArrayList<>(dd.getXCount()-1);
 		ExecutorService es=ConcurrentUtil.defaultExecutor();
 		CompletionService<float[][]> cs=new ExecutorCompletionService<>(es);
@@ -552,12 +566,11 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 				final int itag=i;
 				final int jtag=j;
 				
-				Predicate<Record> cond=rec->
-				new Region2D(xdef[itag]-bRad,ydef[jtag]-bRad,xdef[itag]+bRad,ydef[jtag]+bRad).inRange(rec.getXPos(),rec.getData(ypos));
+				Region2D region=new Region2D(xdef[itag]-bRad,ydef[jtag]-bRad,xdef[itag]+bRad,ydef[jtag]+bRad);
 				
 				if(ave)
 					ls.add(cs.submit(()->{
-						SingleParticleStatResult[] re=cStatistics(cond,tRad);
+						SingleParticleStatResult[] re=cStatistics(selectOrigins(idx,region),tRad);
 						return new float[][]{
 							re[0].getMean(str,end,minTracks),
 							re[1].getMean(str,end,minTracks),
@@ -566,7 +579,7 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 					}));
 				else
 					ls.add(cs.submit(()->{
-						SingleParticleStatResult[] re=cStatistics(cond,tRad);
+						SingleParticleStatResult[] re=cStatistics(selectOrigins(idx,region),tRad);
 						return new float[][]{
 							re[0].getMax(str,end,minTracks),
 							re[1].getMax(str,end,minTracks),
@@ -655,7 +668,7 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 		
 		
 		// compute Lagrangian mean as a function of tau
-		void computeMean(Predicate<Record> cond){
+		void computeMean(Origins org){
 			pseudoTracks=0;
 			noOfMaxLag  =0;
 			noOfMinLag  =0;
@@ -666,16 +679,18 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 			
 			Averager av=new Averager(4,tRad);
 			
-			for(Particle p:ls){
+			for(int m=0,M=org.count();m<M;m++){
+				Particle p=org.getParticle(m);
+				
 				float[] uspd=p.getUVel();
 				float[] vspd=p.getVVel();
 				
-				for(int l=0,L=p.getTCount();l<L;l++){
+				int L=p.getTCount();
+				
+				for(int l:org.getRecords(m)){
 					float oX=p.getXPosition(l);
 					float oY=p.getYPosition(l);
 					
-					// meet condition to be an origin of pseudo-track
-					if(!cond.test(p.getRecord(l))) continue;
 					if(uspd[l]==Record.undef) continue;
 					
 					umn+=uspd[l]; vmn+=vspd[l]; pseudoTracks++;
@@ -723,7 +738,7 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 		}
 		
 		// compute autocovariance of velocity Pxx, Pyy, Pxy and Pyx
-		void computeAutoCovariance(Predicate<Record> cond){
+		void computeAutoCovariance(Origins org){
 			int tRad=lsr.tRad;
 			
 			boolean hasAcc=ls.get(0).getRecord(0).getDataLength()==4;
@@ -731,15 +746,17 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 			// for Pxx Pxy Pyx Pyy, Qxx Qxy Qyx Qyy, ua va
 			Averager av=new Averager(hasAcc?10:6,tRad);
 			
-			for(Particle p:ls){
+			for(int m=0,M=org.count();m<M;m++){
+				Particle p=org.getParticle(m);
+				
 				float[] uspd=p.getUVel();
 				float[] vspd=p.getVVel();
 				float[] accx=hasAcc?p.getAttachedData(StochasticModel.AccX):null;
 				float[] accy=hasAcc?p.getAttachedData(StochasticModel.AccY):null;
 				
-				for(int l=0,L=p.getTCount();l<L;l++){
-					// meet condition to be an origin of pseudo-track
-					if(!cond.test(p.getRecord(l))) continue;
+				int L=p.getTCount();
+				
+				for(int l:org.getRecords(m)){
 					if(uspd[l]==Record.undef) continue;
 					
 					float ua0=uspd[l]-lsr.um[tRad];	// u'(tau=0)
@@ -794,20 +811,22 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 		}
 		
 		// compute dispersion by <d'd'> as a function of tau
-		void computeDispersion(Predicate<Record> cond){
+		void computeDispersion(Origins org){
 			int tRad=lsr.tRad;
 			
 			Averager av=new Averager(4,tRad);
 			
-			for(Particle p:ls){
+			for(int m=0,M=org.count();m<M;m++){
+				Particle p=org.getParticle(m);
+				
 				float[] uspd=p.getUVel();
 				
-				for(int l=0,L=p.getTCount();l<L;l++){
+				int L=p.getTCount();
+				
+				for(int l:org.getRecords(m)){
 					float oX=p.getXPosition(l);
 					float oY=p.getYPosition(l);
 					
-					// meet condition to be an origin of pseudo-track
-					if(!cond.test(p.getRecord(l))) continue;
 					if(uspd[l]==Record.undef) continue;
 					
 					for(int ll=0;ll<L;ll++){
@@ -862,7 +881,7 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 		}
 		
 		// compute diffusivity by -<v'(0)d'(-tau)>
-		void computeDiffByVD(Predicate<Record> cond){
+		void computeDiffByVD(Origins org){
 			int tRad=lsr.tRad,count=0;
 			
 			float ucfd=0,vcfd=0;
@@ -870,18 +889,20 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 			Averager av=new Averager(4,tRad);
 			Averager av2=new Averager(2,tRad);
 			
-			for(Particle p:ls){
+			for(int m=0,M=org.count();m<M;m++){
+				Particle p=org.getParticle(m);
+				
 				float[] uspd=p.getUVel();
 				float[] vspd=p.getVVel();
 				
 				float usqr=0,vsqr=0;
 				
-				for(int l=0,L=p.getTCount();l<L;l++){
+				int L=p.getTCount();
+				
+				for(int l:org.getRecords(m)){
 					float oX=p.getXPosition(l);
 					float oY=p.getYPosition(l);
 					
-					// meet condition to be an origin of pseudo-track
-					if(!cond.test(p.getRecord(l))) continue;
 					if(uspd[l]==Record.undef) continue;
 					
 					float ua0=uspd[l]-lsr.um[tRad];	// u'(tau=0)
@@ -964,7 +985,7 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 		}
 		
 		// compute diffusivity by integrating <v'(0)v'(tau)> from -tau to 0
-		void computeDiffByVV(Predicate<Record> cond){
+		void computeDiffByVV(Origins org){
 			int tRad=lsr.tRad,len=2*tRad+1;
 			
 			float ucfd=0,vcfd=0;
@@ -1032,12 +1053,12 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 		}
 		
 		/*// compute diffusivity by differencing dispersion
-		void computeDiffByDispDT(Predicate<Record> cond){
+		void computeDiffByDispDT(Origins org){
 			int tRad=lsr.tRad,len=2*tRad+1;
 			
 			float ucfd=0,vcfd=0;
 			
-			computeDispersion(cond);
+			computeDispersion(org);
 			
 			for(int l=0;l<tRad;l++){ // negative time lags
 				lsr.Kxx[l]=(lsr.Dxx[l+1]-lsr.Dxx[l])/lsr.dt/2f;
@@ -1065,7 +1086,7 @@ public final class LagrangianStatisticsByDavis extends SingleParticleStatistics{
 		}
 		
 		*/
-		void computeDiffByDispDT(Predicate<Record> cond){
+		void computeDiffByDispDT(Origins org){
 			int tRad=lsr.tRad,len=2*tRad+1;
 			
 			float ucfd=0,vcfd=0;
@@ -8,11 +8,16 @@ package miniufo.application.statisticsModel;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Predicate;
 
 import miniufo.descriptor.DataDescriptor;
 import miniufo.lagrangian.Particle;
 import miniufo.lagrangian.Record;
+import miniufo.lagrangian.RecordIndex;
+import miniufo.util.Region2D;
 
 
 /**
@@ -66,6 +71,89 @@ public abstract class SingleParticleStatistics extends ParticleStatistics{
 	}
 	
 	
+	/**
+	 * select the records meeting a condition as the origins of pseudo-tracks
+	 * by testing all the records
+	 *
+	 * @param	cond	condition for a record to be the origin of pseudo-track
+	 */
+	protected Origins selectOrigins(Predicate<Record> cond){
+		List<Integer> pidx=new ArrayList<>();
+		List<int[]>   ridx=new ArrayList<>();
+		
+		int[] buf=new int[16];
+		
+		for(int p=0,P=ls.size();p<P;p++){
+			Particle pt=ls.get(p);
+			
+			int L=pt.getTCount(),count=0;
+			
+			if(buf.length<L) buf=new int[L];
+			
+			for(int l=0;l<L;l++) if(cond.test(pt.getRecord(l))) buf[count++]=l;
+			
+			if(count>0){ pidx.add(p); ridx.add(Arrays.copyOf(buf,count));}
+		}
+		
+		return new Origins(pidx,ridx);
+	}
+	
+	/**
+	 * select the records within a region as the origins of pseudo-tracks
+	 * by querying a spatial index built over the same list of particles
+	 *
+	 * @param	idx		spatial index of the records
+	 * @param	region	a region (inclusive) for a record to be the origin of pseudo-track
+	 */
+	protected Origins selectOrigins(RecordIndex idx,Region2D region){
+		List<Integer> pidx=new ArrayList<>();
+		List<int[]>   ridx=new ArrayList<>();
+		
+		int[] ids=idx.queryBox(region);
+		
+		for(int n=0,N=ids.length;n<N;){
+			int p=idx.getParticleIndex(ids[n]),str=n;
+			
+			while(n<N&&idx.getParticleIndex(ids[n])==p) n++;
+			
+			int[] recs=new int[n-str];
+			
+			for(int m=str;m<n;m++) recs[m-str]=idx.getRecordIndex(ids[m]);
+			
+			pidx.add(p); ridx.add(recs);
+		}
+		
+		return new Origins(pidx,ridx);
+	}
+	
+	
+	/**
+	 * Origins of the pseudo-tracks, i.e., indices of the selected records
+	 * grouped by particles, both in the order of the list of particles.
+	 */
+	protected final class Origins{
+		//
+		private int[]   pidx=null;	// indices of the particles having origins
+		private int[][] ridx=null;	// indices of the origin records of each particle
+		
+		
+		Origins(List<Integer> pidx,List<int[]> ridx){
+			this.pidx=new int[pidx.size()];
+			this.ridx=ridx.toArray(new int[ridx.size()][]);
+			
+			for(int m=0,M=pidx.size();m<M;m++) this.pidx[m]=pidx.get(m);
+		}
+		
+		
+		/*** getor and setor ***/
+		public int count(){ return pidx.length;}
+		
+		public Particle getParticle(int m){ return ls.get(pidx[m]);}
+		
+		public int[] getRecords(int m){ return ridx[m];}
+	}
+	
+	
 	/*** helper methods ***/
 	private static void writeDistribution(float[] xpos,float[] ypos,String path){
 		StringBuilder sb=new StringBuilder();
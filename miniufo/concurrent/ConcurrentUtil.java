@@ -8,6 +8,8 @@ package miniufo.concurrent;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadPoolExecutor;
 
 
@@ -20,10 +22,18 @@ import java.util.concurrent.ThreadPoolExecutor;
  */
 public final class ConcurrentUtil{
 	//
-	private static int threadCount=1;
+	private static volatile int threadCount=1;
 	
 	private static ExecutorService executor=null;
 	
+	private static ForkJoinPool forkJoinPool=null;	// for data-parallel loops, see parallelFor
+	
+	
+	/**
+	 * task over a range [str,end) of indices
+	 */
+	public static interface RangeTask{ void run(int str,int end);}
+	
 	
 	/*** prevent from initialization ***/
 	private ConcurrentUtil(){}
@@ -32,12 +42,17 @@ public final class ConcurrentUtil{
 	/**
 	 * initialize the default executor
 	 */
-	public static void initDefaultExecutor(int n){
+	public static synchronized void initDefaultExecutor(int n){
 		if(executor==null)
 			executor=Executors.newFixedThreadPool(n);
 		else
 			((ThreadPoolExecutor)executor).setCorePoolSize(n);
 		
+		if(forkJoinPool!=null&&forkJoinPool.getParallelism()!=n){
+			forkJoinPool.shutdown();
+			forkJoinPool=null;
+		}
+		
 		threadCount=n;
 		
 		System.out.println("default executor is initialized with "+n+" thread count");
@@ -47,7 +62,7 @@ public final class ConcurrentUtil{
 	/**
 	 * get default executor globally given an integer
 	 */
-	public static ExecutorService defaultExecutor(){
+	public static synchronized ExecutorService defaultExecutor(){
 		if(executor==null) initDefaultExecutor(1);
 		return executor;
 	}
@@ -58,12 +73,72 @@ public final class ConcurrentUtil{
 	public static int threadCount(){ return threadCount;}
 	
 	
+	/**
+	 * Run the task over [0,count) split into chunks of at least grain indices.
+	 * Chunks are executed on a fork-join pool with threadCount() workers so
+	 * that it can be safely called from tasks running on the default executor.
+	 * It runs serially in the calling thread if threadCount() is 1.
+	 *
+	 * @param	count	number of indices
+	 * @param	grain	minimum number of indices of one chunk
+	 * @param	task	task over a chunk
+	 */
+	public static void parallelFor(int count,int grain,RangeTask task){
+		if(count<=0) return;
+		
+		grain=Math.max(grain,1);
+		
+		if(threadCount<=1||count<=grain){ task.run(0,count); return;}
+		
+		// about 4 chunks per thread for load balance
+		grain=Math.max(grain,count/(threadCount*4));
+		
+		forkJoinPool().invoke(new RangeAction(task,0,count,grain));
+	}
+	
+	
 	/**
 	 * shutdown the default executor
 	 */
-	public static void shutdown(){
+	public static synchronized void shutdown(){
 		if(executor!=null) executor.shutdown();
+		if(forkJoinPool!=null) forkJoinPool.shutdown();
 		
 		executor=null;
+		forkJoinPool=null;
+	}
+	
+	
+	/*** helper methods and classes ***/
+	private static synchronized ForkJoinPool forkJoinPool(){
+		if(forkJoinPool==null) forkJoinPool=new ForkJoinPool(threadCount);
+		return forkJoinPool;
+	}
+	
+	private static final class RangeAction extends RecursiveAction{
+		//
+		private static final long serialVersionUID=1L;
+		
+		private int str;
+		private int end;
+		private int grain;
+		
+		private RangeTask task=null;
+		
+		//
+		RangeAction(RangeTask task,int str,int end,int grain){
+			this.task =task;
+			this.str  =str;
+			this.end  =end;
+			this.grain=grain;
+		}
+		
+		protected void compute(){
+			if(end-str<=grain){ task.run(str,end); return;}
+			
+			int mid=(str+end)>>>1;
+			
+			invokeAll(new RangeAction(task,str,mid,grain),new RangeAction(task,mid,end,grain));
+		}
 	}
 }
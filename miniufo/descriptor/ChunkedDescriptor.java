@@ -0,0 +1,93 @@
+/**
+ * @(#)ChunkedDescriptor.java	1.0 07/02/01
+ *
+ * Copyright 2007 MiniUFO, All rights reserved.
+ * MiniUFO Studio. Use is subject to license terms.
+ */
+package miniufo.descriptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Scanner;
+
+
+/**
+ * Used to describe a chunked (tiled and compressed) data file.
+ *
+ * The descriptor is a ctl file with two more lines:
+ *
+ *   chunks  tc zc yc xc			(chunk shape in t, z, y, x dimensions)
+ *   compression  deflate level	(or 'none', level is 0-9 and 1 by default)
+ *
+ * @version 1.0, 02/01/2007
+ * @author  MiniUFO
+ * @since   MDK1.0
+ */
+public final class ChunkedDescriptor extends CtlDescriptor{
+	//
+	private int level=1;	// deflate level, 0 for no compression
+	
+	private int[] chunks=null;	// chunk shape [t, z, y, x]
+	
+	
+	/**
+     * constructor
+     *
+     * param	content		content of the descriptor
+     */
+	public ChunkedDescriptor(String content){ super(content); parseChunks(content);}
+	
+	/**
+     * constructor
+     *
+     * param	ckdFile		a descriptor file
+     */
+	public ChunkedDescriptor(File ckdFile){
+		super(ckdFile);
+		
+		try{ parseChunks(new String(Files.readAllBytes(ckdFile.toPath())));}
+		catch(IOException e){ e.printStackTrace(); System.exit(0);}
+	}
+	
+	
+	/*** getor and setor ***/
+	public int getCompressionLevel(){ return level;}
+	
+	public int[] getChunkShape(){ return chunks.clone();}
+	
+	
+	/*** helper methods ***/
+	private void parseChunks(String content){
+		try(Scanner scnr_file=new Scanner(content)){
+			while(scnr_file.hasNextLine()){
+				String oneline=scnr_file.nextLine().trim();
+				
+				if(oneline.startsWith("*")||"".equals(oneline)) continue;	// skip comments
+				
+				try(Scanner scnr_line=new Scanner(oneline)){
+					String start_word=scnr_line.next().toLowerCase();
+					
+					if(start_word.equals("chunks")){
+						chunks=new int[4];
+						
+						for(int i=0;i<4;i++) chunks[i]=Integer.parseInt(scnr_line.next());
+					
+					}else if(start_word.equals("compression")){
+						String type=scnr_line.next().toLowerCase();
+						
+						     if(type.equals("none"   )) level=0;
+						else if(type.equals("deflate")) level=scnr_line.hasNext()?Integer.parseInt(scnr_line.next()):1;
+						else throw new IllegalArgumentException("unsupported compression: "+type);
+					}
+				}
+			}
+		}
+		
+		if(chunks==null) throw new IllegalArgumentException("missing chunks information");
+		
+		for(int i=0;i<4;i++) if(chunks[i]<1) throw new IllegalArgumentException("chunk shape should be positive");
+		
+		if(level<0||level>9) throw new IllegalArgumentException("compression level should be in [0, 9]");
+	}
+}
@@ -8,11 +8,21 @@ package miniufo.diagnosis;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.stream.IntStream;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import miniufo.concurrent.ConcurrentUtil;
 import miniufo.io.DataRead;
 import miniufo.io.DataIOFactory;
+import miniufo.descriptor.ChunkedDescriptor;
 import miniufo.descriptor.CsmDescriptor;
 import miniufo.descriptor.CtlDescriptor;
 import miniufo.descriptor.CtsDescriptor;
@@ -33,6 +43,8 @@ public final class DiagnosisFactory{
 	
 	private DataDescriptor dd=null;
 	
+	private static final int PREFETCH=2;	// default number of steps read ahead
+	
 	public static final DiagnosisFactory DF10=
 	DiagnosisFactory.parseContent(
 		"dset ^Model10\n"+
@@ -700,6 +712,9 @@ public final class DiagnosisFactory{
 		else if(filePath.endsWith(".cts"))
 			df.dd=new CtsDescriptor(new File(filePath));
 		
+		else if(filePath.endsWith(".ckd"))
+			df.dd=new ChunkedDescriptor(new File(filePath));
+		
 		else if(filePath.endsWith(".nc" )||filePath.endsWith(".cdf")){
 			try{df.dd=new NetCDFDescriptor(filePath);}
 			catch(IOException e){ e.printStackTrace(); System.exit(0);}
@@ -718,6 +733,9 @@ public final class DiagnosisFactory{
 		else if(content.toLowerCase().indexOf("\ncoords")!=-1)
 			df.dd=new CsmDescriptor(content);
 			
+		else if(content.toLowerCase().indexOf("\nchunks")!=-1)
+			df.dd=new ChunkedDescriptor(content);
+			
 		else if(content.toLowerCase().indexOf("\nvars ")!=-1)
 			df.dd=new CtlDescriptor(content);
 			
@@ -730,6 +748,8 @@ public final class DiagnosisFactory{
 	/**
 	 * Get variables from tstr to tend steps and return them as a stream of variable[].
 	 * This may be useful for long-time dataset analysis to avoid out-of-memory error.
+	 * The next steps are read ahead by a background thread while the current one
+	 * is being processed.  The stream should be closed if it is not consumed to the end.
 	 * 
 	 * @param	tstr	start time step (from 1), inclusive
 	 * @param	tend	end   time step (from 1), inclusive
@@ -739,9 +759,20 @@ public final class DiagnosisFactory{
 		if(tstr<1   ) throw new IllegalArgumentException("tstr should be >= 1");
 		if(tstr>tend) throw new IllegalArgumentException("tstr should not be larger than tend");
 		
-		return IntStream.range(tstr,tend+1).sequential().mapToObj(l->{
-			return getVariables(new Range("t("+l+","+l+")",dd),vnames);
-		});
+		Prefetcher pf=new Prefetcher(tstr,tend,PREFETCH,0,vnames);
+		
+		Spliterator<Variable[]> sp=new Spliterators.AbstractSpliterator<Variable[]>(tend-tstr+1,
+		Spliterator.ORDERED|Spliterator.NONNULL|Spliterator.SIZED){
+			public boolean tryAdvance(Consumer<? super Variable[]> action){
+				Variable[] v=pf.next();
+				
+				if(v==null) return false;
+				
+				action.accept(v);	return true;
+			}
+		};
+		
+		return StreamSupport.stream(sp,false).onClose(pf::close);
 	}
 	
 	public Stream<Variable[]> getVariablesTimeByTime(String... vnames){
@@ -757,75 +788,82 @@ public final class DiagnosisFactory{
 	 * @param	vname	a variable name
 	 */
 	public Stream<Variable> getVariableTimeByTime(int tstr,int tend,String vname){
-		if(tstr<0   ) throw new IllegalArgumentException("tstr should be > 0");
+		if(tstr<1   ) throw new IllegalArgumentException("tstr should be >= 1");
 		if(tstr>tend) throw new IllegalArgumentException("tstr should not be larger than tend");
 		
-		return IntStream.range(tstr,tend+1).sequential().mapToObj(l->{
-			return getVariables(new Range("t("+l+","+l+")",dd),vname)[0];
-		});
+		return getVariablesTimeByTime(tstr,tend,vname).map(vs->vs[0]);
 	}
 	
 	public Stream<Variable> getVariableTimeByTime(String vname){
 		return getVariableTimeByTime(1,dd.getTCount(),vname);
 	}
 	
-	
-	/*** getor and setor ***/
-	public DataDescriptor getDataDescriptor(){ return dd;}
-	
-	public Variable[] getVariables(Range r,String... names){
-		if(names!=null&&names.length!=0){
-			int count=names.length;
-			
-			Variable[] v=new Variable[count];
-			
-			for(int i=0;i<count;i++){
-				if(dd.getVarZcount(names[i])==1){
-					Range rLevel=(Range)r.clone();
-					
-					int[] rng=rLevel.getZRange();
-					
-					rng[0]=rng[1]=rng[2]=1;
-					
-					v[i]=new Variable(names[i],rLevel);
-					
-					
-				}else v[i]=new Variable(names[i],r);
-			}
-			
-			DataRead dr=DataIOFactory.getDataRead(dd);
-			dr.setPrinting(print);
-			dr.readData(v);	dr.closeFile();
-			
-			return v;
-			
-		}else{
-			String[] ns=dd.getVarNames();
-			
-			int count=ns.length;
-			
-			Variable[] v=new Variable[count];
+	/**
+	 * Process variables from tstr to tend steps one step at a time.  A background
+	 * thread reads up to prefetch steps ahead into a pool of reused buffers, so the
+	 * variables given to the action are only valid until the action returns and
+	 * should be copied if they need to be kept.  If consumers is larger than 1, up to
+	 * consumers steps are processed concurrently (in any order) by the default
+	 * executor of ConcurrentUtil, so the action should be thread-safe.
+	 *
+	 * @param	tstr		start time step (from 1), inclusive
+	 * @param	tend		end   time step (from 1), inclusive
+	 * @param	prefetch	number of steps read ahead
+	 * @param	consumers	number of steps processed concurrently
+	 * @param	action		action applied to the variables of each step
+	 * @param	vnames		variable names
+	 */
+	public void forEachTimeStep(int tstr,int tend,int prefetch,int consumers,Consumer<Variable[]> action,String... vnames){
+		if(tstr<1   ) throw new IllegalArgumentException("tstr should be >= 1");
+		if(tstr>tend) throw new IllegalArgumentException("tstr should not be larger than tend");
+		if(prefetch <1) throw new IllegalArgumentException("prefetch should be >= 1");
+		if(consumers<1) throw new IllegalArgumentException("consumers should be >= 1");
+		
+		Prefetcher pf=new Prefetcher(tstr,tend,prefetch,consumers,vnames);
+		
+		try{
+			if(consumers==1){
+				for(Variable[] v=pf.next();v!=null;v=pf.next()){ action.accept(v); pf.recycle(v);}
 			
-			for(int i=0;i<count;i++){
-				if(dd.getVarZcount(ns[i])==1){
-					Range rLevel=(Range)r.clone();
+			}else{
+				CompletionService<Void> cs=new ExecutorCompletionService<>(ConcurrentUtil.defaultExecutor());
+				
+				int running=0;
+				
+				while(true){
+					Variable[] v=pf.next();
 					
-					int[] rng=rLevel.getZRange();
+					if(v==null) break;
 					
-					rng[0]=rng[1]=rng[2]=1;
+					if(running==consumers){ cs.take().get(); running--;}
 					
-					v[i]=new Variable(ns[i],rLevel);
-					
-					
-				}else v[i]=new Variable(ns[i],r);
+					cs.submit(()->{ action.accept(v); pf.recycle(v); return null;});	running++;
+				}
+				
+				for(;running>0;running--) cs.take().get();
 			}
-			
-			DataRead dr=DataIOFactory.getDataRead(dd);
-			dr.setPrinting(print);
-			dr.readData(v);	dr.closeFile();
-			
-			return v;
 		}
+		catch(InterruptedException e){ e.printStackTrace(); System.exit(0);}
+		catch(ExecutionException   e){ e.printStackTrace(); System.exit(0);}
+		finally{ pf.close();}
+	}
+	
+	public void forEachTimeStep(Consumer<Variable[]> action,String... vnames){
+		forEachTimeStep(1,dd.getTCount(),PREFETCH,1,action,vnames);
+	}
+	
+	
+	/*** getor and setor ***/
+	public DataDescriptor getDataDescriptor(){ return dd;}
+	
+	public Variable[] getVariables(Range r,String... names){
+		Variable[] v=newVariables(r,names);
+		
+		DataRead dr=DataIOFactory.getDataRead(dd);
+		dr.setPrinting(print);
+		dr.readData(v);	dr.closeFile();
+		
+		return v;
 	}
 	
 	public Variable[] getVariables(Range r,boolean tfirst,String... names){
@@ -882,6 +920,145 @@ public final class DiagnosisFactory{
 	}
 	
 	
+	/*** helper methods and classes ***/
+	
+	/**
+     * allocate variables of the given names (all the variables if names is empty)
+     */
+	private Variable[] newVariables(Range r,String... names){
+		if(names==null||names.length==0) names=dd.getVarNames();
+		
+		Variable[] v=new Variable[names.length];
+		
+		for(int i=0;i<names.length;i++){
+			if(dd.getVarZcount(names[i])==1){
+				Range rLevel=(Range)r.clone();
+				
+				int[] rng=rLevel.getZRange();
+				
+				rng[0]=rng[1]=rng[2]=1;
+				
+				v[i]=new Variable(names[i],rLevel);
+			
+			}else v[i]=new Variable(names[i],r);
+		}
+		
+		return v;
+	}
+	
+	/**
+     * Reads the steps one by one on a background thread into a bounded queue
+     * through one open DataRead.  Buffers are allocated for each step, or taken
+     * from a pool of recycled buffers if the pool size is positive.
+     */
+	private final class Prefetcher implements Runnable{
+		//
+		private int tstr;
+		private int tend;
+		
+		private boolean pooled=false;
+		
+		private volatile boolean closed=false;
+		
+		private String[] vnames=null;
+		
+		private Range base=null;
+		
+		private Thread thread=null;
+		
+		private RuntimeException error=null;
+		
+		private BlockingQueue<Variable[]> full=null;	// steps read but not taken
+		private BlockingQueue<Variable[]> free=null;	// recycled buffers
+		
+		private final Variable[] END=new Variable[0];	// marker of the end of the steps
+		
+		
+		Prefetcher(int tstr,int tend,int prefetch,int pool,String[] vnames){
+			this.tstr  =tstr;
+			this.tend  =tend;
+			this.vnames=vnames;
+			this.pooled=pool>0;
+			
+			base=new Range("t("+tstr+","+tstr+")",dd);
+			full=new ArrayBlockingQueue<>(prefetch+1);
+			
+			if(pooled){
+				free=new ArrayBlockingQueue<>(prefetch+pool);
+				
+				for(int m=0;m<prefetch+pool;m++) free.add(newVariables((Range)base.clone(),vnames));
+			}
+			
+			thread=new Thread(this,"prefetcher of "+dd.getPath());
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		public void run(){
+			DataRead dr=null;
+			
+			try{
+				dr=DataIOFactory.getDataRead(dd);
+				dr.setPrinting(print);
+				
+				for(int l=tstr;l<=tend&&!closed;l++){
+					Variable[] v=pooled?free.take():newVariables((Range)base.clone(),vnames);
+					
+					if(v==END) break;
+					
+					for(Variable var:v) var.getRange().setTRange(l);
+					
+					dr.readData(v);
+					
+					full.put(v);
+				}
+			}
+			catch(InterruptedException e){ e.printStackTrace(); System.exit(0);}
+			catch(RuntimeException e){ error=e;}
+			finally{ if(dr!=null) dr.closeFile();}
+			
+			try{ if(!closed) full.put(END);}
+			catch(InterruptedException e){ e.printStackTrace(); System.exit(0);}
+		}
+		
+		/**
+		 * next step in order, or null if all the steps have been taken
+		 */
+		Variable[] next(){
+			if(closed) return null;
+			
+			try{
+				Variable[] v=full.take();
+				
+				if(v==END){
+					closed=true;
+					
+					if(error!=null) throw error;
+					
+					return null;
+				}
+				
+				return v;
+			
+			}catch(InterruptedException e){ e.printStackTrace(); System.exit(0); return null;}
+		}
+		
+		void recycle(Variable[] v){ if(pooled) free.offer(v);}
+		
+		/**
+		 * stop reading, the reader is woken up instead of interrupted
+		 * as an interrupt would close the channel of the DataRead
+		 */
+		void close(){
+			closed=true;
+			
+			full.clear();
+			
+			if(pooled) free.offer(END);
+		}
+	}
+	
+	
 	/** test
 	public static void main(String[] args){
 		System.out.println(DFT170.dd);
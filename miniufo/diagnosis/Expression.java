@@ -0,0 +1,329 @@
+/**
+ * @(#)Expression.java	1.0 07/02/01
+ *
+ * Copyright 2007 MiniUFO, All rights reserved.
+ * MiniUFO Studio. Use is subject to license terms.
+ */
+package miniufo.diagnosis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import miniufo.basic.Operatable;
+import miniufo.concurrent.ConcurrentUtil;
+
+
+/**
+ * Deferred element-wise expression of Variables.  The operations only build
+ * an expression tree, and evaluate() computes the whole tree in one pass
+ * over the grids with only one output allocation, e.g.:
+ *
+ *   Variable spd=new Expression(u).square().plus(new Expression(v).square()).sqrt().evaluate();
+ *
+ * A grid is undefined in the result if it is undefined in any of the Variables.
+ *
+ * @version 1.0, 02/01/2007
+ * @author  MiniUFO
+ * @since   MDK1.0
+ */
+public final class Expression implements Operatable<Expression>{
+	//
+	private float c=0;	// value of a constant
+	
+	private Op op=null;
+	
+	private Variable v=null;	// variable of a leaf
+	
+	private Expression a=null;	// first  operand
+	private Expression b=null;	// second operand
+	
+	private static final int BLOCK=1024;	// grids of one block processed at a time
+	
+	private static enum Op{
+		VAR,CONST,PLUS,MINUS,MULTIPLY,DIVIDE,POW,HYPOT,
+		EXP,ABS,SQUARE,SQRT,RECIPROCAL,LOG
+	}
+	
+	
+	/**
+     * constructor
+     *
+     * @param	v	a variable as the leaf of an expression
+     */
+	public Expression(Variable v){
+		if(v==null) throw new IllegalArgumentException("variable should not be null");
+		
+		this.op=Op.VAR;
+		this.v =v;
+	}
+	
+	/**
+     * constructor
+     *
+     * @param	c	a constant as the leaf of an expression
+     */
+	public Expression(float c){
+		this.op=Op.CONST;
+		this.c =c;
+	}
+	
+	private Expression(Op op,Expression a,Expression b){
+		this.op=op;
+		this.a =a;
+		this.b =b;
+	}
+	
+	
+	/*** binary operations ***/
+	public Expression plus(float f){ return new Expression(Op.PLUS,this,new Expression(f));}
+	
+	public Expression plus(Expression o){ return new Expression(Op.PLUS,this,o);}
+	
+	public Expression plusEq(float f){ return assign(Op.PLUS,new Expression(f));}
+	
+	public Expression plusEq(Expression o){ return assign(Op.PLUS,o);}
+	
+	public Expression minus(float f){ return new Expression(Op.MINUS,this,new Expression(f));}
+	
+	public Expression minus(Expression o){ return new Expression(Op.MINUS,this,o);}
+	
+	public Expression minusEq(float f){ return assign(Op.MINUS,new Expression(f));}
+	
+	public Expression minusEq(Expression o){ return assign(Op.MINUS,o);}
+	
+	public Expression multiply(float f){ return new Expression(Op.MULTIPLY,this,new Expression(f));}
+	
+	public Expression multiply(Expression o){ return new Expression(Op.MULTIPLY,this,o);}
+	
+	public Expression multiplyEq(float f){ return assign(Op.MULTIPLY,new Expression(f));}
+	
+	public Expression multiplyEq(Expression o){ return assign(Op.MULTIPLY,o);}
+	
+	public Expression divide(float f){ return new Expression(Op.DIVIDE,this,new Expression(f));}
+	
+	public Expression divide(Expression o){ return new Expression(Op.DIVIDE,this,o);}
+	
+	public Expression divideEq(float f){ return assign(Op.DIVIDE,new Expression(f));}
+	
+	public Expression divideEq(Expression o){ return assign(Op.DIVIDE,o);}
+	
+	public Expression pow(float f){ return new Expression(Op.POW,this,new Expression(f));}
+	
+	public Expression pow(Expression o){ return new Expression(Op.POW,this,o);}
+	
+	public Expression powEq(float f){ return assign(Op.POW,new Expression(f));}
+	
+	public Expression powEq(Expression o){ return assign(Op.POW,o);}
+	
+	public Expression hypotenuse(Expression o){ return new Expression(Op.HYPOT,this,o);}
+	
+	public Expression hypotenuseEq(Expression o){ return assign(Op.HYPOT,o);}
+	
+	
+	/*** unary operations ***/
+	public Expression exp(){ return new Expression(Op.EXP,this,null);}
+	
+	public Expression expEq(){ return assign(Op.EXP,null);}
+	
+	public Expression abs(){ return new Expression(Op.ABS,this,null);}
+	
+	public Expression absEq(){ return assign(Op.ABS,null);}
+	
+	public Expression square(){ return new Expression(Op.SQUARE,this,null);}
+	
+	public Expression squareEq(){ return assign(Op.SQUARE,null);}
+	
+	public Expression sqrt(){ return new Expression(Op.SQRT,this,null);}
+	
+	public Expression sqrtEq(){ return assign(Op.SQRT,null);}
+	
+	public Expression reciprocal(){ return new Expression(Op.RECIPROCAL,this,null);}
+	
+	public Expression reciprocalEq(){ return assign(Op.RECIPROCAL,null);}
+	
+	public Expression logarithm(){ return new Expression(Op.LOG,this,null);}
+	
+	public Expression logarithmEq(){ return assign(Op.LOG,null);}
+	
+	
+	/**
+     * evaluate the expression into a new variable which has the same
+     * name, storage and undefined value as the first variable in the expression
+     *
+     * @return	re	result of the expression
+     */
+	public Variable evaluate(){
+		Variable ref=leaves().get(0);
+		
+		return evaluate(new Variable(ref.getName(),ref));
+	}
+	
+	/**
+     * evaluate the expression into a given variable,
+     * which can also be one of the variables in the expression
+     *
+     * @param	re	a given variable to store the result
+     *
+     * @return	re	result of the expression
+     */
+	public Variable evaluate(Variable re){
+		List<Variable> vs=leaves();
+		
+		for(Variable var:vs) if(!re.isLike(var)) throw new IllegalArgumentException("dimension not same");
+		
+		List<Expression> code=new ArrayList<>();	postOrder(code);
+		
+		boolean allFlat=re.isFlat();
+		
+		for(Variable var:vs) allFlat&=var.isFlat();
+		
+		final boolean flat=allFlat;
+		
+		// a flat storage is taken as one row of all the grids
+		int len=flat?re.getTCount()*re.getZCount()*re.getYCount()*re.getXCount():re.rowLength();
+		int cnt=flat?(len+BLOCK-1)/BLOCK:re.rowCount();
+		
+		ConcurrentUtil.parallelFor(cnt,Variable.grain(flat?BLOCK:len),(s,e)->{
+			Evaluator ev=new Evaluator(code,vs,re.getUndef());
+			
+			for(int n=s;n<e;n++)
+			if(flat){
+				int str=n*BLOCK;
+				
+				ev.block(vs,re,0,str,Math.min(BLOCK,len-str));
+			
+			}else for(int str=0;str<len;str+=BLOCK) ev.block(vs,re,n,str,Math.min(BLOCK,len-str));
+		});
+		
+		return re;
+	}
+	
+	
+	/**
+     * used to print out
+     */
+	public String toString(){
+		switch(op){
+			case VAR  : return v.getName();
+			case CONST: return String.valueOf(c);
+			default   : return op.name().toLowerCase()+"("+a+(b==null?"":","+b)+")";
+		}
+	}
+	
+	
+	/*** helper methods and classes ***/
+	
+	/**
+     * this node becomes (this op o)
+     */
+	private Expression assign(Op nop,Expression o){
+		Expression old=new Expression(op,a,b);	old.v=v;	old.c=c;
+		
+		op=nop;	a=old;	b=o==this?old:o;	v=null;	c=0;
+		
+		return this;
+	}
+	
+	private void postOrder(List<Expression> code){
+		if(a!=null) a.postOrder(code);
+		if(b!=null) b.postOrder(code);
+		
+		code.add(this);
+	}
+	
+	private List<Variable> leaves(){
+		List<Expression> code=new ArrayList<>();	postOrder(code);
+		
+		List<Variable> vs=new ArrayList<>();
+		
+		for(Expression e:code) if(e.op==Op.VAR&&!vs.contains(e.v)) vs.add(e.v);
+		
+		if(vs.isEmpty()) throw new IllegalArgumentException("no variable in the expression");
+		
+		return vs;
+	}
+	
+	/**
+     * Per-thread registers of the post-ordered nodes.  Each block of grids is
+     * first checked for undefined values and then pushed through all the nodes,
+     * so that the intermediate results never leave the cache.
+     */
+	private static final class Evaluator{
+		//
+		private float undef;
+		
+		private int[] ia=null;	// register of the first  operand of each node
+		private int[] ib=null;	// register of the second operand of each node
+		private int[] iv=null;	// index of the variable of each leaf
+		
+		private boolean[] def=null;
+		
+		private float[][] reg=null;
+		
+		private Op[] ops=null;
+		
+		
+		Evaluator(List<Expression> code,List<Variable> vs,float undef){
+			int N=code.size();
+			
+			this.undef=undef;
+			
+			ops=new Op[N];	ia=new int[N];	ib=new int[N];	iv=new int[N];
+			
+			def=new boolean[BLOCK];
+			reg=new float[N][];
+			
+			for(int n=0;n<N;n++){
+				Expression e=code.get(n);
+				
+				ops[n]=e.op;
+				ia[n]=e.a==null?-1:code.indexOf(e.a);
+				ib[n]=e.b==null?-1:code.indexOf(e.b);
+				iv[n]=e.v==null?-1:vs.indexOf(e.v);
+				
+				reg[n]=new float[BLOCK];
+				
+				if(e.op==Op.CONST) Arrays.fill(reg[n],e.c);
+			}
+		}
+		
+		void block(List<Variable> vs,Variable re,int n,int str,int len){
+			Arrays.fill(def,0,len,true);
+			
+			for(Variable var:vs){
+				float[] r=var.row(n);	float u=var.getUndef();	int o=var.rowOffset(n)+str;
+				
+				for(int i=0;i<len;i++) if(r[o+i]==u) def[i]=false;
+			}
+			
+			for(int m=0;m<ops.length;m++){
+				float[] r=reg[m];
+				
+				switch(ops[m]){
+				case VAR  : System.arraycopy(vs.get(iv[m]).row(n),vs.get(iv[m]).rowOffset(n)+str,r,0,len); break;
+				case CONST: break;
+				case PLUS      : { float[] p=reg[ia[m]],q=reg[ib[m]]; for(int i=0;i<len;i++) r[i]=p[i]+q[i];} break;
+				case MINUS     : { float[] p=reg[ia[m]],q=reg[ib[m]]; for(int i=0;i<len;i++) r[i]=p[i]-q[i];} break;
+				case MULTIPLY  : { float[] p=reg[ia[m]],q=reg[ib[m]]; for(int i=0;i<len;i++) r[i]=p[i]*q[i];} break;
+				case DIVIDE    : { float[] p=reg[ia[m]],q=reg[ib[m]]; for(int i=0;i<len;i++) r[i]=p[i]/q[i];} break;
+				case POW       : { float[] p=reg[ia[m]],q=reg[ib[m]]; for(int i=0;i<len;i++) r[i]=(float)Math.pow(p[i],q[i]);} break;
+				case HYPOT     : { float[] p=reg[ia[m]],q=reg[ib[m]]; for(int i=0;i<len;i++) r[i]=(float)Math.hypot(p[i],q[i]);} break;
+				case EXP       : { float[] p=reg[ia[m]]; for(int i=0;i<len;i++) r[i]=(float)Math.exp(p[i]);} break;
+				case ABS       : { float[] p=reg[ia[m]]; for(int i=0;i<len;i++) r[i]=Math.abs(p[i]);} break;
+				case SQUARE    : { float[] p=reg[ia[m]]; for(int i=0;i<len;i++) r[i]=p[i]*p[i];} break;
+				case SQRT      : { float[] p=reg[ia[m]]; for(int i=0;i<len;i++) r[i]=(float)Math.sqrt(p[i]);} break;
+				case RECIPROCAL: { float[] p=reg[ia[m]]; for(int i=0;i<len;i++) r[i]=1/p[i];} break;
+				case LOG       : { float[] p=reg[ia[m]]; for(int i=0;i<len;i++) r[i]=(float)Math.log(p[i]);} break;
+				default: throw new IllegalArgumentException("unsupported operation: "+ops[m]);
+				}
+			}
+			
+			float[] res=reg[ops.length-1];
+			float[] r  =re.row(n);
+			
+			int o=re.rowOffset(n)+str;
+			
+			for(int i=0;i<len;i++) r[o+i]=def[i]?res[i]:undef;
+		}
+	}
+}
@@ -9,6 +9,7 @@ package miniufo.diagnosis;
 import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import miniufo.concurrent.ConcurrentUtil;
 import miniufo.basic.Operatable;
 import miniufo.basic.Indexing;
 import miniufo.basic.InterpolationModel;
@@ -41,6 +42,9 @@ public final class Variable implements Operatable<Variable>{
 	private Range range		  =null;
 	
 	private float[][][][] data=null;
+	private float[]         flat=null;	// flat storage, exclusive with data
+	
+	private static int parallelThreshold=1<<16;	// minimum grid points to be processed in parallel
 	
 	private static final Pattern unitPtn=Pattern.compile("\\(([^\\(\\).]*?)\\)$");
 	
@@ -130,8 +134,29 @@ public final class Variable implements Operatable<Variable>{
 		
 		undef=v.undef;	has_undef=v.has_undef;
 		
-		if(tfirst) data=new float[t][z][y][x];
-		else	   data=new float[z][y][x][t];
+		allocate(v.flat!=null);
+	}
+	
+	/**
+     * constructor, the data are stored in a flat array instead of a 4D array
+     *
+     * @param	vname	variable name
+     * @param	tfirst	whether t dimension is the first dimension
+     * @param	range	data range
+     * @param	flat	flat storage in t-first or t-last order (null to allocate a new one)
+     */
+	public Variable(String vname,boolean tfirst,Range range,float[] flat){
+		this.vname =vname;
+		this.range =range;
+		this.tfirst=tfirst;
+		
+		t=range.getTRange()[2];	z=range.getZRange()[2];
+		y=range.getYRange()[2];	x=range.getXRange()[2];
+		
+		if(flat==null) allocate(true);
+		else if(flat.length!=(long)t*z*y*x)
+			throw new IllegalArgumentException("length of flat storage should be "+(long)t*z*y*x);
+		else this.flat=flat;
 	}
 	
 	
@@ -173,7 +198,7 @@ public final class Variable implements Operatable<Variable>{
 		r.data=new float[r.t][][][];
 		
 		for(int l=0;l<v.length;l++)
-		for(int ll=0;ll<v[l].t;ll++) r.data[v[0].t*l+ll]=v[l].data[ll];
+		for(int ll=0;ll<v[l].t;ll++) r.data[v[0].t*l+ll]=v[l].getData()[ll];
 		
 		return r;
 	}
@@ -205,7 +230,84 @@ public final class Variable implements Operatable<Variable>{
 		else return comment;
 	}
 	
-	public float[][][][] getData(){ return data;}
+	/**
+     * Get the data in 4D array form.  For a flat storage, the 4D array
+     * is materialised at the first call and then becomes the storage.
+     */
+	public float[][][][] getData(){
+		if(flat!=null){
+			float[] f=flat;	int len=rowLength();
+			
+			allocate(false);
+			
+			for(int n=0,N=rowCount();n<N;n++) System.arraycopy(f,n*len,row(n),0,len);
+		}
+		
+		return data;
+	}
+	
+	/**
+     * Get the flat storage, null if the data are stored in 4D array.
+     * Element [l][k][j][i] is at getIndex(l,k,j,i).
+     */
+	public float[] getFlatData(){ return flat;}
+	
+	/**
+     * Convert the 4D storage into a flat storage.  Arrays obtained
+     * from getData() before the conversion are detached.
+     */
+	public Variable toFlat(){
+		if(flat==null){
+			float[][][][] d=data;	int len=rowLength();
+			
+			allocate(true);
+			
+			float[] f=flat;	flat=null;	data=d;
+			
+			for(int n=0,N=rowCount();n<N;n++) System.arraycopy(row(n),0,f,n*len,len);
+			
+			flat=f;	data=null;
+		}
+		
+		return this;
+	}
+	
+	/**
+     * whether the data are stored in a flat array
+     */
+	public boolean isFlat(){ return flat!=null;}
+	
+	/**
+     * strides of t, z, y, x dimensions in the flat storage
+     */
+	public int[] getStrides(){
+		if(tfirst) return new int[]{z*y*x,y*x,x,1};
+		else       return new int[]{1,y*x*t,x*t,t};
+	}
+	
+	/**
+     * index in the flat storage of the given (t,z,y,x) point
+     */
+	public int getIndex(int l,int k,int j,int i){
+		if(tfirst) return ((l*z+k)*y+j)*x+i;
+		else       return ((k*y+j)*x+i)*t+l;
+	}
+	
+	/**
+     * get or set the value at a given (t,z,y,x) point, work for both storages
+     */
+	public float getValue(int l,int k,int j,int i){
+		if(flat!=null) return flat[getIndex(l,k,j,i)];
+		
+		if(tfirst) return data[l][k][j][i];
+		else       return data[k][j][i][l];
+	}
+	
+	public void setValue(int l,int k,int j,int i,float v){
+		if(flat!=null) flat[getIndex(l,k,j,i)]=v;
+		else if(tfirst) data[l][k][j][i]=v;
+		else data[k][j][i][l]=v;
+	}
 	
 	public void setRange(Range r){
 		t=r.getTRange()[2];	z=r.getZRange()[2];
@@ -235,7 +337,7 @@ public final class Variable implements Operatable<Variable>{
 	}
 	
 	public void setData(float[][][][] data,boolean tfirst){
-		this.data=data;
+		this.data=data;	flat=null;
 		
 		if(tfirst){
 			t=data.length;			z=data[0].length;
@@ -254,6 +356,18 @@ public final class Variable implements Operatable<Variable>{
 		rr=range.getXRange();	rr[2]=x;	rr[1]=rr[2]+rr[0]-1;
 	}
 	
+	/**
+	 * Set the minimum number of grid points above which the element-wise
+	 * operations and averageAlong run in parallel on ConcurrentUtil threads.
+	 *
+     * @param	threshold	minimum grid points
+     */
+	public static void setParallelThreshold(int threshold){
+		if(threshold<1) throw new IllegalArgumentException("threshold should be positive");
+		
+		parallelThreshold=threshold;
+	}
+	
 	
 	/**
      * plus a constant to the variable
@@ -263,24 +377,9 @@ public final class Variable implements Operatable<Variable>{
 	public Variable plus(float v){
 		if(v==undef) System.out.println(" Warning: parameter equals undefined value");
 		
-		Variable re=copy();
-		
-		float[][][][] rdata=re.getData();
+		Variable re=new Variable(vname,this);
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) rdata[l][k][j][i]=data[l][k][j][i]+v;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) rdata[k][j][i][l]=data[k][j][i][l]+v;
-		}
+		compute(Op.PLUS,v,re);
 		
 		return re;
 	}
@@ -288,20 +387,7 @@ public final class Variable implements Operatable<Variable>{
 	public Variable plusEq(float v){
 		if(v==undef) System.out.println(" Warning: parameter equals undefined value");
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-				if(data[l][k][j][i]!=undef) data[l][k][j][i]+=v;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-				if(data[k][j][i][l]!=undef) data[k][j][i][l]+=v;
-		}
+		compute(Op.PLUS,v,this);
 		
 		return this;
 	}
@@ -314,24 +400,9 @@ public final class Variable implements Operatable<Variable>{
 	public Variable minus(float v){
 		if(v==undef) System.out.println(" Warning: parameter equals undefined value");
 		
-		Variable re=copy();
-		
-		float[][][][] rdata=re.getData();
+		Variable re=new Variable(vname,this);
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) rdata[l][k][j][i]=data[l][k][j][i]-v;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) rdata[k][j][i][l]=data[k][j][i][l]-v;
-		}
+		compute(Op.MINUS,v,re);
 		
 		return re;
 	}
@@ -339,20 +410,7 @@ public final class Variable implements Operatable<Variable>{
 	public Variable minusEq(float v){
 		if(v==undef) System.out.println(" Warning: parameter equals undefined value");
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) data[l][k][j][i]-=v;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) data[k][j][i][l]-=v;
-		}
+		compute(Op.MINUS,v,this);
 		
 		return this;
 	}
@@ -365,24 +423,9 @@ public final class Variable implements Operatable<Variable>{
 	public Variable multiply(float v){
 		if(v==undef) System.out.println(" Warning: parameter equals undefined value");
 		
-		Variable re=copy();
+		Variable re=new Variable(vname,this);
 		
-		float[][][][] rdata=re.getData();
-		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) rdata[l][k][j][i]=data[l][k][j][i]*v;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) rdata[k][j][i][l]=data[k][j][i][l]*v;
-		}
+		compute(Op.MULTIPLY,v,re);
 		
 		return re;
 	}
@@ -390,20 +433,7 @@ public final class Variable implements Operatable<Variable>{
 	public Variable multiplyEq(float v){
 		if(v==undef) System.out.println(" Warning: parameter equals undefined value");
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) data[l][k][j][i]*=v;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) data[k][j][i][l]*=v;
-		}
+		compute(Op.MULTIPLY,v,this);
 		
 		return this;
 	}
@@ -417,24 +447,9 @@ public final class Variable implements Operatable<Variable>{
 		if(v==0) throw new IllegalArgumentException("divided by zero");
 		if(v==undef) System.out.println(" Warning: parameter equals undefined value");
 		
-		Variable re=copy();
-		
-		float[][][][] rdata=re.getData();
+		Variable re=new Variable(vname,this);
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) rdata[l][k][j][i]=data[l][k][j][i]/v;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) rdata[k][j][i][l]=data[k][j][i][l]/v;
-		}
+		compute(Op.DIVIDE,v,re);
 		
 		return re;
 	}
@@ -443,20 +458,7 @@ public final class Variable implements Operatable<Variable>{
 		if(v==0) throw new IllegalArgumentException("divided by zero");
 		if(v==undef) System.out.println(" Warning: parameter equals undefined value");
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) data[l][k][j][i]/=v;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) data[k][j][i][l]/=v;
-		}
+		compute(Op.DIVIDE,v,this);
 		
 		return this;
 	}
@@ -469,24 +471,9 @@ public final class Variable implements Operatable<Variable>{
 	public Variable pow(float v){
 		if(v==undef) System.out.println(" Warning: parameter equals undefined value");
 		
-		Variable re=copy();
-		
-		float[][][][] rdata=re.getData();
+		Variable re=new Variable(vname,this);
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) rdata[l][k][j][i]=(float)Math.pow(data[l][k][j][i],v);
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) rdata[k][j][i][l]=(float)Math.pow(data[k][j][i][l],v);
-		}
+		compute(Op.POW,v,re);
 		
 		return re;
 	}
@@ -494,296 +481,90 @@ public final class Variable implements Operatable<Variable>{
 	public Variable powEq(float v){
 		if(v==undef) System.out.println(" Warning: parameter equals undefined value");
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) data[l][k][j][i]=(float)Math.pow(data[l][k][j][i],v);
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) data[k][j][i][l]=(float)Math.pow(data[k][j][i][l],v);
-		}
+		compute(Op.POW,v,this);
 		
 		return this;
 	}
 	
+	
 	/**
      * exp
      */
 	public Variable exp(){
-		Variable re=copy();
+		Variable re=new Variable(vname,this);
 		
-		float[][][][] rdata=re.getData();
-		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) rdata[l][k][j][i]=(float)Math.exp(data[l][k][j][i]);
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) rdata[k][j][i][l]=(float)Math.exp(data[k][j][i][l]);
-		}
+		compute(Op.EXP,0,re);
 		
 		return re;
 	}
 	
-	public Variable expEq(){
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) data[l][k][j][i]=(float)Math.exp(data[l][k][j][i]);
-			else data[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) data[k][j][i][l]=(float)Math.exp(data[k][j][i][l]);
-			else data[k][j][i][l]=undef;
-		}
-		
-		return this;
-	}
+	public Variable expEq(){ compute(Op.EXP,0,this); return this;}
 	
 	/**
      * abs
      */
 	public Variable abs(){
-		Variable re=copy();
+		Variable re=new Variable(vname,this);
 		
-		float[][][][] rdata=re.getData();
-		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) rdata[l][k][j][i]=Math.abs(data[l][k][j][i]);
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) rdata[k][j][i][l]=Math.abs(data[k][j][i][l]);
-		}
+		compute(Op.ABS,0,re);
 		
 		return re;
 	}
 	
-	public Variable absEq(){
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) data[l][k][j][i]=Math.abs(data[l][k][j][i]);
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) data[k][j][i][l]=Math.abs(data[k][j][i][l]);
-		}
-		
-		return this;
-	}
+	public Variable absEq(){ compute(Op.ABS,0,this); return this;}
 	
 	/**
      * square
      */
 	public Variable square(){
-		Variable re=copy();
+		Variable re=new Variable(vname,this);
 		
-		float[][][][] rdata=re.getData();
-		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) rdata[l][k][j][i]=data[l][k][j][i]*data[l][k][j][i];
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) rdata[k][j][i][l]=data[k][j][i][l]*data[k][j][i][l];
-		}
+		compute(Op.SQUARE,0,re);
 		
 		return re;
 	}
 	
-	public Variable squareEq(){
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) data[l][k][j][i]*=data[l][k][j][i];
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) data[k][j][i][l]*=data[k][j][i][l];
-		}
-		
-		return this;
-	}
+	public Variable squareEq(){ compute(Op.SQUARE,0,this); return this;}
 	
 	/**
      * sqrt
      */
 	public Variable sqrt(){
-		Variable re=copy();
+		Variable re=new Variable(vname,this);
 		
-		float[][][][] rdata=re.getData();
-		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) rdata[l][k][j][i]=(float)(Math.sqrt(data[l][k][j][i]));
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) rdata[k][j][i][l]=(float)(Math.sqrt(data[k][j][i][l]));
-		}
+		compute(Op.SQRT,0,re);
 		
 		return re;
 	}
 	
-	public Variable sqrtEq(){
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) data[l][k][j][i]=(float)(Math.sqrt(data[l][k][j][i]));
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) data[k][j][i][l]=(float)(Math.sqrt(data[k][j][i][l]));
-		}
-		
-		return this;
-	}
+	public Variable sqrtEq(){ compute(Op.SQRT,0,this); return this;}
 	
 	/**
      * reciprocal
      */
 	public Variable reciprocal(){
-		Variable re=copy();
+		Variable re=new Variable(vname,this);
 		
-		float[][][][] rdata=re.getData();
-		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) rdata[l][k][j][i]=1/data[l][k][j][i];
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) rdata[k][j][i][l]=1/data[k][j][i][l];
-		}
+		compute(Op.RECIPROCAL,0,re);
 		
 		return re;
 	}
 	
-	public Variable reciprocalEq(){
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) data[l][k][j][i]=1/data[l][k][j][i];
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) data[k][j][i][l]=1/data[k][j][i][l];
-		}
-		
-		return this;
-	}
+	public Variable reciprocalEq(){ compute(Op.RECIPROCAL,0,this); return this;}
 	
 	/**
      * logarithm (base e)
      */
 	public Variable logarithm(){
-		Variable re=copy();
-		
-		float[][][][] rdata=re.getData();
-		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) rdata[l][k][j][i]=(float)(Math.log(data[l][k][j][i]));
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) rdata[k][j][i][l]=(float)(Math.log(data[k][j][i][l]));
-		}
+		Variable re=new Variable(vname,this);
 		
-		return re;
-	}
-	
-	public Variable logarithmEq(){
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef) data[l][k][j][i]=(float)(Math.log(data[l][k][j][i]));
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef) data[k][j][i][l]=(float)(Math.log(data[k][j][i][l]));
-		}
+		compute(Op.LOG,0,re);
 		
-		return this;
+		return re;
 	}
 	
+	public Variable logarithmEq(){ compute(Op.LOG,0,this); return this;}
+	
 	
 	/**
      * calculate hypotenuse
@@ -791,60 +572,17 @@ public final class Variable implements Operatable<Variable>{
 	public Variable hypotenuse(Variable v){
 		if(!isLike(v)) throw new IllegalArgumentException("dimension not same");
 		
-		Variable r=copy();
-		
-		float[][][][] rdata=r.getData();
-		float[][][][] vdata=v.getData();
+		Variable re=new Variable(vname,this);
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef&&vdata[l][k][j][i]!=undef)
-				rdata[l][k][j][i]=(float)(Math.hypot(data[l][k][j][i],vdata[l][k][j][i]));
-			else
-				rdata[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef&&vdata[k][j][i][l]!=undef)
-				rdata[k][j][i][l]=(float)(Math.hypot(data[k][j][i][l],vdata[k][j][i][l]));
-			else
-				rdata[k][j][i][l]=undef;
-		}
+		compute(Op.HYPOT,v,re);
 		
-		return r;
+		return re;
 	}
 	
 	public Variable hypotenuseEq(Variable v){
 		if(!isLike(v)) throw new IllegalArgumentException("dimension not same");
 		
-		float[][][][] vdata=v.getData();
-		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef&&vdata[l][k][j][i]!=undef)
-				data[l][k][j][i]=(float)(Math.hypot(data[l][k][j][i],vdata[l][k][j][i]));
-			else
-				data[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef&&vdata[k][j][i][l]!=undef)
-				data[k][j][i][l]=(float)(Math.hypot(data[k][j][i][l],vdata[k][j][i][l]));
-			else
-				data[k][j][i][l]=undef;
-		}
+		compute(Op.HYPOT,v,this);
 		
 		return this;
 	}
@@ -860,30 +598,9 @@ public final class Variable implements Operatable<Variable>{
 	public Variable plus(Variable v){
 		if(!isLike(v)) throw new IllegalArgumentException("dimension not same");
 		
-		Variable re=copy();
-		
-		float[][][][] rdata=re.getData();
+		Variable re=new Variable(vname,this);
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(v.data[l][k][j][i]!=undef&&data[l][k][j][i]!=undef)
-				rdata[l][k][j][i]=v.data[l][k][j][i]+data[l][k][j][i];
-			else
-				rdata[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(v.data[k][j][i][l]!=undef&&data[k][j][i][l]!=undef)
-				rdata[k][j][i][l]=v.data[k][j][i][l]+data[k][j][i][l];
-			else
-				rdata[k][j][i][l]=undef;
-		}
+		compute(Op.PLUS,v,re);
 		
 		return re;
 	}
@@ -891,22 +608,7 @@ public final class Variable implements Operatable<Variable>{
 	public Variable plusEq(Variable v){
 		if(!isLike(v)) throw new IllegalArgumentException("dimension not same");
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(v.data[l][k][j][i]!=undef&&data[l][k][j][i]!=undef) data[l][k][j][i]+=v.data[l][k][j][i];
-			else data[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(v.data[k][j][i][l]!=undef&&data[k][j][i][l]!=undef) data[k][j][i][l]+=v.data[k][j][i][l];
-			else data[k][j][i][l]=undef;
-		}
+		compute(Op.PLUS,v,this);
 		
 		return this;
 	}
@@ -921,30 +623,9 @@ public final class Variable implements Operatable<Variable>{
 	public Variable minus(Variable v){
 		if(!isLike(v)) throw new IllegalArgumentException("dimension not same");
 		
-		Variable re=copy();
+		Variable re=new Variable(vname,this);
 		
-		float[][][][] rdata=re.getData();
-		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(v.data[l][k][j][i]!=undef&&data[l][k][j][i]!=undef)
-				rdata[l][k][j][i]=data[l][k][j][i]-v.data[l][k][j][i];
-			else
-				rdata[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(v.data[k][j][i][l]!=undef&&data[k][j][i][l]!=undef)
-				rdata[k][j][i][l]=data[k][j][i][l]-v.data[k][j][i][l];
-			else
-				rdata[k][j][i][l]=undef;
-		}
+		compute(Op.MINUS,v,re);
 		
 		return re;
 	}
@@ -952,22 +633,7 @@ public final class Variable implements Operatable<Variable>{
 	public Variable minusEq(Variable v){
 		if(!isLike(v)) throw new IllegalArgumentException("dimension not same");
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(v.data[l][k][j][i]!=undef&&data[l][k][j][i]!=undef) data[l][k][j][i]-=v.data[l][k][j][i];
-			else data[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(v.data[k][j][i][l]!=undef&&data[k][j][i][l]!=undef) data[k][j][i][l]-=v.data[k][j][i][l];
-			else data[k][j][i][l]=undef;
-		}
+		compute(Op.MINUS,v,this);
 		
 		return this;
 	}
@@ -982,30 +648,9 @@ public final class Variable implements Operatable<Variable>{
 	public Variable multiply(Variable v){
 		if(!isLike(v)) throw new IllegalArgumentException("dimension not same");
 		
-		Variable re=copy();
-		
-		float[][][][] rdata=re.getData();
+		Variable re=new Variable(vname,this);
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef&&v.data[l][k][j][i]!=undef)
-				rdata[l][k][j][i]=data[l][k][j][i]*v.data[l][k][j][i];
-			else
-				rdata[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef&&v.data[k][j][i][l]!=undef)
-				rdata[k][j][i][l]=data[k][j][i][l]*v.data[k][j][i][l];
-			else
-				rdata[k][j][i][l]=undef;
-		}
+		compute(Op.MULTIPLY,v,re);
 		
 		return re;
 	}
@@ -1013,22 +658,7 @@ public final class Variable implements Operatable<Variable>{
 	public Variable multiplyEq(Variable v){
 		if(!isLike(v)) throw new IllegalArgumentException("dimension not same");
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef&&v.data[l][k][j][i]!=undef) data[l][k][j][i]*=v.data[l][k][j][i];
-			else data[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef&&v.data[k][j][i][l]!=undef) data[k][j][i][l]*=v.data[k][j][i][l];
-			else data[k][j][i][l]=undef;
-		}
+		compute(Op.MULTIPLY,v,this);
 		
 		return this;
 	}
@@ -1043,30 +673,9 @@ public final class Variable implements Operatable<Variable>{
 	public Variable divide(Variable v){
 		if(!isLike(v)) throw new IllegalArgumentException("dimension not same");
 		
-		Variable re=copy();
+		Variable re=new Variable(vname,this);
 		
-		float[][][][] rdata=re.getData();
-		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef&&v.data[l][k][j][i]!=undef)
-				rdata[l][k][j][i]=data[l][k][j][i]/v.data[l][k][j][i];
-			else
-				rdata[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef&&v.data[k][j][i][l]!=undef)
-				rdata[k][j][i][l]=data[k][j][i][l]/v.data[k][j][i][l];
-			else
-				rdata[k][j][i][l]=undef;
-		}
+		compute(Op.DIVIDE,v,re);
 		
 		return re;
 	}
@@ -1074,22 +683,7 @@ public final class Variable implements Operatable<Variable>{
 	public Variable divideEq(Variable v){
 		if(!isLike(v)) throw new IllegalArgumentException("dimension not same");
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef&&v.data[l][k][j][i]!=undef) data[l][k][j][i]/=v.data[l][k][j][i];
-			else data[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef&&v.data[k][j][i][l]!=undef) data[k][j][i][l]/=v.data[k][j][i][l];
-			else data[k][j][i][l]=undef;
-		}
+		compute(Op.DIVIDE,v,this);
 		
 		return this;
 	}
@@ -1102,31 +696,9 @@ public final class Variable implements Operatable<Variable>{
 	public Variable pow(Variable v){
 		if(!isLike(v)) throw new IllegalArgumentException("dimension not same");
 		
-		Variable re=copy();
-		
-		float[][][][] rdata=re.getData();
-		float[][][][] vdata=v.getData();
+		Variable re=new Variable(vname,this);
 		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef&&vdata[l][k][j][i]!=undef)
-				rdata[l][k][j][i]=(float)Math.pow(data[l][k][j][i],vdata[l][k][j][i]);
-			else
-				rdata[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef&&vdata[k][j][i][l]!=undef)
-				rdata[k][j][i][l]=(float)Math.pow(data[k][j][i][l],vdata[k][j][i][l]);
-			else
-				rdata[k][j][i][l]=undef;
-		}
+		compute(Op.POW,v,re);
 		
 		return re;
 	}
@@ -1134,28 +706,7 @@ public final class Variable implements Operatable<Variable>{
 	public Variable powEq(Variable v){
 		if(!isLike(v)) throw new IllegalArgumentException("dimension not same");
 		
-		float[][][][] vdata=v.getData();
-		
-		if(tfirst){
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[l][k][j][i]!=undef&&vdata[l][k][j][i]!=undef)
-				data[l][k][j][i]=(float)Math.pow(data[l][k][j][i],vdata[l][k][j][i]);
-			else
-				data[l][k][j][i]=undef;
-					
-		}else{
-			for(int l=0;l<t;l++)
-			for(int k=0;k<z;k++)
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++)
-			if(data[k][j][i][l]!=undef&&vdata[k][j][i][l]!=undef)
-				data[k][j][i][l]=(float)Math.pow(data[k][j][i][l],vdata[k][j][i][l]);
-			else
-				data[k][j][i][l]=undef;
-		}
+		compute(Op.POW,v,this);
 		
 		return this;
 	}
@@ -1168,6 +719,8 @@ public final class Variable implements Operatable<Variable>{
      * 					are all extract into a 1D data.
      */
 	public float[] extract1D(String index){
+		float[][][][] data=getData();
+		
 		String[] tokens=Indexing.comma.split(Indexing.space.matcher(index).replaceAll(""));
 		
 		if(tokens.length!=4) throw new IllegalArgumentException("index ("+index+") should contain three commas");
@@ -1232,6 +785,8 @@ public final class Variable implements Operatable<Variable>{
      * 					are all extract into a 2D data.
      */
 	public float[][] extract2D(String index){
+		float[][][][] data=getData();
+		
 		String[] tokens=Indexing.comma.split(Indexing.space.matcher(index).replaceAll(""));
 		
 		if(tokens.length!=4) throw new IllegalArgumentException("index ("+index+") should contain three commas");
@@ -1316,6 +871,8 @@ public final class Variable implements Operatable<Variable>{
      * set the data to a given value
      */
 	public Variable setInner(float v){
+		float[][][][] data=getData();
+		
 		if(tfirst){
 			for(int l=0;l<t;l++)
 			for(int k=0;k<z;k++)
@@ -1333,6 +890,8 @@ public final class Variable implements Operatable<Variable>{
 	}
 	
 	public Variable setOuter(float v){
+		float[][][][] data=getData();
+		
 		if(tfirst){
 			for(int l=0;l<t;l++)
 			for(int k=0;k<z;k++){
@@ -1352,6 +911,8 @@ public final class Variable implements Operatable<Variable>{
 	}
 	
 	public Variable setValue(float v){
+		float[][][][] data=getData();
+		
 		if(tfirst){
 			for(int l=0;l<t;l++)
 			for(int k=0;k<z;k++)
@@ -1372,6 +933,8 @@ public final class Variable implements Operatable<Variable>{
      * if data < v then set v to data
      */
 	public Variable setDataMin(float v){
+		float[][][][] data=getData();
+		
 		if(tfirst){
 			for(int l=0;l<t;l++)
 			for(int k=0;k<z;k++)
@@ -1392,6 +955,8 @@ public final class Variable implements Operatable<Variable>{
      * if data > v then set v to data
      */
 	public Variable setDataMax(float v){
+		float[][][][] data=getData();
+		
 		if(tfirst){
 			for(int l=0;l<t;l++)
 			for(int k=0;k<z;k++)
@@ -1412,6 +977,8 @@ public final class Variable implements Operatable<Variable>{
      * replace the undef to new undef
      */
 	public Variable replaceUndefData(float newUndef){
+		float[][][][] data=getData();
+		
 		if(tfirst){
 			for(int l=0;l<t;l++)
 			for(int k=0;k<z;k++)
@@ -1436,6 +1003,8 @@ public final class Variable implements Operatable<Variable>{
      * change the NaN values to undefined values
      */
 	public Variable changeNaNToUndef(){
+		float[][][][] data=getData();
+		
 		if(tfirst){
 			for(int l=0;l<t;l++)
 			for(int k=0;k<z;k++)
@@ -1494,6 +1063,8 @@ public final class Variable implements Operatable<Variable>{
      * @return	re	new variable after averaging
      */
 	public Variable averageAlong(Dimension d,int str,int end,boolean anom){
+		float[][][][] data=getData();
+		
 		int tlen=t;	int zlen=z;
 		int ylen=y;	int xlen=x;
 		
@@ -1516,19 +1087,23 @@ public final class Variable implements Operatable<Variable>{
 		if(tfirst){
 			switch(d){
 			case T:
-				for(int k=0;k<z;k++)
-				for(int j=0;j<y;j++)
-				for(int i=0;i<x;i++){
-					int count=0;	float sum=0;
-					
-					for(int l=str;l<=end;l++) if(data[l][k][j][i]!=undef){ sum+=data[l][k][j][i]; count++;}
-					
-					if(count!=0) nvdata[0][k][j][i]=sum/count;
-					else nvdata[0][k][j][i]=undef;
-					
-					if(anom) for(int l=str;l<=end;l++)
-					if(data[l][k][j][i]!=undef) data[l][k][j][i]-=nvdata[0][k][j][i];
-				}
+				ConcurrentUtil.parallelFor(z*y,grain(x*(end-str+1)),(s,e)->{
+					for(int n=s;n<e;n++){
+						int k=n/y,j=n%y;
+						
+						for(int i=0;i<x;i++){
+							int count=0;	float sum=0;
+							
+							for(int l=str;l<=end;l++) if(data[l][k][j][i]!=undef){ sum+=data[l][k][j][i]; count++;}
+							
+							if(count!=0) nvdata[0][k][j][i]=sum/count;
+							else nvdata[0][k][j][i]=undef;
+							
+							if(anom) for(int l=str;l<=end;l++)
+							if(data[l][k][j][i]!=undef) data[l][k][j][i]-=nvdata[0][k][j][i];
+						}
+					}
+				});
 				
 				nr.setTRange(range.getTRange()[0]);
 				nr.setZRange(range);
@@ -1538,19 +1113,23 @@ public final class Variable implements Operatable<Variable>{
 				break;
 				
 			case Z:
-				for(int l=0;l<t;l++)
-				for(int j=0;j<y;j++)
-				for(int i=0;i<x;i++){
-					int count=0;	float sum=0;
-					
-					for(int k=str;k<=end;k++) if(data[l][k][j][i]!=undef){ sum+=data[l][k][j][i]; count++;}
-					
-					if(count!=0) nvdata[l][0][j][i]=sum/count;
-					else nvdata[l][0][j][i]=undef;
-					
-					if(anom) for(int k=str;k<=end;k++)
-					if(data[l][k][j][i]!=undef) data[l][k][j][i]-=nvdata[l][0][j][i];
-				}
+				ConcurrentUtil.parallelFor(t*y,grain(x*(end-str+1)),(s,e)->{
+					for(int n=s;n<e;n++){
+						int l=n/y,j=n%y;
+						
+						for(int i=0;i<x;i++){
+							int count=0;	float sum=0;
+							
+							for(int k=str;k<=end;k++) if(data[l][k][j][i]!=undef){ sum+=data[l][k][j][i]; count++;}
+							
+							if(count!=0) nvdata[l][0][j][i]=sum/count;
+							else nvdata[l][0][j][i]=undef;
+							
+							if(anom) for(int k=str;k<=end;k++)
+							if(data[l][k][j][i]!=undef) data[l][k][j][i]-=nvdata[l][0][j][i];
+						}
+					}
+				});
 				
 				nr.setTRange(range);
 				nr.setZRange(range.getZRange()[0]);
@@ -1560,19 +1139,23 @@ public final class Variable implements Operatable<Variable>{
 				break;
 				
 			case Y:
-				for(int l=0;l<t;l++)
-				for(int k=0;k<z;k++)
-				for(int i=0;i<x;i++){
-					int count=0;	float sum=0;
-					
-					for(int j=str;j<=end;j++) if(data[l][k][j][i]!=undef){ sum+=data[l][k][j][i]; count++;}
-					
-					if(count!=0) nvdata[l][k][0][i]=sum/count;
-					else nvdata[l][k][0][i]=undef;
-					
-					if(anom) for(int j=str;j<=end;j++)
-					if(data[l][k][j][i]!=undef) data[l][k][j][i]-=nvdata[l][k][0][i];
-				}
+				ConcurrentUtil.parallelFor(t*z,grain(x*(end-str+1)),(s,e)->{
+					for(int n=s;n<e;n++){
+						int l=n/z,k=n%z;
+						
+						for(int i=0;i<x;i++){
+							int count=0;	float sum=0;
+							
+							for(int j=str;j<=end;j++) if(data[l][k][j][i]!=undef){ sum+=data[l][k][j][i]; count++;}
+							
+							if(count!=0) nvdata[l][k][0][i]=sum/count;
+							else nvdata[l][k][0][i]=undef;
+							
+							if(anom) for(int j=str;j<=end;j++)
+							if(data[l][k][j][i]!=undef) data[l][k][j][i]-=nvdata[l][k][0][i];
+						}
+					}
+				});
 				
 				nr.setTRange(range);
 				nr.setZRange(range);
@@ -1582,19 +1165,23 @@ public final class Variable implements Operatable<Variable>{
 				break;
 				
 			case X:
-				for(int l=0;l<t;l++)
-				for(int k=0;k<z;k++)
-				for(int j=0;j<y;j++){
-					int count=0;	float sum=0;
-					
-					for(int i=str;i<=end;i++) if(data[l][k][j][i]!=undef){ sum+=data[l][k][j][i]; count++;}
-					
-					if(count!=0) nvdata[l][k][j][0]=sum/count;
-					else nvdata[l][k][j][0]=undef;
-					
-					if(anom) for(int i=str;i<=end;i++)
-					if(data[l][k][j][i]!=undef) data[l][k][j][i]-=nvdata[l][k][j][0];
-				}
+				ConcurrentUtil.parallelFor(t*z,grain(y*(end-str+1)),(s,e)->{
+					for(int n=s;n<e;n++){
+						int l=n/z,k=n%z;
+						
+						for(int j=0;j<y;j++){
+							int count=0;	float sum=0;
+							
+							for(int i=str;i<=end;i++) if(data[l][k][j][i]!=undef){ sum+=data[l][k][j][i]; count++;}
+							
+							if(count!=0) nvdata[l][k][j][0]=sum/count;
+							else nvdata[l][k][j][0]=undef;
+							
+							if(anom) for(int i=str;i<=end;i++)
+							if(data[l][k][j][i]!=undef) data[l][k][j][i]-=nvdata[l][k][j][0];
+						}
+					}
+				});
 				
 				nr.setTRange(range);
 				nr.setZRange(range);
@@ -1609,19 +1196,23 @@ public final class Variable implements Operatable<Variable>{
 		}else{
 			switch(d){
 			case T:
-				for(int k=0;k<z;k++)
-				for(int j=0;j<y;j++)
-				for(int i=0;i<x;i++){
-					int count=0;	float sum=0;
-					
-					for(int l=str;l<=end;l++) if(data[k][j][i][l]!=undef){ sum+=data[k][j][i][l]; count++;}
-					
-					if(count!=0) nvdata[k][j][i][0]=sum/count;
-					else nvdata[k][j][i][0]=undef;
-					
-					if(anom) for(int l=str;l<=end;l++)
-					if(data[k][j][i][l]!=undef) data[k][j][i][l]-=nvdata[k][j][i][0];
-				}
+				ConcurrentUtil.parallelFor(z*y,grain(x*(end-str+1)),(s,e)->{
+					for(int n=s;n<e;n++){
+						int k=n/y,j=n%y;
+						
+						for(int i=0;i<x;i++){
+							int count=0;	float sum=0;
+							
+							for(int l=str;l<=end;l++) if(data[k][j][i][l]!=undef){ sum+=data[k][j][i][l]; count++;}
+							
+							if(count!=0) nvdata[k][j][i][0]=sum/count;
+							else nvdata[k][j][i][0]=undef;
+							
+							if(anom) for(int l=str;l<=end;l++)
+							if(data[k][j][i][l]!=undef) data[k][j][i][l]-=nvdata[k][j][i][0];
+						}
+					}
+				});
 				
 				nr.setTRange(range.getTRange()[0]);
 				nr.setZRange(range);
@@ -1631,19 +1222,23 @@ public final class Variable implements Operatable<Variable>{
 				break;
 				
 			case Z:
-				for(int l=0;l<t;l++)
-				for(int j=0;j<y;j++)
-				for(int i=0;i<x;i++){
-					int count=0;	float sum=0;
-					
-					for(int k=str;k<=end;k++) if(data[k][j][i][l]!=undef){ sum+=data[k][j][i][l]; count++;}
-					
-					if(count!=0) nvdata[0][j][i][l]=sum/count;
-					else nvdata[0][j][i][l]=undef;
-					
-					if(anom) for(int k=str;k<=end;k++)
-					if(data[k][j][i][l]!=undef) data[k][j][i][l]-=nvdata[0][j][i][l];
-				}
+				ConcurrentUtil.parallelFor(t*y,grain(x*(end-str+1)),(s,e)->{
+					for(int n=s;n<e;n++){
+						int l=n/y,j=n%y;
+						
+						for(int i=0;i<x;i++){
+							int count=0;	float sum=0;
+							
+							for(int k=str;k<=end;k++) if(data[k][j][i][l]!=undef){ sum+=data[k][j][i][l]; count++;}
+							
+							if(count!=0) nvdata[0][j][i][l]=sum/count;
+							else nvdata[0][j][i][l]=undef;
+							
+							if(anom) for(int k=str;k<=end;k++)
+							if(data[k][j][i][l]!=undef) data[k][j][i][l]-=nvdata[0][j][i][l];
+						}
+					}
+				});
 				
 				nr.setTRange(range);
 				nr.setZRange(range.getZRange()[0]);
@@ -1653,19 +1248,23 @@ public final class Variable implements Operatable<Variable>{
 				break;
 				
 			case Y:
-				for(int l=0;l<t;l++)
-				for(int k=0;k<z;k++)
-				for(int i=0;i<x;i++){
-					int count=0;	float sum=0;
-					
-					for(int j=str;j<=end;j++) if(data[k][j][i][l]!=undef){ sum+=data[k][j][i][l]; count++;}
-					
-					if(count!=0) nvdata[k][0][i][l]=sum/count;
-					else nvdata[k][0][i][l]=undef;
-					
-					if(anom) for(int j=str;j<=end;j++)
-					if(data[k][j][i][l]!=undef) data[k][j][i][l]-=nvdata[k][0][i][l];
-				}
+				ConcurrentUtil.parallelFor(t*z,grain(x*(end-str+1)),(s,e)->{
+					for(int n=s;n<e;n++){
+						int l=n/z,k=n%z;
+						
+						for(int i=0;i<x;i++){
+							int count=0;	float sum=0;
+							
+							for(int j=str;j<=end;j++) if(data[k][j][i][l]!=undef){ sum+=data[k][j][i][l]; count++;}
+							
+							if(count!=0) nvdata[k][0][i][l]=sum/count;
+							else nvdata[k][0][i][l]=undef;
+							
+							if(anom) for(int j=str;j<=end;j++)
+							if(data[k][j][i][l]!=undef) data[k][j][i][l]-=nvdata[k][0][i][l];
+						}
+					}
+				});
 				
 				nr.setTRange(range);
 				nr.setZRange(range);
@@ -1675,19 +1274,23 @@ public final class Variable implements Operatable<Variable>{
 				break;
 				
 			case X:
-				for(int l=0;l<t;l++)
-				for(int k=0;k<z;k++)
-				for(int j=0;j<y;j++){
-					int count=0;	float sum=0;
-					
-					for(int i=str;i<=end;i++) if(data[k][j][i][l]!=undef){ sum+=data[k][j][i][l]; count++;}
-					
-					if(count!=0) nvdata[k][j][0][l]=sum/count;
-					else nvdata[k][j][0][l]=undef;
-					
-					if(anom) for(int i=str;i<=end;i++)
-					if(data[k][j][i][l]!=undef) data[k][j][i][l]-=nvdata[k][j][0][l];
-				}
+				ConcurrentUtil.parallelFor(t*z,grain(y*(end-str+1)),(s,e)->{
+					for(int n=s;n<e;n++){
+						int l=n/z,k=n%z;
+						
+						for(int j=0;j<y;j++){
+							int count=0;	float sum=0;
+							
+							for(int i=str;i<=end;i++) if(data[k][j][i][l]!=undef){ sum+=data[k][j][i][l]; count++;}
+							
+							if(count!=0) nvdata[k][j][0][l]=sum/count;
+							else nvdata[k][j][0][l]=undef;
+							
+							if(anom) for(int i=str;i<=end;i++)
+							if(data[k][j][i][l]!=undef) data[k][j][i][l]-=nvdata[k][j][0][l];
+						}
+					}
+				});
 				
 				nr.setTRange(range);
 				nr.setZRange(range);
@@ -1750,6 +1353,8 @@ public final class Variable implements Operatable<Variable>{
      * @return	mean value of area
      */
 	public Variable anomalizeYX(){
+		float[][][][] data=getData();
+		
 		Range nr=new Range(t,z,1,1);
 		
 		Variable nv=new Variable(vname,tfirst,nr);	nv.setUndef(undef);
@@ -1802,6 +1407,8 @@ public final class Variable implements Operatable<Variable>{
      * @return	mean value of area
      */
 	public Variable anomalizeZY(){
+		float[][][][] data=getData();
+		
 		Range nr=new Range(t,1,1,x);
 		
 		Variable nv=new Variable(vname,tfirst,nr);	nv.setUndef(undef);
@@ -1854,6 +1461,8 @@ public final class Variable implements Operatable<Variable>{
      * @return	mean value of area
      */
 	public Variable anomalizeZX(){
+		float[][][][] data=getData();
+		
 		Range nr=new Range(t,1,y,1);
 		
 		Variable nv=new Variable(vname,tfirst,nr);	nv.setUndef(undef);
@@ -1907,6 +1516,8 @@ public final class Variable implements Operatable<Variable>{
      * @param	v	a given Variable
      */
 	public Variable randomT(){
+		float[][][][] data=getData();
+		
 		float[][] rand=new float[t][2];
 		
 		for(int l=0;l<t;l++){ rand[l][0]=(float)Math.random(); rand[l][1]=l;}
@@ -1942,6 +1553,8 @@ public final class Variable implements Operatable<Variable>{
      * @param	type	type of interpolation
      */
 	public Variable interpolateT(int n,Type type){
+		float[][][][] data=getData();
+		
 		if(n<2) throw new IllegalArgumentException("interpolate length should be at least 2");
 		
 		if(n==t) return copy();
@@ -1989,6 +1602,8 @@ public final class Variable implements Operatable<Variable>{
 	}
 	
 	public Variable interpolateZ(int n,Type type){
+		float[][][][] data=getData();
+		
 		if(n==z) return copy();
 		
 		Variable res=new Variable(vname,tfirst,new Range(t,n,y,x));
@@ -2035,6 +1650,8 @@ public final class Variable implements Operatable<Variable>{
 	}
 	
 	public Variable interpolateY(int n,Type type){
+		float[][][][] data=getData();
+		
 		if(n==y) return copy();
 		
 		Variable res=new Variable(vname,tfirst,new Range(t,z,n,x));
@@ -2081,6 +1698,8 @@ public final class Variable implements Operatable<Variable>{
 	}
 	
 	public Variable interpolateX(int n,Type type){
+		float[][][][] data=getData();
+		
 		if(n==x) return copy();
 		
 		Variable res=new Variable(vname,tfirst,new Range(t,z,y,n));
@@ -2134,6 +1753,8 @@ public final class Variable implements Operatable<Variable>{
      * @param	xtype	type of interpolation in x-direction
      */
 	public Variable interpolateXY(int yn,int xn,Type ytype,Type xtype){
+		float[][][][] data=getData();
+		
 		if(xn==x&&yn==y) return copy();
 		
 		Variable res=new Variable(vname,tfirst,new Range(t,z,yn,xn));
@@ -2194,6 +1815,8 @@ public final class Variable implements Operatable<Variable>{
 		if(unit   !=null) v.unit   =unit;
 		if(comment!=null) v.comment=comment;
 		
+		if(flat!=null){ v.flat=flat.clone(); return v;}
+		
 		if(tfirst) v.data=new float[t][z][y][x];
 		else	   v.data=new float[z][y][x][t];
 		
@@ -2231,6 +1854,121 @@ public final class Variable implements Operatable<Variable>{
 	}
 	
 	
+	/*** helper methods ***/
+	
+	/**
+     * Element-wise operations shared by the arithmetic methods.  The storage
+     * is treated as a sequence of contiguous rows (x-rows for t-first, t-rows
+     * for t-last, or the whole array for flat storage) so that the inner loop
+     * is the same for both 4D and flat storages.
+     */
+	private static enum Op{PLUS,MINUS,MULTIPLY,DIVIDE,POW,EXP,ABS,SQUARE,SQRT,RECIPROCAL,LOG,HYPOT}
+	
+	private void compute(Op op,float c,Variable re){
+		if(flat!=null&&re.flat!=null)
+			ConcurrentUtil.parallelFor(flat.length,grain(1),(s,e)->
+				compute(op,c,undef,flat,s,re.flat,s,e-s)
+			);
+		else{
+			int len=rowLength();
+			
+			ConcurrentUtil.parallelFor(rowCount(),grain(len),(s,e)->{
+				for(int n=s;n<e;n++)
+				compute(op,c,undef,row(n),rowOffset(n),re.row(n),re.rowOffset(n),len);
+			});
+		}
+	}
+	
+	private void compute(Op op,Variable v,Variable re){
+		if(flat!=null&&v.flat!=null&&re.flat!=null)
+			ConcurrentUtil.parallelFor(flat.length,grain(1),(s,e)->
+				compute(op,undef,flat,s,v.flat,s,re.flat,s,e-s)
+			);
+		else{
+			int len=rowLength();
+			
+			ConcurrentUtil.parallelFor(rowCount(),grain(len),(s,e)->{
+				for(int n=s;n<e;n++)
+				compute(op,undef,row(n),rowOffset(n),v.row(n),v.rowOffset(n),re.row(n),re.rowOffset(n),len);
+			});
+		}
+	}
+	
+	/**
+     * number of outer indices per parallel chunk given the grid points of one index,
+     * so that the work below parallelThreshold stays serial
+     */
+	static int grain(int work){ return Math.max(1,(parallelThreshold+work-1)/Math.max(work,1));}
+	
+	/**
+     * r = a op c for the defined points, undefined points are copied
+     */
+	private static void compute(Op op,float c,float undef,float[] a,int ao,float[] r,int ro,int len){
+		switch(op){
+		case PLUS      : for(int i=0;i<len;i++){ float f=a[ao+i]; r[ro+i]=f!=undef?f+c:f;} break;
+		case MINUS     : for(int i=0;i<len;i++){ float f=a[ao+i]; r[ro+i]=f!=undef?f-c:f;} break;
+		case MULTIPLY  : for(int i=0;i<len;i++){ float f=a[ao+i]; r[ro+i]=f!=undef?f*c:f;} break;
+		case DIVIDE    : for(int i=0;i<len;i++){ float f=a[ao+i]; r[ro+i]=f!=undef?f/c:f;} break;
+		case POW       : for(int i=0;i<len;i++){ float f=a[ao+i]; r[ro+i]=f!=undef?(float)Math.pow(f,c):f;} break;
+		case EXP       : for(int i=0;i<len;i++){ float f=a[ao+i]; r[ro+i]=f!=undef?(float)Math.exp(f):f;} break;
+		case ABS       : for(int i=0;i<len;i++){ float f=a[ao+i]; r[ro+i]=f!=undef?Math.abs(f):f;} break;
+		case SQUARE    : for(int i=0;i<len;i++){ float f=a[ao+i]; r[ro+i]=f!=undef?f*f:f;} break;
+		case SQRT      : for(int i=0;i<len;i++){ float f=a[ao+i]; r[ro+i]=f!=undef?(float)Math.sqrt(f):f;} break;
+		case RECIPROCAL: for(int i=0;i<len;i++){ float f=a[ao+i]; r[ro+i]=f!=undef?1/f:f;} break;
+		case LOG       : for(int i=0;i<len;i++){ float f=a[ao+i]; r[ro+i]=f!=undef?(float)Math.log(f):f;} break;
+		default: throw new IllegalArgumentException("unsupported operation: "+op);
+		}
+	}
+	
+	/**
+     * r = a op b if both are defined, otherwise undef
+     */
+	private static void compute(Op op,float undef,float[] a,int ao,float[] b,int bo,float[] r,int ro,int len){
+		switch(op){
+		case PLUS    : for(int i=0;i<len;i++){ float f=a[ao+i],g=b[bo+i]; r[ro+i]=f!=undef&&g!=undef?f+g:undef;} break;
+		case MINUS   : for(int i=0;i<len;i++){ float f=a[ao+i],g=b[bo+i]; r[ro+i]=f!=undef&&g!=undef?f-g:undef;} break;
+		case MULTIPLY: for(int i=0;i<len;i++){ float f=a[ao+i],g=b[bo+i]; r[ro+i]=f!=undef&&g!=undef?f*g:undef;} break;
+		case DIVIDE  : for(int i=0;i<len;i++){ float f=a[ao+i],g=b[bo+i]; r[ro+i]=f!=undef&&g!=undef?f/g:undef;} break;
+		case POW     : for(int i=0;i<len;i++){ float f=a[ao+i],g=b[bo+i]; r[ro+i]=f!=undef&&g!=undef?(float)Math.pow(f,g):undef;} break;
+		case HYPOT   : for(int i=0;i<len;i++){ float f=a[ao+i],g=b[bo+i]; r[ro+i]=f!=undef&&g!=undef?(float)Math.hypot(f,g):undef;} break;
+		default: throw new IllegalArgumentException("unsupported operation: "+op);
+		}
+	}
+	
+	/**
+     * contiguous rows of the storage, row n starts at rowOffset(n) of row(n)
+     */
+	int rowLength(){ return tfirst?x:t;}
+	
+	int rowCount(){ return tfirst?t*z*y:z*y*x;}
+	
+	int rowOffset(int n){ return flat!=null?n*rowLength():0;}
+	
+	float[] row(int n){
+		if(flat!=null) return flat;
+		
+		if(tfirst) return data[n/(z*y)][n/y%z][n%y];
+		else       return data[n/(y*x)][n/x%y][n%x];
+	}
+	
+	private void allocate(boolean flatStorage){
+		if(flatStorage){
+			long len=(long)t*z*y*x;
+			
+			if(len>Integer.MAX_VALUE)
+			throw new IllegalArgumentException("too many grids ("+len+") for a flat storage");
+			
+			flat=new float[(int)len];	data=null;
+		
+		}else{
+			if(tfirst) data=new float[t][z][y][x];
+			else	   data=new float[z][y][x][t];
+			
+			flat=null;
+		}
+	}
+	
+	
 	/** test*/
 	public static void main(String[] args){
 		Variable v=new Variable("v",new Range(2,3,4,5));
@@ -0,0 +1,294 @@
+/**
+ * @(#)ChunkedDataReadStream.java	1.0 07/02/01
+ *
+ * Copyright 2007 MiniUFO, All rights reserved.
+ * MiniUFO Studio. Use is subject to license terms.
+ */
+package miniufo.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import miniufo.concurrent.ConcurrentUtil;
+import miniufo.descriptor.ChunkedDescriptor;
+import miniufo.descriptor.Var;
+import miniufo.diagnosis.Range;
+import miniufo.diagnosis.Variable;
+
+
+/**
+ * used to read the chunked data file (see ChunkedDataWriteStream)
+ *
+ * Only the chunks overlapping the range of a variable are read and they are
+ * decompressed in parallel.
+ *
+ * @version 1.0, 02/01/2007
+ * @author  MiniUFO
+ * @since   MDK1.0
+ */
+public final class ChunkedDataReadStream implements DataRead,Print{
+	//
+	private boolean print=true;
+	
+	private int[] chunks=null;	// chunk shape [t, z, y, x]
+	
+	private long[][] offsets=null;	// offsets of the chunks of each variable
+	private  int[][] lengths=null;	// lengths of the chunks of each variable
+	
+	private ChunkedDescriptor cd=null;
+	private FileChannel       fc=null;
+	private RandomAccessFile raf=null;
+	
+	static final int MAGIC  =0x4D434B44;	// "MCKD"
+	static final int VERSION=1;
+	
+	
+	/**
+     * constructor
+     *
+     * @param	cd	chunked descriptor
+     */
+	public ChunkedDataReadStream(ChunkedDescriptor cd){
+		this.cd=cd;	chunks=cd.getChunkShape();
+		
+		try{
+			raf=new RandomAccessFile(cd.getDSet(),"r");
+			fc =raf.getChannel();
+			
+			long length=raf.length();
+			
+			if(length<16||raf.readInt()!=MAGIC) throw new IllegalArgumentException("not a chunked data file: "+cd.getDSet());
+			
+			int version=raf.readInt();
+			
+			if(version!=VERSION) throw new IllegalArgumentException("unsupported version: "+version);
+			
+			long idx=raf.readLong();
+			
+			MappedByteBuffer buf=fc.map(MapMode.READ_ONLY,idx,length-idx);
+			
+			Var[] vdef=cd.getVDef();
+			
+			if(buf.getInt()!=vdef.length) throw new IllegalArgumentException("variable count not same as the descriptor");
+			
+			offsets=new long[vdef.length][];
+			lengths=new  int[vdef.length][];
+			
+			for(int m=0;m<vdef.length;m++){
+				int count=buf.getInt();
+				
+				if(count!=chunkCount(vdef[m].getZCount()))
+				throw new IllegalArgumentException("chunk count of "+vdef[m].getName()+" not same as the descriptor");
+				
+				offsets[m]=new long[count];
+				lengths[m]=new  int[count];
+				
+				for(int c=0;c<count;c++){ offsets[m][c]=buf.getLong(); lengths[m][c]=buf.getInt();}
+			}
+		
+		}catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+	}
+	
+	
+	/**
+	 * to read data from the specified file
+	 *
+     * @param	v	variable need to fill with data
+     */
+	public void readData(Variable... v){
+		if(v.length!=1){
+			if(print) System.out.print("\nStart reading ");
+			
+			for(int m=0;m<v.length;m++){
+				if(print) System.out.print(v[m].getName()+" ");
+				readOne(v[m]);
+			}
+			
+			if(print) System.out.println("data...\nFinish reading data.");
+		
+		}else readOne(v[0]);
+	}
+	
+	
+	/**
+	 * whether to print out
+	 *
+     * @param	print	print or disable print
+     */
+	public void setPrinting(boolean print){ this.print=print;}
+	
+	
+	/**
+	 * close file method
+     */
+	public void closeFile(){
+		try{ if(raf!=null){ fc.close();	raf.close();}}
+		catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+		
+		offsets=null;	lengths=null;
+		
+		raf=null;	fc=null;	cd=null;
+	}
+	
+	
+	/*** helper methods ***/
+	private void readOne(Variable v){
+		Var[] vdef=cd.getVDef();
+		
+		int vi=-1;
+		
+		for(int m=0;m<vdef.length;m++) if(vdef[m].getName().equalsIgnoreCase(v.getName())){ vi=m; break;}
+		
+		if(vi==-1) throw new IllegalArgumentException("cannot find "+v.getName()+" in "+cd.getPath());
+		
+		boolean yrev=cd.isYRev();
+		boolean zrev=cd.isZRev();
+		
+		Range range=v.getRange();
+		
+		int[] trange=range.getTRange();	int[] zrange=range.getZRange();
+		int[] yrange=range.getYRange();	int[] xrange=range.getXRange();
+		
+		int T=cd.getTCount(),Z=vdef[vi].getZCount(),Y=cd.getYCount(),X=cd.getXCount();
+		
+		if(trange[1]>T||zrange[1]>Z||yrange[1]>Y||xrange[1]>X) throw new IllegalArgumentException("invalid range");
+		
+		// bounds of the range in the file, inclusive
+		int[] lo={trange[0]-1,zrev?Z-zrange[1]:zrange[0]-1,yrev?Y-yrange[1]:yrange[0]-1,xrange[0]-1};
+		int[] hi={trange[1]-1,zrev?Z-zrange[0]:zrange[1]-1,yrev?Y-yrange[0]:yrange[1]-1,xrange[1]-1};
+		
+		int[] num={(T+chunks[0]-1)/chunks[0],(Z+chunks[1]-1)/chunks[1],(Y+chunks[2]-1)/chunks[2],(X+chunks[3]-1)/chunks[3]};
+		int[] dim={T,Z,Y,X};
+		
+		int[] c0=new int[4],cn=new int[4];
+		
+		for(int d=0;d<4;d++){ c0[d]=lo[d]/chunks[d]; cn[d]=hi[d]/chunks[d]-c0[d]+1;}
+		
+		int count=cn[0]*cn[1]*cn[2]*cn[3];
+		
+		long[] off=offsets[vi];
+		int [] len=lengths[vi];
+		
+		float[][][][] data=v.getData();	boolean tfirst=v.isTFirst();
+		
+		// only the chunks overlapping the range are read, in parallel
+		ConcurrentUtil.parallelFor(count,1,(s,e)->{
+			Inflater inf=new Inflater();
+			
+			int[] cb=new int[4],ce=new int[4],ob=new int[4],oe=new int[4];
+			
+			for(int q=s;q<e;q++){
+				int r=q,c=0;
+				
+				for(int d=3;d>=0;d--){
+					int id=c0[d]+r%cn[d];	r/=cn[d];
+					
+					cb[d]=id*chunks[d];	ce[d]=Math.min(dim[d],cb[d]+chunks[d]);
+					ob[d]=Math.max(cb[d],lo[d]);	oe[d]=Math.min(ce[d]-1,hi[d]);
+				}
+				
+				for(int d=0;d<4;d++) c=c*num[d]+cb[d]/chunks[d];
+				
+				int cz=ce[1]-cb[1],cy=ce[2]-cb[2],cx=ce[3]-cb[3];
+				
+				float[] f=decode(off[c],len[c],(ce[0]-cb[0])*cz*cy*cx,inf);
+				
+				for(int lf=ob[0];lf<=oe[0];lf++)
+				for(int kf=ob[1];kf<=oe[1];kf++)
+				for(int jf=ob[2];jf<=oe[2];jf++){
+					int l=lf-lo[0];
+					int k=zrev?hi[1]-kf:kf-lo[1];
+					int j=yrev?hi[2]-jf:jf-lo[2];
+					int i=ob[3]-lo[3];
+					
+					int p=(((lf-cb[0])*cz+kf-cb[1])*cy+jf-cb[2])*cx+ob[3]-cb[3];
+					
+					if(tfirst) System.arraycopy(f,p,data[l][k][j],i,oe[3]-ob[3]+1);
+					else for(int n=oe[3]-ob[3];n>=0;n--) data[k][j][i+n][l]=f[p+n];
+				}
+			}
+			
+			inf.end();
+		});
+		
+		v.setUndef(cd.getUndef(v.getName()));
+		v.setCommentAndUnit(cd.getVarCommentAndUnit(v.getName()));
+	}
+	
+	/**
+	 * read and decode a chunk
+	 *
+	 * @param	off		offset of the chunk in the file
+	 * @param	len		length of the chunk in the file
+	 * @param	n		number of floats in the chunk
+	 * @param	inf		inflater
+	 */
+	private float[] decode(long off,int len,int n,Inflater inf){
+		byte[] bs=new byte[len];
+		
+		float[] re=new float[n];
+		
+		try{
+			ByteBuffer buf=ByteBuffer.wrap(bs);
+			
+			while(buf.hasRemaining())
+			if(fc.read(buf,off+buf.position())<0) throw new IOException("unexpected end of file");
+			
+			// raw chunk is identified by the length
+			if(len!=n<<2){
+				byte[] sh=new byte[n<<2];
+				
+				inf.reset();
+				inf.setInput(bs);
+				
+				if(inf.inflate(sh)!=sh.length) throw new IOException("corrupted chunk at "+off);
+				
+				bs=unshuffle(sh);
+			}
+		
+		}catch(IOException|DataFormatException ex){ ex.printStackTrace(); System.exit(0);}
+		
+		ByteBuffer.wrap(bs).order(cd.getByteOrder()).asFloatBuffer().get(re);
+		
+		return re;
+	}
+	
+	private int chunkCount(int zcount){
+		return ((cd.getTCount()+chunks[0]-1)/chunks[0])*((zcount+chunks[1]-1)/chunks[1])*
+			   ((cd.getYCount()+chunks[2]-1)/chunks[2])*((cd.getXCount()+chunks[3]-1)/chunks[3]);
+	}
+	
+	/**
+	 * group the i-th bytes of all the floats together so that deflate works better
+	 */
+	static byte[] shuffle(byte[] raw){
+		int n=raw.length>>2;
+		
+		byte[] re=new byte[raw.length];
+		
+		for(int i=0;i<n;i++){
+			re[i    ]=raw[i<<2  ];	re[i+  n]=raw[(i<<2)+1];
+			re[i+2*n]=raw[(i<<2)+2];	re[i+3*n]=raw[(i<<2)+3];
+		}
+		
+		return re;
+	}
+	
+	static byte[] unshuffle(byte[] sh){
+		int n=sh.length>>2;
+		
+		byte[] re=new byte[sh.length];
+		
+		for(int i=0;i<n;i++){
+			re[i<<2  ]=sh[i    ];	re[(i<<2)+1]=sh[i+  n];
+			re[(i<<2)+2]=sh[i+2*n];	re[(i<<2)+3]=sh[i+3*n];
+		}
+		
+		return re;
+	}
+}
@@ -0,0 +1,249 @@
+/**
+ * @(#)ChunkedDataWriteStream.java	1.0 07/02/01
+ *
+ * Copyright 2007 MiniUFO, All rights reserved.
+ * MiniUFO Studio. Use is subject to license terms.
+ */
+package miniufo.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import miniufo.concurrent.ConcurrentUtil;
+import miniufo.diagnosis.Variable;
+
+
+/**
+ * Write the chunked data file and the corresponding ckd descriptor.
+ *
+ * Each variable is tiled into chunks of the given shape in t, z, y and x
+ * dimensions.  Each chunk is byte-shuffled and deflated independently (in
+ * parallel), and stored raw if compression does not help.  The file begins
+ * with a header (magic, version and offset of the index) and ends with the
+ * index of the chunks (offset and length) of all the variables.
+ *
+ * @version 1.0, 02/01/2007
+ * @author  MiniUFO
+ * @since   MDK1.0
+ */
+public final class ChunkedDataWriteStream extends CtlDataWriteStream{
+	//
+	private int level=1;	// deflate level, 0 for no compression
+	
+	private int[] chunks=null;	// chunk shape [t, z, y, x]
+	
+	private ArrayList<long[]> offsets=null;	// offsets of the chunks of each variable
+	private ArrayList<int[] > lengths=null;	// lengths of the chunks of each variable
+	
+	private static final int BATCH=64;	// number of chunks compressed in one batch
+	
+	
+	/**
+     * constructor
+     *
+     * @param	file_path	a string specified the data file path
+     * @param	chunks		chunk shape [t, z, y, x]
+     * @param	level		deflate level (0-9), 0 for no compression
+     */
+	public ChunkedDataWriteStream(String file_path,int[] chunks,int level){
+		super(file_path);
+		
+		if(chunks.length!=4) throw new IllegalArgumentException("chunk shape should be [t, z, y, x]");
+		
+		for(int i=0;i<4;i++) if(chunks[i]<1) throw new IllegalArgumentException("chunk shape should be positive");
+		
+		if(level<0||level>9) throw new IllegalArgumentException("compression level should be in [0, 9]");
+		
+		this.chunks=chunks.clone();	this.level=level;
+		
+		offsets=new ArrayList<>();
+		lengths=new ArrayList<>();
+		
+		if(!is_skip){
+			try{
+				if(fc.position()!=0) throw new IllegalArgumentException("appending is not supported for chunked file");
+				
+				// header, offset of the index is filled when closing
+				ByteBuffer buf=ByteBuffer.allocate(16);
+				buf.putInt(ChunkedDataReadStream.MAGIC).putInt(ChunkedDataReadStream.VERSION).putLong(0);
+				buf.flip();
+				
+				while(buf.hasRemaining()) fc.write(buf);
+			
+			}catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+		}
+	}
+	
+	/**
+     * constructor, chunk shape is [1, 1, 128, 128] and deflate level is 1
+     *
+     * @param	file_path	a string specified the data file path
+     */
+	public ChunkedDataWriteStream(String file_path){ this(file_path,new int[]{1,1,128,128},1);}
+	
+	
+	/**
+	 * Chunks are compressed in parallel instead, so the data are always written
+	 * synchronously and this method does nothing except checking the argument.
+	 *
+     * @param	queueLength	length of the queue of filled buffers, ignored
+     */
+	public void setAsync(int queueLength){
+		if(queueLength<0) throw new IllegalArgumentException("queue length should not be negative");
+	}
+	
+	
+	/**
+	 * close file method, the index is written before closing
+     */
+	public void closeFile(){
+		if(offsets!=null&&fc!=null&&fc.isOpen()){
+			try{
+				long idx=fc.position();
+				
+				int size=4;
+				
+				for(long[] off:offsets) size+=4+off.length*12;
+				
+				ByteBuffer buf=ByteBuffer.allocate(size);
+				
+				buf.putInt(offsets.size());
+				
+				for(int m=0,M=offsets.size();m<M;m++){
+					long[] off=offsets.get(m);
+					int [] len=lengths.get(m);
+					
+					buf.putInt(off.length);
+					
+					for(int c=0;c<off.length;c++) buf.putLong(off[c]).putInt(len[c]);
+				}
+				
+				buf.flip();	while(buf.hasRemaining()) fc.write(buf);
+				
+				buf=ByteBuffer.allocate(8);	buf.putLong(idx);	buf.flip();
+				
+				while(buf.hasRemaining()) fc.write(buf,8+buf.position());
+			
+			}catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+		}
+		
+		offsets=null;	lengths=null;
+		
+		super.closeFile();
+	}
+	
+	
+	/*** helper methods ***/
+	protected void writeVariables(Variable[] v) throws IOException{
+		for(Variable var:v){
+			int T=var.getTCount(),Z=var.getZCount(),Y=var.getYCount(),X=var.getXCount();
+			
+			int nt=(T+chunks[0]-1)/chunks[0];
+			int nz=(Z+chunks[1]-1)/chunks[1];
+			int ny=(Y+chunks[2]-1)/chunks[2];
+			int nx=(X+chunks[3]-1)/chunks[3];
+			
+			int count=nt*nz*ny*nx;
+			
+			long[] off=new long[count];
+			int [] len=new int [count];
+			
+			byte[][] enc=new byte[Math.min(count,BATCH)][];
+			
+			for(int b=0;b<count;b+=BATCH){
+				int str=b,n=Math.min(count-b,BATCH);
+				
+				ConcurrentUtil.parallelFor(n,1,(s,e)->{
+					Deflater def=level==0?null:new Deflater(level);
+					
+					for(int c=s;c<e;c++) enc[c]=encode(var,str+c,nz,ny,nx,def);
+					
+					if(def!=null) def.end();
+				});
+				
+				for(int c=0;c<n;c++){
+					off[b+c]=fc.position();
+					len[b+c]=enc[c].length;
+					
+					ByteBuffer buf=ByteBuffer.wrap(enc[c]);
+					
+					while(buf.hasRemaining()) fc.write(buf);
+				}
+			}
+			
+			offsets.add(off);
+			lengths.add(len);
+		}
+	}
+	
+	protected String descriptorSuffix(){ return "ckd";}
+	
+	protected void appendDescription(StringBuilder sb){
+		sb.append("chunks "+chunks[0]+" "+chunks[1]+" "+chunks[2]+" "+chunks[3]+"\n");
+		sb.append(level==0?"compression none\n":"compression deflate "+level+"\n");
+	}
+	
+	/**
+	 * encode a chunk into bytes
+	 *
+	 * @param	v		a given variable
+	 * @param	c		index of the chunk (x varies fastest)
+	 * @param	nz		number of chunks in z-dimension
+	 * @param	ny		number of chunks in y-dimension
+	 * @param	nx		number of chunks in x-dimension
+	 * @param	def		deflater, null for no compression
+	 */
+	private byte[] encode(Variable v,int c,int nz,int ny,int nx,Deflater def){
+		int ix=c%nx;	c/=nx;
+		int iy=c%ny;	c/=ny;
+		int iz=c%nz;	c/=nz;
+		int it=c;
+		
+		int t0=it*chunks[0],t1=Math.min(v.getTCount(),t0+chunks[0]);
+		int z0=iz*chunks[1],z1=Math.min(v.getZCount(),z0+chunks[1]);
+		int y0=iy*chunks[2],y1=Math.min(v.getYCount(),y0+chunks[2]);
+		int x0=ix*chunks[3],x1=Math.min(v.getXCount(),x0+chunks[3]);
+		
+		int n=(t1-t0)*(z1-z0)*(y1-y0)*(x1-x0);
+		
+		ByteBuffer buf=ByteBuffer.allocate(n<<2);	buf.order(order);
+		
+		FloatBuffer fb=buf.asFloatBuffer();
+		
+		float[][][][] data=v.getData();
+		
+		if(v.isTFirst()){
+			for(int l=t0;l<t1;l++)
+			for(int k=z0;k<z1;k++)
+			for(int j=y0;j<y1;j++) fb.put(data[l][k][j],x0,x1-x0);
+		
+		}else{
+			for(int l=t0;l<t1;l++)
+			for(int k=z0;k<z1;k++)
+			for(int j=y0;j<y1;j++)
+			for(int i=x0;i<x1;i++) fb.put(data[k][j][i][l]);
+		}
+		
+		byte[] raw=buf.array();
+		
+		if(def==null) return raw;
+		
+		byte[] out=new byte[raw.length];
+		
+		def.reset();
+		def.setInput(ChunkedDataReadStream.shuffle(raw));
+		def.finish();
+		
+		int len=0;
+		
+		while(!def.finished()&&len<out.length) len+=def.deflate(out,len,out.length-len);
+		
+		// stored raw if compression does not help, which is identified by the length
+		if(!def.finished()||len>=raw.length) return raw;
+		
+		return Arrays.copyOf(out,len);
+	}
+}
@@ -6,8 +6,11 @@
  */
 package miniufo.io;
 
+import java.util.Map;
+import java.util.WeakHashMap;
 import miniufo.basic.ArrayUtil;
 import miniufo.basic.InterpolationModel.Type;
+import miniufo.concurrent.ConcurrentUtil;
 import miniufo.descriptor.CsmDescriptor;
 import miniufo.descriptor.CtlDescriptor;
 import miniufo.diagnosis.Range;
@@ -28,12 +31,12 @@ public final class CsmDataReadStream implements DataRead,Print{
 	//
 	private boolean print=true;
 	
-	private Variable buf=null;
-	
 	private CsmDescriptor cd=null;
 	
 	private CtlDataReadStream cdrs=null;
 	
+	private static final Map<CsmDescriptor,Stencils> cache=new WeakHashMap<>();	// stencils of each CsmDescriptor
+	
 	
 	/**
      * constructor
@@ -48,7 +51,7 @@ public final class CsmDataReadStream implements DataRead,Print{
 		
 		CtlDescriptor ctl=cd.getCtlDescriptor();
 		
-		cdrs=new CtlDataReadStream(ctl);
+		cdrs=new CtlDataReadStream(ctl);	cdrs.setPrinting(false);
 		
 		if(!ctl.zLinear()) System.out.println("zdef is not linear in ctl");
 			//throw new IllegalArgumentException("zdef is not linear in ctl");
@@ -87,20 +90,14 @@ public final class CsmDataReadStream implements DataRead,Print{
 	public void readData(Type type,Variable... v){
 		if(print) System.out.print("\nStart reading ");
 		
-		initialBuffer(v[0].getName(),v[0].isTFirst());
-		
-		if(print) System.out.print(buf.getName()+" ");	readOne(v[0],type);
-		
-		for(int m=1;m<v.length;m++){
-			if(!v[m].isAreaLike(v[m-1])) throw new IllegalArgumentException("dimension not same");
+		for(int m=0;m<v.length;m++){
+			if(m>0&&!v[m].isAreaLike(v[m-1])) throw new IllegalArgumentException("dimension not same");
 			
-			buf.setName(v[m].getName());
-			
-			if(print) System.out.print(buf.getName()+" ");
-			
-			readOne(v[m],type);
+			if(print) System.out.print(v[m].getName()+" ");
 		}
 		
+		readAll(v,type);
+		
 		if(print) System.out.println("data...\nFinish reading data.");
 	}
 	
@@ -113,251 +110,270 @@ public final class CsmDataReadStream implements DataRead,Print{
 	public void setPrinting(boolean print){ this.print=print;}
 	
 	
-	private void readOne(Variable v,Type type){
-		int t=v.getTCount(),z=v.getZCount(),y=v.getYCount();
+	/*** helper methods and classes ***/
+	
+	/**
+	 * For each time step, all the levels of all the variables within the
+	 * bounding box are read in one pass and then interpolated using the
+	 * cached stencils.  Time steps are processed in parallel unless the
+	 * ctl file is sequential.
+	 */
+	private void readAll(Variable[] v,Type type){
+		if(type!=Type.CUBIC_P&&type!=Type.CUBIC_L&&type!=Type.LINEAR)
+		throw new IllegalArgumentException("unsupported interpolation type");
 		
 		CtlDescriptor ctl=cd.getCtlDescriptor();
 		
-		v.setUndef(ctl.getUndef(v.getName()));
-		v.setComment(ctl.getVarComment(v.getName()));
-		v.setUnit(ctl.getVarUnit(v.getName()));
+		Stencils sts=stencils(cd);
+		
+		int V=v.length,T=0;
 		
-		int[] trange=buf.getRange().getTRange();	int[] yrange=buf.getRange().getYRange();
-		int[] zrange=buf.getRange().getZRange();	int[] xrange=buf.getRange().getXRange();
+		int[]   tstr=new int[V];	// start time in csm (0-based)
+		int[]   zmin=new int[V];	// min level in ctl  (0-based)
+		int[][] zlev=new int[V][];	// levels in ctl (0-based)
 		
-		for(int l=0;l<t;l++){
-			/*** set trange ***/
-			int vtstart=v.getRange().getTRange()[0];
-			trange[0]=trange[1]=ctl.getTNum(cd.getTDef().getSamples()[vtstart-1+l])+1;
+		float[] undef=new float[V];
+		
+		for(int m=0;m<V;m++){
+			int z=v[m].getZCount(),vzstart=v[m].getRange().getZRange()[0];
 			
-			/*** set x-y range ***/
-			xrange[0]=ctl.getXLENum(ArrayUtil.getMin(cd.getLon()[vtstart-1+l][y-1]));
-			yrange[0]=ctl.getYLENum(ArrayUtil.getMin(cd.getLat()[vtstart-1+l][y-1]));
+			tstr[m]=v[m].getRange().getTRange()[0]-1;	T=Math.max(T,v[m].getTCount());
 			
-			xrange[1]=xrange[2]+xrange[0]-1;
-			yrange[1]=yrange[2]+yrange[0]-1;
+			zlev[m]=new int[z];	zmin[m]=Integer.MAX_VALUE;
 			
-			if(!ctl.isPeriodicX()&&(xrange[0]<1||xrange[1]>ctl.getXCount())) throw new IllegalArgumentException(
-				"csm is beyond ctl xrange, olon = "+cd.getOLon()[l]+" at t="+l+" lon within ["+
-				ArrayUtil.getMin(cd.getLon()[vtstart-1+l][y-1])+", "+ArrayUtil.getMax(cd.getLon()[vtstart-1+l][y-1])+"]"
-			);
+			for(int k=0;k<z;k++){
+				zlev[m][k]=ctl.getZNum(cd.getZDef().getSamples()[vzstart-1+k]);
+				zmin[m]=Math.min(zmin[m],zlev[m][k]);
+			}
 			
-			if(!ctl.isPeriodicY()&&(yrange[0]<1||yrange[1]>ctl.getYCount())) throw new IllegalArgumentException(
-				"csm is beyond ctl yrange, olat = "+cd.getOLat()[l]+" at t="+l+" lat within ["+
-				ArrayUtil.getMin(cd.getLat()[vtstart-1+l][y-1])+", "+ArrayUtil.getMax(cd.getLat()[vtstart-1+l][y-1])+"]"
-			);
+			undef[m]=ctl.getUndef(v[m].getName());
 			
-			for(int k=0;k<z;k++){
-				/*** set zrange ***/
-				zrange[0]=zrange[1]=1+ctl.getZNum(
-					cd.getZDef().getSamples()[v.getRange().getZRange()[0]-1+k]
-				);
+			v[m].setUndef(undef[m]);
+			v[m].setComment(ctl.getVarComment(v[m].getName()));
+			v[m].setUnit(ctl.getVarUnit(v[m].getName()));
+		}
+		
+		int tcount=T;
+		
+		ConcurrentUtil.RangeTask task=(s,e)->{
+			for(int l=s;l<e;l++){
+				int n=0;
 				
-				/*** read buf ***/
-				cdrs.readData(buf);
+				for(int m=0;m<V;m++) if(l<v[m].getTCount()) n++;
+				
+				Variable[] bs=new Variable[n];
+				Stencil [] ss=new Stencil [n];
+				int     [] ms=new int     [n];
+				
+				for(int m=0,i=0;m<V;m++) if(l<v[m].getTCount()){
+					Stencil st=sts.get(cd,tstr[m]+l);
+					
+					int zc=zlev[m].length==0?1:zlev[m][0];
+					
+					for(int k:zlev[m]) zc=Math.max(zc,k);
+					
+					zc=zc-zmin[m]+1;
+					
+					Variable b=new Variable(v[m].getName(),true,new Range(1,zc,sts.ycount,sts.xcount));
+					
+					Range r=b.getRange();
+					
+					r.getTRange()[0]=r.getTRange()[1]=ctl.getTNum(cd.getTDef().getSamples()[tstr[m]+l])+1;
+					r.getZRange()[0]=zmin[m]+1;	r.getZRange()[1]=zmin[m]+zc;
+					r.getYRange()[0]=st.ystart;	r.getYRange()[1]=st.ystart+sts.ycount-1;
+					r.getXRange()[0]=st.xstart;	r.getXRange()[1]=st.xstart+sts.xcount-1;
+					
+					bs[i]=b;	ss[i]=st;	ms[i++]=m;
+				}
+				
+				/*** read all the levels of all the variables in one pass ***/
+				cdrs.readData(bs);
 				
 				/*** interpolation ***/
-				switch(type){
-				case CUBIC_P: interpolateCubicP(v,cd.getLon()[vtstart-1+l],cd.getLat()[vtstart-1+l],k,l); break;
-				case CUBIC_L: interpolateCubicL(v,cd.getLon()[vtstart-1+l],cd.getLat()[vtstart-1+l],k,l); break;
-				case LINEAR : interpolateLinear(v,cd.getLon()[vtstart-1+l],cd.getLat()[vtstart-1+l],k,l); break;
-				default: throw new IllegalArgumentException("unsupported interpolation type");
+				for(int i=0;i<n;i++){
+					int m=ms[i];
+					
+					for(int k=0;k<zlev[m].length;k++)
+					interpolate(v[m],bs[i].getData()[0][zlev[m][k]-zmin[m]],ss[i],k,l,type,undef[m]);
 				}
 			}
-		}
+		};
+		
+		if(ctl.isSequential()) task.run(0,tcount);
+		else ConcurrentUtil.parallelFor(tcount,1,task);
 	}
 	
-	private void interpolateCubicP(Variable v,float[][] lon,float[][] lat,int k,int l){
-		int x=v.getXCount(),xoffset=buf.getRange().getXRange()[0];
-		int y=v.getYCount(),yoffset=buf.getRange().getYRange()[0];
-		
-		CtlDescriptor ctl=cd.getCtlDescriptor();
-		
-		float undef=ctl.getUndef(v.getName());
+	private static void interpolate(Variable v,float[][] bdata,Stencil st,int k,int l,Type type,float undef){
+		int y=v.getYCount(),x=v.getXCount();
 		
-		float[] dlon=ctl.getDXDef();	float[] ydef=ctl.getYDef().getSamples();
-		float[] dlat=ctl.getDYDef();	float[] xdef=ctl.getXDef().getSamples();
+		float[][][][] vdata=v.getData();
 		
-		float[][] bdata=buf.getData()[0][0];
-		
-		if(v.isTFirst()){
-			float[][] vdata=v.getData()[l][k];
+		for(int j=0;j<y;j++)
+		for(int i=0;i<x;i++){
+			int xtag=st.xtag[j][i];	float dx=st.dx[j][i];
+			int ytag=st.ytag[j][i];	float dy=st.dy[j][i];
 			
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++){
-				int xtag=ctl.getXLENum(lon[j][i]);
-				int ytag=ctl.getYLENum(lat[j][i]);
-				
-				float disx=lon[j][i]-xdef[xtag];	xtag-=xoffset;
-				float disy=lat[j][i]-ydef[ytag];	ytag-=yoffset;
-				
-				vdata[j][i]=bicubicPolynomialInterpolation(
+			float re=0;
+			
+			switch(type){
+			case CUBIC_P:
+				re=bicubicPolynomialInterpolation(
 					bdata[ytag  ][xtag],bdata[ytag  ][xtag+1],bdata[ytag  ][xtag+2],bdata[ytag  ][xtag+3],
 					bdata[ytag+1][xtag],bdata[ytag+1][xtag+1],bdata[ytag+1][xtag+2],bdata[ytag+1][xtag+3],
 					bdata[ytag+2][xtag],bdata[ytag+2][xtag+1],bdata[ytag+2][xtag+2],bdata[ytag+2][xtag+3],
 					bdata[ytag+3][xtag],bdata[ytag+3][xtag+1],bdata[ytag+3][xtag+2],bdata[ytag+3][xtag+3],
-					disx/dlon[xtag],disy/dlat[ytag],undef
+					dx,dy,undef
 				);
-			}
-			
-		}else{
-			float[][][] vdata=v.getData()[k];
-			
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++){
-				int xtag=ctl.getXLENum(lon[j][i]);
-				int ytag=ctl.getYLENum(lat[j][i]);
-				
-				float disx=lon[j][i]-xdef[xtag];	xtag-=xoffset;
-				float disy=lat[j][i]-ydef[ytag];	ytag-=yoffset;
+				break;
 				
-				vdata[j][i][l]=bicubicPolynomialInterpolation(
+			case CUBIC_L:
+				re=bicubicLagrangeInterpolation(
 					bdata[ytag  ][xtag],bdata[ytag  ][xtag+1],bdata[ytag  ][xtag+2],bdata[ytag  ][xtag+3],
 					bdata[ytag+1][xtag],bdata[ytag+1][xtag+1],bdata[ytag+1][xtag+2],bdata[ytag+1][xtag+3],
 					bdata[ytag+2][xtag],bdata[ytag+2][xtag+1],bdata[ytag+2][xtag+2],bdata[ytag+2][xtag+3],
 					bdata[ytag+3][xtag],bdata[ytag+3][xtag+1],bdata[ytag+3][xtag+2],bdata[ytag+3][xtag+3],
-					disx/dlon[xtag],disy/dlat[ytag],undef
+					1f+dx,1f+dy,undef
+				);
+				break;
+			
+			default:
+				re=bilinearInterpolation(
+					bdata[ytag+1][xtag+1],bdata[ytag+1][xtag+2],
+					bdata[ytag+2][xtag+1],bdata[ytag+2][xtag+2],
+					dx,dy,undef
 				);
+				break;
 			}
+			
+			if(v.isTFirst()) vdata[l][k][j][i]=re;
+			else vdata[k][j][i][l]=re;
 		}
 	}
 	
-	private void interpolateCubicL(Variable v,float[][] lon,float[][] lat,int k,int l){
-		int x=v.getXCount(),xoffset=buf.getRange().getXRange()[0];
-		int y=v.getYCount(),yoffset=buf.getRange().getYRange()[0];
-		
-		CtlDescriptor ctl=cd.getCtlDescriptor();
-		
-		float undef=ctl.getUndef(v.getName());
-		
-		float[] dlon=ctl.getDXDef();	float[] ydef=ctl.getYDef().getSamples();
-		float[] dlat=ctl.getDYDef();	float[] xdef=ctl.getXDef().getSamples();
-		
-		float[][] bdata=buf.getData()[0][0];
-		
-		if(v.isTFirst()){
-			float[][] vdata=v.getData()[l][k];
+	private static Stencils stencils(CsmDescriptor cd){
+		synchronized(cache){ return cache.computeIfAbsent(cd,Stencils::new);}
+	}
+	
+	
+	/**
+	 * Stencils of all the time steps of a CsmDescriptor, filled lazily.
+	 * The size of the bounding box is the same for all the time steps.
+	 * The descriptor is not referenced so that the cache entry can be
+	 * collected together with its (weak) key.
+	 */
+	private static final class Stencils{
+		//
+		final int xcount;	// size of the bounding box
+		final int ycount;
+		
+		final Stencil[] sts;
+		
+		//
+		Stencils(CsmDescriptor cd){
+			CtlDescriptor ctl=cd.getCtlDescriptor();
 			
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++){
-				int xtag=ctl.getXLENum(lon[j][i]);
-				int ytag=ctl.getYLENum(lat[j][i]);
-				
-				float disx=lon[j][i]-xdef[xtag];	xtag-=xoffset;
-				float disy=lat[j][i]-ydef[ytag];	ytag-=yoffset;
-				
-				vdata[j][i]=bicubicLagrangeInterpolation(
-					bdata[ytag  ][xtag],bdata[ytag  ][xtag+1],bdata[ytag  ][xtag+2],bdata[ytag  ][xtag+3],
-					bdata[ytag+1][xtag],bdata[ytag+1][xtag+1],bdata[ytag+1][xtag+2],bdata[ytag+1][xtag+3],
-					bdata[ytag+2][xtag],bdata[ytag+2][xtag+1],bdata[ytag+2][xtag+2],bdata[ytag+2][xtag+3],
-					bdata[ytag+3][xtag],bdata[ytag+3][xtag+1],bdata[ytag+3][xtag+2],bdata[ytag+3][xtag+3],
-					1f+disx/dlon[xtag],1f+disy/dlat[ytag],undef
-				);
-			}
+			int y=cd.getYCount();
 			
-		}else{
-			float[][][] vdata=v.getData()[k];
+			// find the northernmost time
+			float maxLat=ArrayUtil.getMax(cd.getLat());
 			
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++){
-				int xtag=ctl.getXLENum(lon[j][i]);
-				int ytag=ctl.getYLENum(lat[j][i]);
-				
-				float disx=lon[j][i]-xdef[xtag];	xtag-=xoffset;
-				float disy=lat[j][i]-ydef[ytag];	ytag-=yoffset;
-				
-				vdata[j][i][l]=bicubicLagrangeInterpolation(
-					bdata[ytag  ][xtag],bdata[ytag  ][xtag+1],bdata[ytag  ][xtag+2],bdata[ytag  ][xtag+3],
-					bdata[ytag+1][xtag],bdata[ytag+1][xtag+1],bdata[ytag+1][xtag+2],bdata[ytag+1][xtag+3],
-					bdata[ytag+2][xtag],bdata[ytag+2][xtag+1],bdata[ytag+2][xtag+2],bdata[ytag+2][xtag+3],
-					bdata[ytag+3][xtag],bdata[ytag+3][xtag+1],bdata[ytag+3][xtag+2],bdata[ytag+3][xtag+3],
-					1f+disx/dlon[xtag],1f+disy/dlat[ytag],undef
-				);
+			int maxLatT=0;
+			for(int l=0,L=cd.getTCount();l<L;l++)
+			if(maxLat==cd.getLat()[l][y-1][0]){
+				maxLatT=l;	break;
 			}
+			
+			float[][] lons=cd.getLon()[maxLatT];
+			float[][] lats=cd.getLat()[maxLatT];
+			
+			int ymax=ctl.getYNum  (ArrayUtil.getMax(lats));
+			int ymin=ctl.getYLENum(ArrayUtil.getMin(cd.getLat()));
+			int xmax=ctl.getXNum  (ArrayUtil.getMax(lons));
+			int xmin=ctl.getXLENum(ArrayUtil.getMin(lons));
+			
+			if(ymax==-1) throw new IllegalArgumentException(ArrayUtil.getMax(lats)+" out of Y-range ["+ctl.getYDef().getFirst()+","+ctl.getYDef().getLast()+"]");
+			if(ymin==-1) throw new IllegalArgumentException(ArrayUtil.getMin(lats)+" out of Y-range ["+ctl.getYDef().getFirst()+","+ctl.getYDef().getLast()+"]");
+			if(xmax==-1) throw new IllegalArgumentException(ArrayUtil.getMax(lons)+" out of X-range ["+ctl.getXDef().getFirst()+","+ctl.getXDef().getLast()+"]");
+			if(xmin==-1) throw new IllegalArgumentException(ArrayUtil.getMin(lons)+" out of X-range ["+ctl.getXDef().getFirst()+","+ctl.getXDef().getLast()+"]");
+			
+			ycount=ymax-ymin+4;
+			xcount=xmax-xmin+4;
+			
+			sts=new Stencil[cd.getTCount()];
+		}
+		
+		/**
+		 * A Stencil is immutable (all fields final), so it is safely published
+		 * to other threads through the racy write below.  It may be computed
+		 * more than once by different threads, with the same result.
+		 */
+		Stencil get(CsmDescriptor cd,int l){
+			Stencil st=sts[l];
+			
+			if(st==null){ st=new Stencil(cd,l,ycount,xcount); sts[l]=st;}
+			
+			return st;
 		}
 	}
 	
-	private void interpolateLinear(Variable v,float[][] lon,float[][] lat,int k,int l){
-		int x=v.getXCount(),xoffset=buf.getRange().getXRange()[0];
-		int y=v.getYCount(),yoffset=buf.getRange().getYRange()[0];
-		
-		CtlDescriptor ctl=cd.getCtlDescriptor();
-		
-		float undef=ctl.getUndef(v.getName());
-		
-		float[] dlon=ctl.getDXDef();	float[] ydef=ctl.getYDef().getSamples();
-		float[] dlat=ctl.getDYDef();	float[] xdef=ctl.getXDef().getSamples();
-		
-		float[][] bdata=buf.getData()[0][0];
-		
-		if(v.isTFirst()){
-			float[][] vdata=v.getData()[l][k];
+	/**
+	 * Bounding box and interpolation stencils (index and weights) of a time step.
+	 */
+	private static final class Stencil{
+		//
+		final int xstart;	// start of the bounding box in ctl (1-based)
+		final int ystart;
+		
+		final int[][] xtag;	// index of the stencil relative to the bounding box
+		final int[][] ytag;
+		
+		final float[][] dx;	// normalized distance to the grid
+		final float[][] dy;
+		
+		//
+		Stencil(CsmDescriptor cd,int l,int ycount,int xcount){
+			CtlDescriptor ctl=cd.getCtlDescriptor();
 			
-			for(int j=0;j<y;j++)
-			for(int i=0;i<x;i++){
-				int xtag=ctl.getXLENum(lon[j][i]);
-				int ytag=ctl.getYLENum(lat[j][i]);
-				
-				float disx=lon[j][i]-xdef[xtag];	xtag-=xoffset;
-				float disy=lat[j][i]-ydef[ytag];	ytag-=yoffset;
-				
-				vdata[j][i]=bilinearInterpolation(
-					bdata[ytag+1][xtag+1],bdata[ytag+1][xtag+2],
-					bdata[ytag+2][xtag+1],bdata[ytag+2][xtag+2],
-					disx/dlon[xtag],disy/dlat[ytag],undef
-				);
-			}
+			int y=cd.getYCount(),x=cd.getXCount();
+			
+			float[][] lon=cd.getLon()[l];
+			float[][] lat=cd.getLat()[l];
+			
+			/*** bounding box of this time step ***/
+			xstart=ctl.getXLENum(ArrayUtil.getMin(lon[y-1]));
+			ystart=ctl.getYLENum(ArrayUtil.getMin(lat[y-1]));
+			
+			if(!ctl.isPeriodicX()&&(xstart<1||xstart+xcount-1>ctl.getXCount())) throw new IllegalArgumentException(
+				"csm is beyond ctl xrange, olon = "+cd.getOLon()[l]+" at t="+l+" lon within ["+
+				ArrayUtil.getMin(lon[y-1])+", "+ArrayUtil.getMax(lon[y-1])+"]"
+			);
+			
+			if(!ctl.isPeriodicY()&&(ystart<1||ystart+ycount-1>ctl.getYCount())) throw new IllegalArgumentException(
+				"csm is beyond ctl yrange, olat = "+cd.getOLat()[l]+" at t="+l+" lat within ["+
+				ArrayUtil.getMin(lat[y-1])+", "+ArrayUtil.getMax(lat[y-1])+"]"
+			);
 			
-		}else{
-			float[][][] vdata=v.getData()[k];
+			/*** stencils ***/
+			float[] dlon=ctl.getDXDef();	float[] ydef=ctl.getYDef().getSamples();
+			float[] dlat=ctl.getDYDef();	float[] xdef=ctl.getXDef().getSamples();
+			
+			xtag=new int[y][x];	dx=new float[y][x];
+			ytag=new int[y][x];	dy=new float[y][x];
 			
 			for(int j=0;j<y;j++)
 			for(int i=0;i<x;i++){
-				int xtag=ctl.getXLENum(lon[j][i]);
-				int ytag=ctl.getYLENum(lat[j][i]);
+				int xt=ctl.getXLENum(lon[j][i]);
+				int yt=ctl.getYLENum(lat[j][i]);
 				
-				float disx=lon[j][i]-xdef[xtag];	xtag-=xoffset;
-				float disy=lat[j][i]-ydef[ytag];	ytag-=yoffset;
+				float disx=lon[j][i]-xdef[xt];	xt-=xstart;
+				float disy=lat[j][i]-ydef[yt];	yt-=ystart;
 				
-				vdata[j][i][l]=bilinearInterpolation(
-					bdata[ytag+1][xtag+1],bdata[ytag+1][xtag+2],
-					bdata[ytag+2][xtag+1],bdata[ytag+2][xtag+2],
-					disx/dlon[xtag],disy/dlat[ytag],undef
-				);
+				xtag[j][i]=xt;	dx[j][i]=disx/dlon[xt];
+				ytag[j][i]=yt;	dy[j][i]=disy/dlat[yt];
 			}
 		}
 	}
 	
-	private void initialBuffer(String vname,boolean tFirst){
-		CtlDescriptor ctl=cd.getCtlDescriptor();
-		
-		// find the northernmost time
-		float maxLat=ArrayUtil.getMax(cd.getLat());
-		
-		int maxLatT=0;
-		for(int l=0,L=cd.getTCount();l<L;l++)
-		if(maxLat==cd.getLat()[l][cd.getYCount()-1][0]){
-			maxLatT=l;	break;
-		}
-		
-		float[][] lons=cd.getLon()[maxLatT];
-		float[][] lats=cd.getLat()[maxLatT];
-		
-		int ymax=ctl.getYNum  (ArrayUtil.getMax(lats));
-		int ymin=ctl.getYLENum(ArrayUtil.getMin(cd.getLat()));
-		int xmax=ctl.getXNum  (ArrayUtil.getMax(lons));
-		int xmin=ctl.getXLENum(ArrayUtil.getMin(lons));
-		
-		if(ymax==-1) throw new IllegalArgumentException(ArrayUtil.getMax(lats)+" out of Y-range ["+ctl.getYDef().getFirst()+","+ctl.getYDef().getLast()+"]");
-		if(ymin==-1) throw new IllegalArgumentException(ArrayUtil.getMin(lats)+" out of Y-range ["+ctl.getYDef().getFirst()+","+ctl.getYDef().getLast()+"]");
-		if(xmax==-1) throw new IllegalArgumentException(ArrayUtil.getMax(lons)+" out of X-range ["+ctl.getXDef().getFirst()+","+ctl.getXDef().getLast()+"]");
-		if(xmin==-1) throw new IllegalArgumentException(ArrayUtil.getMin(lons)+" out of X-range ["+ctl.getXDef().getFirst()+","+ctl.getXDef().getLast()+"]");
-		
-		Range brange=new Range(1,1,ymax-ymin+4,xmax-xmin+4);
-		
-		buf=new Variable(vname,true,brange);
-	}
-	
 	
 	/**
 	 * close file method
@@ -365,6 +381,6 @@ public final class CsmDataReadStream implements DataRead,Print{
 	public void closeFile(){
 		if(cdrs!=null) cdrs.closeFile();
 		
-		cdrs=null;	buf=null;	cd=null;
+		cdrs=null;	cd=null;
 	}
 }
@@ -0,0 +1,218 @@
+/**
+ * @(#)CtlDataMappedReadStream.java	1.0 07/02/01
+ *
+ * Copyright 2007 MiniUFO, All rights reserved.
+ * MiniUFO Studio. Use is subject to license terms.
+ */
+package miniufo.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import miniufo.descriptor.CtlDescriptor;
+import miniufo.descriptor.CtlVar;
+import miniufo.descriptor.Var;
+import miniufo.diagnosis.Range;
+import miniufo.diagnosis.Variable;
+
+
+/**
+ * used to read the binary ctl data file through memory mapping,
+ * the whole file is mapped once and rows are bulk-copied into the Variable
+ *
+ * @version 1.0, 02/01/2007
+ * @author  MiniUFO
+ * @since   MDK1.0
+ */
+public final class CtlDataMappedReadStream implements DataRead,Print{
+	//
+	private boolean sequential=false;
+	private boolean print     =true;
+	
+	private float[]       row=null;	// buffer of one x-row for t-last variable
+	
+	private CtlDescriptor  cd=null;
+	private FileChannel    fc=null;
+	private FloatBuffer[] seg=null;	// mapped segments of the file
+	private RandomAccessFile raf=null;
+	
+	private static final long SEGMENT=1L<<30;	// bytes of one mapped segment, multiple of 4
+	
+	
+	/**
+     * constructor
+     *
+     * @param	cd	ctl descriptor
+     */
+	public CtlDataMappedReadStream(CtlDescriptor cd){
+		this.cd=cd;	sequential=cd.isSequential();
+		
+		try{
+			raf=new RandomAccessFile(cd.getDSet(),"r");
+			
+			long length=raf.length();
+			
+			if(sequential){
+				if(length!=(cd.getTRecLength()+cd.getVCount()*2*4)*cd.getTCount())
+				throw new IllegalArgumentException("length of data file is invalid");
+			
+			}else{
+				if(length!=cd.getTRecLength()*cd.getTCount())
+				throw new IllegalArgumentException(
+					"length of data file is invalid:"+length+
+					"(data, bytes), "+cd.getTRecLength()*cd.getTCount()+"(ctl, bytes)"
+				);
+			}
+			
+			fc=raf.getChannel();
+			
+			// segments overlap by one x-row so that a row never crosses two segments
+			long overlap=cd.getXCount()<<2;
+			
+			seg=new FloatBuffer[(int)((length+SEGMENT-1)/SEGMENT)];
+			
+			for(int s=0;s<seg.length;s++){
+				long pos=SEGMENT*s;
+				
+				MappedByteBuffer mbb=fc.map(MapMode.READ_ONLY,pos,Math.min(length-pos,SEGMENT+overlap));
+				mbb.order(cd.getByteOrder());
+				
+				seg[s]=mbb.asFloatBuffer();
+			}
+	    
+	    }catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+	}
+	
+	
+	/**
+	 * to read data from the specified file
+	 *
+     * @param	v	variable need to fill with data
+     */
+	public void readData(Variable... v){
+		if(v.length!=1){
+			if(print) System.out.print("\nStart reading ");
+			
+			for(int m=0;m<v.length;m++){
+				if(print) System.out.print(v[m].getName()+" ");
+				readOne(v[m]);
+			}
+			
+			if(print) System.out.println("data...\nFinish reading data.");
+		
+		}else readOne(v[0]);
+	}
+	
+	
+	/**
+	 * whether to print out
+	 *
+     * @param	print	print or disable print
+     */
+	public void setPrinting(boolean print){ this.print=print;}
+	
+	
+	/**
+	 * close file method
+     */
+	public void closeFile(){
+		try{ if(raf!=null){ fc.close();	raf.close();}}
+		catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+		
+		seg=null;	row=null;	raf=null;	cd=null;
+	}
+	
+	
+	/*** helper methods ***/
+	private void readOne(Variable v){
+		boolean yrev=cd.isYRev();
+		boolean zrev=cd.isZRev();
+		
+		Range range=v.getRange();
+		
+		int[] trange=range.getTRange();	int[] zrange=range.getZRange();
+		int[] yrange=range.getYRange();	int[] xrange=range.getXRange();
+		
+		int t=trange[2],z=zrange[2],y=yrange[2],x=xrange[2];
+		
+		int tcount=cd.getTCount();	int zcount=cd.getZCount();
+		int ycount=cd.getYCount();	int xcount=cd.getXCount();
+		
+		if(t>tcount||z>zcount) throw new IllegalArgumentException("invalid range");
+		if(y>ycount||x>xcount) throw new IllegalArgumentException("invalid range");
+		
+		CtlVar var=findVar(v.getName());
+		
+		long levLen=cd.getOneLevelLength();
+		long rowLen=xcount<<2;
+		long varLen=levLen*var.getZCount();
+		long marker=sequential?8:0;
+		
+		/*** byte offsets of the first row and strides of each dimension ***/
+		long start=var.getStartPosition()+(xrange[0]-1<<2);
+		long tStride;
+		
+		if("99".equals(cd.getStorageType())){
+			tStride=cd.getTRecLength()+marker*cd.getVCount();
+			start+=marker*var.getIndex();
+		
+		}else{
+			tStride=varLen+marker;
+			start+=marker*tcount*var.getIndex();
+		}
+		
+		if(sequential) start+=4;
+		
+		/*** start to read data ***/
+		float[][][][] data=v.getData();
+		
+		boolean tfirst=v.isTFirst();
+		
+		if(!tfirst&&(row==null||row.length<x)) row=new float[x];
+		
+		for(int l=0;l<t;l++){
+			long tpos=start+tStride*(trange[0]-1+l);
+			
+			for(int k=0;k<z;k++){
+				int kk=zrange[0]-1+k;
+				
+				long kpos=tpos+levLen*(zrev?var.getZCount()-1-kk:kk);
+				
+				for(int j=0;j<y;j++){
+					int jj=yrange[0]-1+j;
+					
+					long pos=kpos+rowLen*(yrev?ycount-1-jj:jj);
+					
+					if(tfirst) readRow(pos,data[l][k][j],x);
+					else{
+						readRow(pos,row,x);
+						
+						for(int i=0;i<x;i++) data[k][j][i][l]=row[i];
+					}
+				}
+			}
+		}
+	    
+	    v.setUndef(cd.getUndef(v.getName()));
+	    v.setCommentAndUnit(cd.getVarCommentAndUnit(v.getName()));
+	}
+	
+	private void readRow(long pos,float[] dst,int len){
+		int s=(int)(pos/SEGMENT);
+		
+		FloatBuffer fb=seg[s];
+		
+		fb.position((int)((pos-SEGMENT*s)>>2));
+		fb.get(dst,0,len);
+	}
+	
+	private CtlVar findVar(String vname){
+		for(Var var:cd.getVDef())
+		if(vname.equalsIgnoreCase(var.getName())) return (CtlVar)var;
+		
+		throw new IllegalArgumentException("cannot find "+vname+" in "+cd.getPath());
+	}
+}
@@ -9,7 +9,9 @@ package miniufo.io;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import miniufo.descriptor.CtlDescriptor;
 import miniufo.diagnosis.Variable;
 import miniufo.diagnosis.Range;
@@ -18,6 +20,11 @@ import miniufo.diagnosis.Range;
 /**
  * used to read the binary ctl data file
  *
+ * Variables of a non-sequential file are read record by record: for each time
+ * record the requested rows of all the variables are gathered into a few large
+ * sequential reads, so a set of variables sharing the same time range (e.g.,
+ * interleaved by the '99' storage type) are read in a single pass of the file.
+ *
  * @version 1.0, 02/01/2007
  * @author  MiniUFO
  * @since   MDK1.0
@@ -37,6 +44,9 @@ public final class CtlDataReadStream implements DataRead,Print{
 	private boolean sequential  =false;
 	private boolean print       =true;
 	
+	private static final int MAXGAP =1<<16;	// largest gap (bytes) read through instead of skipped
+	private static final int MAXREAD=1<<24;	// largest length (bytes) of one read
+	
 	private ByteBuffer       buf=null;	// buffer fulfill with data in one time for process
 	private CtlDescriptor     cd=null;
 	private FileChannel      fc =null;
@@ -81,14 +91,22 @@ public final class CtlDataReadStream implements DataRead,Print{
 		if(v.length!=1){
 			if(print) System.out.print("\nStart reading ");
 			
-			for(int m=0;m<v.length;m++){
+			if(!sequential&&sameTRange(v)){
+				if(print) for(int m=0;m<v.length;m++) System.out.print(v[m].getName()+" ");
+				
+				readRecords(v);
+				
+			}else for(int m=0;m<v.length;m++){
 				if(print) System.out.print(v[m].getName()+" ");
-				readOne(v[m]);
+				
+				if(sequential) readOne(v[m]);
+				else readRecords(v[m]);
 			}
 			
 			if(print) System.out.println("data...\nFinish reading data.");
 			
-		}else readOne(v[0]);
+		}else if(sequential) readOne(v[0]);
+		else readRecords(v[0]);
 	}
 	
 	
@@ -114,6 +132,154 @@ public final class CtlDataReadStream implements DataRead,Print{
 	
 	
 	/*** helper methods ***/
+	
+	/**
+	 * Read the variables sharing the same time range in a single pass of the file.
+	 * For each time record, the requested rows of each level of all the variables
+	 * are segments of the file, which are merged into large reads if they are
+	 * close enough and then scattered into the variables.
+	 */
+	private void readRecords(Variable... v){
+		int V=v.length;
+		
+		int tcount=cd.getTCount();	int zcount=cd.getZCount();
+		int ycount=cd.getYCount();	int xcount=cd.getXCount();
+		
+		long one_level_length=cd.getOneLevelLength();
+		
+		boolean yrev=cd.isYRev();
+		boolean zrev=cd.isZRev();
+		boolean is99="99".equals(cd.getStorageType());
+		
+		int[] trange=v[0].getRange().getTRange();
+		
+		long[] start=new long[V];	// start position of each variable
+		long[] trec =new long[V];	// length of a time record of each variable
+		int [] zlo  =new int [V];	int[] zhi=new int[V];	// level bounds in the file, inclusive
+		int [] ylo  =new int [V];	int[] yhi=new int[V];	// row   bounds in the file, inclusive
+		int [] xlo  =new int [V];	int[] xn =new int[V];
+		
+		int segs=0;
+		
+		for(int m=0;m<V;m++){
+			Range range=v[m].getRange();
+			
+			int[] zrange=range.getZRange();
+			int[] yrange=range.getYRange();	int[] xrange=range.getXRange();
+			
+			if(trange[2]>tcount||zrange[2]>zcount) throw new IllegalArgumentException("invalid range");
+			if(yrange[2]>ycount||xrange[2]>xcount) throw new IllegalArgumentException("invalid range");
+			
+			start[m]=cd.getVarStartPosition(v[m].getName());
+			trec [m]=is99?cd.getTRecLength():one_level_length*cd.getVarZcount(v[m].getName());
+			
+			zlo[m]=zrev?zcount-zrange[1]:zrange[0]-1;	zhi[m]=zlo[m]+zrange[2]-1;
+			ylo[m]=yrev?ycount-yrange[1]:yrange[0]-1;	yhi[m]=ylo[m]+yrange[2]-1;
+			xlo[m]=xrange[0]-1;	xn[m]=xrange[2];
+			
+			segs+=zrange[2];
+		}
+		
+		// segments (var, level) sorted by the positions in a time record
+		long[] pos=new long[segs];
+		int [] seg=new int [segs];
+		
+		for(int m=0,s=0;m<V;m++)
+		for(int k=zlo[m];k<=zhi[m];k++,s++){
+			pos[s]=start[m]+one_level_length*k+((long)ylo[m]*xcount+xlo[m]<<2);
+			seg[s]=m<<16|k-zlo[m];
+		}
+		
+		Integer[] order=new Integer[segs];
+		
+		for(int s=0;s<segs;s++) order[s]=s;
+		
+		Arrays.sort(order,(a,b)->Long.compare(pos[a],pos[b]));
+		
+		ByteBuffer rbuf=ByteBuffer.allocate(0);
+		
+		try{
+			for(int l=0;l<trange[2];l++){
+				int lf=trange[0]-1+l;
+				
+				for(int s=0;s<segs;){
+					// merge the following segments into one read
+					int e=s;
+					
+					long str=segPos(pos,seg,order[s],trec,lf);
+					long end=str+segLength(seg[order[s]],yhi,ylo,xn,xcount);
+					
+					while(e+1<segs){
+						long p=segPos(pos,seg,order[e+1],trec,lf);
+						long q=p+segLength(seg[order[e+1]],yhi,ylo,xn,xcount);
+						
+						if(p-end>MAXGAP||Math.max(q,end)-str>MAXREAD) break;
+						
+						end=Math.max(q,end);	e++;
+					}
+					
+					int len=(int)(end-str);
+					
+					if(rbuf.capacity()<len){ rbuf=ByteBuffer.allocate(len);	rbuf.order(cd.getByteOrder());}
+					
+					rbuf.clear();	rbuf.limit(len);
+					
+					while(rbuf.hasRemaining())
+					if(fc.read(rbuf,str+rbuf.position())<0) throw new IOException("unexpected end of file");
+					
+					rbuf.flip();
+					
+					FloatBuffer fb=rbuf.asFloatBuffer();
+					
+					// scatter the rows into the variables
+					for(;s<=e;s++){
+						int sg=seg[order[s]],m=sg>>>16,kk=sg&0xFFFF;
+						
+						int k=zrev?zhi[m]-zlo[m]-kk:kk;
+						int b=(int)(segPos(pos,seg,order[s],trec,lf)-str>>2);
+						
+						float[][][][] data=v[m].getData();
+						
+						for(int jf=ylo[m];jf<=yhi[m];jf++,b+=xcount){
+							int j=yrev?yhi[m]-jf:jf-ylo[m];
+							
+							if(v[m].isTFirst()){ fb.position(b); fb.get(data[l][k][j],0,xn[m]);}
+							else for(int i=0;i<xn[m];i++) data[k][j][i][l]=fb.get(b+i);
+						}
+					}
+				}
+			}
+			
+	    }catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+		
+		for(int m=0;m<V;m++){
+			v[m].setUndef(cd.getUndef(v[m].getName()));
+			v[m].setCommentAndUnit(cd.getVarCommentAndUnit(v[m].getName()));
+		}
+	}
+	
+	private long segPos(long[] pos,int[] seg,int s,long[] trec,int lf){
+		return pos[s]+trec[seg[s]>>>16]*lf;
+	}
+	
+	private long segLength(int sg,int[] yhi,int[] ylo,int[] xn,int xcount){
+		int m=sg>>>16;
+		
+		return ((long)(yhi[m]-ylo[m])*xcount+xn[m])<<2;
+	}
+	
+	private boolean sameTRange(Variable[] v){
+		int[] tr=v[0].getRange().getTRange();
+		
+		for(int m=1;m<v.length;m++){
+			int[] r=v[m].getRange().getTRange();
+			
+			if(r[0]!=tr[0]||r[1]!=tr[1]) return false;
+		}
+		
+		return true;
+	}
+	
 	private void readOne(Variable v){
 		long one_level_length=cd.getOneLevelLength();
 		
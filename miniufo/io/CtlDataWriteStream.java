@@ -12,9 +12,11 @@ import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
 import miniufo.io.FileWriteInterface;
 import miniufo.descriptor.DataDescriptor;
 import miniufo.diagnosis.Variable;
@@ -24,6 +26,11 @@ import static miniufo.io.FileWriteInterface.Solution.*;
 /**
  * used to write the commonest ctl data file
  *
+ * Data are written level by level.  In asynchronous mode (see setAsync) the
+ * filled level buffers are queued and written by a dedicated I/O thread so
+ * that the caller can continue computing; flush() or closeFile() should be
+ * called to make sure all the queued buffers have been written.
+ *
  * @version 1.0, 02/01/2007
  * @author  MiniUFO
  * @since   MDK1.0
@@ -46,6 +53,8 @@ public class CtlDataWriteStream extends DataWrite{
 	
 	protected ArrayList<Var>    vars=null;
 	
+	protected WriteBehind         wb=null;	// asynchronous writer, null for synchronous writing
+	
 	
 	/**
      * constructor
@@ -115,61 +124,10 @@ public class CtlDataWriteStream extends DataWrite{
 				System.out.println("data...");
 			}
 			
-			boolean tfirst=v[0].isTFirst();	float undef=v[0].getUndef();
-			
-			int tcount=v[0].getTCount();
-			int ycount=v[0].getYCount();
-			int xcount=v[0].getXCount();
-			int vcount=v.length;
-			
-			for(int m=1;m<vcount;m++){
-				if(v[m].getTCount()!=tcount)
-					throw new IllegalArgumentException("time count ("+tcount+") not same for "+v[m].getName()+" ("+v[m].getTCount()+")");
-				if(v[m].getYCount()!=ycount||v[m].getXCount()!=xcount)
-					throw new IllegalArgumentException("area count not same for "+v[m].getName());
-				if(v[m].isTFirst()!=tfirst)
-					throw new IllegalArgumentException("tfirst not same");
-				if(!Float.isNaN(undef)&&v[m].getUndef()!=undef)
-					throw new IllegalArgumentException("undef not same");
-			}
-			
-			// size: one level grid-count * 4
-			ByteBuffer buf=ByteBuffer.allocateDirect(ycount*xcount<<2);
-			buf.order(order);
+			checkVariables(v);
 			
-			try{
-			    if(tfirst){
-					for(int l=0;l<tcount;l++)
-					for(int m=0;m<vcount;m++){
-						int zcount=v[m].getZCount();
-						float[][][][] vdata=v[m].getData();
-						
-						for(int k=0;k<zcount;k++){
-							for(int j=0;j<ycount;j++)
-							for(int i=0;i<xcount;i++)
-							buf.putFloat(vdata[l][k][j][i]);
-							
-							buf.clear();	fc.write(buf);	buf.clear();
-						}
-					}
-					
-				}else{
-					for(int l=0;l<tcount;l++)
-					for(int m=0;m<vcount;m++){
-						int zcount=v[m].getZCount();
-						float[][][][] vdata=v[m].getData();
-						
-						for(int k=0;k<zcount;k++){
-							for(int j=0;j<ycount;j++)
-							for(int i=0;i<xcount;i++)
-							buf.putFloat(vdata[k][j][i][l]);
-							
-							buf.clear();	fc.write(buf);	buf.clear();
-						}
-					}
-				}
-			    
-		    }catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+			try{ writeVariables(v);}
+			catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
 		    
 			if(v.length==1){
 				if(isUsed99) throw new UnsupportedOperationException(
@@ -236,7 +194,7 @@ public class CtlDataWriteStream extends DataWrite{
 		String[] s=file_path.split("\\.");
 		StringBuilder name=new StringBuilder();
 		for(int i=0;i<s.length-1;i++) name.append(s[i]+".");
-		String ctlpath=name.append("ctl").toString();	is_skip=true;
+		String ctlpath=name.append(descriptorSuffix()).toString();	is_skip=true;
 		
 		FileWriter fw=null;
 		fwi=new FileWriteInterface(ctlpath);
@@ -364,6 +322,7 @@ public class CtlDataWriteStream extends DataWrite{
 			sb.append(tinc==null?dd.getTIncrement():tinc);
 			
 			sb.append("\n");
+			appendDescription(sb);
 			sb.append(toStringBuilder(vars));
 			
 			try{ fw.write(sb.toString()); fw.close();}
@@ -381,11 +340,34 @@ public class CtlDataWriteStream extends DataWrite{
      */ 
 	public void setPrinting(boolean print){ this.print=print;}
 	
+	/**
+	 * Whether to write the data asynchronously.  Data of a Variable are copied
+	 * into level buffers before writeData returns, so the Variable can be
+	 * modified afterwards.  At most queueLength levels are waiting to be
+	 * written; writeData blocks when the queue is full.
+	 *
+     * @param	queueLength	length of the queue of filled buffers, 0 for synchronous writing
+     */
+	public void setAsync(int queueLength){
+		if(queueLength<0) throw new IllegalArgumentException("queue length should not be negative");
+		
+		if(wb!=null){ wb.close(); wb=null;}
+		
+		if(queueLength>0&&!is_skip&&fc!=null) wb=new WriteBehind(fc,queueLength);
+	}
+	
+	/**
+	 * wait until all the queued data have been written to the file
+     */
+	public void flush(){ if(wb!=null) wb.flush();}
+	
 	
 	/**
 	 * close file method
      */
 	public void closeFile(){
+		if(wb!=null){ wb.close(); wb=null;}
+		
 		is_skip=true;
 		
 		vars.clear();	vars=null;
@@ -397,6 +379,81 @@ public class CtlDataWriteStream extends DataWrite{
 	}
 	
 	
+	/**
+	 * check whether the variables can be written together
+	 */
+	protected void checkVariables(Variable[] v){
+		boolean tfirst=v[0].isTFirst();	float undef=v[0].getUndef();
+		
+		int tcount=v[0].getTCount();
+		int ycount=v[0].getYCount();
+		int xcount=v[0].getXCount();
+		
+		for(int m=1;m<v.length;m++){
+			if(v[m].getTCount()!=tcount)
+				throw new IllegalArgumentException("time count ("+tcount+") not same for "+v[m].getName()+" ("+v[m].getTCount()+")");
+			if(v[m].getYCount()!=ycount||v[m].getXCount()!=xcount)
+				throw new IllegalArgumentException("area count not same for "+v[m].getName());
+			if(v[m].isTFirst()!=tfirst)
+				throw new IllegalArgumentException("tfirst not same");
+			if(!Float.isNaN(undef)&&v[m].getUndef()!=undef)
+				throw new IllegalArgumentException("undef not same");
+		}
+	}
+	
+	/**
+	 * write the data of the variables into the file, level by level
+	 */
+	protected void writeVariables(Variable[] v) throws IOException{
+		boolean tfirst=v[0].isTFirst();
+		
+		int tcount=v[0].getTCount();
+		int ycount=v[0].getYCount();
+		int xcount=v[0].getXCount();
+		int vcount=v.length;
+		
+		// size: one level grid-count * 4
+		int size=ycount*xcount<<2;
+		
+		ByteBuffer sbuf=wb==null?ByteBuffer.allocateDirect(size):null;
+		
+		float[] row=tfirst?null:new float[xcount];
+		
+		for(int l=0;l<tcount;l++)
+		for(int m=0;m<vcount;m++){
+			int zcount=v[m].getZCount();
+			float[][][][] vdata=v[m].getData();
+			
+			for(int k=0;k<zcount;k++){
+				ByteBuffer buf=wb==null?sbuf:wb.obtain(size);
+				buf.clear();	buf.order(order);
+				
+				FloatBuffer fb=buf.asFloatBuffer();
+				
+				if(tfirst) for(int j=0;j<ycount;j++) fb.put(vdata[l][k][j]);
+				else for(int j=0;j<ycount;j++){
+					for(int i=0;i<xcount;i++) row[i]=vdata[k][j][i][l];
+					
+					fb.put(row);
+				}
+				
+				if(wb==null) while(buf.hasRemaining()) fc.write(buf);
+				else wb.put(buf);
+			}
+		}
+	}
+	
+	/**
+	 * suffix of the descriptor file
+	 */
+	protected String descriptorSuffix(){ return "ctl";}
+	
+	/**
+	 * append the extra description (before vars) to the descriptor
+	 */
+	protected void appendDescription(StringBuilder sb){}
+	
+	
 	/*** change the info of an array of variables into a string ***/
 	protected StringBuilder toStringBuilder(ArrayList<Var> vars){
 		StringBuilder sb=new StringBuilder();
@@ -422,6 +479,82 @@ public class CtlDataWriteStream extends DataWrite{
 	}
 	
 	
+	/**
+	 * Filled buffers are written by a dedicated I/O thread and then recycled.
+	 */
+	protected static final class WriteBehind implements Runnable{
+		//
+		private int pending=0;	// number of buffers put but not yet written
+		
+		private FileChannel fc=null;
+		
+		private Thread thread=null;
+		
+		private ArrayBlockingQueue<ByteBuffer> filled=null;
+		private ArrayBlockingQueue<ByteBuffer> free  =null;
+		
+		private static final ByteBuffer EOF=ByteBuffer.allocate(0);
+		
+		//
+		WriteBehind(FileChannel fc,int queueLength){
+			this.fc=fc;
+			
+			filled=new ArrayBlockingQueue<>(queueLength+1);	// one more for EOF
+			free  =new ArrayBlockingQueue<>(queueLength+1);
+			
+			thread=new Thread(this,"CtlDataWriteStream-writer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		/**
+		 * a recycled buffer of the given size or a new one
+		 */
+		ByteBuffer obtain(int size){
+			ByteBuffer buf=free.poll();
+			
+			if(buf==null||buf.capacity()!=size) buf=ByteBuffer.allocateDirect(size);
+			
+			return buf;
+		}
+		
+		void put(ByteBuffer buf){
+			synchronized(this){ pending++;}
+			
+			try{ filled.put(buf);}
+			catch(InterruptedException ex){ ex.printStackTrace(); System.exit(0);}
+		}
+		
+		synchronized void flush(){
+			try{ while(pending>0) wait();}
+			catch(InterruptedException ex){ ex.printStackTrace(); System.exit(0);}
+		}
+		
+		void close(){
+			try{ filled.put(EOF); thread.join();}
+			catch(InterruptedException ex){ ex.printStackTrace(); System.exit(0);}
+		}
+		
+		public void run(){
+			try{
+				while(true){
+					ByteBuffer buf=filled.take();
+					
+					if(buf==EOF) break;
+					
+					while(buf.hasRemaining()) fc.write(buf);
+					
+					free.offer(buf);
+					
+					synchronized(this){ pending--; notifyAll();}
+				}
+				
+			}catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+			catch(InterruptedException ex){ ex.printStackTrace(); System.exit(0);}
+		}
+	}
+	
+	
 	/** test
 	public static void main(String[] arg){		
 		try{
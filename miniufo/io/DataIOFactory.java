@@ -6,6 +6,7 @@
  */
 package miniufo.io;
 
+import miniufo.descriptor.ChunkedDescriptor;
 import miniufo.descriptor.CsmDescriptor;
 import miniufo.descriptor.CtlDescriptor;
 import miniufo.descriptor.CtsDescriptor;
@@ -32,6 +33,7 @@ public final class DataIOFactory{
 	 * static factory method
      */ 
 	public static DataRead getDataRead(DataDescriptor dd){
+		if(dd instanceof ChunkedDescriptor) return new ChunkedDataReadStream((ChunkedDescriptor)dd);
 		if(dd instanceof    CtlDescriptor) return new CtlDataReadStream((   CtlDescriptor)dd);
 		if(dd instanceof    CtsDescriptor) return new CtlDataReadStream((   CtsDescriptor)dd);
 		if(dd instanceof    CsmDescriptor) return new CsmDataReadStream((   CsmDescriptor)dd);
@@ -39,9 +41,26 @@ public final class DataIOFactory{
 		
 		throw new IllegalArgumentException("unsupported DataDescriptor type");
 	}
+	
+	/**
+	 * static factory method
+	 *
+	 * @param	dd		data descriptor
+	 * @param	mapped	whether to map the whole binary file into memory (ctl/cts only)
+     */ 
+	public static DataRead getDataRead(DataDescriptor dd,boolean mapped){
+		if(mapped&&dd instanceof CtlDescriptor&&!(dd instanceof ChunkedDescriptor)) return new CtlDataMappedReadStream((CtlDescriptor)dd);
+		
+		return getDataRead(dd);
+	}
     
 	public static DataWrite getDataWrite(DataDescriptor dd,String path){
-		if(dd instanceof CsmDescriptor) return new CsmDataWriteStream(path);
+		if(dd instanceof ChunkedDescriptor){
+			ChunkedDescriptor cd=(ChunkedDescriptor)dd;
+			
+			return new ChunkedDataWriteStream(path,cd.getChunkShape(),cd.getCompressionLevel());
+			
+		}else if(dd instanceof CsmDescriptor) return new CsmDataWriteStream(path);
 		else if(dd instanceof CtsDescriptor) return new CtsDataWriteStream(path);
 		else return new CtlDataWriteStream(path);
 	}
@@ -33,6 +33,8 @@ public final class NetCDFReadStream implements DataRead,Print{
 	private NetcdfFile       nc=null;
 	private NetCDFDescriptor nd=null;
 	
+	private static final int MAXCHUNK=1<<24;	// maximum grids of one hyperslab read
+	
 	
 	/**
      * constructor
@@ -53,21 +55,12 @@ public final class NetCDFReadStream implements DataRead,Print{
      * @param	v	variable need to fill with data
      */ 
 	public void readData(miniufo.diagnosis.Variable... vs){
-		float offset=0;	float factor=1;	
-		
 		if(print) System.out.print("\nStart reading ");
 		
 		for(int m=0;m<vs.length;m++){
 			if(print) System.out.print(vs[m].getName()+" ");
 			
-			Range range=vs[m].getRange();
-			
-			float[][][][] data=vs[m].getData();
-			
-			int[] trange=range.getTRange();	t=vs[m].getTCount();
-			int[] zrange=range.getZRange();	z=vs[m].getZCount();
-			int[] yrange=range.getYRange();	y=vs[m].getYCount();
-			int[] xrange=range.getXRange();	x=vs[m].getXCount();
+			float offset=0;	float factor=1;
 			
 			ucar.nc2.Variable v=nc.findVariable(vs[m].getName());
 			
@@ -93,195 +86,8 @@ public final class NetCDFReadStream implements DataRead,Print{
 			
 			vs[m].setCommentAndUnit(comment);
 			
-			try{
-		    	if(nd.getDimensionCount()==4){
-					int[] ix=new int[4];
-					
-					final int[] shp={1,1,1,1};
-				    
-				    ix[0]=trange[0]-1;
-				    ix[1]=zrange[0]-1;
-				    ix[2]=nd.isYRev()?nd.getYCount()-yrange[0]:yrange[0]-1;
-				    ix[3]=xrange[0]-1;
-				    
-				    if(vs[m].isTFirst()){
-				    	if(nd.isYRev()){
-						    for(int l=0;l<t;l++){
-							for(int k=0;k<z;k++){
-							for(int j=0;j<y;j++){
-							for(int i=0;i<x;i++){
-								data[l][k][j][i]=v.read(ix,shp).getFloat(0)*factor+offset;	ix[3]++;
-							}
-							ix[3]=xrange[0]-1;					ix[2]--;
-							}
-							ix[2]=nd.getYCount()-yrange[0];		ix[1]++;
-							}
-							ix[1]=zrange[0]-1;					ix[0]++;
-							}
-							
-				    	}else{
-				    		for(int l=0;l<t;l++){
-							for(int k=0;k<z;k++){
-							for(int j=0;j<y;j++){
-							for(int i=0;i<x;i++){
-								data[l][k][j][i]=v.read(ix,shp).getFloat(0)*factor+offset;	ix[3]++;
-							}
-							ix[3]=xrange[0]-1;					ix[2]++;
-							}
-							ix[2]=yrange[0]-1;					ix[1]++;
-							}
-							ix[1]=zrange[0]-1;					ix[0]++;
-							}
-				    	}
-						
-				    }else{
-				    	if(nd.isYRev()){
-							for(int l=0;l<t;l++){
-							for(int k=0;k<z;k++){
-							for(int j=0;j<y;j++){
-							for(int i=0;i<x;i++){
-								data[k][j][i][l]=v.read(ix,shp).getFloat(0)*factor+offset;	ix[3]++;
-							}
-							ix[3]=xrange[0]-1;					ix[2]--;
-							}
-							ix[2]=nd.getYCount()-yrange[0];		ix[1]++;
-							}
-							ix[1]=zrange[0]-1;					ix[0]++;
-							}
-							
-				    	}else{
-							for(int l=0;l<t;l++){
-							for(int k=0;k<z;k++){
-							for(int j=0;j<y;j++){
-							for(int i=0;i<x;i++){
-								data[k][j][i][l]=v.read(ix,shp).getFloat(0)*factor+offset;	ix[3]++;
-							}
-							ix[3]=xrange[0]-1;					ix[2]++;
-							}
-							ix[2]=yrange[0]-1;					ix[1]++;
-							}
-							ix[1]=zrange[0]-1;					ix[0]++;
-							}
-				    	}
-				    }
-					
-				}else if(nd.getDimensionCount()==3){
-					int[] ix=new int[3];
-					
-					final int[] shp={1,1,1};
-					
-					if(vs[m].isTFirst()){
-						if(!nd.hasTDef()){
-						    ix[0]=zrange[0]-1;	ix[1]=nd.getYCount()-yrange[0];	ix[2]=xrange[0]-1;
-						    
-							for(int k=0;k<z;k++){
-							for(int j=0;j<y;j++){
-							for(int i=0;i<x;i++){
-								data[0][k][j][i]=v.read(ix,shp).getFloat(0)*factor+offset;	ix[2]++;
-							}
-							ix[2]=xrange[0]-1;					ix[1]--;
-							}
-							ix[1]=nd.getYCount()-yrange[0];		ix[0]++;
-							}
-							
-						}else if(!nd.hasZDef()){
-						    ix[0]=trange[0]-1;	ix[1]=nd.getYCount()-yrange[0];	ix[2]=xrange[0]-1;
-						    
-							for(int l=0;l<t;l++){
-							for(int j=0;j<y;j++){
-							for(int i=0;i<x;i++){
-								data[l][0][j][i]=v.read(ix,shp).getFloat(0)*factor+offset;	ix[2]++;
-							}
-							ix[2]=xrange[0]-1;					ix[1]--;
-							}
-							ix[1]=nd.getYCount()-yrange[0];		ix[0]++;
-							}
-							
-						}else if(!nd.hasYDef()){
-						    ix[0]=trange[0]-1;	ix[1]=zrange[0]-1;	ix[2]=xrange[0]-1;
-				    		
-							for(int l=0;l<t;l++){
-							for(int k=0;k<z;k++){
-							for(int i=0;i<x;i++){
-								data[l][k][0][i]=v.read(ix,shp).getFloat(0)*factor+offset;	ix[2]++;
-							}
-							ix[2]=xrange[0]-1;	ix[1]++;
-							}
-							ix[1]=zrange[0]-1;	ix[0]++;
-							}
-							
-						}else{
-						    ix[0]=trange[0]-1;	ix[1]=zrange[0]-1;	ix[2]=nd.getYCount()-yrange[0];
-				    		
-							for(int l=0;l<t;l++){
-							for(int k=0;k<z;k++){
-							for(int j=0;j<y;j++){
-								data[l][k][j][0]=v.read(ix,shp).getFloat(0)*factor+offset;	ix[2]--;
-							}
-							ix[2]=nd.getYCount()-yrange[0];		ix[1]++;
-							}
-							ix[1]=zrange[0]-1;					ix[0]++;
-							}
-						}
-						
-					}else{
-						if(!nd.hasTDef()){
-						    ix[0]=zrange[0]-1;	ix[1]=nd.getYCount()-yrange[0];	ix[2]=xrange[0]-1;
-				    		
-							for(int k=0;k<z;k++){
-							for(int j=0;j<y;j++){
-							for(int i=0;i<x;i++){
-								data[k][j][i][0]=v.read(ix,shp).getFloat(0)*factor+offset;	ix[2]++;
-							}
-							ix[2]=xrange[0]-1;					ix[1]--;
-							}
-							ix[1]=nd.getYCount()-yrange[0];	ix[0]++;
-							}
-							
-						}else if(!nd.hasZDef()){
-						    ix[0]=trange[0]-1;	ix[1]=nd.getYCount()-yrange[0];	ix[2]=xrange[0]-1;
-				    		
-							for(int l=0;l<t;l++){
-							for(int j=0;j<y;j++){
-							for(int i=0;i<x;i++){
-								data[0][j][i][l]=v.read(ix,shp).getFloat(0)*factor+offset;	ix[2]++;
-							}
-							ix[2]=xrange[0]-1;					ix[1]--;
-							}
-							ix[1]=nd.getYCount()-yrange[0];		ix[0]++;
-							}
-							
-						}else if(!nd.hasYDef()){
-						    ix[0]=trange[0]-1;	ix[1]=zrange[0]-1;	ix[2]=xrange[0]-1;
-				    		
-							for(int l=0;l<t;l++){
-							for(int k=0;k<z;k++){
-							for(int i=0;i<x;i++){
-								data[k][0][i][l]=v.read(ix,shp).getFloat(0)*factor+offset;	ix[2]++;
-							}
-							ix[2]=xrange[0]-1;	ix[1]++;
-							}
-							ix[1]=zrange[0]-1;	ix[0]++;
-							}
-							
-						}else{
-						    ix[0]=trange[0]-1;	ix[1]=zrange[0]-1;	ix[2]=nd.getYCount()-yrange[0];
-				    		
-							for(int l=0;l<t;l++){
-							for(int k=0;k<z;k++){
-							for(int j=0;j<y;j++){
-								data[k][j][0][l]=v.read(ix,shp).getFloat(0)*factor+offset;	ix[2]--;
-							}
-							ix[2]=nd.getYCount()-yrange[0];		ix[1]++;
-							}
-							ix[1]=zrange[0]-1;	ix[0]++;
-							}
-						}
-					}
-					
-				}else throw new IllegalArgumentException("Invalid dimension count");
-				
-		    }catch(IOException ex1){
+			try{ readHyperslabs(v,vs[m],factor,offset);}
+			catch(IOException ex1){
 		    	ex1.printStackTrace();	System.exit(0);
 		    }catch(IllegalArgumentException ex2){
 		    	ex2.printStackTrace();	System.exit(0);
@@ -315,6 +121,113 @@ public final class NetCDFReadStream implements DataRead,Print{
 	}
 	
 	
+	/*** helper methods ***/
+	
+	/**
+	 * Read a variable by hyperslabs instead of grid by grid.  The dimensions
+	 * of the NetCDF variable are the existing ones of [t, z, y, x] in order so
+	 * that a hyperslab is stored as [t][z][y][x] with the absent dimensions of
+	 * length 1.  Each hyperslab covers a range of the outermost dimension and
+	 * contains at most MAXCHUNK grids.
+	 *
+     * @param	v		NetCDF variable
+     * @param	var		variable need to fill with data
+     * @param	factor	scale factor
+     * @param	offset	add offset
+	 */
+	private void readHyperslabs(ucar.nc2.Variable v,miniufo.diagnosis.Variable var,float factor,float offset)
+	throws IOException,InvalidRangeException{
+		Range range=var.getRange();
+		
+		t=var.getTCount();	z=var.getZCount();	y=var.getYCount();	x=var.getXCount();
+		
+		boolean[] has={true,true,true,true};	// existences of [t, z, y, x] in file
+		
+		if(nd.getDimensionCount()==3){
+			if(!nd.hasTDef()) has[0]=false;
+			else if(!nd.hasZDef()) has[1]=false;
+			else if(!nd.hasYDef()) has[2]=false;
+			else has[3]=false;
+		
+		}else if(nd.getDimensionCount()!=4) throw new IllegalArgumentException("Invalid dimension count");
+		
+		boolean yrev=nd.isYRev();
+		
+		int[] cnts={t,z,y,x};	// counts of [t, z, y, x]
+		int[] strs={			// start indices in file of [t, z, y, x]
+			range.getTRange()[0]-1,
+			range.getZRange()[0]-1,
+			yrev?nd.getYCount()-range.getYRange()[0]-y+1:range.getYRange()[0]-1,
+			range.getXRange()[0]-1
+		};
+		
+		int[] dims=new int[4];	int rank=0;	// indices of the existing dimensions
+		
+		for(int d=0;d<4;d++) if(has[d]) dims[rank++]=d;
+		
+		int inner=1;	// grids of one index of the outermost dimension
+		
+		for(int r=1;r<rank;r++) inner*=cnts[dims[r]];
+		
+		int outer=cnts[dims[0]];
+		int step =Math.max(1,Math.min(outer,MAXCHUNK/Math.max(inner,1)));
+		
+		int[] origin=new int[rank];
+		int[] shape =new int[rank];
+		
+		for(int r=0;r<rank;r++){ origin[r]=strs[dims[r]]; shape[r]=cnts[dims[r]];}
+		
+		float[][][][] data=var.getData();
+		
+		for(int o=0;o<outer;o+=step){
+			int len=Math.min(step,outer-o);
+			
+			origin[0]=strs[dims[0]]+o;	shape[0]=len;
+			
+			float[] buf=(float[])v.read(origin,shape).get1DJavaArray(float.class);
+			
+			if(factor!=1||offset!=0) for(int n=0,N=buf.length;n<N;n++) buf[n]=buf[n]*factor+offset;
+			
+			// counts and starts of [t, z, y, x] of this hyperslab
+			int[] c={has[0]?t:1,has[1]?z:1,has[2]?y:1,has[3]?x:1};
+			int[] s=new int[4];
+			
+			c[dims[0]]=len;	s[dims[0]]=o;
+			
+			scatter(buf,c,s,yrev&&has[2],var.isTFirst(),data);
+		}
+	}
+	
+	/**
+	 * Scatter a hyperslab of [t][z][y][x] into the data of a variable.
+	 *
+     * @param	buf		data of the hyperslab
+     * @param	c		counts of [t, z, y, x] of the hyperslab
+     * @param	s		start indices of [t, z, y, x] in the variable
+     * @param	yrev	whether y-dimension is reversed in file
+     * @param	tfirst	whether the data of the variable is t-first
+     * @param	data	data of the variable
+	 */
+	private void scatter(float[] buf,int[] c,int[] s,boolean yrev,boolean tfirst,float[][][][] data){
+		int n=0;
+		
+		for(int l=s[0],L=s[0]+c[0];l<L;l++)
+		for(int k=s[1],K=s[1]+c[1];k<K;k++)
+		for(int jj=0;jj<c[2];jj++){
+			int j=yrev?s[2]+c[2]-1-jj:s[2]+jj;
+			
+			if(tfirst){
+				System.arraycopy(buf,n,data[l][k][j],s[3],c[3]);	n+=c[3];
+			
+			}else{
+				float[][] dkj=data[k][j];
+				
+				for(int i=s[3],I=s[3]+c[3];i<I;i++) dkj[i][l]=buf[n++];
+			}
+		}
+	}
+	
+	
 	/** test
 	public static void main(String[] args){
 		// Open the file.
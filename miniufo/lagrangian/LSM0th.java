@@ -9,6 +9,7 @@ package miniufo.lagrangian;
 import java.util.function.Function;
 
 import miniufo.descriptor.DataDescriptor;
+import miniufo.statistics.RandomStream;
 import static java.lang.Math.sqrt;
 
 
@@ -51,7 +52,7 @@ public final class LSM0th extends StochasticModel{
 	 * @param	init	initial record
 	 * @param	dt		delta time
 	 */
-	protected Record forwardRK4(Record init,float dt){
+	protected Record forwardRK4(Record init,float dt,RandomStream rs){
 		//// compute background mean flow using 4th-order Runge-Kutta method ////
 		Record r2=forwardByMean(init,init,dt/2f);	if(r2==null) return null;
 		Record r3=forwardByMean(init,r2  ,dt/2f);	if(r3==null) return null;
@@ -78,10 +79,10 @@ public final class LSM0th extends StochasticModel{
 		r4.setData(VelX,velXRK4+resX0);
 		r4.setData(VelY,velYRK4+resY0);
 		
-		Record esti=forwardByAll(init,r4,resX0,resY0,dt,false);
+		Record esti=forwardByAll(init,r4,resX0,resY0,dt,false);	if(esti==null) return null;
 		
 		//// compute final position using mean background and averaged random velocity ////
-		float[] res1=getRandom(esti,null);
+		float[] res1=new float[4];	if(!getRandom(esti,null,res1,rs)) return null;
 		
 		r4.setData(VelX,velXRK4+res1[0]);
 		r4.setData(VelY,velYRK4+res1[1]);
@@ -91,13 +92,13 @@ public final class LSM0th extends StochasticModel{
 		return r4;
 	}
 	
-	protected float[] getRandom(Record init,Record esti){
+	protected boolean getRandom(Record init,Record esti,float[] re,RandomStream rs){
 		StochasticParams sp0=func.apply(init); validateOrder(sp0);
 		
 		double Kxx=sp0.getDiff(1,1),Kxy=sp0.getDiff(1,2);
 		double Kyx=sp0.getDiff(2,1),Kyy=sp0.getDiff(2,2);
 		
-		double Rx=rnd.nextGaussian(),Ry=rnd.nextGaussian();
+		double Rx=rs.nextGaussian(),Ry=rs.nextGaussian();
 		
 		float DKxx=sp0.getDGrd(1,1),DKxy=sp0.getDGrd(1,2);
 		float DKyx=sp0.getDGrd(2,1),DKyy=sp0.getDGrd(2,2);
@@ -110,8 +111,12 @@ public final class LSM0th extends StochasticModel{
 		float resX1=(float)(sqrt(2.0/dt*Kxx)*Rx+sqrt(2.0/dt*Kxy)*Ry);
 		float resY1=(float)(sqrt(2.0/dt*Kyx)*Rx+sqrt(2.0/dt*Kyy)*Ry);
 		
-		return new float[]{resX1+velXCr,resY1+velYCr,0,0};
+		re[0]=resX1+velXCr;	re[1]=resY1+velYCr;	re[2]=0;	re[3]=0;
+		
+		return true;
 	}
 	
-	protected float[] spinupRandom(Record init,int iter){ return getRandom(init,null);}
+	protected float[] spinupRandom(Record init,int iter,RandomStream rs){
+		float[] re=new float[4];	getRandom(init,null,re,rs);	return re;
+	}
 }
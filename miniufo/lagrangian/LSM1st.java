@@ -8,6 +8,7 @@ package miniufo.lagrangian;
 
 import java.util.function.Function;
 import miniufo.descriptor.DataDescriptor;
+import miniufo.statistics.RandomStream;
 import static java.lang.Math.sqrt;
 
 
@@ -50,7 +51,7 @@ public final class LSM1st extends StochasticModel{
 	 * @param	init	initial record
 	 * @param	dt		delta time
 	 */
-	protected Record forwardRK4(Record init,float dt){
+	protected Record forwardRK4(Record init,float dt,RandomStream rs){
 		//// compute background mean flow using 4th-order Runge-Kutta method ////
 		Record r2=forwardByMean(init,init,dt/2f);	if(r2==null) return null;
 		Record r3=forwardByMean(init,r2  ,dt/2f);	if(r3==null) return null;
@@ -80,7 +81,7 @@ public final class LSM1st extends StochasticModel{
 		Record esti=forwardByAll(init,r4,resX0,resY0,dt,false);	if(esti==null) return null;
 		
 		//// compute final position using mean background and averaged random velocity ////
-		float[] res1=getRandom(init,esti);
+		float[] res1=new float[4];	if(!getRandom(init,esti,res1,rs)) return null;
 		
 		r4.setData(VelX,velXRK4+res1[0]);
 		r4.setData(VelY,velYRK4+res1[1]);
@@ -90,7 +91,7 @@ public final class LSM1st extends StochasticModel{
 		return r4;
 	}
 	
-	protected float[] getRandom(Record init,Record esti){
+	protected boolean getRandom(Record init,Record esti,float[] re,RandomStream rs){
 		StochasticParams sp0=func.apply(init);	validateOrder(sp0);
 		StochasticParams sp1=func.apply(esti);	validateOrder(sp1);
 		
@@ -100,10 +101,11 @@ public final class LSM1st extends StochasticModel{
 		float vXX0 =sp0.getVarV(1,1),vYY0 =sp0.getVarV(2,2);
 		float vXX1 =sp1.getVarV(1,1),vYY1 =sp1.getVarV(2,2);
 		
-		float[] velm=fetchVelocity(init.getTime(),init.getXPos(),init.getYPos());
+		// re is used for mean velocity here
+		if(!fetchVelocity(init.getTime(),init.getXPos(),init.getYPos(),re)) return false;
 		
-		float resX0=init.getData(VelX)-velm[0];
-		float resY0=init.getData(VelY)-velm[1];
+		float resX0=init.getData(VelX)-re[0];
+		float resY0=init.getData(VelY)-re[1];
 		
 		//// compute inhomogeneous correction ////
 		float velXCr=(
@@ -122,16 +124,18 @@ public final class LSM1st extends StochasticModel{
 			resY0/vYY0*(vYY1-vYY0)
 		)/2f;
 		
-		float dvelX=(float)(sqrt(2.0*dt*Kxx0)/Txx0*rnd.nextGaussian());
-		float dvelY=(float)(sqrt(2.0*dt*Kyy0)/Tyy0*rnd.nextGaussian());
+		float dvelX=(float)(sqrt(2.0*dt*Kxx0)/Txx0*rs.nextGaussian());
+		float dvelY=(float)(sqrt(2.0*dt*Kyy0)/Tyy0*rs.nextGaussian());
 		
 		float resX1=resX0*(1f-dt/Txx0)+velXCr+dvelX;
 		float resY1=resY0*(1f-dt/Tyy0)+velYCr+dvelY;
 		
-		return new float[]{resX1,resY1,0,0};
+		re[0]=resX1;	re[1]=resY1;	re[2]=0;	re[3]=0;
+		
+		return true;
 	}
 	
-	protected float[] spinupRandom(Record init,int iter){
+	protected float[] spinupRandom(Record init,int iter,RandomStream rs){
 		StochasticParams sp=func.apply(init); validateOrder(sp);
 		
 		float Kxx =sp.getDiff(1,1),Kyy =sp.getDiff(2,2);
@@ -145,14 +149,14 @@ public final class LSM1st extends StochasticModel{
 		
 		float resX0=0f;
 		float resY0=0f;
-		float resX1=(float)(resX0*(1.0-dt/Txx)+vCX+coX*rnd.nextGaussian());
-		float resY1=(float)(resY0*(1.0-dt/Tyy)+vCY+coY*rnd.nextGaussian());
+		float resX1=(float)(resX0*(1.0-dt/Txx)+vCX+coX*rs.nextGaussian());
+		float resY1=(float)(resY0*(1.0-dt/Tyy)+vCY+coY*rs.nextGaussian());
 		
 		for(int i=1;i<iter;i++){
 			resX0=resX1;	resY0=resY1;
 			
-			resX1=(float)(resX0*(1.0-dt/Txx)+vCX+coX*rnd.nextGaussian());
-			resY1=(float)(resY0*(1.0-dt/Tyy)+vCY+coY*rnd.nextGaussian());
+			resX1=(float)(resX0*(1.0-dt/Txx)+vCX+coX*rs.nextGaussian());
+			resY1=(float)(resY0*(1.0-dt/Tyy)+vCY+coY*rs.nextGaussian());
 		}
 		
 		return new float[]{resX1,resY1,0,0};
@@ -8,6 +8,7 @@ package miniufo.lagrangian;
 
 import java.util.function.Function;
 import miniufo.descriptor.DataDescriptor;
+import miniufo.statistics.RandomStream;
 import static java.lang.Math.sqrt;
 
 
@@ -50,7 +51,7 @@ public final class LSM2nd extends StochasticModel{
 	 * @param	init	initial record
 	 * @param	dt		delta time
 	 */
-	protected Record forwardRK4(Record init,float dt){
+	protected Record forwardRK4(Record init,float dt,RandomStream rs){
 		Record r2=forwardByMean(init,init,dt/2f);	if(r2==null) return null;
 		Record r3=forwardByMean(init,r2  ,dt/2f);	if(r3==null) return null;
 		Record r4=forwardByMean(init,r3  ,dt   );	if(r4==null) return null;
@@ -79,7 +80,7 @@ public final class LSM2nd extends StochasticModel{
 		Record esti=forwardByAll(init,r4,resX0,resY0,dt,false);	if(esti==null) return null;
 		
 		//// compute final position using mean background and averaged random velocity ////
-		float[] res1=getRandom(init,esti);
+		float[] res1=new float[4];	if(!getRandom(init,esti,res1,rs)) return null;
 		
 		r4.setData(VelX,velXRK4+res1[0]); r4.setData(AccX,res1[2]);
 		r4.setData(VelY,velYRK4+res1[1]); r4.setData(AccY,res1[3]);
@@ -89,7 +90,7 @@ public final class LSM2nd extends StochasticModel{
 		return r4;
 	}
 	
-	protected float[] getRandom(Record init,Record esti){
+	protected boolean getRandom(Record init,Record esti,float[] re,RandomStream rs){
 		StochasticParams sp0=func.apply(init);	validateOrder(sp0);
 		StochasticParams sp1=func.apply(esti);	validateOrder(sp1);
 		
@@ -100,10 +101,11 @@ public final class LSM2nd extends StochasticModel{
 		float vXX0 =sp0.getVarV(1,1),vYY0 =sp0.getVarV(2,2);
 		float vXX1 =sp1.getVarV(1,1),vYY1 =sp1.getVarV(2,2);
 		
-		float[] velm=fetchVelocity(init.getTime(),init.getXPos(),init.getYPos());
+		// re is used for mean velocity here
+		if(!fetchVelocity(init.getTime(),init.getXPos(),init.getYPos(),re)) return false;
 		
-		float resX0=init.getData(VelX)-velm[0];
-		float resY0=init.getData(VelY)-velm[1];
+		float resX0=init.getData(VelX)-re[0];
+		float resY0=init.getData(VelY)-re[1];
 		float accX0=init.getData(AccX);
 		float accY0=init.getData(AccY);
 		
@@ -129,18 +131,20 @@ public final class LSM2nd extends StochasticModel{
 		
 		velXCr=velYCr=accXCr=accYCr=0;
 		
-		float daccX=(float)(sqrt(2.0*dt*Kxx0)/Taxx0/Tvxx0*rnd.nextGaussian());
-		float daccY=(float)(sqrt(2.0*dt*Kyy0)/Tayy0/Tvyy0*rnd.nextGaussian());
+		float daccX=(float)(sqrt(2.0*dt*Kxx0)/Taxx0/Tvxx0*rs.nextGaussian());
+		float daccY=(float)(sqrt(2.0*dt*Kyy0)/Tayy0/Tvyy0*rs.nextGaussian());
 		
 		float accX1=accX0*(1-dt/Taxx0)+accXCr+daccX;
 		float accY1=accY0*(1-dt/Tayy0)+accYCr+daccY;
 		float resX1=resX0+((accX0+accX1)/2f-resX0/Tvxx0)*dt+velXCr;
 		float resY1=resY0+((accY0+accY1)/2f-resY0/Tvyy0)*dt+velYCr;
 		
-		return new float[]{resX1,resY1,accX1,accY1};
+		re[0]=resX1;	re[1]=resY1;	re[2]=accX1;	re[3]=accY1;
+		
+		return true;
 	}
 	
-	protected float[] spinupRandom(Record init,int iter){
+	protected float[] spinupRandom(Record init,int iter,RandomStream rs){
 		StochasticParams sp=func.apply(init); validateOrder(sp);
 		
 		float Kxx =sp.getDiff(1,1),Kyy =sp.getDiff(2,2);
@@ -158,8 +162,8 @@ public final class LSM2nd extends StochasticModel{
 		float resX0=0;
 		float resY0=0;
 		
-		float accX1=(float)(accX0-accX0/Taxx*dt+coX*rnd.nextGaussian());
-		float accY1=(float)(accY0-accY0/Tayy*dt+coY*rnd.nextGaussian());
+		float accX1=(float)(accX0-accX0/Taxx*dt+coX*rs.nextGaussian());
+		float accY1=(float)(accY0-accY0/Tayy*dt+coY*rs.nextGaussian());
 		float resX1=(float)(resX0+((accX0+accX1)/2f-resX0/Tvxx)*dt+vCX);
 		float resY1=(float)(resY0+((accY0+accY1)/2f-resY0/Tvyy)*dt+vCY);
 		
@@ -167,8 +171,8 @@ public final class LSM2nd extends StochasticModel{
 			accX0=accX1;	accY0=accY1;
 			resX0=resX1;	resY0=resY1;
 			
-			accX1=(float)(accX0-accX0/Taxx*dt+coX*rnd.nextGaussian());
-			accY1=(float)(accY0-accY0/Tayy*dt+coY*rnd.nextGaussian());
+			accX1=(float)(accX0-accX0/Taxx*dt+coX*rs.nextGaussian());
+			accY1=(float)(accY0-accY0/Tayy*dt+coY*rs.nextGaussian());
 			resX1=(float)(resX0+((accX0+accX1)/2f-resX0/Tvxx)*dt+vCX);
 			resY1=(float)(resY0+((accY0+accY1)/2f-resY0/Tvyy)*dt+vCY);
 		}
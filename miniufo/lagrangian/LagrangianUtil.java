@@ -7,10 +7,7 @@
 package miniufo.lagrangian;
 
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
@@ -194,25 +191,31 @@ public final class LagrangianUtil{
 	
 	
 	/**
-	 * Write a list of Particle to binary file
+	 * Write a list of Particle to binary file in the columnar format of ParticleFile
 	 * 
 	 * @param	ls		a give list of Particle
 	 * @param	fname	file name
 	 */
-	public static void writeAsBinaryFile(List<Particle> ls,String fname){
-		try(ObjectOutputStream oos=new ObjectOutputStream(new FileOutputStream(fname))){
-			oos.writeObject(ls);
-			
-		}catch(IOException e){ e.printStackTrace(); System.exit(0);}
-	}
+	public static void writeAsBinaryFile(List<Particle> ls,String fname){ ParticleFile.write(ls,fname);}
 	
 	/**
-	 * read a list of Particle from binary file
+	 * read a list of Particle from binary file, either a columnar
+	 * ParticleFile or a file of Java serialization written previously
 	 * 
 	 * @param	fname	file name
 	 */
 	@SuppressWarnings("unchecked")
 	public static List<Particle> readFromBinaryFile(String fname){
+		if(ParticleFile.isParticleFile(fname)){
+			ParticleFile pf=new ParticleFile(fname);
+			
+			List<Particle> ls=pf.readAll();
+			
+			pf.closeFile();
+			
+			return ls;
+		}
+		
 		try(ObjectInputStream oos=new ObjectInputStream(new FileInputStream(fname))){
 			return (List<Particle>)oos.readObject();
 			
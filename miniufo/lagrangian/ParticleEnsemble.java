@@ -0,0 +1,308 @@
+/**
+ * @(#)ParticleEnsemble.java	1.0 07/02/01
+ *
+ * Copyright 2007 MiniUFO, All rights reserved.
+ * MiniUFO Studio. Use is subject to license terms.
+ */
+package miniufo.lagrangian;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import miniufo.concurrent.ConcurrentUtil;
+import miniufo.diagnosis.MDate;
+import miniufo.statistics.RandomStream;
+import miniufo.util.TicToc;
+import static java.lang.Math.cos;
+import static java.lang.Math.toDegrees;
+import static java.lang.Math.toRadians;
+import static miniufo.diagnosis.SpatialModel.REarth;
+import static miniufo.lagrangian.StochasticModel.AccX;
+import static miniufo.lagrangian.StochasticModel.AccY;
+import static miniufo.lagrangian.StochasticModel.VelX;
+import static miniufo.lagrangian.StochasticModel.VelY;
+
+
+/**
+ * An ensemble of particles advanced by a StochasticModel.
+ *
+ * The states (positions, velocities and accelerations) of all the particles
+ * are held in primitive arrays and advanced by the same RK4 scheme as that of
+ * StochasticModel.forwardRK4, but without creating Records for each stage.
+ * All the particles should be at the same time.  The particles are split
+ * into chunks that are advanced in parallel, and Records are only added to
+ * the particles every output interval.  The random numbers are drawn from the
+ * same streams as StochasticModel.simulateParticles, so the results are the
+ * same as those of simulateParticles for a given seed.
+ *
+ * @version 1.0, 02/01/2007
+ * @author  MiniUFO
+ * @since   MDK1.0
+ */
+public final class ParticleEnsemble{
+	//
+	private int count=0;	// number of particles
+	
+	private long time=0;	// current time of all the particles
+	
+	private float[] xpos=null;
+	private float[] ypos=null;
+	private float[] velX=null;	// mean plus residual velocities
+	private float[] velY=null;
+	private float[] accX=null;
+	private float[] accY=null;
+	
+	private boolean[] alive=null;
+	
+	private List<Particle> ps=null;
+	
+	private StochasticModel sm=null;
+	
+	
+	/**
+     * constructor
+     *
+     * @param	sm	a stochastic model
+     * @param	ps	a list of particles whose last records are taken as the initial states
+     */
+	public ParticleEnsemble(StochasticModel sm,List<Particle> ps){
+		this.sm=sm;	this.ps=ps;	count=ps.size();
+		
+		xpos=new float[count];	velX=new float[count];	accX=new float[count];
+		ypos=new float[count];	velY=new float[count];	accY=new float[count];
+		
+		alive=new boolean[count];
+		
+		boolean first=true;
+		
+		for(int i=0;i<count;i++){
+			Particle p=ps.get(i);
+			
+			if(p.isFinished()||p.getTCount()==0) continue;
+			
+			Record r=p.getRecord(p.getTCount()-1);
+			
+			if(r.getDataLength()<4)
+			throw new IllegalArgumentException("velocities and accelerations are not attached to particle "+p.getID());
+			
+			if(first){ time=r.getTime(); first=false;}
+			else if(r.getTime()!=time)
+			throw new IllegalArgumentException("particle "+p.getID()+" is not at the same time as the others");
+			
+			xpos[i]=r.getXPos();	velX[i]=r.getData(VelX);	accX[i]=r.getData(AccX);
+			ypos[i]=r.getYPos();	velY[i]=r.getData(VelY);	accY[i]=r.getData(AccY);
+			
+			alive[i]=true;
+		}
+	}
+	
+	
+	/*** getor and setor ***/
+	public int getCount(){ return count;}
+	
+	public int getAliveCount(){
+		int cnt=0;
+		
+		for(int i=0;i<count;i++) if(alive[i]) cnt++;
+		
+		return cnt;
+	}
+	
+	public long getTime(){ return time;}
+	
+	
+	/**
+	 * simulate the ensemble, same as StochasticModel.simulateParticles
+	 * except that the records are added every outInterval steps
+	 *
+	 * @param	u			u name defined in DataDescriptor
+	 * @param	v			v name defined in DataDescriptor
+	 * @param 	intLen		length of integration (steps)
+	 * @param	outInterval	interval (steps) of adding records to the particles
+	 */
+	public void simulate(String u,String v,int intLen,int outInterval){
+		if(intLen<1) throw new IllegalArgumentException("steps should be positive");
+		if(outInterval<1) throw new IllegalArgumentException("output interval should be positive");
+		
+		TicToc.tic("start tracking an ensemble of "+count+" particles");
+		
+		if(sm.constMean) sm.setVelocityBuffer(u,v,sm.gdf.getBufferTLevel());
+		else sm.setVelocityBuffer(u,v,1);
+		
+		long[][] tims=new long[sm.dtRatio][3];	// start, middle and end times of each dt
+		
+		for(int l=1;l<intLen;l++){
+			MDate md=new MDate(time);
+			
+			for(int m=0;m<sm.dtRatio;m++){
+				tims[m][0]=md.getLongTime();
+				tims[m][1]=md.addSeconds(Math.round(sm.dt/2f)).getLongTime();
+				
+				md=md.addSeconds(Math.round(sm.dt));
+				
+				tims[m][2]=md.getLongTime();
+			}
+			
+			ConcurrentUtil.parallelFor(count,256,(s,e)->{
+				Workspace ws=new Workspace();
+				
+				for(int i=s;i<e;i++) if(alive[i]){
+					ws.rs.reset(sm.seed,i,time);	// same as StochasticModel.forwardDeltaT
+					
+					for(int m=0;m<sm.dtRatio;m++) if(!forwardDT(i,tims[m][0],tims[m][1],tims[m][2],ws)){ alive[i]=false; break;}
+				}
+			});
+			
+			time=tims[sm.dtRatio-1][2];
+			
+			if(!sm.constMean&&l+1<intLen){
+				sm.ubuf=sm.gdf.slideXYTBuffer(sm.ubuf,l+1);
+				sm.vbuf=sm.gdf.slideXYTBuffer(sm.vbuf,l+1);
+			}
+			
+			if(l%outInterval==0||l==intLen-1) addRecords();
+		}
+		
+		TicToc.toc(TimeUnit.MINUTES);
+	}
+	
+	
+	/*** helper methods and classes ***/
+	
+	/**
+	 * add the current states to the particles as new records
+	 * and finish the particles that are no longer alive
+	 */
+	private void addRecords(){
+		for(int i=0;i<count;i++){
+			Particle p=ps.get(i);
+			
+			if(p.isFinished()) continue;
+			
+			if(!alive[i]){ p.finish(); continue;}
+			
+			Record r=new Record(p.getRecord(p.getTCount()-1));
+			
+			r.setTime(time);
+			r.setXPos(xpos[i]);	r.setData(VelX,velX[i]);	r.setData(AccX,accX[i]);
+			r.setYPos(ypos[i]);	r.setData(VelY,velY[i]);	r.setData(AccY,accY[i]);
+			
+			p.addRecord(r);
+		}
+	}
+	
+	/**
+	 * integrate the i-th particle forward over dt, see LSM0th/1st/2nd.forwardRK4
+	 *
+	 * @param	i		index of the particle
+	 * @param	tim0	start time
+	 * @param	timh	middle time
+	 * @param	tim1	end time
+	 * @param	ws		workspace of the current thread
+	 *
+	 * @return	false if the particle is no longer valid
+	 */
+	private boolean forwardDT(int i,long tim0,long timh,long tim1,Workspace ws){
+		float dt=sm.dt;
+		float lon0=xpos[i],lat0=ypos[i];
+		
+		float[] vel=ws.vel;
+		float[] bcs=ws.bcs;
+		float[] rnd=ws.rnd;
+		
+		//// compute background mean flow using 4th-order Runge-Kutta method ////
+		if(!sm.fetchVelocity(tim0,lon0,lat0,vel)) return false;
+		
+		float velXk1=vel[0];
+		float velYk1=vel[1];
+		
+		if(!forwardByMean(lon0,lat0,velXk1,velYk1,dt/2f,timh,ws)) return false;
+		
+		float velXk2=vel[0];
+		float velYk2=vel[1];
+		
+		if(!forwardByMean(lon0,lat0,velXk2,velYk2,dt/2f,timh,ws)) return false;
+		
+		float velXk3=vel[0];
+		float velYk3=vel[1];
+		
+		if(!forwardByMean(lon0,lat0,velXk3,velYk3,dt,tim1,ws)) return false;
+		
+		float velXk4=vel[0];
+		float velYk4=vel[1];
+		
+		float velXRK4=(velXk1+2*velXk2+2*velXk3+velXk4)/6;
+		float velYRK4=(velYk1+2*velYk2+2*velYk3+velYk4)/6;
+		
+		//// compute estimated position using mean background and previous random velocity ////
+		float resX0=velX[i]-velXk1;
+		float resY0=velY[i]-velYk1;
+		
+		if(!forwardByAll(lon0,lat0,velXRK4+resX0,velYRK4+resY0,resX0,resY0,accX[i],accY[i],dt,ws)) return false;
+		
+		ws.init.setTime(tim0);	ws.init.setXPos(lon0);		ws.init.setYPos(lat0);
+		ws.esti.setTime(tim0);	ws.esti.setXPos(bcs[0]);	ws.esti.setYPos(bcs[1]);
+		
+		float[] di=ws.init.getData(),de=ws.esti.getData();
+		
+		di[VelX.index]=de[VelX.index]=velX[i];	di[AccX.index]=de[AccX.index]=accX[i];
+		di[VelY.index]=de[VelY.index]=velY[i];	di[AccY.index]=de[AccY.index]=accY[i];
+		
+		//// compute final position using mean background and averaged random velocity ////
+		if(!(sm.getOrder()==0?sm.getRandom(ws.esti,null,rnd,ws.rs):sm.getRandom(ws.init,ws.esti,rnd,ws.rs))) return false;
+		
+		float aX=sm.getOrder()>1?rnd[2]:accX[i];
+		float aY=sm.getOrder()>1?rnd[3]:accY[i];
+		
+		if(!forwardByAll(lon0,lat0,velXRK4+rnd[0],velYRK4+rnd[1],rnd[0],rnd[1],aX,aY,dt,ws)) return false;
+		
+		if(!sm.fetchVelocity(tim1,bcs[0],bcs[1],vel)) return false;
+		
+		xpos[i]=bcs[0];	velX[i]=vel[0]+bcs[2];	accX[i]=bcs[4];
+		ypos[i]=bcs[1];	velY[i]=vel[1]+bcs[3];	accY[i]=bcs[5];
+		
+		return true;
+	}
+	
+	/**
+	 * move from (lon0, lat0) with the mean velocity over dt,
+	 * the new position is in ws.bcs and the new mean velocity in ws.vel
+	 */
+	private boolean forwardByMean(float lon0,float lat0,float velm0,float velm1,float dt,long tim1,Workspace ws){
+		if(!forwardByAll(lon0,lat0,velm0,velm1,0,0,0,0,dt,ws)) return false;
+		
+		return sm.fetchVelocity(tim1,ws.bcs[0],ws.bcs[1],ws.vel);
+	}
+	
+	/**
+	 * move from (lon0, lat0) with the given velocity over dt,
+	 * the new position and checked residual velocity and acceleration are in ws.bcs
+	 */
+	private boolean forwardByAll(float lon0,float lat0,float vX,float vY,float resX,float resY,float aX,float aY,float dt,Workspace ws){
+		float dlon=(float)toDegrees(vX*dt/(REarth*cos(toRadians(lat0))));
+		float dlat=(float)toDegrees(vY*dt/REarth);
+		
+		float[] bcs=ws.bcs;
+		
+		bcs[0]=lon0+dlon;	bcs[1]=lat0+dlat;
+		bcs[2]=resX;		bcs[3]=resY;
+		bcs[4]=aX;			bcs[5]=aY;
+		
+		return sm.processBCs(bcs);
+	}
+	
+	
+	/**
+	 * arrays and records reused by a thread for all its particles
+	 */
+	private static final class Workspace{
+		//
+		private float[] vel=new float[2];
+		private float[] bcs=new float[6];
+		private float[] rnd=new float[4];
+		
+		private Record init=new Record(0,0,0,4);
+		private Record esti=new Record(0,0,0,4);
+		
+		private RandomStream rs=new RandomStream(0);
+	}
+}
@@ -0,0 +1,377 @@
+/**
+ * @(#)ParticleFile.java	1.0 07/02/01
+ *
+ * Copyright 2007 MiniUFO, All rights reserved.
+ * MiniUFO Studio. Use is subject to license terms.
+ */
+package miniufo.lagrangian;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+
+/**
+ * Columnar binary file of a list of Particles.
+ *
+ * The records of each particle are stored as columns, i.e., times (long),
+ * cycle numbers (int), x-positions, y-positions and then each of the attached
+ * data (float).  An index of the particles (id, offset, record count and
+ * attached meta) is written after all the columns, followed by the offset of
+ * the index as the last 8 bytes of the file.  A particle can be read from the
+ * file independently so the whole list is not necessarily loaded into memory.
+ * The columns are mapped once in a few large windows when the file is opened,
+ * instead of one mapping per particle.
+ *
+ * Only the states of Particle are stored so that the subclasses (e.g., Typhoon)
+ * are read back as Particles.
+ *
+ * @version 1.0, 02/01/2007
+ * @author  MiniUFO
+ * @since   MDK1.0
+ */
+public final class ParticleFile{
+	//
+	private int count=0;	// number of particles
+	
+	private int[] tcount=null;	// number of records of each particle
+	private int[] dcount=null;	// length of attached data of each particle
+	
+	private long[] offset=null;	// offset of the columns of each particle
+	
+	private boolean[] llpos   =null;
+	private boolean[] finished=null;
+	
+	private String[] ids=null;
+	
+	private AttachedMeta[][] meta=null;
+	
+	private int[]  window  =null;	// index of the mapped window containing the columns of each particle
+	private long[] winStart=null;	// file offset of each mapped window
+	
+	private MappedByteBuffer[] windows=null;	// columns mapped once in windows when the file is opened
+	
+	private FileChannel      fc=null;
+	private RandomAccessFile raf=null;
+	
+	private static final int  MAGIC  =0x4D505446;	// "MPTF"
+	private static final int  VERSION=1;
+	private static final long WINDOW =1L<<30;		// maximum size of a mapped window unless a single particle is larger
+	
+	
+	/**
+     * constructor
+     *
+     * @param	fname	file name
+     */
+	public ParticleFile(String fname){
+		try{
+			raf=new RandomAccessFile(fname,"r");
+			fc =raf.getChannel();
+			
+			long length=raf.length();
+			
+			if(length<16||raf.readInt()!=MAGIC) throw new IllegalArgumentException("not a particle file: "+fname);
+			
+			int version=raf.readInt();
+			
+			if(version!=VERSION) throw new IllegalArgumentException("unsupported version: "+version);
+			
+			raf.seek(length-8);
+			
+			long idxOffset=raf.readLong();
+			
+			MappedByteBuffer buf=fc.map(MapMode.READ_ONLY,idxOffset,length-8-idxOffset);
+			
+			count=buf.getInt();
+			
+			tcount=new int[count];	dcount=new int[count];	offset=new long[count];
+			llpos =new boolean[count];	finished=new boolean[count];
+			ids   =new String[count];	meta=new AttachedMeta[count][];
+			
+			for(int p=0;p<count;p++){
+				ids[p]=getString(buf);
+				
+				offset[p]=buf.getLong();
+				tcount[p]=buf.getInt();
+				dcount[p]=buf.getInt();
+				
+				llpos[p]   =buf.get()!=0;
+				finished[p]=buf.get()!=0;
+				
+				meta[p]=new AttachedMeta[buf.getInt()];
+				
+				for(int m=0,M=meta[p].length;m<M;m++){
+					int index=buf.getInt();
+					String name=getString(buf);
+					
+					if(index!=-1) meta[p][m]=new AttachedMeta(name,index);
+				}
+			}
+			
+			mapColumns();
+		
+		}catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+	}
+	
+	
+	/*** getor and setor ***/
+	public int getCount(){ return count;}
+	
+	public int getTCount(int p){ return tcount[p];}
+	
+	public String getID(int p){ return ids[p];}
+	
+	
+	/**
+     * read a single particle from the file
+     *
+     * @param	p	index of the particle in the file
+     */
+	public Particle getParticle(int p){
+		int T=tcount[p],D=dcount[p];
+		
+		Particle pt=new Particle(ids[p],Math.max(T,1),meta[p].length,llpos[p]);
+		pt.setAttachedMeta(meta[p]);
+		
+		if(finished[p]) pt.finish();
+		
+		if(T==0) return pt;
+		
+		ByteBuffer buf=columns(p);
+		
+		Record[] rs=new Record[T];
+		
+		for(int l=0;l<T;l++) rs[l]=new Record(buf.getLong(),0,0,D);
+		for(int l=0;l<T;l++) rs[l].setCycleNum(buf.getInt());
+		for(int l=0;l<T;l++) rs[l].setXPos(buf.getFloat());
+		for(int l=0;l<T;l++) rs[l].setYPos(buf.getFloat());
+		
+		for(int d=0;d<D;d++)
+		for(int l=0;l<T;l++) rs[l].getData()[d]=buf.getFloat();
+		
+		for(Record r:rs) pt.addRecord(r);
+		
+		return pt;
+	}
+	
+	/**
+     * read a column of attached data of a single particle without building the records
+     *
+     * @param	p		index of the particle in the file
+     * @param	meta	meta of the attached data
+     */
+	public float[] getAttachedData(int p,AttachedMeta meta){
+		int T=tcount[p],D=dcount[p];
+		
+		if(meta.index<0||meta.index>=D) throw new IllegalArgumentException("invalid attached index: "+meta.index);
+		
+		float[] re=new float[T];
+		
+		if(T==0) return re;
+		
+		ByteBuffer buf=columns(p);
+		
+		buf.position(buf.position()+T*(20+4*meta.index));
+		buf.asFloatBuffer().get(re);
+		
+		return re;
+	}
+	
+	/**
+     * stream the particles in the order of the file, one particle is read at a time
+     */
+	public Stream<Particle> stream(){ return IntStream.range(0,count).mapToObj(this::getParticle);}
+	
+	/**
+     * read all the particles in the file
+     */
+	public List<Particle> readAll(){
+		List<Particle> ls=new ArrayList<>(count);
+		
+		for(int p=0;p<count;p++) ls.add(getParticle(p));
+		
+		return ls;
+	}
+	
+	
+	/**
+	 * close file method
+     */
+	public void closeFile(){
+		try{ if(raf!=null){ fc.close();	raf.close();}}
+		catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+		
+		raf=null;	fc=null;	windows=null;
+	}
+	
+	
+	/**
+     * write a list of particles to a columnar file
+     *
+     * @param	ls		a list of particles
+     * @param	fname	file name
+     */
+	public static void write(List<? extends Particle> ls,String fname){
+		try(DataOutputStream dos=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname),1<<20))){
+			long pos=8;	// DataOutputStream.size() saturates at 2 GB
+			
+			long[] offset=new long[ls.size()];
+			int [] dcount=new int [ls.size()];
+			
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			
+			for(int p=0,P=ls.size();p<P;p++){
+				Particle pt=ls.get(p);
+				
+				int T=pt.getTCount(),D=T==0?0:pt.getRecord(0).getDataLength();
+				
+				for(int l=1;l<T;l++) if(pt.getRecord(l).getDataLength()!=D)
+				throw new IllegalArgumentException("lengths of attached data are not the same for particle "+pt.getID());
+				
+				offset[p]=pos;	dcount[p]=D;	pos+=columnLength(T,D);
+				
+				for(int l=0;l<T;l++) dos.writeLong (pt.getRecord(l).getTime());
+				for(int l=0;l<T;l++) dos.writeInt  (pt.getRecord(l).getCycleNum());
+				for(int l=0;l<T;l++) dos.writeFloat(pt.getRecord(l).getXPos());
+				for(int l=0;l<T;l++) dos.writeFloat(pt.getRecord(l).getYPos());
+				
+				for(int d=0;d<D;d++)
+				for(int l=0;l<T;l++) dos.writeFloat(pt.getRecord(l).getData()[d]);
+			}
+			
+			// index of the particles
+			dos.writeInt(ls.size());
+			
+			for(int p=0,P=ls.size();p<P;p++){
+				Particle pt=ls.get(p);
+				
+				putString(dos,pt.getID());
+				
+				dos.writeLong(offset[p]);
+				dos.writeInt(pt.getTCount());
+				dos.writeInt(dcount[p]);
+				
+				dos.writeByte(pt.isLatLonPosition()?1:0);
+				dos.writeByte(pt.isFinished()?1:0);
+				
+				AttachedMeta[] ms=pt.getAttachedMeta();
+				
+				dos.writeInt(ms.length);
+				
+				for(AttachedMeta m:ms){
+					dos.writeInt(m==null?-1:m.index);
+					putString(dos,m==null?null:m.name);
+				}
+			}
+			
+			dos.writeLong(pos);
+		
+		}catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+	}
+	
+	/**
+     * whether a file is a columnar particle file
+     *
+     * @param	fname	file name
+     */
+	public static boolean isParticleFile(String fname){
+		try(DataInputStream dis=new DataInputStream(new FileInputStream(fname))){
+			return dis.readInt()==MAGIC;
+		
+		}catch(IOException ex){ return false;}
+	}
+	
+	
+	/*** helper methods ***/
+	
+	/**
+	 * Map the columns of all the particles once in windows of at most WINDOW bytes.
+	 * The columns of a particle are never split between two windows.
+	 */
+	private void mapColumns() throws IOException{
+		List<MappedByteBuffer> ws=new ArrayList<>();
+		List<Long>            str=new ArrayList<>();
+		
+		window=new int[count];
+		
+		long start=0,end=0;
+		
+		for(int p=0;p<count;p++){
+			long len=columnLength(tcount[p],dcount[p]);
+			
+			if(len>Integer.MAX_VALUE)
+			throw new IllegalArgumentException("columns of particle "+ids[p]+" are too large to be mapped");
+			
+			if(str.isEmpty()||offset[p]<start||offset[p]+len-start>WINDOW){
+				if(!str.isEmpty()) ws.add(fc.map(MapMode.READ_ONLY,start,end-start));
+				
+				start=end=offset[p];	str.add(start);
+			}
+			
+			window[p]=str.size()-1;	end=Math.max(end,offset[p]+len);
+		}
+		
+		if(!str.isEmpty()) ws.add(fc.map(MapMode.READ_ONLY,start,end-start));
+		
+		windows =ws.toArray(new MappedByteBuffer[ws.size()]);
+		winStart=new long[str.size()];
+		
+		for(int w=0,W=winStart.length;w<W;w++) winStart[w]=str.get(w);
+	}
+	
+	/**
+	 * a view positioned at the columns of a particle, so that
+	 * particles can be read concurrently
+	 *
+	 * @param	p	index of the particle in the file
+	 */
+	private ByteBuffer columns(int p){
+		if(windows==null) throw new IllegalStateException("file has been closed");
+		
+		int w=window[p];
+		
+		ByteBuffer buf=windows[w].duplicate();
+		
+		buf.position((int)(offset[p]-winStart[w]));
+		
+		return buf;
+	}
+	
+	private static long columnLength(int tcount,int dcount){ return tcount*(20L+4L*dcount);}
+	
+	private static String getString(ByteBuffer buf){
+		int len=buf.getInt();
+		
+		if(len==-1) return null;
+		
+		byte[] bs=new byte[len];
+		
+		buf.get(bs);
+		
+		return new String(bs,StandardCharsets.UTF_8);
+	}
+	
+	private static void putString(DataOutputStream dos,String s) throws IOException{
+		if(s==null){ dos.writeInt(-1); return;}
+		
+		byte[] bs=s.getBytes(StandardCharsets.UTF_8);
+		
+		dos.writeInt(bs.length);
+		dos.write(bs);
+	}
+}
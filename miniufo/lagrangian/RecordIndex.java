@@ -0,0 +1,313 @@
+/**
+ * @(#)RecordIndex.java	1.0 07/02/01
+ *
+ * Copyright 2007 MiniUFO, All rights reserved.
+ * MiniUFO Studio. Use is subject to license terms.
+ */
+package miniufo.lagrangian;
+
+import java.util.Arrays;
+import java.util.List;
+import miniufo.diagnosis.SpatialModel;
+import miniufo.util.Region2D;
+
+
+/**
+ * Spatial index of the Record positions of a list of Particles.
+ *
+ * Records are put into uniform buckets of the x-y plane so that a box or
+ * radius query only tests the records in the buckets it overlaps.  A record
+ * is identified by its id, the serial number of the record when the records
+ * of all the particles are concatenated in the order of the list.  Ids
+ * returned by the queries are in ascending order, i.e., the same order as
+ * looping over the particles and then over the records of each particle.
+ *
+ * @version 1.0, 02/01/2007
+ * @author  MiniUFO
+ * @since   MDK1.0
+ */
+public final class RecordIndex{
+	//
+	private int xcount=0;	// buckets in x-direction
+	private int ycount=0;	// buckets in y-direction
+	
+	private boolean periodicX=false;	// x-direction is periodic with a period of 360 degrees
+	
+	private float xmin=0;
+	private float ymin=0;
+	private float xmax=0;
+	private float ymax=0;
+	private float cellSize=0;	// size of a bucket
+	
+	private int[] offset=null;	// id of the first record of each particle
+	private int[] head  =null;	// start of each bucket in ids
+	private int[] ids   =null;	// ids of records in bucket order
+	
+	private float[] xs=null;	// x-positions in bucket order
+	private float[] ys=null;	// y-positions in bucket order
+	
+	private List<? extends Particle> ls=null;
+	
+	
+	/**
+	 * constructor
+	 *
+	 * @param	ls			a list of particles
+	 * @param	cellSize	size of a bucket, in the unit of the positions
+	 * @param	periodicX	whether x-direction is periodic (360 degrees)
+	 */
+	public RecordIndex(List<? extends Particle> ls,float cellSize,boolean periodicX){ this(ls,cellSize,periodicX,null);}
+	
+	/**
+	 * constructor
+	 *
+	 * @param	ls			a list of particles
+	 * @param	cellSize	size of a bucket, in the unit of the positions
+	 * @param	periodicX	whether x-direction is periodic (360 degrees)
+	 * @param	ypos		attached data taken as y-position, null for the y-position of a record
+	 */
+	public RecordIndex(List<? extends Particle> ls,float cellSize,boolean periodicX,AttachedMeta ypos){
+		if(cellSize<=0) throw new IllegalArgumentException("cell size should be positive");
+		
+		this.ls=ls;	this.cellSize=cellSize;	this.periodicX=periodicX;
+		
+		offset=new int[ls.size()+1];
+		
+		for(int p=0,P=ls.size();p<P;p++) offset[p+1]=offset[p]+ls.get(p).getTCount();
+		
+		int N=offset[ls.size()];
+		
+		float[] x=new float[N];
+		float[] y=new float[N];
+		
+		xmin=Float.MAX_VALUE;	xmax=-Float.MAX_VALUE;
+		ymin=Float.MAX_VALUE;	ymax=-Float.MAX_VALUE;
+		
+		for(int p=0,P=ls.size();p<P;p++){
+			Particle pt=ls.get(p);
+			
+			for(int l=0,L=pt.getTCount(),id=offset[p];l<L;l++,id++){
+				Record r=pt.getRecord(l);
+				
+				x[id]=r.getXPos();
+				y[id]=ypos==null?r.getYPos():r.getData(ypos);
+				
+				if(!valid(x[id],y[id])) continue;
+				
+				if(x[id]<xmin) xmin=x[id];	if(x[id]>xmax) xmax=x[id];
+				if(y[id]<ymin) ymin=y[id];	if(y[id]>ymax) ymax=y[id];
+			}
+		}
+		
+		if(xmin>xmax){ xmin=xmax=ymin=ymax=0;}
+		
+		xcount=(int)((xmax-xmin)/cellSize)+1;
+		ycount=(int)((ymax-ymin)/cellSize)+1;
+		
+		head=new int[xcount*ycount+1];
+		
+		for(int id=0;id<N;id++) if(valid(x[id],y[id])) head[bucket(x[id],y[id])+1]++;
+		
+		for(int b=0,B=xcount*ycount;b<B;b++) head[b+1]+=head[b];
+		
+		int[] fill=Arrays.copyOf(head,head.length-1);
+		
+		ids=new int[head[head.length-1]];
+		xs =new float[ids.length];
+		ys =new float[ids.length];
+		
+		// ids are added in ascending order so that each bucket is sorted
+		for(int id=0;id<N;id++) if(valid(x[id],y[id])){
+			int n=fill[bucket(x[id],y[id])]++;
+			
+			ids[n]=id;	xs[n]=x[id];	ys[n]=y[id];
+		}
+	}
+	
+	
+	/*** getor and setor ***/
+	public int size(){ return ids.length;}
+	
+	public int getParticleIndex(int id){
+		int p=Arrays.binarySearch(offset,id);
+		
+		if(p<0) return -p-2;
+		
+		// skip particles without any record
+		while(offset[p+1]==id) p++;
+		
+		return p;
+	}
+	
+	public int getRecordIndex(int id){ return id-offset[getParticleIndex(id)];}
+	
+	public Particle getParticle(int id){ return ls.get(getParticleIndex(id));}
+	
+	public Record getRecord(int id){
+		int p=getParticleIndex(id);
+		
+		return ls.get(p).getRecord(id-offset[p]);
+	}
+	
+	
+	/**
+	 * query the records within a box, including the bounds
+	 *
+	 * @param	xmin	west  bound
+	 * @param	ymin	south bound
+	 * @param	xmax	east  bound
+	 * @param	ymax	north bound
+	 *
+	 * @return	re		ids of the records in ascending order
+	 */
+	public int[] queryBox(float xmin,float ymin,float xmax,float ymax){
+		IntBuffer buf=new IntBuffer();
+		
+		for(float shift:shifts()){
+			if(xmax-shift<this.xmin||xmin-shift>this.xmax||ymax<this.ymin||ymin>this.ymax) continue;
+			
+			int i1=xBucket(xmin-shift),i2=xBucket(xmax-shift);
+			int j1=yBucket(ymin      ),j2=yBucket(ymax      );
+			
+			for(int j=j1;j<=j2;j++)
+			for(int i=i1;i<=i2;i++)
+			for(int n=head[j*xcount+i],N=head[j*xcount+i+1];n<N;n++){
+				float x=xs[n]+shift,y=ys[n];
+				
+				if(x>=xmin&&x<=xmax&&y>=ymin&&y<=ymax) buf.add(ids[n]);
+			}
+		}
+		
+		return buf.sorted();
+	}
+	
+	public int[] queryBox(Region2D region){
+		return queryBox(region.getXMin(),region.getYMin(),region.getXMax(),region.getYMax());
+	}
+	
+	/**
+	 * query the records within a spherical distance, the positions should be in degrees
+	 *
+	 * @param	lon		longitude of the center (degree)
+	 * @param	lat		latitude  of the center (degree)
+	 * @param	radius	radius (m)
+	 *
+	 * @return	re		ids of the records in ascending order
+	 */
+	public int[] queryRadius(float lon,float lat,float radius){
+		float dlat=(float)Math.toDegrees(radius/SpatialModel.REarth);
+		float dlon=360;
+		
+		double maxLat=Math.abs(lat)+dlat;
+		
+		if(maxLat<90) dlon=(float)Math.min(360,dlat/Math.cos(Math.toRadians(maxLat)));
+		
+		IntBuffer buf=new IntBuffer();
+		
+		// spherical distance is periodic in longitude whether or not the index is
+		for(float shift:new float[]{0,-360,360}){
+			if(lon+dlon-shift<xmin||lon-dlon-shift>xmax||lat+dlat<ymin||lat-dlat>ymax) continue;
+			
+			int i1=xBucket(lon-dlon-shift),i2=xBucket(lon+dlon-shift);
+			int j1=yBucket(lat-dlat      ),j2=yBucket(lat+dlat      );
+			
+			for(int j=j1;j<=j2;j++)
+			for(int i=i1;i<=i2;i++)
+			for(int n=head[j*xcount+i],N=head[j*xcount+i+1];n<N;n++)
+			if(SpatialModel.cSphericalDistanceByDegree(lon,lat,xs[n],ys[n])<=radius) buf.add(ids[n]);
+		}
+		
+		return buf.sorted();
+	}
+	
+	
+	/*** helper methods and classes ***/
+	private boolean valid(float x,float y){
+		return x!=Record.undef&&y!=Record.undef&&!Float.isNaN(x)&&!Float.isNaN(y);
+	}
+	
+	private int bucket(float x,float y){
+		int i=Math.min(xcount-1,(int)((x-xmin)/cellSize));
+		int j=Math.min(ycount-1,(int)((y-ymin)/cellSize));
+		
+		return j*xcount+i;
+	}
+	
+	/**
+	 * bucket index of a bound, clamped to the buckets
+	 */
+	private int xBucket(float x){
+		if(x<xmin) return 0;
+		if(x>xmax) return xcount-1;
+		
+		return Math.min(xcount-1,(int)((x-xmin)/cellSize));
+	}
+	
+	private int yBucket(float y){
+		if(y<ymin) return 0;
+		if(y>ymax) return ycount-1;
+		
+		return Math.min(ycount-1,(int)((y-ymin)/cellSize));
+	}
+	
+	private float[] shifts(){ return periodicX?new float[]{0,-360,360}:new float[]{0};}
+	
+	
+	/**
+	 * Growable array of ids that removes the duplicates when sorted.
+	 */
+	private static final class IntBuffer{
+		//
+		private int size=0;
+		
+		private int[] data=new int[64];
+		
+		void add(int id){
+			if(size==data.length) data=Arrays.copyOf(data,size*2);
+			
+			data[size++]=id;
+		}
+		
+		int[] sorted(){
+			Arrays.sort(data,0,size);
+			
+			int n=0;
+			
+			for(int i=0;i<size;i++) if(n==0||data[i]!=data[n-1]) data[n++]=data[i];
+			
+			return Arrays.copyOf(data,n);
+		}
+	}
+	
+	
+	/** test
+	public static void main(String[] args){
+		java.util.Random rnd=new java.util.Random(1);
+		
+		List<Particle> ls=new java.util.ArrayList<>();
+		
+		for(int p=0;p<200;p++){
+			Particle pt=new Particle(""+p,0);
+			
+			for(int l=0;l<100;l++) pt.addRecord(new Record(l,rnd.nextFloat()*360,40+rnd.nextFloat()*50));
+			
+			ls.add(pt);
+		}
+		
+		RecordIndex ri=new RecordIndex(ls,2,true);
+		
+		// brute force near the dateline at high latitudes
+		for(float lon:new float[]{1,359,180}){
+			float lat=71,radius=(float)Math.toRadians(15)*SpatialModel.REarth;
+			
+			int cnt=0;
+			
+			for(Particle pt:ls) for(int l=0;l<pt.getTCount();l++){
+				Record r=pt.getRecord(l);
+				if(SpatialModel.cSphericalDistanceByDegree(lon,lat,r.getXPos(),r.getYPos())<=radius) cnt++;
+			}
+			
+			System.out.println(lon+"\t"+ri.queryRadius(lon,lat,radius).length+"\t"+cnt);
+		}
+	}*/
+}
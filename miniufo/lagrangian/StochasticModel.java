@@ -8,7 +8,6 @@ package miniufo.lagrangian;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
@@ -19,6 +18,7 @@ import miniufo.descriptor.CsmDescriptor;
 import miniufo.descriptor.DataDescriptor;
 import miniufo.diagnosis.MDate;
 import miniufo.diagnosis.Variable;
+import miniufo.statistics.RandomStream;
 import miniufo.util.GridDataFetcher;
 import miniufo.util.Region2D;
 import miniufo.util.TicToc;
@@ -56,7 +56,7 @@ public abstract class StochasticModel{
 	
 	protected Function<Record,StochasticParams> func=null;
 	
-	protected final Random rnd=new Random();
+	protected long seed=System.nanoTime();	// seed of the random streams
 	
 	public static final AttachedMeta VelX=new AttachedMeta("VelX",0);
 	public static final AttachedMeta VelY=new AttachedMeta("VelY",1);
@@ -100,6 +100,17 @@ public abstract class StochasticModel{
 	public abstract int getOrder();
 	
 	
+	/**
+     * set the seed of the random streams.  The random numbers of a particle over
+     * a delta-T are drawn from a stream keyed by its index in the list and its
+     * time, and that of the deployment is keyed by its id, so the results are
+     * reproducible for a given seed whatever the number of threads.
+     *
+     * @param	seed	a given seed
+     */
+	public void setSeed(long seed){ this.seed=seed;}
+	
+	
 	/**
      * set the spatially temporally variated velocity fields
      *
@@ -125,9 +136,9 @@ public abstract class StochasticModel{
      * @param	ps			a list of particles
 	 * @param	appendRec	append the record (false for updating record)
      */
-	public void integrateForward(List<Particle> ps,boolean appendRec){ for(Particle p:ps) forwardDeltaT(p,appendRec);}
+	public void integrateForward(List<Particle> ps,boolean appendRec){ integrateForward(ps,0,appendRec);}
 	
-	public void integrateForward(List<Particle> ps){ for(Particle p:ps) forwardDeltaT(p,false);}
+	public void integrateForward(List<Particle> ps){ integrateForward(ps,0,false);}
 	
 	
 	/**
@@ -165,7 +176,7 @@ public abstract class StochasticModel{
 		
 		Record init=new Record(time,lon,lat,4);
 		
-		float[] rnds=spinupRandom(init,200);
+		float[] rnds=spinupRandom(init,200,new RandomStream(seed,id.hashCode()));
 		
 		init.setData(VelX,U+rnds[0]);	// velX+resX
 		init.setData(VelY,V+rnds[1]);	// velY+resY
@@ -223,7 +234,9 @@ public abstract class StochasticModel{
 	
 	
 	/**
-	 * simulate a list of particles
+	 * simulate a list of particles.  For non-constant mean flow, the velocity
+	 * buffers of the next step are read while the particles are integrated over
+	 * the current step, and are swapped in after all the threads finish the step.
 	 * 
 	 * @param	ls			particles in a list
 	 * @param 	intLen		length of integration (steps)
@@ -232,39 +245,52 @@ public abstract class StochasticModel{
 	 */
 	public void simulateParticles(List<Particle> ls,String u,String v,int intLen,boolean appendRec,int threads){
 		if(intLen<1) throw new IllegalArgumentException("steps should be positive");
+		if(threads<1) throw new IllegalArgumentException("threads should be positive");
 		
 		TicToc.tic("start tracking "+ls.size()+" particles");
 		
+		int len=ls.size();
+		int count=len/threads;
+		int left =len%threads;
+		
+		int[] tags=new int[threads+1];
+		
+		for(int i=1;i<=left;i++) tags[i]=tags[i-1]+count+1;
+		for(int i=left+1;i<threads;i++) tags[i]=tags[i-1]+count;
+		tags[threads]=len;
+		
+		ExecutorService es=ConcurrentUtil.defaultExecutor();
+		CompletionService<Void> cs=new ExecutorCompletionService<>(es);
+		
 		if(constMean){
 			setVelocityBuffer(u,v,gdf.getBufferTLevel());
 			
-			int len=ls.size();
-			int count=len/threads;
-			int left =len%threads;
-			
-			int[] tags=new int[threads+1];
-			
-			for(int i=1;i<=left;i++) tags[i]=tags[i-1]+count+1;
-			for(int i=left+1;i<threads;i++) tags[i]=tags[i-1]+count;
-			tags[threads]=len;
-			
-			ExecutorService es=ConcurrentUtil.defaultExecutor();
-			CompletionService<Void> cs=new ExecutorCompletionService<>(es);
-			
 			for(int i=0;i<threads;i++){
 				final int ii=i;
-				cs.submit(()->{for(int l=1;l<intLen;l++) integrateForward(ls.subList(tags[ii],tags[ii+1]),appendRec);},null);
+				cs.submit(()->{for(int l=1;l<intLen;l++) integrateForward(ls.subList(tags[ii],tags[ii+1]),tags[ii],appendRec);},null);
 			}
 		    
 		    try{for(int i=0;i<threads;i++) cs.take();}
 		    catch(InterruptedException e){ e.printStackTrace(); System.exit(0);}
 			
-		}else for(int l=1;l<intLen;l++){
-			if(threads!=1)
-			throw new IllegalArgumentException("parallel computing not supported for non-constant mean");
+		}else{
+			setVelocityBuffer(u,v,1);
 			
-			setVelocityBuffer(u,v,l);
-			integrateForward(ls,appendRec);
+			for(int l=1;l<intLen;l++){
+				for(int i=0;i<threads;i++){
+					final int ii=i;
+					cs.submit(()->integrateForward(ls.subList(tags[ii],tags[ii+1]),tags[ii],appendRec),null);
+				}
+				
+				// read the next time level into new buffers while the workers are fetching the current ones
+				Variable unext=l+1<intLen?gdf.slideXYTBuffer(ubuf,l+1):null;
+				Variable vnext=l+1<intLen?gdf.slideXYTBuffer(vbuf,l+1):null;
+				
+			    try{for(int i=0;i<threads;i++) cs.take();}
+			    catch(InterruptedException e){ e.printStackTrace(); System.exit(0);}
+				
+				if(unext!=null){ ubuf=unext; vbuf=vnext;}
+			}
 		}
 		
 		TicToc.toc(TimeUnit.MINUTES);
@@ -283,19 +309,36 @@ public abstract class StochasticModel{
 	
 	/*** helper methods ***/
 	
+	/**
+	 * integrate forward over delta-T defined in DataDescriptor
+	 * 
+	 * @param	ps			a list of particles
+	 * @param	offset		index of the first particle in the whole list
+	 * @param	appendRec	append the record (false for updating record)
+	 */
+	private void integrateForward(List<Particle> ps,int offset,boolean appendRec){
+		RandomStream rs=new RandomStream(seed);
+		
+		for(int i=0,I=ps.size();i<I;i++) forwardDeltaT(ps.get(i),offset+i,appendRec,rs);
+	}
+	
 	/**
 	 * integrate forward over delta-T defined in DataDescriptor
 	 * 
 	 * @param	p			one particle
+	 * @param	idx			index of the particle, used as a key of the random stream
 	 * @param	appendRec	append the record (false for updating record)
+	 * @param	rs			random stream, reset for the particle and its current time
 	 */
-	protected void forwardDeltaT(Particle p,boolean appendRec){
+	protected void forwardDeltaT(Particle p,int idx,boolean appendRec,RandomStream rs){
 		if(p.isFinished()) return;
 		
 		Record last=p.getRecord(p.getTCount()-1);
 		
+		rs.reset(seed,idx,last.getTime());
+		
 		for(int l=0;l<dtRatio;l++){
-			Record now=forwardDT(last);
+			Record now=forwardDT(last,rs);
 			
 			// validate record
 			if(now==null){ p.finish(); break;}
@@ -314,16 +357,28 @@ public abstract class StochasticModel{
 	 * null would be return if no valid Record
 	 * 
 	 * @param	record	initial record
-	 * @param	l		time step (t-tag)
+	 * @param	rs		random stream
 	 */
-	protected Record forwardDT(Record init){ return forwardRK4(init,dt);}
+	protected Record forwardDT(Record init,RandomStream rs){ return forwardRK4(init,dt,rs);}
 	
 	
-	protected abstract Record forwardRK4(Record init,float dt);
+	protected abstract Record forwardRK4(Record init,float dt,RandomStream rs);
 	
-	protected abstract float[] getRandom(Record init,Record esti);
+	/**
+	 * random residual velocities (and accelerations) written into
+	 * re = [resX, resY, accX, accY] so that no array is allocated
+	 * 
+	 * @param	init	initial record
+	 * @param	esti	estimated record
+	 * @param	re		results
+	 * @param	rs		random stream
+	 *
+	 * @return	false if the mean velocity at the initial record is undefined
+	 * 			and re is invalid, so that the particle should be finished
+	 */
+	protected abstract boolean getRandom(Record init,Record esti,float[] re,RandomStream rs);
 	
-	protected abstract float[] spinupRandom(Record init,int iter);
+	protected abstract float[] spinupRandom(Record init,int iter,RandomStream rs);
 	
 	
 	/**
@@ -405,8 +460,23 @@ public abstract class StochasticModel{
 	}
 	
 	protected float[] processBCs(float lon,float lat,float resX,float resY,float accX,float accY){
+		float[] re=new float[]{lon,lat,resX,resY,accX,accY};
+		
+		return processBCs(re)?re:null;
+	}
+	
+	/**
+	 * process the boundary conditions in place
+	 * 
+	 * @param	s	[lon, lat, resX, resY, accX, accY]
+	 * 
+	 * @return	false if the particle is landing
+	 */
+	protected boolean processBCs(float[] s){
+		float lon=s[0],lat=s[1],resX=s[2],resY=s[3],accX=s[4],accY=s[5];
+		
 		if(!region.inXRange(lon)) switch(BCx){
-			case Landing: return null;
+			case Landing: return false;
 			case Reflected:{
 				float lonmax=region.getXMax();
 				float lonmin=region.getXMin();
@@ -432,7 +502,7 @@ public abstract class StochasticModel{
 		}
 		
 		if(!region.inYRange(lat)) switch(BCy){
-			case Landing: return null;
+			case Landing: return false;
 			case Reflected:{
 				float latmax=region.getYMax();
 				float latmin=region.getYMin();
@@ -449,33 +519,48 @@ public abstract class StochasticModel{
 			default: throw new IllegalArgumentException("unsupported BoundaryType: "+BCy);
 		}
 		
-		return new float[]{lon,lat,resX,resY,accX,accY};
+		s[0]=lon;	s[1]=lat;	s[2]=resX;	s[3]=resY;	s[4]=accX;	s[5]=accY;
+		
+		return true;
 	}
 	
 	protected float[] fetchVelocity(long tim,float lon,float lat){
+		float[] re=new float[2];
+		
+		return fetchVelocity(tim,lon,lat,re)?re:null;
+	}
+	
+	/**
+	 * fetch the mean velocity into vel = [velX, velY]
+	 * 
+	 * @return	false if the velocity is undefined
+	 */
+	protected boolean fetchVelocity(long tim,float lon,float lat,float[] vel){
 		float velX1=0,velY1=0;
 		
 		if(constMean){
 			if(BCx==BCType.Periodic){
-				velX1=gdf.fetchXYBufferPeriodicX(lon,lat,ubuf); if(velX1==undef) return null;
-				velY1=gdf.fetchXYBufferPeriodicX(lon,lat,vbuf); if(velY1==undef) return null;
+				velX1=gdf.fetchXYBufferPeriodicX(lon,lat,ubuf); if(velX1==undef) return false;
+				velY1=gdf.fetchXYBufferPeriodicX(lon,lat,vbuf); if(velY1==undef) return false;
 				
 			}else{
-				velX1=gdf.fetchXYBuffer(lon,lat,ubuf); if(velX1==undef) return null;
-				velY1=gdf.fetchXYBuffer(lon,lat,vbuf); if(velY1==undef) return null;
+				velX1=gdf.fetchXYBuffer(lon,lat,ubuf); if(velX1==undef) return false;
+				velY1=gdf.fetchXYBuffer(lon,lat,vbuf); if(velY1==undef) return false;
 			}
 		}else{
 			if(BCx==BCType.Periodic){
-				velX1=gdf.fetchXYTBufferPeriodicX(lon,lat,tim,ubuf); if(velX1==undef) return null;
-				velY1=gdf.fetchXYTBufferPeriodicX(lon,lat,tim,vbuf); if(velY1==undef) return null;
+				velX1=gdf.fetchXYTBufferPeriodicX(lon,lat,tim,ubuf); if(velX1==undef) return false;
+				velY1=gdf.fetchXYTBufferPeriodicX(lon,lat,tim,vbuf); if(velY1==undef) return false;
 				
 			}else{
-				velX1=gdf.fetchXYTBuffer(lon,lat,tim,ubuf); if(velX1==undef) return null;
-				velY1=gdf.fetchXYTBuffer(lon,lat,tim,vbuf); if(velY1==undef) return null;
+				velX1=gdf.fetchXYTBuffer(lon,lat,tim,ubuf); if(velX1==undef) return false;
+				velY1=gdf.fetchXYTBuffer(lon,lat,tim,vbuf); if(velY1==undef) return false;
 			}
 		}
 		
-		return new float[]{velX1,velY1};
+		vel[0]=velX1;	vel[1]=velY1;
+		
+		return true;
 	}
 	
 	protected void validateOrder(StochasticParams sp){
@@ -6,15 +6,21 @@
  */
 package miniufo.mathsphysics;
 
-import java.util.Arrays;
-import java.util.Random;
-import miniufo.basic.ArrayUtil;
+import miniufo.concurrent.ConcurrentUtil;
+import miniufo.diagnosis.Variable;
+import miniufo.statistics.RandomStream;
 import miniufo.statistics.StatisticsUtil;
 
 
 /**
  * Empirical model decomposition
  *
+ * The ensemble members are decomposed in parallel by decomp(float[]) and the
+ * grid points are decomposed in parallel by decomp(Variable).  The members are
+ * summed in fixed blocks which are then combined in order, and each thread
+ * reuses its own buffers of the extrema and the splines, so that the results
+ * are the same whatever the number of threads.
+ *
  * @version 1.0, 2013.06.06
  * @author  MiniUFO
  * @since   MDK1.0
@@ -28,7 +34,11 @@ public final class EEMD{
 	
 	private float Nstd=0;	// std ratio
 	
-	private float[] dd=null;	// x-coordinates
+	private long seed=System.nanoTime();	// seed of the added noise
+	
+	private RandomStream keys=new RandomStream(seed);	// keys of the decompositions without a given key
+	
+	private static final int BLOCK=4;	// number of ensemble members summed in one block
 	
 	
 	/**
@@ -46,8 +56,6 @@ public final class EEMD{
 		this.len=len;
 		this.nmode=nmode;
 		this.Nstd=Nstd;
-		
-		dd=ArrayUtil.newMonotonicArray(len,1);
 	}
 	
 	
@@ -68,9 +76,20 @@ public final class EEMD{
 		this.enMax=enMax;
 	}
 	
+	/**
+	 * set the seed of the added noise.  The noise of an ensemble member is drawn
+	 * from a stream keyed by the key of the decomposition and the index of the
+	 * member, so the results are reproducible for a given seed and key.  The keys
+	 * drawn by decomp(float[],float[][]) also restart from this seed.
+	 */
+	public synchronized void setSeed(long seed){
+		this.seed=seed;
+		this.keys=new RandomStream(seed);
+	}
+	
 	
 	/**
-	 * decomposition of a given data
+	 * decomposition of a given data, same as decomp(float[],float[][])
 	 */
 	public float[][] decomp(float[] data){
 		float[][] allm=new float[nmode+2][len];
@@ -80,143 +99,330 @@ public final class EEMD{
 		return allm;
 	}
 	
-	public void decomp(float[] data,float[][] re){
+	/**
+	 * decomposition of a given data with a new key drawn for each call, so that
+	 * repeated calls add independent noises.  The keys are drawn from a stream
+	 * of the seed, so a sequence of calls is reproducible after setSeed().
+	 * Use decomp(float[],float[][],long) to key the noise explicitly.
+	 *
+	 * @param	data	a given data
+	 * @param	re		results, [nmode+2][len]
+	 */
+	public void decomp(float[] data,float[][] re){ decomp(data,re,nextKey());}
+	
+	/**
+	 * decomposition of a given data
+	 * 
+	 * @param	data	a given data
+	 * @param	re		results, [nmode+2][len]
+	 * @param	key		key of the random streams (e.g., index of the data among others)
+	 */
+	public void decomp(float[] data,float[][] re,long key){
+		checkSizes(data,re);
+		
+		float Ystd=StatisticsUtil.cStandardDeviation(data);
+		
+		if(Ystd==0){ constant(data,re); return;}
+		
+		float[] norm=new float[len];
+		
+		for(int i=0;i<len;i++) norm[i]=data[i]/Ystd;
+		
+		int nblk=(enMax+BLOCK-1)/BLOCK;
+		
+		double[][][] sums=new double[nblk][nmode+2][len];
+		
+		ConcurrentUtil.parallelFor(nblk,1,(s,e)->{
+			Workspace ws=new Workspace(len,nmode);
+			
+			for(int b=s;b<e;b++) sumBlock(norm,key,b,ws,sums[b]);
+		});
+		
+		double[][] tot=new double[nmode+2][len];
+		
+		for(int b=0;b<nblk;b++) accumulate(tot,sums[b]);
+		
+		scale(tot,Ystd,re);
+	}
+	
+	/**
+	 * decompose a given variable along t-dimension at all the grid points in parallel,
+	 * the t-count of the variable should be the data length of this EEMD.  The series
+	 * of a grid point is keyed by its index (x varies fastest), and is filled with
+	 * undef if any of its values is undefined.
+	 *
+	 * @param	v	a given variable
+	 *
+	 * @return	re	IMFs 1 to nmode and the residual, [nmode+1]
+	 */
+	public Variable[] decomp(Variable v){
+		int t=v.getTCount(),z=v.getZCount(),y=v.getYCount(),x=v.getXCount();
+		
+		if(t!=len) throw new IllegalArgumentException("t-count of the variable ("+t+") should be "+len);
+		
+		float undef=v.getUndef();
+		
+		Variable[] re=new Variable[nmode+1];
+		
+		for(int m=0;m<nmode;m++){
+			re[m]=new Variable(v.getName()+"m"+(m+1),v);
+			re[m].setComment("IMF "+(m+1)+" of "+v.getName());
+		}
+		
+		re[nmode]=new Variable(v.getName()+"r",v);
+		re[nmode].setComment("residual of "+v.getName());
+		
+		ConcurrentUtil.parallelFor(z*y*x,Math.max(1,4096/len),(s,e)->{
+			Workspace ws=new Workspace(len,nmode);
+			
+			float[] buf=new float[len];
+			float[][] res=new float[nmode+2][len];
+			
+			for(int n=s;n<e;n++){
+				int i=n%x,j=n/x%y,k=n/x/y;
+				
+				boolean valid=true;
+				
+				for(int l=0;l<t;l++){
+					buf[l]=v.getValue(l,k,j,i);
+					
+					if(buf[l]==undef||Float.isNaN(buf[l])) valid=false;
+				}
+				
+				if(valid) decomp(buf,res,n,ws);
+				
+				for(int m=0;m<=nmode;m++)
+				for(int l=0;l<t;l++) re[m].setValue(l,k,j,i,valid?res[m+1][l]:undef);
+			}
+		});
+		
+		return re;
+	}
+	
+	
+	/*** helper methods ***/
+	
+	/**
+	 * decompose a given data by the current thread, same as decomp(float[],float[][],long)
+	 */
+	void decomp(float[] data,float[][] re,long key,Workspace ws){
+		checkSizes(data,re);
+		
+		float Ystd=StatisticsUtil.cStandardDeviation(data);
+		
+		if(Ystd==0){ constant(data,re); return;}
+		
+		float[] norm=ws.norm;
+		
+		for(int i=0;i<len;i++) norm[i]=data[i]/Ystd;
+		
+		for(int j=0,J=nmode+2;j<J;j++)
+		for(int i=0;i<len;i++) ws.tot[j][i]=0;
+		
+		for(int b=0,B=(enMax+BLOCK-1)/BLOCK;b<B;b++){
+			sumBlock(norm,key,b,ws,ws.blk);
+			accumulate(ws.tot,ws.blk);
+		}
+		
+		scale(ws.tot,Ystd,re);
+	}
+	
+	private synchronized long nextKey(){ return keys.nextLong();}
+	
+	private void checkSizes(float[] data,float[][] re){
 		if(re.length!=nmode+2||re[0].length!=len)
 		throw new IllegalArgumentException("invalid result sizes");
 		
 		if(data.length!=len)
 		throw new IllegalArgumentException("invalid length of data");
-		
-		for(int j=0,J=nmode+2;j<J;j++)
+	}
+	
+	/**
+	 * a constant data has no IMF and is the residual itself
+	 */
+	private void constant(float[] data,float[][] re){
+		for(int j=1,J=nmode+1;j<J;j++)
 		for(int i=0;i<len;i++) re[j][i]=0;
 		
-		// normalizing data
-		float Ystd=StatisticsUtil.cStandardDeviation(data);
-		for(int i=0;i<len;i++) data[i]/=Ystd;
-		
-		Random r=new Random();
+		System.arraycopy(data,0,re[0    ],0,len);
+		System.arraycopy(data,0,re[nmode+1],0,len);
+	}
+	
+	/**
+	 * sum the modes of the ensemble members of the b-th block
+	 *
+	 * @param	norm	normalized data
+	 * @param	key		key of the random streams
+	 * @param	b		index of the block
+	 * @param	ws		workspace of the current thread
+	 * @param	sum		sum of the modes (output), [nmode+2][len]
+	 */
+	private void sumBlock(float[] norm,long key,int b,Workspace ws,double[][] sum){
+		float[] R1=ws.R1;
+		float[] R2=ws.R2;
 		
-		float[] R1=new float[len];
-		float[] R2=new float[len];
+		float[][] mode=ws.mode;
 		
-		float[][] mode=new float[nmode+2][len];
+		for(int j=0,J=nmode+2;j<J;j++)
+		for(int i=0;i<len;i++) sum[j][i]=0;
 		
-		for(int m=0;m<enMax;m++){
+		for(int m=b*BLOCK,M=Math.min(enMax,m+BLOCK);m<M;m++){
+			ws.rs.reset(seed,key,m);
+			
 			// noising data
 			for(int i=0;i<len;i++){
-				float rnd=(float)r.nextGaussian()*Nstd;
-				R1[i]=data[i]+rnd;
-				R2[i]=data[i]-rnd;
+				float rnd=(float)ws.rs.nextGaussian()*Nstd;
+				R1[i]=norm[i]+rnd;
+				R2[i]=norm[i]-rnd;
 			}
 			
-			decompKernel(R1,dd,nmode,mode);
+			decompKernel(R1,ws);
 			
 			for(int j=0,J=nmode+2;j<J;j++)
-			for(int i=0;i<len;i++) re[j][i]+=mode[j][i];
+			for(int i=0;i<len;i++) sum[j][i]+=mode[j][i];
 			
-			decompKernel(R2,dd,nmode,mode);
+			decompKernel(R2,ws);
 			
 			for(int j=0,J=nmode+2;j<J;j++)
-			for(int i=0;i<len;i++) re[j][i]+=mode[j][i];
+			for(int i=0;i<len;i++) sum[j][i]+=mode[j][i];
 		}
-		
+	}
+	
+	private void accumulate(double[][] tot,double[][] blk){
 		for(int j=0,J=nmode+2;j<J;j++)
-		for(int i=0;i<len;i++) re[j][i]*=Ystd/(enMax*2);
+		for(int i=0;i<len;i++) tot[j][i]+=blk[j][i];
 	}
 	
+	private void scale(double[][] tot,float Ystd,float[][] re){
+		double s=Ystd/(enMax*2.0);
+		
+		for(int j=0,J=nmode+2;j<J;j++)
+		for(int i=0;i<len;i++) re[j][i]=(float)(tot[j][i]*s);
+	}
 	
-	/*** helper methods ***/
-	private static float[][] extremaMax(float[] data){
-		int len =data.length;
-		int cmax=1;
+	/**
+	 * find the maxima (or minima) of the data, including the extrapolated end points
+	 *
+	 * @param	data	a given data
+	 * @param	v		values of the extrema (output)
+	 * @param	idx		indices of the extrema (output)
+	 * @param	max		maxima or minima
+	 *
+	 * @return	cnt		number of the extrema
+	 */
+	private static int extrema(float[] data,float[] v,float[] idx,boolean max){
+		int len=data.length;
+		int cnt=1;
 		
-		// [0] are values and [1] are indices
-		float[][] max=new float[2][len];
+		v[0]=data[0]; idx[0]=0;
 		
-		max[0][0]=data[0]; max[1][0]=0;
+		if(max){
+			for(int i=1,I=len-1;i<I;i++)
+			if(data[i-1]<=data[i]&&data[i]>=data[i+1]){ v[cnt]=data[i]; idx[cnt]=i; cnt++;}
 		
-		for(int i=1,I=len-1;i<I;i++)
-		if(data[i-1]<=data[i]&&data[i]>=data[i+1]){
-			max[0][cmax]=data[i];
-			max[1][cmax]=i;
-			cmax++;
+		}else{
+			for(int i=1,I=len-1;i<I;i++)
+			if(data[i-1]>=data[i]&&data[i]<=data[i+1]){ v[cnt]=data[i]; idx[cnt]=i; cnt++;}
 		}
 		
-		max[0][cmax]=data[len-1]; max[1][cmax]=len-1; cmax++;
+		v[cnt]=data[len-1]; idx[cnt]=len-1; cnt++;
 		
-		if(cmax>=4){
-			float slope=(max[0][1]-max[0][2])/(max[1][1]-max[1][2]);
-			float tmp=slope*(max[1][0]-max[1][1])+max[0][1];
-			if(tmp>max[0][0]) max[0][0]=tmp;
+		if(cnt>=4){
+			float slope=(v[1]-v[2])/(idx[1]-idx[2]);
+			float tmp=slope*(idx[0]-idx[1])+v[1];
+			if(max?tmp>v[0]:tmp<v[0]) v[0]=tmp;
 			
-			slope=(max[0][cmax-2]-max[0][cmax-3])/(max[1][cmax-2]-max[1][cmax-3]);
-			tmp=slope*(max[1][cmax-1]-max[1][cmax-2])+max[0][cmax-2];
-			if(tmp>max[0][cmax-1]) max[0][cmax-1]=tmp;
+			slope=(v[cnt-2]-v[cnt-3])/(idx[cnt-2]-idx[cnt-3]);
+			tmp=slope*(idx[cnt-1]-idx[cnt-2])+v[cnt-2];
+			if(max?tmp>v[cnt-1]:tmp<v[cnt-1]) v[cnt-1]=tmp;
 		}
 		
-		float[] v=Arrays.copyOf(max[0],cmax);
-		float[] i=Arrays.copyOf(max[1],cmax);
-		
-		return new float[][]{v,i};
+		return cnt;
 	}
 	
-	private static float[][] extremaMin(float[] data){
-		int len =data.length;
-		int cmin=1;
+	/**
+	 * envelope of the n extrema in the workspace, same as Spline.cubicSplineWith1stBC(0,0)
+	 * and Spline.cValues(float[]) at 0, 1, ..., len-1, but using the buffers of the workspace
+	 *
+	 * @param	n		number of the extrema
+	 * @param	ws		workspace of the current thread
+	 * @param	env		envelope (output)
+	 */
+	private static void envelope(int n,Workspace ws,float[] env){
+		double[] sx=ws.sx,sy=ws.sy,h=ws.h,a=ws.a,b=ws.b,c=ws.c,d=ws.d,m=ws.m;
+		double[] q=ws.q,w=ws.w,o1=ws.o1,o2=ws.o2,o3=ws.o3;
 		
-		// [0] are values and [1] are indices
-		float[][] min=new float[2][len];
+		for(int i=0;i<n;i++){ sx[i]=ws.idx[i]; sy[i]=ws.val[i];}
 		
-		min[0][0]=data[0]; min[1][0]=0;
+		for(int i=0,I=n-1;i<I;i++) h[i]=sx[i+1]-sx[i];
 		
-		for(int i=1,I=len-1;i<I;i++)
-		if(data[i-1]>=data[i]&&data[i]<=data[i+1]){
-			min[0][cmin]=data[i];
-			min[1][cmin]=i;
-			cmin++;
+		for(int i=1,I=n-1;i<I;i++){
+			a[i-1]=h[i-1]/(h[i-1]+h[i]);	// lower-band
+			b[i  ]=2;						// diagnal
+			c[i  ]=h[i  ]/(h[i-1]+h[i]);	// upper-band
+			d[i  ]=6.0/(h[i-1]+h[i])*((sy[i+1]-sy[i])/h[i]-(sy[i]-sy[i-1])/h[i-1]);
 		}
 		
-		min[0][cmin]=data[len-1]; min[1][cmin]=len-1; cmin++;
+		b[0]=2.0;
+		c[0]=1.0;
+		d[0]=6.0/h[0]*((sy[1]-sy[0])/h[0]-0.0);
 		
-		if(cmin>=4){
-			float slope=(min[0][1]-min[0][2])/(min[1][1]-min[1][2]);
-			float tmp=slope*(min[1][0]-min[1][1])+min[0][1];
-			if(tmp<min[0][0]) min[0][0]=tmp;
-			
-			slope=(min[0][cmin-2]-min[0][cmin-3])/(min[1][cmin-2]-min[1][cmin-3]);
-			tmp=slope*(min[1][cmin-1]-min[1][cmin-2])+min[0][cmin-2];
-			if(tmp<min[0][cmin-1]) min[0][cmin-1]=tmp;
+		a[n-2]=1.0;
+		b[n-1]=2.0;
+		d[n-1]=6.0/h[n-2]*(0.0-(sy[n-1]-sy[n-2])/h[n-2]);
+		
+		// same as TridiagonalAlg.trace
+		w[0]=c[0]/b[0];
+		q[0]=b[0];
+		
+		for(int i=1,I=n-1;i<I;i++){
+			q[i]=b[i]-a[i-1]*w[i-1];
+			w[i]=c[i]/q[i];
 		}
 		
-		float[] v=Arrays.copyOf(min[0],cmin);
-		float[] i=Arrays.copyOf(min[1],cmin);
+		q[n-1]=b[n-1]-a[n-2]*w[n-2];
+		
+		m[0]=d[0]/q[0];
 		
-		return new float[][]{v,i};
+		for(int i=1;i<n;i++) m[i]=(d[i]-a[i-1]*m[i-1])/q[i];
+		
+		for(int i=n-2;i>=0;i--) m[i]-=w[i]*m[i+1];
+		
+		for(int i=0,I=n-1;i<I;i++){
+			o3[i]=(m[i+1]-m[i])/(6.0*h[i]);
+			o2[i]=m[i]/2.0;
+			o1[i]=(sy[i+1]-sy[i])/h[i]-h[i]/6.0*(m[i+1]+2.0*m[i]);
+		}
+		
+		// x increases so the index of the interval only moves forward
+		for(int i=0,k=0,I=env.length;i<I;i++){
+			while(k<n-1&&sx[k+1]<=i) k++;
+			
+			if(k==n-1){ env[i]=(float)sy[n-1]; continue;}
+			
+			double dx=i-sx[k];
+			
+			env[i]=(float)(o3[k]*dx*dx*dx+o2[k]*dx*dx+o1[k]*dx+sy[k]);
+		}
 	}
 	
-	private void decompKernel(float[] data,float[] dd,int nmode,float[][] mode){
-		int len=data.length;
+	private void decompKernel(float[] data,Workspace ws){
+		float[] resu =ws.resu;
+		float[] tmp  =ws.tmp;
+		float[] upper=ws.upper;
+		float[] lower=ws.lower;
 		
-		float[] resu=data.clone();
+		float[][] mode=ws.mode;
 		
+		System.arraycopy(data,0,resu,0,len);
 		System.arraycopy(data,0,mode[0],0,len);
 		
 		for(int i=0;i<nmode;i++){
-			float[] tmp=resu.clone();
+			System.arraycopy(resu,0,tmp,0,len);
 			
 			for(int iter=0;iter<itMax;iter++){
-				float[][] max=extremaMax(tmp);
-				float[][] min=extremaMin(tmp);
-				
-				Spline s=null;
-				
-				s=new Spline(max[1],max[0]);
-				s.cubicSplineWith1stBC(0,0);
-				float[] upper=s.cValues(dd);
-				
-				s=new Spline(min[1],min[0]);
-				s.cubicSplineWith1stBC(0,0);
-				float[] lower=s.cValues(dd);
+				envelope(extrema(tmp,ws.val,ws.idx,true ),ws,upper);
+				envelope(extrema(tmp,ws.val,ws.idx,false),ws,lower);
 				
 				for(int ii=0;ii<len;ii++) tmp[ii]-=(upper[ii]+lower[ii])/2f;
 			}
@@ -230,6 +436,60 @@ public final class EEMD{
 	}
 	
 	
+	/**
+	 * buffers reused by a thread for all its decompositions
+	 */
+	static final class Workspace{
+		//
+		private float[] norm=null;	// normalized data
+		private float[] R1  =null;	// data plus noise
+		private float[] R2  =null;	// data minus noise
+		private float[] resu=null;
+		private float[] tmp =null;
+		private float[] upper=null;	// upper envelope
+		private float[] lower=null;	// lower envelope
+		private float[] val =null;	// values of the extrema
+		private float[] idx =null;	// indices of the extrema
+		
+		private float[][] mode=null;	// modes of a member
+		
+		private double[][] blk=null;	// sum of the modes of a block
+		private double[][] tot=null;	// sum of the modes of all the blocks
+		
+		private double[] sx=null,sy=null,h=null,m=null;		// spline
+		private double[] a=null,b=null,c=null,d=null;		// tri-diagonal matrix
+		private double[] q=null,w=null;						// tri-diagonal buffers
+		private double[] o1=null,o2=null,o3=null;			// spline coefficients
+		
+		private RandomStream rs=new RandomStream(0);
+		
+		
+		/**
+	     * constructor
+	     *
+	     * @param	len		length of data
+	     * @param	nmode	number of modes
+	     */
+		Workspace(int len,int nmode){
+			norm=new float[len];	R1=new float[len];	R2=new float[len];
+			resu=new float[len];	tmp=new float[len];
+			upper=new float[len];	lower=new float[len];
+			val=new float[len];		idx=new float[len];
+			
+			mode=new float[nmode+2][len];
+			
+			blk=new double[nmode+2][len];
+			tot=new double[nmode+2][len];
+			
+			sx=new double[len];	sy=new double[len];	h=new double[len];	m=new double[len];
+			a =new double[len];	b =new double[len];	c=new double[len];	d=new double[len];
+			q =new double[len];	w =new double[len];
+			o1=new double[len];	o2=new double[len];	o3=new double[len];
+		}
+	}
+	
+	
+	
 	/** test
 	public static void main(String[] args){
 		int nmode=4;
@@ -6,10 +6,14 @@
  */
 package miniufo.mathsphysics;
 
+import miniufo.concurrent.ConcurrentUtil;
+
 
 /**
  * Empirical model decomposition
  *
+ * The rows and then the columns are decomposed in parallel.
+ *
  * @version 1.0, 2013.06.06
  * @author  MiniUFO
  * @since   MDK1.0
@@ -19,10 +23,12 @@ public final class EEMD2{
 	private int xcount=0;
 	private int ycount=0;
 	private int nmode =0;
+	private int itMax =10;
+	private int enMax =100;
 	
 	private float Nstd=0;
 	
-	private EEMD emd=null;
+	private long seed=System.nanoTime();
 	
 	
 	/**
@@ -44,15 +50,23 @@ public final class EEMD2{
 	
 	
 	/*** getor and setor ***/
-	public int getModes(){ return emd.getModes();}
+	public int getModes(){ return nmode;}
 	
-	public int getMaxIteration(){ return emd.getMaxIteration();}
+	public int getMaxIteration(){ return itMax;}
 	
-	public int getMaxEnsemble(){ return emd.getMaxEnsemble();}
+	public int getMaxEnsemble(){ return enMax;}
 	
-	public void setMaxIteration(int itMax){ emd.setMaxIteration(itMax);}
+	public void setMaxIteration(int itMax){
+		if(itMax<1) throw new IllegalArgumentException("itMax should be at least 1");
+		this.itMax=itMax;
+	}
+	
+	public void setMaxEnsemble(int enMax){
+		if(enMax<1) throw new IllegalArgumentException("enMax should be at least 1");
+		this.enMax=enMax;
+	}
 	
-	public void setMaxEnsemble(int enMax){ emd.setMaxEnsemble(enMax);}
+	public void setSeed(long seed){ this.seed=seed;}
 	
 	
 	/**
@@ -70,30 +84,40 @@ public final class EEMD2{
 		if(re.length!=nmode+1||re[0].length!=ycount||re[0][0].length!=xcount)
 		throw new IllegalArgumentException("invalid result sizes");
 		
-		float[][] tmpx=new float[nmode+2][xcount];
-		float[][] tmpy=new float[nmode+2][ycount];
 		float[][][][] tmp=new float[nmode+1][nmode+1][ycount][xcount];
 		
 		// decompose in the first direction
-		emd=new EEMD(xcount,nmode,Nstd);
-		for(int j=0;j<ycount;j++){System.out.println("j: "+j);
-			emd.decomp(data[j],tmpx);
+		EEMD emdx=newEEMD(xcount);
+		ConcurrentUtil.parallelFor(ycount,1,(s,e)->{
+			EEMD.Workspace ws=new EEMD.Workspace(xcount,nmode);
 			
-			for(int m=0,M=nmode+1;m<M;m++) System.arraycopy(tmpx[m+1],0,re[m][j],0,xcount);
-		}
+			float[][] tmpx=new float[nmode+2][xcount];
+			
+			for(int j=s;j<e;j++){
+				emdx.decomp(data[j],tmpx,j,ws);
+				
+				for(int m=0,M=nmode+1;m<M;m++) System.arraycopy(tmpx[m+1],0,re[m][j],0,xcount);
+			}
+		});
 		
 		// decompose in the second direction
-		emd=new EEMD(ycount,nmode,Nstd);
-		float[] buf=new float[ycount];
-		for(int i=0;i<xcount;i++){System.out.println("i: "+i);
-		for(int m=0,M=nmode+1;m<M;m++){
-			for(int j=0;j<ycount;j++) buf[j]=re[m][j][i];
+		EEMD emdy=newEEMD(ycount);
+		ConcurrentUtil.parallelFor(xcount,1,(s,e)->{
+			EEMD.Workspace ws=new EEMD.Workspace(ycount,nmode);
 			
-			emd.decomp(buf,tmpy);
+			float[] buf=new float[ycount];
+			float[][] tmpy=new float[nmode+2][ycount];
 			
-			for(int j=0;j<ycount;j++)
-			for(int mm=0,MM=nmode+1;mm<MM;mm++) tmp[mm][m][j][i]=tmpy[mm+1][j];
-		}}
+			for(int i=s;i<e;i++)
+			for(int m=0,M=nmode+1;m<M;m++){
+				for(int j=0;j<ycount;j++) buf[j]=re[m][j][i];
+				
+				emdy.decomp(buf,tmpy,ycount+(long)i*(nmode+1)+m,ws);
+				
+				for(int j=0;j<ycount;j++)
+				for(int mm=0,MM=nmode+1;mm<MM;mm++) tmp[mm][m][j][i]=tmpy[mm+1][j];
+			}
+		});
 		
 		// combine modes
 		for(int j=0;j<ycount;j++)
@@ -110,6 +134,18 @@ public final class EEMD2{
 	}
 	
 	
+	/*** helper methods ***/
+	private EEMD newEEMD(int len){
+		EEMD emd=new EEMD(len,nmode,Nstd);
+		
+		emd.setMaxIteration(itMax);
+		emd.setMaxEnsemble(enMax);
+		emd.setSeed(seed);
+		
+		return emd;
+	}
+	
+	
 	/** test
 	public static void main(String[] args){
 		int xcount=240;
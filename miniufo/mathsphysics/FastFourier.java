@@ -6,12 +6,22 @@
  */
 package miniufo.mathsphysics;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import miniufo.concurrent.ConcurrentUtil;
+
 
 /**
  * Fast Fourier class.
  * new for mixed-radix FFT
  * static for power-of-2 FFT
  *
+ * An instance is a plan of N point FFT which keeps the factors of N and all
+ * the buffers, so it can be reused for many series of the same length without
+ * any allocation.  It is not thread-safe and getPlan(N) gives the cached plan
+ * of the current thread.
+ *
  * @version 1.0, 02/01/2007
  * @author  MiniUFO
  * @since   MDK1.0
@@ -29,6 +39,27 @@ public final class FastFourier{
 	private float[] temIm   =null;	// Intermediate result of image part
 	private float[] outputRe=null;	// real part of output
 	private float[] outputIm=null;	// image part of output
+	private float[] inputRe =null;	// copy of real  part of input if it is the output
+	private float[] inputIm =null;	// copy of image part of input if it is the output
+	private float[] zeros   =null;	// image part of real input
+	
+	private int[] count=new int[MaxFactorsNumber];	// counters used in permute()
+	
+	private float[] twiddleRe=new float[maxFactor];	// twiddle factors in twiddle()
+	private float[] twiddleIm=new float[maxFactor];
+	private float[] WRe =new float[maxFactor];		// buffers used in fftPrime()
+	private float[] WIm =new float[maxFactor];
+	private float[] t1Re=new float[maxFactor];
+	private float[] t1Im=new float[maxFactor];
+	private float[] t2Re=new float[maxFactor];
+	private float[] t2Im=new float[maxFactor];
+	private float[] d1Re=new float[5];				// buffers used in fft8() and fft10()
+	private float[] d1Im=new float[5];
+	private float[] d2Re=new float[5];
+	private float[] d2Im=new float[5];
+	
+	// plans cached for each thread
+	private static final ThreadLocal<Map<Integer,FastFourier>> plans=ThreadLocal.withInitial(HashMap::new);
 	
 	
 	// Maximum numbers of factors allowed.
@@ -64,6 +95,9 @@ public final class FastFourier{
 		this.N=N;
 		outputRe=new float[N];
 		outputIm=new float[N];
+		inputRe =new float[N];
+		inputIm =new float[N];
+		zeros   =new float[N];
 		
 		factorize();
 		
@@ -99,12 +133,12 @@ public final class FastFourier{
 	}
 	
 	public void fftMixedRadix(float[] re){
-		fftMixedRadix(re,new float[re.length]);
+		fftMixedRadix(re,zeros);
 	}
 	
 	public void fftMixedRadix(Complex[] data){
-		float[] re=new float[N];
-		float[] im=new float[N];
+		float[] re=inputRe;
+		float[] im=inputIm;
 		
 		for(int i=0;i<N;i++){
 			re[i]=data[i].getReal();
@@ -115,7 +149,7 @@ public final class FastFourier{
 	}
 	
 	public void ifftMixedRadix(float[] re,float[] im){
-		float[] imNeg=new float[N];
+		float[] imNeg=inputIm;
 		
 		for(int i=0;i<N;i++) imNeg[i]=-im[i];
 		
@@ -137,8 +171,8 @@ public final class FastFourier{
 	}
 	
 	public void ifftMixedRadix(Complex[] data){
-		float[] re=new float[N];
-		float[] im=new float[N];
+		float[] re=inputRe;
+		float[] im=inputIm;
 		
 		for(int i=0;i<N;i++){
 			re[i]= data[i].getReal();
@@ -165,12 +199,12 @@ public final class FastFourier{
 	}
 	
 	public void fftPowerOf2(float[] re){
-		trf(re,new float[re.length],-TWO_PI);
+		trf(re,zeros,-TWO_PI);
 	}
 	
 	public void fftPowerOf2(Complex[] data){
-		float[] re=new float[N];
-		float[] im=new float[N];
+		float[] re=inputRe;
+		float[] im=inputIm;
 		
 		for(int i=0;i<N;i++){
 			re[i]=data[i].getReal();
@@ -188,12 +222,12 @@ public final class FastFourier{
 	}
 	
 	public void ifftPowerOf2(float[] re){
-		trf(re,new float[re.length],TWO_PI);
+		trf(re,zeros,TWO_PI);
 	}
 	
 	public void ifftPowerOf2(Complex[] data){
-		float[] re=new float[N];
-		float[] im=new float[N];
+		float[] re=inputRe;
+		float[] im=inputIm;
 		
 		for(int i=0;i<N;i++){
 			re[i]=data[i].getReal();
@@ -204,6 +238,79 @@ public final class FastFourier{
 	}
 	
 	
+	/**
+	 * (inverse) fast Fourier transform using power-of-2 or mixed-radix algorithm
+	 * depending on N.  The input arrays are not changed and can be the arrays
+	 * returned by getResultRealPart() and getResultImagePart().
+	 *
+	 * @param	re	real  part of a series
+	 * @param	im	image part of a series
+	 */
+	public void transform(float[] re,float[] im){
+		if(re.length!=N||im.length!=N)
+		throw new IllegalArgumentException("data lengths not equal");
+		
+		if(re==outputRe){ System.arraycopy(re,0,inputRe,0,N); re=inputRe;}
+		if(im==outputIm){ System.arraycopy(im,0,inputIm,0,N); im=inputIm;}
+		
+		if(MathsPhysicsUtil.isPowerOf2(N)) fftPowerOf2(re,im);
+		else fftMixedRadix(re,im);
+	}
+	
+	public void transformReal(float[] re){ transform(re,zeros);}
+	
+	public void inverseTransform(float[] re,float[] im){
+		if(re.length!=N||im.length!=N)
+		throw new IllegalArgumentException("data lengths not equal");
+		
+		if(re==outputRe){ System.arraycopy(re,0,inputRe,0,N); re=inputRe;}
+		if(im==outputIm){ System.arraycopy(im,0,inputIm,0,N); im=inputIm;}
+		
+		if(MathsPhysicsUtil.isPowerOf2(N)) ifftPowerOf2(re,im);
+		else ifftMixedRadix(re,im);
+	}
+	
+	
+	/**
+	 * (inverse) fast Fourier transform of many series of the same length in parallel.
+	 * The results are written back to the given arrays.
+	 *
+	 * @param	re		real  parts of series, [series][N]
+	 * @param	im		image parts of series, [series][N]
+	 * @param	inverse	inverse transform or not
+	 */
+	public static void transformRows(float[][] re,float[][] im,boolean inverse){
+		int rows=re.length;
+		
+		if(im.length!=rows) throw new IllegalArgumentException("row counts not equal");
+		
+		if(rows==0) return;
+		
+		int N=re[0].length;
+		
+		ConcurrentUtil.parallelFor(rows,Math.max(1,4096/Math.max(N,1)),(s,e)->{
+			FastFourier ff=getPlan(N);
+			
+			for(int r=s;r<e;r++){
+				if(inverse) ff.inverseTransform(re[r],im[r]);
+				else ff.transform(re[r],im[r]);
+				
+				System.arraycopy(ff.outputRe,0,re[r],0,N);
+				System.arraycopy(ff.outputIm,0,im[r],0,N);
+			}
+		});
+	}
+	
+	/**
+	 * get the plan of N point FFT cached for the current thread
+	 *
+	 * @param	N	length of FFT
+	 */
+	public static FastFourier getPlan(int N){
+		return plans.get().computeIfAbsent(N,FastFourier::new);
+	}
+	
+	
 	/*** getor and setor ***/
 	public float[] getResultRealPart(){  return outputRe;}
 	
@@ -236,9 +343,6 @@ public final class FastFourier{
 		float cosW= (float)Math.cos(W);
 		float sinW=-(float)Math.sin(W);
 		
-		float[] twiddleRe=new float[radix];
-		float[] twiddleIm=new float[radix];
-		
 		float twRe=1.0f,twIm=0f;
 		
 		//Initialize twiddle addBk.address variables.
@@ -351,8 +455,8 @@ public final class FastFourier{
 		float W=2*(float)Math.PI/radix;
 		float cosW = (float)Math.cos(W);
 		float sinW =-(float)Math.sin(W);
-		float[] WRe=new float[radix];
-		float[] WIm=new float[radix];
+		float[] WRe=this.WRe;
+		float[] WIm=this.WIm;
 		
 		WRe[0]=1;
 		WIm[0]=0;
@@ -369,10 +473,10 @@ public final class FastFourier{
 		int j, k;
 		int max = (radix + 1) / 2;
 		
-		float[] tem1Re=new float[max];
-		float[] tem1Im=new float[max];
-		float[] tem2Re=new float[max];
-		float[] tem2Im=new float[max];
+		float[] tem1Re=t1Re;
+		float[] tem1Im=t1Im;
+		float[] tem2Re=t2Re;
+		float[] tem2Im=t2Im;
 		
 		for(j=1;j<max;j++){
 			tem1Re[j]=temRe[j]+temRe[radix - j];
@@ -411,7 +515,8 @@ public final class FastFourier{
 	}
 	
 	private void permute(float[] re,float[] im){
-		int[] count=new int[MaxFactorsNumber];
+		Arrays.fill(count,0);
+		
 		int j;
 		int k=0;
 		
@@ -556,8 +661,8 @@ public final class FastFourier{
 	}
 	
 	private void fft8(){
-		float[] data1Re=new float[4];	float[] data1Im=new float[4];
-		float[] data2Re=new float[4];	float[] data2Im=new float[4];
+		float[] data1Re=d1Re;	float[] data1Im=d1Im;
+		float[] data2Re=d2Re;	float[] data2Im=d2Im;
 		
 		// To improve the speed, use direct assaignment instead for loop here.
 		data1Re[0]=temRe[0];	data2Re[0]=temRe[1];
@@ -593,8 +698,8 @@ public final class FastFourier{
 	}
 	
 	private void fft10(){
-		float[] data1Re=new float[5];	float[] data1Im=new float[5];
-		float[] data2Re=new float[5];	float[] data2Im=new float[5];
+		float[] data1Re=d1Re;	float[] data1Im=d1Im;
+		float[] data2Re=d2Re;	float[] data2Im=d2Im;
 		
 		// To improve the speed, use direct assaignment instead for loop here.
 		data1Re[0]=temRe[0];	data1Im[0]=temIm[0];
@@ -715,7 +820,7 @@ public final class FastFourier{
 	 * FFT accessed in static way
 	 */
 	public static Complex[] fft(float[] re,float[] im){
-		FastFourier ff=new FastFourier(re.length);
+		FastFourier ff=getPlan(re.length);
 		
 		if(MathsPhysicsUtil.isPowerOf2(re.length))
 			ff.fftPowerOf2(re,im);
@@ -726,7 +831,7 @@ public final class FastFourier{
 	}
 	
 	public static Complex[] fft(float[] re){
-		FastFourier ff=new FastFourier(re.length);
+		FastFourier ff=getPlan(re.length);
 		
 		if(MathsPhysicsUtil.isPowerOf2(re.length))
 			ff.fftPowerOf2(re);
@@ -737,7 +842,7 @@ public final class FastFourier{
 	}
 	
 	public static Complex[] fft(Complex[] data){
-		FastFourier ff=new FastFourier(data.length);
+		FastFourier ff=getPlan(data.length);
 		
 		if(MathsPhysicsUtil.isPowerOf2(data.length))
 			ff.fftPowerOf2(data);
@@ -748,7 +853,7 @@ public final class FastFourier{
 	}
 	
 	public static Complex[] ifft(float[] re,float[] im){
-		FastFourier ff=new FastFourier(re.length);
+		FastFourier ff=getPlan(re.length);
 		
 		if(MathsPhysicsUtil.isPowerOf2(re.length))
 			ff.ifftPowerOf2(re,im);
@@ -759,7 +864,7 @@ public final class FastFourier{
 	}
 	
 	public static Complex[] ifft(float[] re){
-		FastFourier ff=new FastFourier(re.length);
+		FastFourier ff=getPlan(re.length);
 		
 		if(MathsPhysicsUtil.isPowerOf2(re.length))
 			ff.ifftPowerOf2(re);
@@ -770,7 +875,7 @@ public final class FastFourier{
 	}
 	
 	public static Complex[] ifft(Complex[] data){
-		FastFourier ff=new FastFourier(data.length);
+		FastFourier ff=getPlan(data.length);
 		
 		if(MathsPhysicsUtil.isPowerOf2(data.length))
 			ff.ifftPowerOf2(data);
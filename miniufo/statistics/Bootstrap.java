@@ -7,7 +7,7 @@
 package miniufo.statistics;
 
 import java.lang.reflect.Array;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 /**
@@ -18,9 +18,6 @@ import java.util.Random;
  * @since   MDK1.0
  */
 public final class Bootstrap{
-	//
-	private static final Random rnd=new Random();
-	
 	
 	/**
 	 * constructor
@@ -31,13 +28,23 @@ public final class Bootstrap{
 	/**
 	 * resample without allocating memory
 	 */
+	public static <T> T[] resample(Class<T> ty,T[] samples){ return resample(ty,samples,null);}
+	
+	/**
+	 * resample using a given random stream so that the results are reproducible,
+	 * e.g., a stream keyed by the index of the bootstrap replicate
+	 * 
+	 * @param	ty		class of the samples
+	 * @param	samples	original samples
+	 * @param	rs		random stream, null for a thread-local random generator
+	 */
 	@SuppressWarnings("unchecked")
-	public static <T> T[] resample(Class<T> ty,T[] samples){
+	public static <T> T[] resample(Class<T> ty,T[] samples,RandomStream rs){
 		int size=samples.length;
 		
 		T[] resamples=(T[])Array.newInstance(ty,size);
 		
-		int[] idx=resampleIndex(size);
+		int[] idx=resampleIndex(size,rs);
 		
 		for(int i=0;i<size;i++) resamples[i]=samples[idx[i]];
 		
@@ -48,10 +55,23 @@ public final class Bootstrap{
 	/**
 	 * resample the indices of original samples
 	 */
-	public static int[] resampleIndex(int size){
+	public static int[] resampleIndex(int size){ return resampleIndex(size,null);}
+	
+	/**
+	 * resample the indices of original samples using a given random stream
+	 * 
+	 * @param	size	number of the samples
+	 * @param	rs		random stream, null for a thread-local random generator
+	 */
+	public static int[] resampleIndex(int size,RandomStream rs){
 		int[] idx=new int[size];
 		
-		for(int i=0;i<size;i++) idx[i]=rnd.nextInt(size);
+		if(rs==null){
+			ThreadLocalRandom rnd=ThreadLocalRandom.current();
+			
+			for(int i=0;i<size;i++) idx[i]=rnd.nextInt(size);
+			
+		}else for(int i=0;i<size;i++) idx[i]=rs.nextInt(size);
 		
 		return idx;
 	}
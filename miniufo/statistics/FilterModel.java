@@ -8,7 +8,6 @@ package miniufo.statistics;
 
 import org.ejml.data.DMatrixRMaj;
 import org.ejml.dense.row.CommonOps_DDRM;
-import miniufo.mathsphysics.Complex;
 import miniufo.mathsphysics.FastFourier;
 import miniufo.mathsphysics.HarmonicFitter;
 import miniufo.mathsphysics.MathsPhysicsUtil;
@@ -322,13 +321,18 @@ public final class FilterModel{
 			keep[K]=true; keep[len-K-1]=true;
 		}
 		
-		final Complex zero=new Complex(0,0);
+		FastFourier ff=FastFourier.getPlan(len);
 		
-		Complex[] c=FastFourier.fft(data);
-		for(int i=0;i<len;i++) if(!keep[i]) c[i]=zero;
+		ff.transformReal(data);
 		
-		Complex[] d=FastFourier.ifft(c);
-		for(int i=0;i<len;i++) r[i]=d[i].getReal();
+		float[] re=ff.getResultRealPart();
+		float[] im=ff.getResultImagePart();
+		
+		for(int i=0;i<len;i++) if(!keep[i]){ re[i]=0; im[i]=0;}
+		
+		ff.inverseTransform(re,im);
+		
+		System.arraycopy(ff.getResultRealPart(),0,r,0,len);
 	}
 	
 	
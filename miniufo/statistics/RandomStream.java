@@ -0,0 +1,150 @@
+/**
+ * @(#)RandomStream.java	1.0 07/02/01
+ *
+ * Copyright 2007 MiniUFO, All rights reserved.
+ * MiniUFO Studio. Use is subject to license terms.
+ */
+package miniufo.statistics;
+
+
+/**
+ * A stream of pseudo-random numbers (SplitMix64) keyed by a seed and indices.
+ *
+ * Streams of different keys (e.g., index of a particle or of an ensemble
+ * member) are independent, so that a parallel computation gets the same
+ * random numbers whatever the number of threads and the order of the tasks.
+ * A stream is not thread-safe and is supposed to be used by one task, which
+ * may reset it for each key instead of creating a new one.
+ *
+ * @version 1.0, 02/01/2007
+ * @author  MiniUFO
+ * @since   MDK1.0
+ */
+public final class RandomStream{
+	//
+	private long root =0;	// state of the stream after seeding, for splitting
+	private long state=0;
+
+	private boolean hasNext=false;	// whether a Gaussian is cached
+
+	private double nextGaussian=0;
+
+	private static final long GAMMA=0x9E3779B97F4A7C15L;	// odd increment of SplitMix64
+
+
+	/**
+     * constructor
+     *
+     * @param	seed	a given seed
+     */
+	public RandomStream(long seed){ reset(seed);}
+
+	/**
+     * constructor
+     *
+     * @param	seed	a given seed
+     * @param	key		a key (e.g., index of a task) of the stream
+     */
+	public RandomStream(long seed,long key){ reset(seed,key);}
+
+	/**
+     * constructor with a seed from the system time
+     */
+	public RandomStream(){ reset(System.nanoTime()^mix64(System.currentTimeMillis()));}
+
+
+	/**
+	 * reset the stream as if it is newly created with the seed and keys
+	 */
+	public RandomStream reset(long seed){
+		root=state=mix64(seed);	hasNext=false;
+
+		return this;
+	}
+
+	public RandomStream reset(long seed,long key){
+		root=state=mix64(mix64(seed)^mix64(key+GAMMA));	hasNext=false;
+
+		return this;
+	}
+
+	public RandomStream reset(long seed,long key1,long key2){
+		root=state=mix64(mix64(mix64(seed)^mix64(key1+GAMMA))^mix64(key2+GAMMA));	hasNext=false;
+
+		return this;
+	}
+
+
+	/**
+	 * a new stream keyed by the given key, which depends only on the seed
+	 * of this stream but not on how many numbers have been drawn from it
+	 *
+	 * @param	key		a key (e.g., index of a task) of the new stream
+	 */
+	public RandomStream split(long key){ return new RandomStream(root,key);}
+
+
+	/**
+	 * next pseudo-random numbers
+	 */
+	public long nextLong(){ return mix64(state+=GAMMA);}
+
+	public int nextInt(){ return (int)(nextLong()>>>32);}
+
+	/**
+	 * uniformly distributed in [0, bound), same algorithm as java.util.Random
+	 *
+	 * @param	bound	upper bound (exclusive), positive
+	 */
+	public int nextInt(int bound){
+		if(bound<=0) throw new IllegalArgumentException("bound should be positive");
+
+		int r=(int)(nextLong()>>>33);
+		int m=bound-1;
+
+		if((bound&m)==0) return (int)((bound*(long)r)>>31);
+
+		for(int u=r;u-(r=u%bound)+m<0;u=(int)(nextLong()>>>33));
+
+		return r;
+	}
+
+	/**
+	 * uniformly distributed in [0, 1)
+	 */
+	public double nextDouble(){ return (nextLong()>>>11)*0x1.0p-53;}
+
+	public float nextFloat(){ return (nextLong()>>>40)*0x1.0p-24f;}
+
+	/**
+	 * normally distributed with zero mean and unit variance, using the polar
+	 * method of which the second number is cached.  StrictMath is used so that
+	 * the results are the same on all platforms.
+	 */
+	public double nextGaussian(){
+		if(hasNext){ hasNext=false; return nextGaussian;}
+
+		double v1,v2,s;
+
+		do{
+			v1=2.0*nextDouble()-1.0;
+			v2=2.0*nextDouble()-1.0;
+			s =v1*v1+v2*v2;
+
+		}while(s>=1||s==0);
+
+		double multiplier=StrictMath.sqrt(-2.0*StrictMath.log(s)/s);
+
+		nextGaussian=v2*multiplier;	hasNext=true;
+
+		return v1*multiplier;
+	}
+
+
+	/*** helper methods ***/
+	private static long mix64(long z){
+		z=(z^(z>>>30))*0xBF58476D1CE4E5B9L;
+		z=(z^(z>>>27))*0x94D049BB133111EBL;
+		return z^(z>>>31);
+	}
+}
@@ -13,6 +13,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import miniufo.concurrent.ConcurrentUtil;
+import miniufo.io.CtlDataWriteStream;
 import miniufo.io.DataIOFactory;
 import miniufo.io.DataRead;
 import miniufo.io.DataWrite;
@@ -30,9 +32,6 @@ import static miniufo.io.FileWriteInterface.Solution.*;
 import static miniufo.basic.InterpolationModel.Type;
 import static miniufo.basic.InterpolationModel.interp1D;
 import static miniufo.basic.InterpolationModel.interp2D;
-import static miniufo.basic.InterpolationModel.bilinearInterpolation;
-import static miniufo.basic.InterpolationModel.bicubicPolynomialInterpolation;
-import static miniufo.basic.InterpolationModel.bicubicLagrangeInterpolation;
 import static miniufo.diagnosis.SpatialModel.gEarth;
 import static miniufo.geophysics.atmos.ThermoDynamics.kappa;
 import static miniufo.geophysics.atmos.ThermoDynamics.Pref;
@@ -179,144 +178,53 @@ public final class DataInterpolation{
 		System.out.println("Finish horizontal interpolating.");
 	}
 	
+	/**
+     * horizontal interpolation onto given coordinates
+     *
+     * @param	path	path of file after interpolation
+     * @param	type	type of interpolation, LINEAR, CUBIC_P or CUBIC_L
+     * @param	coordsY	y-coordinates after interpolation
+     * @param	coordsX	x-coordinates after interpolation
+     */
 	public void horizontalInterp(String path,Type type,float[] coordsY,float[] coordsX){
+		horizontalInterp(path,new RegridPlan(srcdata,coordsY,coordsX,type));
+	}
+	
+	/**
+     * horizontal interpolation using a precomputed regridding plan, all the
+     * levels of a variable are regridded in parallel for each time step
+     *
+     * @param	path	path of file after interpolation
+     * @param	plan	regridding plan from the grid of source data
+     */
+	public void horizontalInterp(String path,RegridPlan plan){
 		System.out.println("Start horizontal interpolating...");
 		
 		int sy=srcdata.getYCount(),sx=srcdata.getXCount();
-		int y=coordsY.length,x=coordsX.length;
-		
-		Range srange=new Range(1,1,sy,sx);
-		Range drange=new Range(1,1,y,x);
 		
-		Variable srcv=new Variable(null,srange);
-		Variable desv=new Variable(null,drange);
+		if(plan.getSourceYCount()!=sy||plan.getSourceXCount()!=sx)
+		throw new IllegalArgumentException("source grid of the plan is not the same as the data");
 		
 		DataRead  cdrs=DataIOFactory.getDataRead(srcdata);
 		DataWrite cdws=DataIOFactory.getDataWrite(srcdata,path);
 		
-		float[][] srcvdata=srcv.getData()[0][0];
-		float[][] desvdata=desv.getData()[0][0];
+		cdrs.setPrinting(false);
 		
-		float[] srcxdef=srcdata.getXDef().getSamples();
-		float[] srcydef=srcdata.getYDef().getSamples();
-		
-		switch(type){
-		case LINEAR:
-			for(int l=1;l<=srcdata.getTCount();l++){
-				System.out.println("  Processing "+srcdata.getTDef().getSamples()[l-1].toString()+" ...");
-				
-				int[] p=srcv.getRange().getTRange();	p[0]=l;p[1]=l;
-				
-				for(int m=0;m<srcdata.getVCount();m++){
-					srcv.setName(srcdata.getVDef()[m].getName());
-					desv.setName(srcv.getName());
-					
-					for(int k=1;k<=srcdata.getVDef()[m].getZCount();k++){
-						p=srcv.getRange().getZRange();	p[0]=k;p[1]=k;
-						
-						cdrs.readData(srcv); float undef=srcv.getUndef(); desv.setValue(undef);
-						
-						for(int j=0;j<y;j++){
-							int tagj=srcdata.getYLENum(coordsY[j]);
-							
-							if(tagj>=0) for(int i=0;i<x;i++){
-								int tagi=srcdata.getXLENum(coordsX[i]);
-								
-								if(tagi>=0) desvdata[j][i]=bilinearInterpolation(
-									srcvdata[tagj  ][tagi],srcvdata[tagj  ][tagi+1],
-									srcvdata[tagj+1][tagi],srcvdata[tagj+1][tagi+1],
-									(coordsX[i]-srcxdef[tagi])/(srcxdef[tagi+1]-srcxdef[tagi]),
-									(coordsY[j]-srcydef[tagj])/(srcydef[tagj+1]-srcydef[tagj]),undef
-								);
-							}
-						}
-						
-						cdws.writeData(desv);
-					}
-				}
-			}
-			
-			break;
+		for(int l=1;l<=srcdata.getTCount();l++){
+			System.out.println("  Processing "+srcdata.getTDef().getSamples()[l-1].toString()+" ...");
 			
-		case CUBIC_P:
-			for(int l=1;l<=srcdata.getTCount();l++){
-				System.out.println("  Processing "+srcdata.getTDef().getSamples()[l-1].toString()+" ...");
+			for(Var vv:srcdata.getVDef()){
+				int zc=vv.getZCount();
 				
-				int[] p=srcv.getRange().getTRange();	p[0]=l;p[1]=l;
-				
-				for(int m=0;m<srcdata.getVCount();m++){
-					srcv.setName(srcdata.getVDef()[m].getName());
-					desv.setName(srcv.getName());
-					
-					for(int k=1;k<=srcdata.getVDef()[m].getZCount();k++){
-						p=srcv.getRange().getZRange();	p[0]=k;p[1]=k;
-						
-						cdrs.readData(srcv); float undef=srcv.getUndef();
-						
-						for(int j=0;j<y;j++){
-							int tagj=srcdata.getYLENum(coordsY[j]);
-							
-							if(tagj>=0) for(int i=0;i<x;i++){
-								int tagi=srcdata.getXLENum(coordsX[i]);
-								
-								if(tagi>=0) desvdata[j][i]=bicubicPolynomialInterpolation(
-									srcvdata[tagj-1][tagi-1],srcvdata[tagj-1][tagi],srcvdata[tagj-1][tagi+1],srcvdata[tagj-1][tagi+2],
-									srcvdata[tagj  ][tagi-1],srcvdata[tagj  ][tagi],srcvdata[tagj  ][tagi+1],srcvdata[tagj  ][tagi+2],
-									srcvdata[tagj+1][tagi-1],srcvdata[tagj+1][tagi],srcvdata[tagj+1][tagi+1],srcvdata[tagj+1][tagi+2],
-									srcvdata[tagj+2][tagi-1],srcvdata[tagj+2][tagi],srcvdata[tagj+2][tagi+1],srcvdata[tagj+2][tagi+2],
-									(coordsX[i]-srcxdef[tagi])/(srcxdef[tagi+1]-srcxdef[tagi]),
-									(coordsY[j]-srcydef[tagj])/(srcydef[tagj+1]-srcydef[tagj]),undef
-								);
-							}
-						}
-						
-						cdws.writeData(desv);
-					}
-				}
-			}
-			
-			break;
-			
-		case CUBIC_L:
-			for(int l=1;l<=srcdata.getTCount();l++){
-				System.out.println("  Processing "+srcdata.getTDef().getSamples()[l-1].toString()+" ...");
+				Variable srcv=new Variable(vv.getName(),true,new Range(1,zc,sy,sx));
+				Variable desv=new Variable(vv.getName(),true,new Range(1,zc,plan.getYCount(),plan.getXCount()));
 				
 				int[] p=srcv.getRange().getTRange();	p[0]=l;p[1]=l;
 				
-				for(int m=0;m<srcdata.getVCount();m++){
-					srcv.setName(srcdata.getVDef()[m].getName());
-					desv.setName(srcv.getName());
-					
-					for(int k=1;k<=srcdata.getVDef()[m].getZCount();k++){
-						p=srcv.getRange().getZRange();	p[0]=k;p[1]=k;
-						
-						cdrs.readData(srcv); float undef=srcv.getUndef();
-						
-						for(int j=0;j<y;j++){
-							int tagj=srcdata.getYLENum(coordsY[j]);
-							
-							if(tagj>=0) for(int i=0;i<x;i++){
-								int tagi=srcdata.getXLENum(coordsX[i]);
-								
-								if(tagi>=0) desvdata[j][i]=bicubicLagrangeInterpolation(
-									srcvdata[tagj-1][tagi-1],srcvdata[tagj-1][tagi],srcvdata[tagj-1][tagi+1],srcvdata[tagj-1][tagi+2],
-									srcvdata[tagj  ][tagi-1],srcvdata[tagj  ][tagi],srcvdata[tagj  ][tagi+1],srcvdata[tagj  ][tagi+2],
-									srcvdata[tagj+1][tagi-1],srcvdata[tagj+1][tagi],srcvdata[tagj+1][tagi+1],srcvdata[tagj+1][tagi+2],
-									srcvdata[tagj+2][tagi-1],srcvdata[tagj+2][tagi],srcvdata[tagj+2][tagi+1],srcvdata[tagj+2][tagi+2],
-									(coordsX[i]-srcxdef[tagi])/(srcxdef[tagi+1]-srcxdef[tagi]),
-									(coordsY[j]-srcydef[tagj])/(srcydef[tagj+1]-srcydef[tagj]),undef
-								);
-							}
-						}
-						
-						cdws.writeData(desv);
-					}
-				}
+				cdrs.readData(srcv);
+				plan.apply(srcv,desv);
+				cdws.writeData(desv);
 			}
-			
-			break;
-			
-		default: throw new UnsupportedOperationException("unsupported type for "+type);
 		}
 		
 		cdrs.closeFile();	cdws.closeFile();
@@ -767,132 +675,9 @@ public final class DataInterpolation{
 	public void isobaricToIsentropicInterp(String path,String TPrs,String ZPrs,String Zsfc,float[] ptDes,String... vPrs){
 		System.out.println("Start isobaric to isentropic interpolating...");
 		
-		int sx=srcdata.getXCount(),sy=srcdata.getYCount(),sz=srcdata.getZCount(),st=srcdata.getTCount();
-		int z=ptDes.length,M=vPrs.length;
+		isentropicTransform(path,TPrs,ZPrs,null,null,Zsfc,ptDes,null,vPrs);
 		
-		// destinated data for writting, [vs..., sgm, p]
-		Variable[] desv=new Variable[M+4];
-		float[][][][] dedata=new float[M+4][][][];
-		for(int m=0;m<M+4;m++){
-			desv[m]=new Variable(null,true,new Range(1,z,sy,sx));
-			dedata[m]=desv[m].getData()[0];
-		}
-		
-		float[] zdef  =srcdata.getZDef().getSamples().clone();
-		float[] lnPSrc=new float[sz];
-		for(int k=0;k<sz;k++){
-			zdef[k]*=100f; // change hPa to Pa
-			lnPSrc[k]=(float)Math.log(zdef[k]);
-		}
-		
-		GridDataFetcher gdf=new GridDataFetcher(srcdata);
-		DataWrite cdws=DataIOFactory.getDataWrite(srcdata,path);
-		
-		for(int l=0;l<st;l++){
-			System.out.println("  processing "+srcdata.getTDef().getSamples()[l].toString()+" ...");
-			
-			// preparing data
-			Variable t  =gdf.prepareXYZBuffer(TPrs,l+1  );
-			Variable Z  =gdf.prepareXYZBuffer(ZPrs,l+1  );
-			Variable Zsf=gdf.prepareXYBuffer (Zsfc,l+1,1);
-			Variable[] vsBuf=new Variable[M];
-			
-			float[][][]   tpdata=t.getData()[0];
-			float[][][]   ZZdata=Z.getData()[0];
-			float[][][][] bfData=new float[M][][][];
-			
-			for(int m=0;m<M;m++){
-				 vsBuf[m]=gdf.prepareXYZBuffer(vPrs[m],l+1);
-				bfData[m]=vsBuf[m].getData()[0];
-			}
-			
-			for(int j=0;j<sy;j++)
-			for(int i=0;i<sx;i++){	// loop for each grid
-				// preparing 1D vertical arrays
-				float[]   tpSrc=new float[sz];	// temperature
-				float[]   zzSrc=new float[sz];	// geopotential
-				float[]   sfSrc=new float[M ];
-				float[][] vsSrc=new float[M ][sz];
-				
-				// store 1D vertical data
-				for(int k=0;k<sz;k++){
-					tpSrc[k]=tpdata[k][j][i];
-					zzSrc[k]=ZZdata[k][j][i];
-					for(int m=0;m<M;m++) vsSrc[m][k]=bfData[m][k][j][i];
-				}
-				
-				for(int m=0;m<M;m++) sfSrc[m]=vsSrc[m][0];
-				
-				OnePointZMask pnt=new OnePointZMask(zdef[0],tpSrc[0],Zsf.getData()[0][0][j][i],t.getUndef(),zdef,lnPSrc,tpSrc,zzSrc);
-				
-				float[][] vDes=interpFromPress2Thetas(pnt,ptDes,sfSrc,vsSrc);
-				
-				for(int m=0;m<M+4;m++)
-				for(int k=0;k<z;k++) dedata[m][k][j][i]=vDes[m][k];
-			}
-			
-			for(int m=0;m<M+4;m++) cdws.writeData(desv[m]);
-		}
-		
-		cdws.closeFile();
-		
-		// write ctl
-		FileWriteInterface fwi=new FileWriteInterface(IOUtil.getCompleteFileNameWithoutExtension(path)+".ctl");
-		FileWriter fw=null;	Scanner sn=null;
-		
-		if(fwi.getFlag()!=SKIP){
-			StringBuilder sb=new StringBuilder();
-			
-			try{
-				switch(fwi.getFlag()){
-				case RENAME   : fw=new FileWriter(fwi.getParent()+fwi.getNewName()); break;
-				case OVERWRITE: fw=new FileWriter(fwi.getFile()); break;
-				case APPEND   : fw=new FileWriter(fwi.getFile(),true); break;
-				default       : throw new IllegalArgumentException("unsupported for "+fwi.getFlag());
-				}
-				sn=new Scanner(new File(srcdata.getPath()));
-				
-			}catch(IOException e){ e.printStackTrace(); System.exit(0);}
-			
-			while(sn.hasNextLine()){
-				String line=sn.nextLine();
-				
-				if(line.startsWith("dset")){
-					sb.append("dset ^"+IOUtil.getFileName(path)+"\n");
-					
-				}else if(line.startsWith("zdef")){
-					sb.append("zdef "+z+" levels ");
-					for(int k=0;k<z;k++) sb.append(ptDes[k]+" ");
-					sb.append("\n");
-				
-				}else if(line.startsWith("vars")){
-					sb.append("vars "+(vPrs.length+4)+"\n");
-					
-					Scanner tmp=new Scanner(line);
-					tmp.next();	int lc=Integer.parseInt(tmp.next());
-					tmp.close();
-					
-					List<String> vars=new ArrayList<>();
-					
-					for(int i=0;i<lc;i++) vars.add(sn.nextLine());
-					
-					for(int m=0;m<M;m++) for(String v:vars)
-					if(v.startsWith(vPrs[m]+" ")){ sb.append(v.replace(sz+"",z+"")+"\n"); break;}
-					
-					sb.append(String.format("%-11s %3d %5s %2s\n","sgm",z,99,"isentropic density (kg m^-2 s^-1)"));
-					sb.append(String.format("%-11s %3d %5s %2s\n","p"  ,z,99,"pressure (Pa)"));
-					sb.append(String.format("%-11s %3d %5s %2s\n","z"  ,z,99,"geopotential (m^2 s^-2)"));
-					sb.append(String.format("%-11s %3d %5s %2s\n","M"  ,z,99,"Montgomery streamfunction (m^2 s^-2)"));
-				}
-				else if(line.startsWith("options")) continue;
-				else sb.append(line+"\n");
-			}
-			
-			sn.close();
-			
-			try{ fw.write(sb.toString());	fw.close();}
-			catch(IOException e){ e.printStackTrace(); System.exit(0);}
-		}
+		writeIsentropicCtl(path,ptDes,vPrs);
 		
 		System.out.println("Finish vertical interpolating.");
 	}
@@ -919,12 +704,30 @@ public final class DataInterpolation{
 	public void isobaricToIsentropicInterp(String path,String TPrs,String ZPrs,String Tsfc,String Psfc,String Zsfc,float[] ptDes,String[] vSfc,String[] vPrs){
 		System.out.println("Start isobaric to isentropic interpolating with surface masking...");
 		
+		if(vPrs.length!=vSfc.length) throw new IllegalArgumentException("vSfc ("+vSfc.length+") should have the same length as vPrs ("+vPrs.length+")");
+		
+		isentropicTransform(path,TPrs,ZPrs,Tsfc,Psfc,Zsfc,ptDes,vSfc,vPrs);
+		
+		writeIsentropicCtl(path,ptDes,vPrs);
+		
+		System.out.println("Finish vertical interpolating.");
+	}
+	
+	
+	/**
+     * Time steps are streamed through the transform one by one.  For each time
+     * step, the columns are interpolated in parallel over latitude bands, each
+     * band reusing one Column workspace, and the results are written behind.
+     * Without surface fields (Tsfc is null), the lowest level is taken as the
+     * surface.
+     */
+	private void isentropicTransform(String path,String TPrs,String ZPrs,String Tsfc,String Psfc,String Zsfc,float[] ptDes,String[] vSfc,String[] vPrs){
 		int sx=srcdata.getXCount(),sy=srcdata.getYCount(),sz=srcdata.getZCount(),st=srcdata.getTCount();
 		int z=ptDes.length,M=vPrs.length;
 		
-		if(M!=vSfc.length) throw new IllegalArgumentException("vSfc ("+vSfc.length+") should have the same length as vPrs ("+vPrs.length+")");
+		boolean masking=Tsfc!=null;
 		
-		// destinated data for writting, [vPrs..., p, sgm]
+		// destinated data for writting, [vPrs..., sgm, p, z, M]
 		Variable[] desv=new Variable[M+4];
 		float[][][][] dedata=new float[M+4][][][];
 		for(int m=0;m<M+4;m++){
@@ -942,67 +745,68 @@ public final class DataInterpolation{
 		GridDataFetcher gdf=new GridDataFetcher(srcdata);
 		DataWrite cdws=DataIOFactory.getDataWrite(srcdata,path);
 		
+		if(cdws instanceof CtlDataWriteStream)
+		((CtlDataWriteStream)cdws).setAsync((M+4)*z);
+		
 		for(int l=0;l<st;l++){
 			System.out.println("  processing "+srcdata.getTDef().getSamples()[l].toString()+" ...");
 			
 			// preparing data
-			Variable t  =gdf.prepareXYZBuffer(TPrs,l+1  );
-			Variable Z  =gdf.prepareXYZBuffer(ZPrs,l+1  );
-			Variable Tsf=gdf.prepareXYBuffer (Tsfc,l+1,1);
-			Variable Psf=gdf.prepareXYBuffer (Psfc,l+1,1);
-			Variable Zsf=gdf.prepareXYBuffer (Zsfc,l+1,1);
-			Variable[] sfBuf=new Variable[M];
-			Variable[] vsBuf=new Variable[M];
-			
-			float[][][]   tpdata=t.getData()[0];
-			float[][][]   ZZdata=Z.getData()[0];
+			float[][][]   tpdata=gdf.prepareXYZBuffer(TPrs,l+1).getData()[0];
+			float[][][]   ZZdata=gdf.prepareXYZBuffer(ZPrs,l+1).getData()[0];
+			float[][]     Zsdata=gdf.prepareXYBuffer (Zsfc,l+1,1).getData()[0][0];
+			float[][]     Tsdata=masking?gdf.prepareXYBuffer(Tsfc,l+1,1).getData()[0][0]:null;
+			float[][]     Psdata=masking?gdf.prepareXYBuffer(Psfc,l+1,1).getData()[0][0]:null;
 			float[][][]   sfData=new float[M][][];
 			float[][][][] vsData=new float[M][][][];
 			
 			for(int m=0;m<M;m++){
-				sfBuf[m]=gdf.prepareXYBuffer (vPrs[m],l+1,1);
-				vsBuf[m]=gdf.prepareXYZBuffer(vPrs[m],l+1  );
+				vsData[m]=gdf.prepareXYZBuffer(vPrs[m],l+1).getData()[0];
 				
-				sfData[m]=sfBuf[m].getData()[0][0];
-				vsData[m]=vsBuf[m].getData()[0];
+				if(masking) sfData[m]=gdf.prepareXYBuffer(vSfc[m],l+1,1).getData()[0][0];
 			}
 			
-			for(int j=0;j<sy;j++)
-			for(int i=0;i<sx;i++){	// loop for each grid
-				// preparing 1D vertical arrays
-				float[]   tpSrc=new float[sz];	// temperature
-				float[]   zzSrc=new float[sz];	// geopotential
-				float[]   sfSrc=new float[M ];
-				float[][] vsSrc=new float[M ][sz];
-				
-				for(int m=0;m<M;m++) sfSrc[m]=sfData[m][j][i];
+			float undef=srcdata.getUndef(TPrs);
+			
+			ConcurrentUtil.parallelFor(sy,1,(s,e)->{
+				Column c=new Column(zdef,lnPSrc,M,z,undef);
 				
-				// store 1D vertical data
-				for(int k=0;k<sz;k++){
-					tpSrc[k]=tpdata[k][j][i];
-					zzSrc[k]=ZZdata[k][j][i];
-					for(int m=0;m<M;m++) vsSrc[m][k]=vsData[m][k][j][i];
+				for(int j=s;j<e;j++)
+				for(int i=0;i<sx;i++){	// loop for each grid
+					// store 1D vertical data
+					for(int k=0;k<sz;k++){
+						c.temp [k]=tpdata[k][j][i];
+						c.geopt[k]=ZZdata[k][j][i];
+						for(int m=0;m<M;m++) c.vPres[m][k]=vsData[m][k][j][i];
+					}
+					
+					if(masking){
+						for(int m=0;m<M;m++) c.sfcV[m]=sfData[m][j][i];
+						
+						c.prepare(Psdata[j][i],Tsdata[j][i],Zsdata[j][i]);
+						
+					}else{
+						for(int m=0;m<M;m++) c.sfcV[m]=c.vPres[m][0];
+						
+						c.prepare(zdef[0],c.temp[0],Zsdata[j][i]);
+					}
+					
+					c.interpToThetas(ptDes);
+					
+					for(int m=0;m<M+4;m++)
+					for(int k=0;k<z;k++) dedata[m][k][j][i]=c.vDes[m][k];
 				}
-				
-				OnePointZMask pnt=new OnePointZMask(
-					Psf.getData()[0][0][j][i],
-					Tsf.getData()[0][0][j][i],
-					Zsf.getData()[0][0][j][i],
-					t.getUndef(),zdef,lnPSrc,tpSrc,zzSrc
-				);
-				
-				float[][] vDes=interpFromPress2Thetas(pnt,ptDes,sfSrc,vsSrc);
-				
-				for(int m=0;m<M+4;m++)
-				for(int k=0;k<z;k++) dedata[m][k][j][i]=vDes[m][k];
-			}
+			});
 			
 			for(int m=0;m<M+4;m++) cdws.writeData(desv[m]);
 		}
 		
 		cdws.closeFile();
+	}
+	
+	private void writeIsentropicCtl(String path,float[] ptDes,String[] vPrs){
+		int sz=srcdata.getZCount(),z=ptDes.length,M=vPrs.length;
 		
-		// write ctl
 		FileWriteInterface fwi=new FileWriteInterface(IOUtil.getCompleteFileNameWithoutExtension(path)+".ctl");
 		FileWriter fw=null;	Scanner sn=null;
 		
@@ -1032,7 +836,7 @@ public final class DataInterpolation{
 					sb.append("\n");
 				
 				}else if(line.startsWith("vars")){
-					sb.append("vars "+(vPrs.length+4)+"\n");
+					sb.append("vars "+(M+4)+"\n");
 					
 					Scanner tmp=new Scanner(line);
 					tmp.next();	int lc=Integer.parseInt(tmp.next());
@@ -1046,9 +850,9 @@ public final class DataInterpolation{
 					if(v.startsWith(vPrs[m]+" ")){ sb.append(v.replace(sz+"",z+"")+"\n"); break;}
 					
 					sb.append(String.format("%-11s %3d %5s %2s\n","sgm",z,99,"isentropic density (kg m^-2 s^-1)"));
-					sb.append(String.format("%-11s %3d %5s %2s\n","p",z,99,"pressure (Pa)"));
-					sb.append(String.format("%-11s %3d %5s %2s\n","z",z,99,"geopotential (m^2 s^-2)"));
-					sb.append(String.format("%-11s %3d %5s %2s\n","M",z,99,"Montgomery streamfunction (m^2 s^-2)"));
+					sb.append(String.format("%-11s %3d %5s %2s\n","p"  ,z,99,"pressure (Pa)"));
+					sb.append(String.format("%-11s %3d %5s %2s\n","z"  ,z,99,"geopotential (m^2 s^-2)"));
+					sb.append(String.format("%-11s %3d %5s %2s\n","M"  ,z,99,"Montgomery streamfunction (m^2 s^-2)"));
 				}
 				else if(line.startsWith("options")) continue;
 				else sb.append(line+"\n");
@@ -1059,8 +863,6 @@ public final class DataInterpolation{
 			try{ fw.write(sb.toString());	fw.close();}
 			catch(IOException e){ e.printStackTrace(); System.exit(0);}
 		}
-		
-		System.out.println("Finish vertical interpolating.");
 	}
 	
 	
@@ -1107,127 +909,10 @@ public final class DataInterpolation{
 	
 	
 	/**
-	 * Interpolate from pressure levels to specified theta levels with surface masks.
-	 * 
-	 * @param	pnt		OnePoint data needed for column interpolation
-	 * @param	ptDes	destined array of potential temperature (K)
-	 * @param	sfcV	all surface variable corresponding to vSrcs
-	 * @param	vPres	all variable sources to be interpolated
+	 * Workspace to interpolate a single column, reused for all the columns of
+	 * a latitude band so that no object is allocated per column.
 	 */
-	private static float[][] interpFromPress2Thetas(OnePointZMask pnt,float[] ptDes,float[] sfcV,float[][] vPres){
-		int zD =ptDes.length;
-		int vC =vPres.length;
-		int idx=pnt.idx;
-		int sL =pnt.pres.length;
-		
-		float undef=pnt.undef;
-		
-		float[][] vDes=new float[vC+4][zD];
-		float[] sgmDes=vDes[vC  ];
-		float[] lnPDes=vDes[vC+1];
-		float[] geoDes=vDes[vC+2];
-		float[] monDes=vDes[vC+3];
-		
-		for(int k=0;k<zD;k++){
-			if(ptDes[k]>pnt.theta[sL-1]){// mask with undefined value
-				sgmDes[k]=undef;
-				lnPDes[k]=undef;
-				geoDes[k]=undef;
-				monDes[k]=undef;
-				for(int m=0;m<vC;m++) vDes[m][k]=undef;
-				continue;
-			}
-			
-			if(ptDes[k]==pnt.theta[sL-1]){// upper most point
-				sgmDes[k]=pnt.sigma[sL-1];
-				lnPDes[k]=pnt.pres[sL-1];
-				geoDes[k]=pnt.geopt[sL-1];
-				monDes[k]=ThermoDynamics.cTemperature(ptDes[k],pnt.pres[sL-1])*ThermoDynamics.Cp+pnt.geopt[sL-1];
-				for(int m=0;m<vC;m++) vDes[m][k]=vPres[m][sL-1];
-				continue;
-			}
-			
-			int idxC=ArrayUtil.getLEIdxIncre(pnt.theta,ptDes[k]);
-			
-			if(idxC==-1||idxC<idx){// mask with surface value
-				sgmDes[k]=0;
-				lnPDes[k]=pnt.pSfc;
-				geoDes[k]=pnt.zSfc;
-				monDes[k]=ThermoDynamics.cTemperature(ptDes[k],pnt.pSfc)*ThermoDynamics.Cp+pnt.zSfc;
-				for(int m=0;m<vC;m++) vDes[m][k]=sfcV[m];
-				continue;
-				
-			}else if(idxC==idx){
-				if(ptDes[k]<pnt.ptSfc){// mask with surface value
-					sgmDes[k]=0;
-					lnPDes[k]=pnt.pSfc;
-					geoDes[k]=pnt.zSfc;
-					monDes[k]=ThermoDynamics.cTemperature(ptDes[k],pnt.pSfc)*ThermoDynamics.Cp+pnt.zSfc;
-					for(int m=0;m<vC;m++) vDes[m][k]=sfcV[m];
-					continue;
-					
-				}else{// interpolate between surface and idxC+1
-					float a=(pnt.temp[idxC+1]-pnt.tSfc)/(pnt.lnPrs[idxC+1]-pnt.lPSfc);
-					float b= pnt.temp[idxC+1]-pnt.lnPrs[idxC+1]*a;
-					
-					lnPDes[k]=(pnt.lnPrs[idxC+1]+pnt.lPSfc)/2f;	// initial guess
-					
-					for(int i=0;i<50;i++){
-						float tmp=lnPDes[k];
-						lnPDes[k]=iterateToFindLogP(lnPDes[k],ptDes[k],a,b,undef);
-						tmp-=lnPDes[k];
-						if(tmp==undef||Math.abs(tmp)<1e-6) break;
-					}
-					
-					sgmDes[k]=-(pnt.pres[idxC+1]-pnt.pSfc)/(pnt.theta[idxC+1]-pnt.ptSfc)/gEarth;
-					lnPDes[k]=(float)Math.exp(lnPDes[k]);
-					geoDes[k]=InterpolationModel.linearInterpolation(pnt.ptSfc,pnt.theta[idxC+1],pnt.zSfc,pnt.geopt[idxC+1],ptDes[k],undef);
-					monDes[k]=ThermoDynamics.cTemperature(ptDes[k],lnPDes[k])*ThermoDynamics.Cp+geoDes[k];
-					
-					for(int m=0;m<vC;m++) vDes[m][k]=InterpolationModel.linearInterpolation(
-						pnt.theta[idxC],pnt.theta[idxC+1],sfcV[m],vPres[m][idxC+1],ptDes[k],undef
-					);
-				}
-				
-			}else{// interpolate between idxC and idxC+1
-				float a=(pnt.temp[idxC+1]-pnt.temp[idxC])/(pnt.lnPrs[idxC+1]-pnt.lnPrs[idxC]);
-				float b= pnt.temp[idxC+1]-pnt.lnPrs[idxC+1]*a;
-				
-				lnPDes[k]=(pnt.lnPrs[idxC+1]+pnt.lnPrs[idxC])/2f;	// initial guess
-				
-				for(int i=0;i<50;i++){
-					float tmp=lnPDes[k];
-					lnPDes[k]=iterateToFindLogP(lnPDes[k],ptDes[k],a,b,undef);
-					tmp-=lnPDes[k];
-					if(tmp==undef||Math.abs(tmp)<1e-6) break;
-				}
-				
-				sgmDes[k]=InterpolationModel.linearInterpolation(pnt.theta[idxC],pnt.theta[idxC+1],pnt.sigma[idxC],pnt.sigma[idxC+1],ptDes[k],undef);
-				lnPDes[k]=(float)Math.exp(lnPDes[k]);
-				geoDes[k]=InterpolationModel.linearInterpolation(pnt.theta[idxC],pnt.theta[idxC+1],pnt.geopt[idxC],pnt.geopt[idxC+1],ptDes[k],undef);
-				monDes[k]=ThermoDynamics.cTemperature(ptDes[k],lnPDes[k])*ThermoDynamics.Cp+geoDes[k];
-				
-				for(int m=0;m<vC;m++) vDes[m][k]=InterpolationModel.linearInterpolation(
-					pnt.theta[idxC],pnt.theta[idxC+1],vPres[m][idxC],vPres[m][idxC+1],ptDes[k],undef
-				);
-			}
-		}
-		
-		final float threshold=800;
-		for(int k=0;k<zD;k++)
-		if(sgmDes[k]>threshold){
-			if(sgmDes[k+1]<threshold) sgmDes[k]=sgmDes[k+1];
-			if(sgmDes[k+1]>threshold&&sgmDes[k+2]<threshold) sgmDes[k]=sgmDes[k+1]=sgmDes[k+2];
-		}
-		
-		return vDes;
-	}
-	
-	
-	/**
-	 * Help to collect those data needed for interpolate a single column.
-	 */
-	private static final class OnePointZMask{
+	private static final class Column{
 		//
 		int       idx=-1;	// index that pointed to the last underground point
 		
@@ -1238,52 +923,159 @@ public final class DataInterpolation{
 		float   ptSfc=0;	// surface potential temperature (K)
 		float   lPSfc=0;	// surface natural log of pressure
 		
-		float[] pres =null;	// pressure at each pressure level (Pa)
+		float[] pres =null;	// pressure at each pressure level (Pa), shared
+		float[] lnPrs=null;	// natural log of pressure at each pressure level, shared
 		float[] temp =null;	// temperature at each pressure level (K)
 		float[] geopt=null;	// geopotential at each pressure level (m^2 s^-2)
 		float[] theta=null;	// potential temperature at each pressure level (K)
-		float[] lnPrs=null;	// natural log of pressure at each pressure level
 		float[] sigma=null;	// -g*d(p)/d(theta) at each pressure level, pre-calculated before interpolation
 		
+		float[] prsHalf=null;	// half grid pressure
+		float[] denHalf=null;	// half grid density
+		
+		float[]   sfcV =null;	// surface variables corresponding to vPres
+		float[][] vPres=null;	// variables at each pressure level
+		float[][] vDes =null;	// results at theta levels, [vPres..., sgm, p, z, M]
+		
 		
 		/**
 		 * Constructor.
 		 */
-		public OnePointZMask(float pSfc,float tSfc,float zSfc,float undef,float[] pres,float[] lnPrs,float[] temp,float[] geopt){
+		Column(float[] pres,float[] lnPrs,int vcount,int zcount,float undef){
 			int z=pres.length;
 			
-			this.undef=undef; this.pSfc=pSfc;
-			this.tSfc =tSfc ; this.zSfc=zSfc;
-			this.lnPrs=lnPrs; this.pres=pres;
-			this.geopt=geopt; this.temp=temp;
+			this.pres=pres;	this.lnPrs=lnPrs;	this.undef=undef;
+			
+			temp =new float[z];	theta=new float[z];
+			geopt=new float[z];	sigma=new float[z];
+			
+			prsHalf=new float[z+1];
+			denHalf=new float[z+1];
+			
+			sfcV =new float[vcount];
+			vPres=new float[vcount][z];
+			vDes =new float[vcount+4][zcount];
+		}
+		
+		
+		/**
+		 * Prepare the column after temp and geopt are filled.
+		 */
+		void prepare(float pSfc,float tSfc,float zSfc){
+			int z=pres.length;
+			
+			this.pSfc=pSfc;	this.tSfc=tSfc;	this.zSfc=zSfc;
 			
 			lPSfc=(float)Math.log(pSfc);
 			ptSfc=ThermoDynamics.cPotentialTemperature(tSfc,pSfc);
 			
-			theta=new float[z];
-			sigma=new float[z];
-			
 			for(int k=0;k<z;k++) theta[k]=ThermoDynamics.cPotentialTemperature(temp[k],pres[k]);
 			
 			Arrays.sort(theta);
 			
-			//mono=monotonic(theta);
-			
 			idx=ArrayUtil.getLEIdxIncre(geopt,zSfc);
 			
 			interpIsentropicDensity();
 		}
 		
-		
 		/**
-		 * Check the potential temperature at pressure levels to be monotonic increasing with height.
-		private boolean monotonic(float[] theta){
-			for(int k=idx+1,K=theta.length-1;k<K;k++)
-			if(theta[k+1]<theta[k]) return false;
+		 * Interpolate from pressure levels to specified theta levels with surface masks.
+		 * 
+		 * @param	ptDes	destined array of potential temperature (K)
+		 */
+		void interpToThetas(float[] ptDes){
+			int zD =ptDes.length;
+			int vC =vPres.length;
+			int sL =pres.length;
+			
+			float[] sgmDes=vDes[vC  ];
+			float[] lnPDes=vDes[vC+1];
+			float[] geoDes=vDes[vC+2];
+			float[] monDes=vDes[vC+3];
+			
+			for(int k=0;k<zD;k++){
+				if(ptDes[k]>theta[sL-1]){// mask with undefined value
+					sgmDes[k]=undef;
+					lnPDes[k]=undef;
+					geoDes[k]=undef;
+					monDes[k]=undef;
+					for(int m=0;m<vC;m++) vDes[m][k]=undef;
+					continue;
+				}
+				
+				if(ptDes[k]==theta[sL-1]){// upper most point
+					sgmDes[k]=sigma[sL-1];
+					lnPDes[k]=pres[sL-1];
+					geoDes[k]=geopt[sL-1];
+					monDes[k]=ThermoDynamics.cTemperature(ptDes[k],pres[sL-1])*ThermoDynamics.Cp+geopt[sL-1];
+					for(int m=0;m<vC;m++) vDes[m][k]=vPres[m][sL-1];
+					continue;
+				}
+				
+				int idxC=ArrayUtil.getLEIdxIncre(theta,ptDes[k]);
+				
+				if(idxC==-1||idxC<idx||idxC==idx&&ptDes[k]<ptSfc){// mask with surface value
+					sgmDes[k]=0;
+					lnPDes[k]=pSfc;
+					geoDes[k]=zSfc;
+					monDes[k]=ThermoDynamics.cTemperature(ptDes[k],pSfc)*ThermoDynamics.Cp+zSfc;
+					for(int m=0;m<vC;m++) vDes[m][k]=sfcV[m];
+					
+				}else if(idxC==idx){// interpolate between surface and idxC+1
+					float a=(temp[idxC+1]-tSfc)/(lnPrs[idxC+1]-lPSfc);
+					float b= temp[idxC+1]-lnPrs[idxC+1]*a;
+					
+					lnPDes[k]=findLogP((lnPrs[idxC+1]+lPSfc)/2f,ptDes[k],a,b);
+					
+					sgmDes[k]=-(pres[idxC+1]-pSfc)/(theta[idxC+1]-ptSfc)/gEarth;
+					lnPDes[k]=(float)Math.exp(lnPDes[k]);
+					geoDes[k]=InterpolationModel.linearInterpolation(ptSfc,theta[idxC+1],zSfc,geopt[idxC+1],ptDes[k],undef);
+					monDes[k]=ThermoDynamics.cTemperature(ptDes[k],lnPDes[k])*ThermoDynamics.Cp+geoDes[k];
+					
+					for(int m=0;m<vC;m++) vDes[m][k]=InterpolationModel.linearInterpolation(
+						theta[idxC],theta[idxC+1],sfcV[m],vPres[m][idxC+1],ptDes[k],undef
+					);
+					
+				}else{// interpolate between idxC and idxC+1
+					float a=(temp[idxC+1]-temp[idxC])/(lnPrs[idxC+1]-lnPrs[idxC]);
+					float b= temp[idxC+1]-lnPrs[idxC+1]*a;
+					
+					lnPDes[k]=findLogP((lnPrs[idxC+1]+lnPrs[idxC])/2f,ptDes[k],a,b);
+					
+					sgmDes[k]=InterpolationModel.linearInterpolation(theta[idxC],theta[idxC+1],sigma[idxC],sigma[idxC+1],ptDes[k],undef);
+					lnPDes[k]=(float)Math.exp(lnPDes[k]);
+					geoDes[k]=InterpolationModel.linearInterpolation(theta[idxC],theta[idxC+1],geopt[idxC],geopt[idxC+1],ptDes[k],undef);
+					monDes[k]=ThermoDynamics.cTemperature(ptDes[k],lnPDes[k])*ThermoDynamics.Cp+geoDes[k];
+					
+					for(int m=0;m<vC;m++) vDes[m][k]=InterpolationModel.linearInterpolation(
+						theta[idxC],theta[idxC+1],vPres[m][idxC],vPres[m][idxC+1],ptDes[k],undef
+					);
+				}
+			}
 			
-			return true;
+			final float threshold=800;
+			for(int k=0;k<zD;k++)
+			if(sgmDes[k]>threshold){
+				if(sgmDes[k+1]<threshold) sgmDes[k]=sgmDes[k+1];
+				if(sgmDes[k+1]>threshold&&sgmDes[k+2]<threshold) sgmDes[k]=sgmDes[k+1]=sgmDes[k+2];
+			}
 		}
+		
+		/**
+		 * Newton-Rapson iterations from an initial guess of lnp.
 		 */
+		private float findLogP(float iniGuess,float theta,float a,float b){
+			float lnP=iniGuess;
+			
+			for(int i=0;i<50;i++){
+				float tmp=lnP;
+				lnP=iterateToFindLogP(lnP,theta,a,b,undef);
+				tmp-=lnP;
+				if(tmp==undef||Math.abs(tmp)<1e-6) break;
+			}
+			
+			return lnP;
+		}
 		
 		/**
 		 * Calculate isentropic density at irregular pressure levels.
@@ -1291,9 +1083,6 @@ public final class DataInterpolation{
 		private void interpIsentropicDensity(){
 			int z=theta.length;
 			
-			float[] prsHalf=new float[z+1];	// half grid pressure
-			float[] denHalf=new float[z+1];	// half grid density
-			
 			for(int k=1;k<z;k++){
 				prsHalf[k]= (pres[k]+pres[k-1])/2f;
 				denHalf[k]=-(pres[k]-pres[k-1])/(theta[k]-theta[k-1])/gEarth;
@@ -6,14 +6,22 @@
  */
 package miniufo.util;
 
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import miniufo.concurrent.ConcurrentUtil;
+import miniufo.io.CtlDataWriteStream;
 import miniufo.io.DataRead;
 import miniufo.io.DataWrite;
 import miniufo.io.DataIOFactory;
+import miniufo.io.FileWriteInterface;
+import miniufo.io.IOUtil;
 import miniufo.descriptor.DataDescriptor;
 import miniufo.descriptor.Var;
 import miniufo.diagnosis.MDate;
 import miniufo.diagnosis.Range;
 import miniufo.diagnosis.Variable;
+import static miniufo.io.FileWriteInterface.Solution.*;
 
 
 /**
@@ -414,6 +422,286 @@ public final class DataMean{
 	}
 	
 	
+	/**
+     * Streaming climatology.  The data are read once in time order and the
+     * running mean (and variance using Welford's algorithm if stdPath is not
+     * null) of each calendar bin is maintained, so that only the statistics of
+     * one cycle are kept in memory.  Undefined values are skipped.
+     * 
+     * The bins of the climatology start at the bin of the first time of the
+     * data, and its ctl time axis starts at the first day of that bin with a
+     * step of the bin (see Bin).  Only the monthly axis is calendar-exact; the
+     * daily, pentad and decadal dates after the first one are nominal labels
+     * of the bins, since the bins follow the calendar months while the steps
+     * of the axis are fixed.  Anomalies are relative to the final climatology
+     * and are therefore written in a second streaming pass.
+     *
+     * @param	bin			calendar bin of the climatology
+     * @param	climPath	path of the climatology file
+     * @param	stdPath		path of the standard deviation file, null for no output
+     * @param	anomPath	path of the anomaly file, null for no output
+     */
+	public void climatology(Bin bin,String climPath,String stdPath,String anomPath){
+		System.out.println("\nStart streaming climatology ("+bin+")...");
+		
+		int t=ctl.getTCount(),y=ctl.getYCount(),x=ctl.getXCount(),v=ctl.getVCount(),N=bin.count;
+		
+		boolean variance=stdPath!=null;
+		
+		Var[] cv=ctl.getVDef();
+		
+		MDate[] times=ctl.getTDef().getSamples();
+		
+		int bin0=bin.of(times[0]);
+		
+		Variable[]     mean=new Variable[v];	// running mean, also the climatology
+		Variable[]     std =new Variable[v];	// running M2, also the standard deviation
+		int[][][][][]  cnt =new int[v][][][][];	// count of the defined values
+		
+		for(int m=0;m<v;m++){
+			int z=cv[m].getZCount();
+			
+			mean[m]=new Variable(cv[m].getName(),true,new Range(N,z,y,x));
+			cnt [m]=new int[N][z][y][x];
+			
+			mean[m].setComment(cv[m].getComment());	mean[m].setUnit(cv[m].getUnit());
+			
+			if(variance){
+				std[m]=new Variable(cv[m].getName(),true,new Range(N,z,y,x));
+				std[m].setComment(cv[m].getComment());	std[m].setUnit(cv[m].getUnit());
+			}
+		}
+		
+		DataRead cdrs=DataIOFactory.getDataRead(ctl);	cdrs.setPrinting(false);
+		
+		Variable[] buf=new Variable[v];
+		
+		System.out.println(" accumulating...");
+		
+		for(int l=0;l<t;l++){
+			readStep(cdrs,buf,l);
+			
+			int b=Math.floorMod(bin.of(times[l])-bin0,N);
+			
+			for(int m=0;m<v;m++){
+				int z=cv[m].getZCount();	float undef=buf[m].getUndef();
+				
+				float[][][] bdata=buf[m].getData()[0];
+				float[][][] mdata=mean[m].getData()[b];
+				float[][][] sdata=variance?std[m].getData()[b]:null;
+				int  [][][] cdata=cnt[m][b];
+				
+				ConcurrentUtil.parallelFor(z*y,16,(s,e)->{
+					for(int r=s;r<e;r++){
+						int k=r/y,j=r%y;
+						
+						float[] brow=bdata[k][j];	float[] mrow=mdata[k][j];
+						int  [] crow=cdata[k][j];	float[] srow=variance?sdata[k][j]:null;
+						
+						for(int i=0;i<x;i++){
+							float val=brow[i];
+							
+							if(val==undef) continue;
+							
+							float dev=val-mrow[i];
+							
+							mrow[i]+=dev/(++crow[i]);
+							
+							if(variance) srow[i]+=dev*(val-mrow[i]);
+						}
+					}
+				});
+			}
+		}
+		
+		/*** finalize the statistics ***/
+		for(int m=0;m<v;m++){
+			int z=cv[m].getZCount();	float undef=ctl.getUndef(cv[m].getName());
+			
+			float[][][][] mdata=mean[m].getData();
+			float[][][][] sdata=variance?std[m].getData():null;
+			
+			for(int l=0;l<N;l++)
+			for(int k=0;k<z;k++)
+			for(int j=0;j<y;j++)
+			for(int i=0;i<x;i++){
+				int c=cnt[m][l][k][j][i];
+				
+				if(c==0) mdata[l][k][j][i]=undef;
+				
+				if(variance) sdata[l][k][j][i]=c>1?(float)Math.sqrt(sdata[l][k][j][i]/(c-1)):undef;
+			}
+			
+			mean[m].setUndef(undef);	if(variance) std[m].setUndef(undef);
+		}
+		
+		writeBins(climPath,mean,bin,times[0]);
+		
+		if(variance) writeBins(stdPath,std,bin,times[0]);
+		
+		/*** anomalies relative to the climatology ***/
+		if(anomPath!=null){
+			System.out.println(" writing anomalies...");
+			
+			DataWrite cdws=new CtlDataWriteStream(anomPath);
+			
+			for(int l=0;l<t;l++){
+				readStep(cdrs,buf,l);
+				
+				int b=Math.floorMod(bin.of(times[l])-bin0,N);
+				
+				for(int m=0;m<v;m++){
+					int z=cv[m].getZCount();	float undef=buf[m].getUndef();
+					
+					float[][][] bdata=buf[m].getData()[0];
+					float[][][] mdata=mean[m].getData()[b];
+					
+					for(int k=0;k<z;k++)
+					for(int j=0;j<y;j++)
+					for(int i=0;i<x;i++)
+					if(bdata[k][j][i]!=undef&&mdata[k][j][i]!=undef) bdata[k][j][i]-=mdata[k][j][i];
+					else bdata[k][j][i]=undef;
+					
+					cdws.writeData(buf[m]);
+				}
+			}
+			
+			cdws.closeFile();
+			
+			writeCtl(anomPath,"tdef "+String.format("%4d",t)+" linear "+times[0].toGradsDate()+" "+ctl.getTIncrement());
+		}
+		
+		cdrs.closeFile();
+		
+		System.out.println("Finish streaming climatology.");
+	}
+	
+	
+	/**
+	 * calendar bins of the climatology, the time increment is only used to label
+	 * the bins in ctl and is calendar-exact for MONTHLY only
+	 */
+	public enum Bin{
+		DAILY  (365,"1dy"),	// Feb 29 is counted into Feb 28
+		PENTAD ( 72,"5dy"),	// six pentads each month, the last one is 3 to 6 days
+		DECADAL( 36,"10dy"),	// three dekads each month, the last one is 8 to 11 days
+		MONTHLY( 12,"1mo");
+		
+		private final int    count;	// number of bins in a year
+		private final String tinc;	// time increment in ctl
+		
+		private static final int[] cumDays={0,31,59,90,120,151,181,212,243,273,304,334};
+		
+		Bin(int count,String tinc){ this.count=count; this.tinc=tinc;}
+		
+		public int getCount(){ return count;}
+		
+		/**
+		 * index of the bin (0-based) that a given date belongs to
+		 */
+		public int of(MDate date){
+			int month=date.getMonth(),day=date.getDate();
+			
+			switch(this){
+			case DAILY  : return cumDays[month-1]+Math.min(day,month==2?28:31)-1;
+			case PENTAD : return (month-1)*6+Math.min(5,(day-1)/5 );
+			case DECADAL: return (month-1)*3+Math.min(2,(day-1)/10);
+			default     : return month-1;
+			}
+		}
+		
+		/**
+		 * the first day (00z) of the bin that a given date belongs to
+		 */
+		public MDate firstDay(MDate date){
+			int year=date.getYear(),month=date.getMonth(),day=date.getDate();
+			
+			switch(this){
+			case DAILY  : return new MDate(year,month,Math.min(day,month==2?28:31));
+			case PENTAD : return new MDate(year,month,1+Math.min(5,(day-1)/5 )*5 );
+			case DECADAL: return new MDate(year,month,1+Math.min(2,(day-1)/10)*10);
+			default     : return new MDate(year,month,1);
+			}
+		}
+	}
+	
+	
+	/*** helper methods ***/
+	private void readStep(DataRead cdrs,Variable[] buf,int l){
+		Var[] cv=ctl.getVDef();
+		
+		for(int m=0;m<buf.length;m++){
+			if(buf[m]==null) buf[m]=new Variable(cv[m].getName(),true,new Range(1,cv[m].getZCount(),ctl.getYCount(),ctl.getXCount()));
+			
+			buf[m].getRange().setTRange(l+1);
+		}
+		
+		cdrs.readData(buf);
+	}
+	
+	/**
+	 * the time axis starts at the first day of the bin of the first time of the data
+	 */
+	private void writeBins(String path,Variable[] vs,Bin bin,MDate first){
+		DataWrite cdws=new CtlDataWriteStream(path);
+		
+		cdws.writeData(vs);	cdws.closeFile();
+		
+		writeCtl(path,"tdef "+String.format("%4d",bin.count)+" linear "+bin.firstDay(first).toGradsDate()+" "+bin.tinc);
+	}
+	
+	/**
+	 * write a ctl with a given tdef from the fields of the source descriptor,
+	 * time steps of all the variables are stored sequentially (99 storage type)
+	 */
+	private void writeCtl(String path,String tdef){
+		FileWriteInterface fwi=new FileWriteInterface(IOUtil.getCompleteFileNameWithoutExtension(path)+".ctl");
+		
+		if(fwi.getFlag()==SKIP) return;
+		
+		Var[] cv=ctl.getVDef();
+		
+		StringBuilder sb=new StringBuilder();
+		
+		sb.append("dset ^"+IOUtil.getFileName(path)+"\n");
+		if(ByteOrder.nativeOrder()==ByteOrder.BIG_ENDIAN) sb.append("options big_endian\n");
+		sb.append("undef "+ctl.getUndef(cv[0].getName())+"\n");
+		sb.append("title "+ctl.getTitle()+"\n");
+		sb.append(dimension("xdef",ctl.getXDef().getSamples(),ctl.xLinear(),ctl.getDXDef()));
+		sb.append(dimension("ydef",ctl.getYDef().getSamples(),ctl.yLinear(),ctl.getDYDef()));
+		sb.append(dimension("zdef",ctl.getZDef().getSamples(),ctl.zLinear(),ctl.getDZDef()));
+		sb.append(tdef+"\n");
+		sb.append("vars "+String.format("%4d",cv.length)+"\n");
+		
+		for(Var v:cv){
+			String cmmt=v.getComment()==null?v.getName():v.getComment();
+			
+			if(v.getUnit()!=null&&!v.getUnit().equals("")) cmmt+=" ("+v.getUnit()+")";
+			
+			sb.append(String.format("%-11s",v.getName())+" "+String.format("%3d",v.getZCount()==1?0:v.getZCount())+"    99 "+cmmt+"\n");
+		}
+		
+		sb.append("endvars\n");
+		
+		try(FileWriter fw=fwi.getFlag()==RENAME?new FileWriter(fwi.getParent()+fwi.getNewName()):new FileWriter(fwi.getFile())){
+			fw.write(sb.toString());
+			
+		}catch(IOException e){ e.printStackTrace(); System.exit(0);}
+	}
+	
+	
+	private static String dimension(String name,float[] def,boolean linear,float[] delta){
+		if(linear&&delta!=null&&delta[0]>0)
+		return name+" "+String.format("%4d",def.length)+" linear "+def[0]+" "+delta[0]+"\n";
+		
+		StringBuilder sb=new StringBuilder(name+" "+String.format("%4d",def.length)+" levels");
+		
+		for(float d:def) sb.append(" "+d);
+		
+		return sb.append("\n").toString();
+	}
+	
+	
 	/** test
 	public static void main(String[] args){
 		String var="h";
@@ -12,6 +12,7 @@ import miniufo.diagnosis.Range;
 import miniufo.diagnosis.Variable;
 import miniufo.io.DataIOFactory;
 import miniufo.io.DataRead;
+import static miniufo.basic.ArrayUtil.getLEIdxIncre;
 import static miniufo.basic.InterpolationModel.linearInterpolation;
 import static miniufo.basic.InterpolationModel.bilinearInterpolation;
 
@@ -20,6 +21,10 @@ import static miniufo.basic.InterpolationModel.bilinearInterpolation;
  * fetching data at any point from gridded data source
  * using a bi-linear or bi-cubic interpolation fashion
  *
+ * The fetching methods do not change the states of the fetcher and can be
+ * called by many threads on the same buffer.  Indices on linear x, y and t
+ * grids are computed directly instead of searching.
+ *
  * @version 1.0, 2013.02.17
  * @author  MiniUFO
  * @since   MDK1.0
@@ -29,7 +34,12 @@ public final class GridDataFetcher{
 	private int tlev=-1;	// started   time-level for current buffer (start from 1)
 	private int zlev=-1;	// started height-level for current buffer (start from 1)
 	
-	private float undef=Float.NaN;
+	private float xrdel=0;	// reciprocal of x-increment for linear grid, 0 for non-linear grid
+	private float yrdel=0;	// reciprocal of y-increment for linear grid, 0 for non-linear grid
+	
+	private long tdel=0;	// t-increment (s) for linear grid, 0 for non-linear grid
+	
+	private long[] tsec=null;	// times in seconds
 	
 	private float[] xdef =null;
 	private float[] ydef =null;
@@ -60,6 +70,14 @@ public final class GridDataFetcher{
 		
 		region=dd.toRegion2D();
 		
+		tsec=new long[tdef.length];
+		
+		for(int l=0,L=tdef.length;l<L;l++) tsec[l]=seconds(tdef[l].getLongTime());
+		
+		if(dd.getXDef().isLinear()&&xdef.length>1&&xdef[xdef.length-1]>xdef[0]) xrdel=(xdef.length-1)/(xdef[xdef.length-1]-xdef[0]);
+		if(dd.getYDef().isLinear()&&ydef.length>1&&ydef[ydef.length-1]>ydef[0]) yrdel=(ydef.length-1)/(ydef[ydef.length-1]-ydef[0]);
+		if(dd.getTDef().isLinear()&&tsec.length>1) tdel=(tsec[tsec.length-1]-tsec[0])/(tsec.length-1);
+		
 		dr=DataIOFactory.getDataRead(dd);
 	}
 	
@@ -220,6 +238,77 @@ public final class GridDataFetcher{
 	}
 	
 	
+	/**
+	 * slide the XY-T buffer forward to a new start time level.  The time
+	 * levels overlapping with the given buffer are copied and only the rest are
+	 * read.  A new buffer is returned and the given one is left untouched so that
+	 * it can still be fetched by other threads until it is replaced.
+	 *
+	 * @param	xytbuf	XY-T buffer obtained from calling prepareXYTBuffer
+	 * @param	tstr	new t start level (start from 1)
+	 * @param	expand	times of horizontal expanding to reduce undefined data
+	 *
+	 * @return	re		new XY-T buffer of the same length
+	 */
+	public Variable slideXYTBuffer(Variable xytbuf,int tstr){ return slideXYTBuffer(xytbuf,tstr,0);}
+	
+	public Variable slideXYTBuffer(Variable xytbuf,int tstr,int expand){
+		int tlen=xytbuf.getTCount();
+		int ostr=xytbuf.getRange().getTRange()[0];
+		int zstp=xytbuf.getRange().getZRange()[0];
+		int olap=tstr<ostr?0:Math.max(ostr+tlen-tstr,0);
+		
+		if(olap==0) return prepareXYTBuffer(xytbuf.getName(),zstp,tstr,tlen,expand);
+		
+		if(tstr+tlen-1>dd.getTCount())
+		throw new IllegalArgumentException("tstr should be in [1 "+(dd.getTCount()-tlen+1)+"]");
+		
+		Variable re=new Variable(xytbuf.getName(),false,new Range(tlen,1,dd.getYCount(),dd.getXCount()));
+		
+		re.getRange().setZRange(zstp);
+		
+		int[] trange=re.getRange().getTRange();
+		trange[0]=tstr;
+		trange[1]=tstr+tlen-1;
+		trange[2]=tlen;
+		
+		re.setUndef(xytbuf.getUndef());
+		re.setComment(xytbuf.getComment());
+		re.setUnit(xytbuf.getUnit());
+		
+		float[][][] odata=xytbuf.getData()[0];
+		float[][][] rdata=re.getData()[0];
+		
+		if(olap<tlen){
+			Variable nxt=new Variable(xytbuf.getName(),false,new Range(tlen-olap,1,dd.getYCount(),dd.getXCount()));
+			
+			nxt.getRange().setZRange(zstp);
+			
+			int[] nrange=nxt.getRange().getTRange();
+			nrange[0]=tstr+olap;
+			nrange[1]=tstr+tlen-1;
+			nrange[2]=tlen-olap;
+			
+			dr.readData(nxt);
+			
+			expandXYT(nxt,expand);
+			
+			float[][][] ndata=nxt.getData()[0];
+			
+			for(int j=0,J=dd.getYCount();j<J;j++)
+			for(int i=0,I=dd.getXCount();i<I;i++) System.arraycopy(ndata[j][i],0,rdata[j][i],olap,tlen-olap);
+		}
+		
+		for(int j=0,J=dd.getYCount();j<J;j++)
+		for(int i=0,I=dd.getXCount();i<I;i++) System.arraycopy(odata[j][i],tstr-ostr,rdata[j][i],0,olap);
+		
+		zlev=zstp;
+		tlev=tstr;
+		
+		return re;
+	}
+	
+	
 	/**
 	 * fetch XY-slice data from prepared buffer
 	 * 
@@ -228,13 +317,13 @@ public final class GridDataFetcher{
 	 * @param	xybuf	XY-slice buffer obtained from calling prepareXYSliceBuffer
 	 */
 	public float fetchXYBuffer(float xpos,float ypos,Variable xybuf){
-		undef=xybuf.getUndef();
+		float undef=xybuf.getUndef();
 		
 		float[][] xyb=xybuf.getData()[0][0];
 		
 		if(region.inRange(xpos,ypos)){
-			int xtag=dd.getXLENum(xpos);
-			int ytag=dd.getYLENum(ypos);
+			int xtag=getLEIndex(xdef,xrdel,xpos);
+			int ytag=getLEIndex(ydef,yrdel,ypos);
 			int xend=xtag==dd.getXCount()-1?xtag:xtag+1;
 			int yend=ytag==dd.getYCount()-1?ytag:ytag+1;
 			
@@ -252,13 +341,15 @@ public final class GridDataFetcher{
 	}
 	
 	public float fetchXYBufferPeriodicX(float xpos,float ypos,Variable xybuf){
-		undef=xybuf.getUndef();
+		float undef=xybuf.getUndef();
 		
 		float[][] xyb=xybuf.getData()[0][0];
 		
 		if(region.inYRange(ypos)){
-			int xtag=dd.getXLENumPeriodicX(xpos);
-			int ytag=dd.getYLENum(ypos);
+			xpos=wrapX(xpos);
+			
+			int xtag=getLEIndexPeriodicX(xpos);
+			int ytag=getLEIndex(ydef,yrdel,ypos);
 			int xend=xtag==dd.getXCount()-1?0:xtag+1;
 			int yend=ytag==dd.getYCount()-1?ytag:ytag+1;
 			
@@ -285,13 +376,13 @@ public final class GridDataFetcher{
 	 * @param	xyzbuf	XYZ-slice buffer obtained from calling prepareXYZBuffer
 	 */
 	public float fetchXYZBuffer(float xpos,float ypos,float zpos,Variable xyzbuf){
-		undef=xyzbuf.getUndef();
+		float undef=xyzbuf.getUndef();
 		
 		float[][][] xyzb=xyzbuf.getData()[0];
 		
 		if(region.inRange(xpos,ypos)){
-			int xtag=dd.getXLENum(xpos);
-			int ytag=dd.getYLENum(ypos);
+			int xtag=getLEIndex(xdef,xrdel,xpos);
+			int ytag=getLEIndex(ydef,yrdel,ypos);
 			int ztag=dd.getZLENum(zpos);	//int ztag=dd.getZLENum(lev+(lev==1000?0:0.1f));
 			if(ztag==-1) throw new IllegalArgumentException(
 				"zpos "+zpos+" outside ["+dd.getZDef().getMin()+","+dd.getZDef().getMax()+"]"
@@ -324,13 +415,15 @@ public final class GridDataFetcher{
 	}
 	
 	public float fetchXYZBufferPeriodicX(float xpos,float ypos,float zpos,Variable xyzbuf){
-		undef=xyzbuf.getUndef();
+		float undef=xyzbuf.getUndef();
 		
 		float[][][] xyzb=xyzbuf.getData()[0];
 		
 		if(region.inYRange(ypos)){
-			int xtag=dd.getXLENumPeriodicX(xpos);
-			int ytag=dd.getYLENum(ypos);
+			xpos=wrapX(xpos);
+			
+			int xtag=getLEIndexPeriodicX(xpos);
+			int ytag=getLEIndex(ydef,yrdel,ypos);
 			int ztag=dd.getZLENum(zpos);
 			if(ztag==-1) throw new IllegalArgumentException(
 				"zpos "+zpos+" outside ["+dd.getZDef().getMin()+","+dd.getZDef().getMax()+"]"
@@ -364,7 +457,8 @@ public final class GridDataFetcher{
 	
 	
 	/**
-	 * fetch XYT-slice data from prepared buffer
+	 * fetch XYT-slice data from prepared buffer, the time levels of the buffer
+	 * are taken from the buffer itself so that several buffers can be fetched
 	 * 
 	 * @param	xpos	x-position (unit of degree or m) of the point to be fetch
 	 * @param	ypos	y-position (unit of degree or m) of the point to be fetch
@@ -372,22 +466,26 @@ public final class GridDataFetcher{
 	 * @param	xytbuf	XYT-slice buffer obtained from calling prepareXYSliceBuffer
 	 */
 	public float fetchXYTBuffer(float xpos,float ypos,long tim,Variable xytbuf){
-		undef=xytbuf.getUndef();
+		float undef=xytbuf.getUndef();
 		
 		float[][][] xytb=xytbuf.getData()[0];
 		
 		if(region.inRange(xpos,ypos)){
-			int xtag=dd.getXLENum(xpos);
-			int ytag=dd.getYLENum(ypos);
-			int ttag=dd.getTLENum(tim)-tlev+1;
+			long secs=seconds(tim);
+			
+			int tstr=xytbuf.getRange().getTRange()[0]-1;
+			int xtag=getLEIndex(xdef,xrdel,xpos);
+			int ytag=getLEIndex(ydef,yrdel,ypos);
+			int ttag=getTLEIndex(secs)-tstr;
+			
+			if(ttag<0||ttag>=xytb[0][0].length) throw new IllegalArgumentException(
+				"time "+tim+" outside ["+tdef[tstr].getLongTime()+","+tdef[tstr+xytb[0][0].length-1].getLongTime()+"]"
+			);
+			
 			int xend=(xtag==dd.getXCount()   -1?xtag:xtag+1);
 			int yend=(ytag==dd.getYCount()   -1?ytag:ytag+1);
 			int tend=(ttag==xytb[0][0].length-1?ttag:ttag+1);
 			
-			if(ttag==-1) throw new IllegalArgumentException(
-				"time "+tim+" outside ["+dd.getTDef().getFirst().getLongTime()+","+dd.getTDef().getLast().getLongTime()+"]"
-			);
-			
 			float ltp=xytb[yend][xtag][ttag];
 			float lbp=xytb[ytag][xtag][ttag];
 			float rbp=xytb[ytag][xend][ttag];
@@ -400,7 +498,7 @@ public final class GridDataFetcher{
 			
 			float dx1=(xpos-xdef[xtag])/dxdef[xend-1];
 			float dy1=(ypos-ydef[ytag])/dydef[yend-1];
-			float dt1=new MDate(tim).getDT(tdef[ttag+tlev-1])/dtdef[0];
+			float dt1=(secs-tsec[ttag+tstr])/dtdef[0];
 			
 			float prev=bilinearInterpolation(lbp,rbp,ltp,rtp,dx1,dy1,undef);
 			float next=bilinearInterpolation(lbn,rbn,ltn,rtn,dx1,dy1,undef);
@@ -411,22 +509,28 @@ public final class GridDataFetcher{
 	}
 	
 	public float fetchXYTBufferPeriodicX(float xpos,float ypos,long tim,Variable xytbuf){
-		undef=xytbuf.getUndef();
+		float undef=xytbuf.getUndef();
 		
 		float[][][] xytb=xytbuf.getData()[0];
 		
 		if(region.inYRange(ypos)){
-			int xtag=dd.getXLENumPeriodicX(xpos);
-			int ytag=dd.getYLENum(ypos);
-			int ttag=dd.getTLENum(tim)-tlev+1;
+			long secs=seconds(tim);
+			
+			xpos=wrapX(xpos);
+			
+			int tstr=xytbuf.getRange().getTRange()[0]-1;
+			int xtag=getLEIndexPeriodicX(xpos);
+			int ytag=getLEIndex(ydef,yrdel,ypos);
+			int ttag=getTLEIndex(secs)-tstr;
+			
+			if(ttag<0||ttag>=xytb[0][0].length) throw new IllegalArgumentException(
+				"time "+tim+" outside ["+tdef[tstr].getLongTime()+","+tdef[tstr+xytb[0][0].length-1].getLongTime()+"]"
+			);
+			
 			int xend=xtag==dd.getXCount()-1?0:xtag+1;
 			int yend=ytag==dd.getYCount()-1?ytag:ytag+1;
 			int tend=ttag==xytb[0][0].length-1?ttag:ttag+1;
 			
-			if(ttag==-1) throw new IllegalArgumentException(
-				"time "+tim+" outside ["+dd.getTDef().getFirst().getLongTime()+","+dd.getTDef().getLast().getLongTime()+"]"
-			);
-			
 			float ltp=xytb[yend][xtag][ttag];
 			float lbp=xytb[ytag][xtag][ttag];
 			float rbp=xytb[ytag][xend][ttag];
@@ -439,7 +543,7 @@ public final class GridDataFetcher{
 			
 			float dx1=(xpos-xdef[xtag])/dxdef[xend-1<0?0:xend-1];
 			float dy1=(ypos-ydef[ytag])/dydef[yend-1];
-			float dt1=new MDate(tim).getDT(tdef[ttag+tlev-1])/dtdef[0];
+			float dt1=(secs-tsec[ttag+tstr])/dtdef[0];
 			
 			float prev=bilinearInterpolation(lbp,rbp,ltp,rtp,dx1,dy1,undef);
 			float next=bilinearInterpolation(lbn,rbn,ltn,rtn,dx1,dy1,undef);
@@ -457,6 +561,88 @@ public final class GridDataFetcher{
 	
 	
 	/*** helper methods ***/
+	
+	/**
+	 * index of the largest sample not greater than pos (-1 if outside the samples),
+	 * computed directly on linear grid and then corrected for the round-off of samples
+	 *
+	 * @param	def		increasing samples
+	 * @param	rdel	reciprocal of the increment, 0 for non-linear grid
+	 * @param	pos		a given position
+	 */
+	private static int getLEIndex(float[] def,float rdel,float pos){
+		if(rdel==0) return getLEIdxIncre(def,pos);
+		
+		int last=def.length-1;
+		
+		if(!(pos>=def[0]&&pos<=def[last])) return -1;
+		
+		int idx=Math.min((int)((pos-def[0])*rdel),last);
+		
+		while(idx>0&&def[idx]>pos) idx--;
+		while(idx<last&&def[idx+1]<=pos) idx++;
+		
+		return idx;
+	}
+	
+	private int getTLEIndex(long secs){
+		if(tdel==0) return getLEIdxIncre(tsec,secs);
+		
+		int last=tsec.length-1;
+		
+		if(secs<tsec[0]||secs>tsec[last]) return -1;
+		
+		int idx=(int)Math.min((secs-tsec[0])/tdel,last);
+		
+		while(idx>0&&tsec[idx]>secs) idx--;
+		while(idx<last&&tsec[idx+1]<=secs) idx++;
+		
+		return idx;
+	}
+	
+	/**
+	 * same as DataDescriptor.getXLENumPeriodicX but xpos should be wrapped first
+	 */
+	private int getLEIndexPeriodicX(float xpos){
+		if(xpos>xdef[xdef.length-1]) return xdef.length-1;	// process the range (lmax, lrep)
+		else return getLEIndex(xdef,xrdel,xpos);			// process the range [lmin, lmax]
+	}
+	
+	/**
+	 * set xpos into [lmin, lrep) where lrep physically equals to lmin
+	 */
+	private float wrapX(float xpos){
+		float lmin=dd.getXDef().getMin();
+		float lrep=dd.getXDef().getMax()+dxdef[0];
+		float wide=lrep-lmin;
+		
+		while(xpos>=lrep) xpos-=wide;
+		while(xpos< lmin) xpos+=wide;
+		
+		return xpos;
+	}
+	
+	/**
+	 * seconds since 1970-01-01 00:00:00 of a time in long format (yyyyMMddHHmmss),
+	 * computed without parsing so that fetching does not allocate
+	 */
+	private static long seconds(long tim){
+		int sec=(int)(tim%100);	tim/=100;
+		int min=(int)(tim%100);	tim/=100;
+		int hor=(int)(tim%100);	tim/=100;
+		int day=(int)(tim%100);	tim/=100;
+		int mon=(int)(tim%100);	tim/=100;
+		
+		long yr=mon<=2?tim-1:tim;	// year starts from March
+		
+		long era=Math.floorDiv(yr,400);
+		long yoe=yr-era*400;
+		long doy=(153*(mon>2?mon-3:mon+9)+2)/5+day-1;
+		long doe=yoe*365+yoe/4-yoe/100+doy;
+		
+		return (((era*146097+doe-719468)*24+hor)*60+min)*60+sec;
+	}
+	
 	private static void expandXY(Variable v,int iter){
 		float undef=v.getUndef();
 		
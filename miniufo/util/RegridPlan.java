@@ -0,0 +1,415 @@
+/**
+ * @(#)RegridPlan.java	1.0 07/02/01
+ *
+ * Copyright 2007 MiniUFO, All rights reserved.
+ * MiniUFO Studio. Use is subject to license terms.
+ */
+package miniufo.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import miniufo.basic.InterpolationModel.Type;
+import miniufo.concurrent.ConcurrentUtil;
+import miniufo.descriptor.DataDescriptor;
+import miniufo.diagnosis.Variable;
+import static miniufo.basic.InterpolationModel.bicubicLagrangeInterpolation;
+import static miniufo.basic.InterpolationModel.bicubicPolynomialInterpolation;
+import static miniufo.basic.InterpolationModel.cubicLagrangeInterpolation;
+import static miniufo.basic.InterpolationModel.cubicPolynomialInterpolation;
+
+
+/**
+ * A precomputed plan of horizontal regridding from a source grid to a target grid.
+ *
+ * For each target point, the indices of the source stencil (2x2 for LINEAR and
+ * 4x4 for CUBIC_P or CUBIC_L) and the separable weights in x and y dimensions are
+ * computed once.  Applying the plan to a slice is then a sparse matrix-vector
+ * product.  Cubic stencils that exceed a non-periodic boundary are reduced to
+ * bilinear ones.  Target points outside the source grid are undefined.
+ *
+ * The plan is independent of the source DataDescriptor after it is built, so
+ * that it can be written to a file and read back for other datasets on the
+ * same grid.
+ *
+ * @version 1.0, 02/01/2007
+ * @author  MiniUFO
+ * @since   MDK1.0
+ */
+public final class RegridPlan{
+	//
+	private int n =0;	// stencil width, 2 for LINEAR and 4 for cubic
+	private int sy=0;	// source grid size
+	private int sx=0;
+	private int y =0;	// target grid size
+	private int x =0;
+	
+	private Type type=null;
+	
+	private byte[] kind=null;	// OUTSIDE, LINEAR or CUBIC of each target point
+	
+	private int[] jj=null;	// y-indices of the stencil in source grid, n for each target point
+	private int[] ii=null;	// x-indices of the stencil in source grid, n for each target point
+	
+	private float[] wy=null;	// weights in y-dimension, n for each target point
+	private float[] wx=null;	// weights in x-dimension, n for each target point
+	
+	private float[] dy=null;	// normalized distances, used for undefined stencils
+	private float[] dx=null;
+	
+	private static final byte OUTSIDE=0;
+	private static final byte LINEAR =1;
+	private static final byte CUBIC  =2;
+	
+	private static final int MAGIC  =0x4D524750;	// "MRGP"
+	private static final int VERSION=1;
+	
+	
+	/**
+     * constructor
+     *
+     * @param	src		source DataDescriptor
+     * @param	ydes	y-coordinates of the target grid
+     * @param	xdes	x-coordinates of the target grid
+     * @param	type	type of interpolation, LINEAR, CUBIC_P or CUBIC_L
+     */
+	public RegridPlan(DataDescriptor src,float[] ydes,float[] xdes,Type type){
+		if(type!=Type.LINEAR&&type!=Type.CUBIC_P&&type!=Type.CUBIC_L)
+		throw new UnsupportedOperationException("unsupported type for "+type);
+		
+		this.type=type;	n=type==Type.LINEAR?2:4;
+		
+		sy=src.getYCount();	y=ydes.length;
+		sx=src.getXCount();	x=xdes.length;
+		
+		if(sy<2||sx<2) throw new IllegalArgumentException("source grid should be at least 2x2");
+		
+		int[]   jt=new int  [y],it=new int  [x];
+		float[] fy=new float[y],fx=new float[x];
+		
+		for(int j=0;j<y;j++) locateY(src,ydes[j],j,jt,fy);
+		for(int i=0;i<x;i++) locateX(src,xdes[i],i,it,fx);
+		
+		kind=new byte[y*x];
+		
+		jj=new int[y*x*n];	wy=new float[y*x*n];	dy=new float[y*x];
+		ii=new int[y*x*n];	wx=new float[y*x*n];	dx=new float[y*x];
+		
+		boolean periodicX=src.isPeriodicX();
+		
+		ConcurrentUtil.parallelFor(y,1,(s,e)->{
+			for(int j=s;j<e;j++)
+			for(int i=0;i<x;i++){
+				int p=j*x+i,o=p*n;
+				
+				if(jt[j]<0||it[i]<0){ kind[p]=OUTSIDE; continue;}
+				
+				dy[p]=fy[j];	dx[p]=fx[i];
+				
+				boolean cubic=n==4&&jt[j]>=1&&jt[j]+2<sy&&(periodicX||it[i]>=1&&it[i]+2<sx);
+				
+				kind[p]=cubic?CUBIC:LINEAR;
+				
+				for(int q=0;q<n;q++){
+					// stencil starts one grid before for cubic plans
+					int off=n==4?q-1:q;
+					
+					jj[o+q]=clamp(jt[j]+off,sy);
+					ii[o+q]=periodicX?Math.floorMod(it[i]+off,sx):clamp(it[i]+off,sx);
+				}
+				
+				if(cubic){
+					cubicWeights(fy[j],wy,o);
+					cubicWeights(fx[i],wx,o);
+				
+				}else{
+					int q=n==4?1:0;	// linear weights are placed at the inner points
+					
+					wy[o+q]=1f-fy[j];	wy[o+q+1]=fy[j];
+					wx[o+q]=1f-fx[i];	wx[o+q+1]=fx[i];
+				}
+			}
+		});
+	}
+	
+	/**
+     * constructor
+     *
+     * @param	src		source DataDescriptor
+     * @param	des		target DataDescriptor
+     * @param	type	type of interpolation, LINEAR, CUBIC_P or CUBIC_L
+     */
+	public RegridPlan(DataDescriptor src,DataDescriptor des,Type type){
+		this(src,des.getYDef().getSamples(),des.getXDef().getSamples(),type);
+	}
+	
+	private RegridPlan(){}
+	
+	
+	/*** getor and setor ***/
+	public int getSourceYCount(){ return sy;}
+	
+	public int getSourceXCount(){ return sx;}
+	
+	public int getYCount(){ return y;}
+	
+	public int getXCount(){ return x;}
+	
+	public Type getType(){ return type;}
+	
+	
+	/**
+     * apply the plan to a slice
+     *
+     * @param	src		source slice [sy][sx]
+     * @param	des		target slice [y][x]
+     * @param	undef	undefined value
+     */
+	public void apply(float[][] src,float[][] des,float undef){
+		checkSlice(src,des);
+		
+		ConcurrentUtil.parallelFor(y,16,(s,e)->{
+			for(int j=s;j<e;j++) applyRow(src,des[j],j,undef);
+		});
+	}
+	
+	/**
+     * apply the plan to all the slices (t and z) of a variable, in parallel
+     *
+     * @param	src		source variable (t-first)
+     * @param	des		target variable (t-first) of the same t and z counts
+     */
+	public void apply(Variable src,Variable des){
+		if(!src.isTFirst()||!des.isTFirst()) throw new IllegalArgumentException("variables should be t-first type");
+		
+		int t=src.getTCount(),z=src.getZCount();
+		
+		if(des.getTCount()!=t||des.getZCount()!=z) throw new IllegalArgumentException("t or z counts are not the same");
+		
+		float undef=src.getUndef();
+		
+		float[][][][] sdata=src.getData();
+		float[][][][] ddata=des.getData();
+		
+		checkSlice(sdata[0][0],ddata[0][0]);
+		
+		ConcurrentUtil.parallelFor(t*z*y,16,(s,e)->{
+			for(int r=s;r<e;r++){
+				int j=r%y,k=r/y%z,l=r/y/z;
+				
+				applyRow(sdata[l][k],ddata[l][k][j],j,undef);
+			}
+		});
+		
+		des.setUndef(undef);
+	}
+	
+	
+	/**
+     * write the plan to a file
+     *
+     * @param	fname	file name
+     */
+	public void write(String fname){
+		try(DataOutputStream dos=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname),1<<20))){
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			
+			dos.writeInt(type.ordinal());
+			dos.writeInt(sy);	dos.writeInt(sx);
+			dos.writeInt(y );	dos.writeInt(x );
+			
+			dos.write(kind);
+			
+			for(int v:jj) dos.writeInt(v);
+			for(int v:ii) dos.writeInt(v);
+			
+			for(float v:wy) dos.writeFloat(v);
+			for(float v:wx) dos.writeFloat(v);
+			for(float v:dy) dos.writeFloat(v);
+			for(float v:dx) dos.writeFloat(v);
+		
+		}catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+	}
+	
+	/**
+     * read a plan from a file
+     *
+     * @param	fname	file name
+     */
+	public static RegridPlan read(String fname){
+		RegridPlan plan=new RegridPlan();
+		
+		try(DataInputStream dis=new DataInputStream(new BufferedInputStream(new FileInputStream(fname),1<<20))){
+			if(dis.readInt()!=MAGIC) throw new IllegalArgumentException("not a regridding plan: "+fname);
+			
+			int version=dis.readInt();
+			
+			if(version!=VERSION) throw new IllegalArgumentException("unsupported version: "+version);
+			
+			plan.type=Type.values()[dis.readInt()];	plan.n=plan.type==Type.LINEAR?2:4;
+			
+			plan.sy=dis.readInt();	plan.sx=dis.readInt();
+			plan.y =dis.readInt();	plan.x =dis.readInt();
+			
+			int P=plan.y*plan.x,N=P*plan.n;
+			
+			plan.kind=new byte[P];	dis.readFully(plan.kind);
+			
+			plan.jj=readInts(dis,N);
+			plan.ii=readInts(dis,N);
+			
+			plan.wy=readFloats(dis,N);
+			plan.wx=readFloats(dis,N);
+			plan.dy=readFloats(dis,P);
+			plan.dx=readFloats(dis,P);
+		
+		}catch(IOException ex){ ex.printStackTrace(); System.exit(0);}
+		
+		return plan;
+	}
+	
+	
+	/*** helper methods ***/
+	private void applyRow(float[][] src,float[] des,int j,float undef){
+		for(int i=0;i<x;i++){
+			int p=j*x+i,o=p*n;
+			
+			if(kind[p]==OUTSIDE){ des[i]=undef; continue;}
+			
+			float re=0;	boolean hasUndef=false;
+			
+			for(int a=0;a<n&&!hasUndef;a++){
+				float w=wy[o+a];
+				
+				if(w==0) continue;
+				
+				float[] row=src[jj[o+a]];	float buf=0;
+				
+				for(int b=0;b<n;b++){
+					float v=wx[o+b];
+					
+					if(v==0) continue;
+					
+					float z=row[ii[o+b]];
+					
+					if(z==undef){ hasUndef=true; break;}
+					
+					buf+=v*z;
+				}
+				
+				re+=w*buf;
+			}
+			
+			if(hasUndef) re=kind[p]==CUBIC?cubicWithUndef(src,p,undef):undef;
+			
+			des[i]=re;
+		}
+	}
+	
+	/**
+	 * the undefined values within a cubic stencil are processed by InterpolationModel
+	 */
+	private float cubicWithUndef(float[][] src,int p,float undef){
+		int o=p*n;
+		
+		float[] r0=src[jj[o]],r1=src[jj[o+1]],r2=src[jj[o+2]],r3=src[jj[o+3]];
+		
+		int i0=ii[o],i1=ii[o+1],i2=ii[o+2],i3=ii[o+3];
+		
+		if(type==Type.CUBIC_P) return bicubicPolynomialInterpolation(
+			r0[i0],r0[i1],r0[i2],r0[i3],r1[i0],r1[i1],r1[i2],r1[i3],
+			r2[i0],r2[i1],r2[i2],r2[i3],r3[i0],r3[i1],r3[i2],r3[i3],
+			dx[p],dy[p],undef
+		);
+		else return bicubicLagrangeInterpolation(
+			r0[i0],r0[i1],r0[i2],r0[i3],r1[i0],r1[i1],r1[i2],r1[i3],
+			r2[i0],r2[i1],r2[i2],r2[i3],r3[i0],r3[i1],r3[i2],r3[i3],
+			1f+dx[p],1f+dy[p],undef
+		);
+	}
+	
+	/**
+	 * weights of cubic interpolation, obtained by interpolating the unit vectors
+	 */
+	private void cubicWeights(float dis,float[] w,int o){
+		if(type==Type.CUBIC_P){
+			w[o  ]=cubicPolynomialInterpolation(1,0,0,0,dis);
+			w[o+1]=cubicPolynomialInterpolation(0,1,0,0,dis);
+			w[o+2]=cubicPolynomialInterpolation(0,0,1,0,dis);
+			w[o+3]=cubicPolynomialInterpolation(0,0,0,1,dis);
+		
+		}else{
+			w[o  ]=cubicLagrangeInterpolation(1,0,0,0,1f+dis);
+			w[o+1]=cubicLagrangeInterpolation(0,1,0,0,1f+dis);
+			w[o+2]=cubicLagrangeInterpolation(0,0,1,0,1f+dis);
+			w[o+3]=cubicLagrangeInterpolation(0,0,0,1,1f+dis);
+		}
+	}
+	
+	private void checkSlice(float[][] src,float[][] des){
+		if(src.length!=sy||src[0].length!=sx) throw new IllegalArgumentException("source slice is not the same as the plan");
+		if(des.length!=y ||des[0].length!=x ) throw new IllegalArgumentException("target slice is not the same as the plan");
+	}
+	
+	private static void locateY(DataDescriptor src,float pos,int j,int[] tag,float[] dis){
+		float[] ydef=src.getYDef().getSamples();
+		
+		int t=src.getYLENum(pos);
+		
+		if(t==ydef.length-1) t--;	// on the last grid
+		
+		tag[j]=t;
+		
+		if(t>=0) dis[j]=(pos-ydef[t])/(ydef[t+1]-ydef[t]);
+	}
+	
+	private static void locateX(DataDescriptor src,float pos,int i,int[] tag,float[] dis){
+		float[] xdef=src.getXDef().getSamples();
+		
+		if(src.isPeriodicX()){
+			float wide=xdef[xdef.length-1]+src.getDXDef()[0]-xdef[0];
+			
+			// set pos into [xmin, xmin+wide)
+			while(pos>=xdef[0]+wide) pos-=wide;
+			while(pos< xdef[0]     ) pos+=wide;
+			
+			int t=src.getXLENumPeriodicX(pos);
+			
+			float next=t==xdef.length-1?xdef[0]+wide:xdef[t+1];
+			
+			tag[i]=t;	dis[i]=(pos-xdef[t])/(next-xdef[t]);
+		
+		}else{
+			int t=src.getXLENum(pos);
+			
+			if(t==xdef.length-1) t--;	// on the last grid
+			
+			tag[i]=t;
+			
+			if(t>=0) dis[i]=(pos-xdef[t])/(xdef[t+1]-xdef[t]);
+		}
+	}
+	
+	private static int clamp(int idx,int len){ return Math.max(0,Math.min(len-1,idx));}
+	
+	private static int[] readInts(DataInputStream dis,int len) throws IOException{
+		int[] re=new int[len];
+		
+		for(int i=0;i<len;i++) re[i]=dis.readInt();
+		
+		return re;
+	}
+	
+	private static float[] readFloats(DataInputStream dis,int len) throws IOException{
+		float[] re=new float[len];
+		
+		for(int i=0;i<len;i++) re[i]=dis.readFloat();
+		
+		return re;
+	}
+}